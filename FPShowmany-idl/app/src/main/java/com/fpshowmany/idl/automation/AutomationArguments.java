@@ -0,0 +1,158 @@
+package com.fpshowmany.idl.automation;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.fpshowmany.idl.data.RunFileRecorder;
+import com.fpshowmany.idl.engine.BenchmarkPlan;
+import com.fpshowmany.idl.engine.ThermalCooldown;
+import com.fpshowmany.idl.engine.ThermalSensor;
+import com.fpshowmany.idl.utils.SettingsManager;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Разбор аргументов автоматического запуска.
+ * Аргументы инструментации приходят строками; отсутствующие берутся из плана.
+ */
+final class AutomationArguments {
+
+    private static final String DEFAULT_OUTPUT_DIR = "automation";
+    private static final String DEFAULT_OUTPUT_FILE = "result.json";
+
+    private AutomationArguments() {
+    }
+
+    /**
+     * План запуска по аргументам: встроенный план или файл из plan, поверх которого
+     * применяются остальные аргументы. Без plan берется план, выбранный в настройках.
+     *
+     * @throws IllegalArgumentException при неверном значении аргумента
+     * @throws IOException              если файл плана не читается
+     */
+    static BenchmarkPlan toPlan(Context context, Bundle arguments) throws IOException {
+        SettingsManager settings = new SettingsManager(context);
+        BenchmarkPlan plan = loadPlan(settings, arguments.getString(BenchmarkInstrumentation.ARG_PLAN));
+
+        String stages = arguments.getString(BenchmarkInstrumentation.ARG_STAGES);
+        if (stages != null) {
+            plan.setStageIds(BenchmarkPlan.parseStageIds(stages));
+        }
+        plan.setDurationSeconds(getInt(arguments, BenchmarkInstrumentation.ARG_DURATION, plan.getDurationSeconds()));
+        plan.setCpuThreads(getInt(arguments, BenchmarkInstrumentation.ARG_THREADS, plan.getCpuThreads()));
+        plan.setIterations(getInt(arguments, BenchmarkInstrumentation.ARG_ITERATIONS, plan.getIterations()));
+
+        String gpuMode = arguments.getString(BenchmarkInstrumentation.ARG_GPU_MODE);
+        if (gpuMode != null) {
+            plan.setGpuMode(BenchmarkPlan.parseGpuMode(gpuMode));
+        }
+
+        String earlyStop = arguments.getString(BenchmarkInstrumentation.ARG_EARLY_STOP);
+        if (earlyStop != null) {
+            plan.setEarlyStop(Boolean.parseBoolean(earlyStop));
+        }
+        return plan;
+    }
+
+    private static BenchmarkPlan loadPlan(SettingsManager settings, String plan) throws IOException {
+        if (plan == null) {
+            return settings.createPlan();
+        }
+        switch (plan) {
+            case BenchmarkPlan.PRESET_QUICK:
+            case BenchmarkPlan.PRESET_STANDARD:
+            case BenchmarkPlan.PRESET_ENDURANCE:
+            case BenchmarkPlan.PRESET_APP:
+            case BenchmarkPlan.PRESET_STABILITY:
+            case BenchmarkPlan.PRESET_CUSTOM:
+                return settings.createPlan(plan);
+            default:
+                return BenchmarkPlan.load(new File(plan));
+        }
+    }
+
+    /**
+     * Путь к JSON с результатом.
+     */
+    static File getOutput(Context context, Bundle arguments) {
+        String output = arguments.getString(BenchmarkInstrumentation.ARG_OUTPUT);
+        if (output != null) {
+            return new File(output);
+        }
+        File directory = context.getExternalFilesDir(DEFAULT_OUTPUT_DIR);
+        if (directory == null) {
+            directory = new File(context.getFilesDir(), DEFAULT_OUTPUT_DIR);
+        }
+        return new File(directory, DEFAULT_OUTPUT_FILE);
+    }
+
+    /**
+     * Файл трассы запуска index серии из runs: путь из trace (в серии - с суффиксом -N, как
+     * у output) или новый файл в каталоге файлов запусков.
+     */
+    static File getTrace(Context context, Bundle arguments, int index, int runs) {
+        String trace = arguments.getString(BenchmarkInstrumentation.ARG_TRACE);
+        return trace != null ? getRunFile(new File(trace), index, runs) : RunFileRecorder.createTraceFile(context);
+    }
+
+    /**
+     * Число запусков серии, не меньше одного.
+     */
+    static int getRuns(Bundle arguments) {
+        int runs = getInt(arguments, BenchmarkInstrumentation.ARG_RUNS, 1);
+        if (runs < 1) {
+            throw new IllegalArgumentException("Invalid " + BenchmarkInstrumentation.ARG_RUNS + ": " + runs);
+        }
+        return runs;
+    }
+
+    static long getCooldownTimeoutMs(Bundle arguments) {
+        return getInt(arguments, BenchmarkInstrumentation.ARG_COOLDOWN_TIMEOUT,
+                (int) (ThermalCooldown.DEFAULT_TIMEOUT_MS / 1000)) * 1000L;
+    }
+
+    /**
+     * Остывание между запусками серии по cooldown_band и cooldown_timeout.
+     */
+    static ThermalCooldown toCooldown(ThermalSensor sensor, Bundle arguments) {
+        double band = ThermalCooldown.DEFAULT_BAND;
+        String value = arguments.getString(BenchmarkInstrumentation.ARG_COOLDOWN_BAND);
+        if (value != null) {
+            try {
+                band = Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + BenchmarkInstrumentation.ARG_COOLDOWN_BAND + ": " + value);
+            }
+        }
+        return new ThermalCooldown(sensor, band, getCooldownTimeoutMs(arguments));
+    }
+
+    /**
+     * Путь к файлу запуска index серии из runs (JSON результата или трасса): для одиночного
+     * запуска - сам file, иначе file с суффиксом -N перед расширением (result-1.json,
+     * result-2.json, ...).
+     */
+    static File getRunFile(File file, int index, int runs) {
+        if (runs <= 1) {
+            return file;
+        }
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String suffix = "-" + (index + 1);
+        String runName = dot > 0 ? name.substring(0, dot) + suffix + name.substring(dot) : name + suffix;
+        return new File(file.getParentFile(), runName);
+    }
+
+    private static int getInt(Bundle arguments, String key, int defaultValue) {
+        String value = arguments.getString(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+}
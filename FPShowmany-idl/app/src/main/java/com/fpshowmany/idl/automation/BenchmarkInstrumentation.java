@@ -0,0 +1,298 @@
+package com.fpshowmany.idl.automation;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.fpshowmany.idl.data.HistoryStore;
+import com.fpshowmany.idl.data.RunFileRecorder;
+import com.fpshowmany.idl.data.RunRecord;
+import com.fpshowmany.idl.data.RunRecorder;
+import com.fpshowmany.idl.data.file.JsonExporter;
+import com.fpshowmany.idl.engine.BatteryPowerSource;
+import com.fpshowmany.idl.engine.BenchmarkEvent;
+import com.fpshowmany.idl.engine.BenchmarkListener;
+import com.fpshowmany.idl.engine.BenchmarkPlan;
+import com.fpshowmany.idl.engine.DeviceThermalSensor;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.EventStream;
+import com.fpshowmany.idl.engine.LogcatEngineLog;
+import com.fpshowmany.idl.engine.StressTestEngine;
+import com.fpshowmany.idl.engine.ThermalCooldown;
+import com.fpshowmany.idl.engine.ThermalSensor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запуск теста без UI для автоматизации на фермах устройств.
+ * <pre>
+ * adb shell am instrument -w -r \
+ *     -e stages cpu,ram,gpu -e duration 60 -e threads 8 -e gpu_mode 3d \
+ *     com.fpshowmany.idl/.automation.BenchmarkInstrumentation
+ * </pre>
+ * Аргументы (все необязательные, по умолчанию - план, выбранный в настройках приложения):
+ * plan (quick/standard/endurance/app/stability/custom или путь к JSON-файлу {@link BenchmarkPlan}),
+ * stages, duration (сек), threads, gpu_mode (auto/2d/3d), iterations, early_stop (true/false),
+ * output (путь к JSON). Аргументы кроме plan и output переопределяют значения плана.
+ * Активности не запускаются, GPU этап рендерит во внеэкранный буфер.
+ * В сборке с {@link EngineTrace#ENABLED} трасса запуска пишется по пути trace или в каталог
+ * файлов запусков, путь - в ключе результатов trace.
+ * <p>
+ * Результат пишется в JSON (формат {@link JsonExporter}) по пути output или в
+ * {@code <external files>/automation/result.json}. Код завершения инструментации:
+ * {@link Activity#RESULT_OK}, если все этапы выполнены без ошибок, иначе
+ * {@link Activity#RESULT_CANCELED}; в результатах также есть ключи score, app_score, complete, output.
+ * <p>
+ * Серия: runs запусков плана подряд. Перед первым запоминается температура батареи и
+ * тепловой статус, перед каждым следующим инструментация ждет ({@link ThermalCooldown}),
+ * пока температура не опустится до исходной + cooldown_band °C (по умолчанию 2), но не
+ * дольше cooldown_timeout сек (по умолчанию 600). Температура перед стартом и номер в серии
+ * сохраняются в истории с каждым запуском; JSON запуска N пишется в output с суффиксом -N,
+ * трасса - в trace с тем же суффиксом; ключи результатов относятся к последнему запуску, batch - идентификатор серии в истории.
+ */
+public class BenchmarkInstrumentation extends Instrumentation {
+
+    private static final String TAG = "BenchmarkInstrumentation";
+
+    public static final String ARG_PLAN = "plan";
+    public static final String ARG_STAGES = "stages";
+    public static final String ARG_DURATION = "duration";
+    public static final String ARG_THREADS = "threads";
+    public static final String ARG_GPU_MODE = "gpu_mode";
+    public static final String ARG_ITERATIONS = "iterations";
+    public static final String ARG_EARLY_STOP = "early_stop";
+    public static final String ARG_OUTPUT = "output";
+    public static final String ARG_TRACE = "trace";
+    public static final String ARG_RUNS = "runs";
+    public static final String ARG_COOLDOWN_TIMEOUT = "cooldown_timeout";
+    public static final String ARG_COOLDOWN_BAND = "cooldown_band";
+
+    public static final String RESULT_SCORE = "score";
+    public static final String RESULT_APP_SCORE = "app_score";
+    public static final String RESULT_COMPLETE = "complete";
+    public static final String RESULT_OUTPUT = "output";
+    public static final String RESULT_TRACE = "trace";
+    public static final String RESULT_BATCH = "batch";
+
+    private static final String WAKE_LOCK_TAG = "FPShowmany:automation";
+    // Запас времени сверх длительности плана до принудительной остановки
+    private static final long TIMEOUT_MARGIN_MS = 2 * 60 * 1000;
+
+    private Bundle arguments;
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        this.arguments = arguments != null ? arguments : new Bundle();
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        Bundle results = new Bundle();
+        int resultCode;
+        try {
+            resultCode = runPlan(results);
+        } catch (Exception e) {
+            Log.e(TAG, "Automation run failed", e);
+            results.putString(REPORT_KEY_STREAMRESULT, "FAILED: " + e.getMessage() + "\n");
+            resultCode = Activity.RESULT_CANCELED;
+        }
+        finish(resultCode, results);
+    }
+
+    private int runPlan(Bundle results) throws Exception {
+        Context context = getTargetContext();
+        BenchmarkPlan plan = AutomationArguments.toPlan(context, arguments);
+        File output = AutomationArguments.getOutput(context, arguments);
+        int runs = AutomationArguments.getRuns(arguments);
+        ThermalSensor sensor = new DeviceThermalSensor(context);
+        ThermalCooldown cooldown = AutomationArguments.toCooldown(sensor, arguments);
+        // Серия отмечается в истории, одиночный запуск - нет
+        long batchId = runs > 1 ? System.currentTimeMillis() : 0;
+
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+        long runTimeoutMs = plan.getEstimatedSeconds() * 1000L + TIMEOUT_MARGIN_MS;
+        wakeLock.acquire(runs * runTimeoutMs + (runs - 1) * AutomationArguments.getCooldownTimeoutMs(arguments));
+
+        StringBuilder report = new StringBuilder();
+        boolean success = true;
+        RunOutcome last = null;
+        try {
+            cooldown.captureBaseline();
+            Log.i(TAG, String.format(Locale.US, "Baseline %.1f C, status %d",
+                    cooldown.getBaselineTemperature(), cooldown.getBaselineStatus()));
+            for (int i = 0; i < runs; i++) {
+                if (i > 0) {
+                    boolean cooled = cooldown.await();
+                    Log.i(TAG, String.format(Locale.US, "Cooldown %s at %.1f C, status %d after %d ms",
+                            cooled ? "done" : "timed out", cooldown.getLastTemperature(),
+                            cooldown.getLastStatus(), cooldown.getLastWaitMs()));
+                    if (!cooled) {
+                        report.append("COOLDOWN: timed out before run ").append(i + 1).append('\n');
+                    }
+                }
+                RunRecord.Conditions conditions = new RunRecord.Conditions(sensor.readTemperature(),
+                        sensor.readThermalStatus(), batchId, i);
+                File runOutput = AutomationArguments.getRunFile(output, i, runs);
+                File runTrace = EngineTrace.ENABLED ? AutomationArguments.getTrace(context, arguments, i, runs) : null;
+                last = runOnce(context, plan, conditions, runOutput, runTrace, runTimeoutMs);
+
+                boolean runSuccess = last.complete && last.errors.isEmpty();
+                success &= runSuccess;
+                for (String error : last.errors) {
+                    report.append("ERROR: ").append(error).append('\n');
+                }
+                if (runs > 1) {
+                    report.append("RUN ").append(i + 1).append('/').append(runs).append(": ");
+                }
+                report.append(runSuccess ? "OK" : "FAILED").append(" score=").append(last.score)
+                        .append(" app_score=").append(last.appScore)
+                        .append(String.format(Locale.US, " start_temp=%.1f", conditions.getStartTemperature()))
+                        .append(" output=").append(runOutput.getAbsolutePath());
+                if (runTrace != null) {
+                    report.append(" trace=").append(runTrace.getAbsolutePath());
+                }
+                report.append('\n');
+                Log.i(TAG, "Run " + (i + 1) + "/" + runs + " finished, score " + last.score);
+                if (!last.complete) {
+                    // Зависший запуск: остальные запуски серии несравнимы
+                    break;
+                }
+            }
+        } finally {
+            wakeLock.release();
+        }
+
+        results.putString(REPORT_KEY_STREAMRESULT, report.toString());
+        results.putInt(RESULT_SCORE, last.score);
+        results.putInt(RESULT_APP_SCORE, last.appScore);
+        results.putBoolean(RESULT_COMPLETE, last.complete);
+        results.putString(RESULT_OUTPUT, last.output.getAbsolutePath());
+        if (last.trace != null) {
+            results.putString(RESULT_TRACE, last.trace.getAbsolutePath());
+        }
+        if (runs > 1) {
+            results.putLong(RESULT_BATCH, batchId);
+        }
+        return success ? Activity.RESULT_OK : Activity.RESULT_CANCELED;
+    }
+
+    /**
+     * Итог одного запуска серии.
+     */
+    private static final class RunOutcome {
+        final List<String> errors = new ArrayList<>();
+        boolean complete;
+        int score;
+        int appScore;
+        File output;
+        File trace;
+    }
+
+    private RunOutcome runOnce(Context context, BenchmarkPlan plan, RunRecord.Conditions conditions,
+                               File output, File trace, long timeoutMs) throws Exception {
+        EventStream events = new EventStream();
+        StressTestEngine engine = new StressTestEngine(events);
+        engine.setAppContext(context);
+        engine.setPowerSource(new BatteryPowerSource(context));
+        engine.setLog(new LogcatEngineLog());
+        plan.configure(engine, null);
+        final RunOutcome outcome = new RunOutcome();
+        outcome.output = output;
+        if (trace != null) {
+            outcome.trace = trace;
+            engine.setTraceFile(trace);
+        }
+
+        // Запись в историю и в файл запуска, как в сервисе
+        RunRecord.Settings settings = new RunRecord.Settings(plan.getCpuThreads(), plan.getGpuMode(),
+                plan.getEstimatedSeconds(), plan.getIterations(), plan.isEarlyStop());
+        RunRecorder recorder = new RunRecorder(HistoryStore.getInstance(context));
+        RunFileRecorder fileRecorder = new RunFileRecorder(RunFileRecorder.getDirectory(context));
+        recorder.begin(settings, conditions);
+        fileRecorder.begin(settings, plan.getName());
+
+        ExecutorService recorderExecutor = Executors.newSingleThreadExecutor();
+        events.subscribe(recorder, recorderExecutor, false);
+        events.subscribe(fileRecorder, recorderExecutor, false);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        events.subscribe(new BenchmarkListener() {
+            @Override
+            public void onEvent(BenchmarkEvent event) {
+                if (event.getType() == BenchmarkEvent.Type.ERROR) {
+                    synchronized (outcome) {
+                        outcome.errors.add(((BenchmarkEvent.Error) event).message);
+                    }
+                } else if (event.getType() == BenchmarkEvent.Type.RUN_COMPLETE) {
+                    BenchmarkEvent.RunComplete runComplete = (BenchmarkEvent.RunComplete) event;
+                    synchronized (outcome) {
+                        outcome.score = runComplete.totalScore;
+                        outcome.appScore = runComplete.appScore;
+                    }
+                    done.countDown();
+                }
+            }
+        }, recorderExecutor, false);
+
+        try {
+            engine.start();
+            outcome.complete = done.await(timeoutMs, TimeUnit.MILLISECONDS);
+            if (!outcome.complete) {
+                engine.stopAll();
+            }
+        } finally {
+            // Остановленный движок еще публикует события снятия этапа: executor закрывается после него
+            if (!engine.awaitTermination(TIMEOUT_MARGIN_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Engine did not stop in " + TIMEOUT_MARGIN_MS + " ms");
+            }
+            // Дожидаемся записи всех событий на диск
+            recorderExecutor.shutdown();
+            recorderExecutor.awaitTermination(TIMEOUT_MARGIN_MS, TimeUnit.MILLISECONDS);
+        }
+
+        File runFile = fileRecorder.getLastFile();
+        if (runFile == null) {
+            throw new IOException("Run file was not written");
+        }
+        exportJson(runFile, output);
+        return outcome;
+    }
+
+    private static void exportJson(File runFile, File output) throws IOException {
+        File parent = output.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        InputStream in = new FileInputStream(runFile);
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8);
+            try {
+                JsonExporter.export(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
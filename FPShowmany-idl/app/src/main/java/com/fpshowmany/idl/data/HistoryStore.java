@@ -0,0 +1,278 @@
+package com.fpshowmany.idl.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Локальная история запусков в SQLite.
+ * Запуски только добавляются. Сводка запуска хранится в таблице runs с индексами по
+ * устройству, сборке и дате; результаты этапов - в таблице stages с первичным ключом
+ * (run_id, position), поэтому загрузка запуска для сравнения - поиск по индексу
+ * и не зависит от числа сохраненных запусков. Временные ряды замеров хранятся BLOB.
+ * Методы выполняют запросы к базе и не должны вызываться на главном потоке.
+ */
+public class HistoryStore extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "history.db";
+    private static final int DB_VERSION = 2;
+
+    private static final String TABLE_RUNS = "runs";
+    private static final String TABLE_STAGES = "stages";
+
+    private static final String[] RUN_COLUMNS = {
+            "id", "timestamp", "device", "build", "app_version",
+            "cpu_threads", "gpu_mode", "duration", "iterations", "early_stop", "total_score",
+            "start_temp", "start_thermal_status", "batch_id", "batch_index"
+    };
+
+    private static final String[] STAGE_COLUMNS = {
+            "stage_id", "name", "unit", "score", "mean", "std_dev", "ci",
+            "iterations", "warmup_samples", "samples"
+    };
+
+    private static HistoryStore instance;
+
+    public static synchronized HistoryStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new HistoryStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private HistoryStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        // Запись из сервиса не блокирует чтение истории в UI
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE runs ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "timestamp INTEGER NOT NULL, "
+                + "device TEXT NOT NULL, "
+                + "build TEXT NOT NULL, "
+                + "app_version INTEGER NOT NULL, "
+                + "cpu_threads INTEGER NOT NULL, "
+                + "gpu_mode INTEGER NOT NULL, "
+                + "duration INTEGER NOT NULL, "
+                + "iterations INTEGER NOT NULL, "
+                + "early_stop INTEGER NOT NULL, "
+                + "total_score INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_runs_timestamp ON runs (timestamp)");
+        db.execSQL("CREATE INDEX idx_runs_device ON runs (device, timestamp)");
+        db.execSQL("CREATE INDEX idx_runs_build ON runs (build, timestamp)");
+        addConditionColumns(db);
+
+        db.execSQL("CREATE TABLE stages ("
+                + "run_id INTEGER NOT NULL REFERENCES runs (id) ON DELETE CASCADE, "
+                + "position INTEGER NOT NULL, "
+                + "stage_id TEXT NOT NULL, "
+                + "name TEXT NOT NULL, "
+                + "unit TEXT NOT NULL, "
+                + "score INTEGER NOT NULL, "
+                + "mean REAL NOT NULL, "
+                + "std_dev REAL NOT NULL, "
+                + "ci REAL NOT NULL, "
+                + "iterations INTEGER NOT NULL, "
+                + "warmup_samples INTEGER NOT NULL, "
+                + "samples BLOB, "
+                + "PRIMARY KEY (run_id, position)) WITHOUT ROWID");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            addConditionColumns(db);
+        }
+    }
+
+    /**
+     * Версия 2: условия запуска ({@link RunRecord.Conditions}). Температура NULL, если неизвестна;
+     * старые запуски получают значения по умолчанию - вне серии.
+     */
+    private static void addConditionColumns(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE runs ADD COLUMN start_temp REAL");
+        db.execSQL("ALTER TABLE runs ADD COLUMN start_thermal_status INTEGER NOT NULL DEFAULT -1");
+        db.execSQL("ALTER TABLE runs ADD COLUMN batch_id INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE runs ADD COLUMN batch_index INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("CREATE INDEX idx_runs_batch ON runs (batch_id, batch_index)");
+    }
+
+    /**
+     * Сохраняет запуск вместе с результатами этапов.
+     *
+     * @return Идентификатор сохраненного запуска
+     */
+    public long insert(RunRecord run) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put("timestamp", run.getTimestamp());
+            values.put("device", run.getDevice());
+            values.put("build", run.getBuild());
+            values.put("app_version", run.getAppVersion());
+            values.put("cpu_threads", run.getSettings().getCpuThreads());
+            values.put("gpu_mode", run.getSettings().getGpuMode());
+            values.put("duration", run.getSettings().getDurationSeconds());
+            values.put("iterations", run.getSettings().getIterations());
+            values.put("early_stop", run.getSettings().isEarlyStop() ? 1 : 0);
+            values.put("total_score", run.getTotalScore());
+            RunRecord.Conditions conditions = run.getConditions();
+            if (Double.isNaN(conditions.getStartTemperature())) {
+                values.putNull("start_temp");
+            } else {
+                values.put("start_temp", conditions.getStartTemperature());
+            }
+            values.put("start_thermal_status", conditions.getStartThermalStatus());
+            values.put("batch_id", conditions.getBatchId());
+            values.put("batch_index", conditions.getBatchIndex());
+            long runId = db.insertOrThrow(TABLE_RUNS, null, values);
+
+            List<RunRecord.StageRecord> stages = run.getStages();
+            for (int i = 0; i < stages.size(); i++) {
+                RunRecord.StageRecord stage = stages.get(i);
+                values.clear();
+                values.put("run_id", runId);
+                values.put("position", i);
+                values.put("stage_id", stage.getStageId());
+                values.put("name", stage.getName());
+                values.put("unit", stage.getUnit());
+                values.put("score", stage.getScore());
+                values.put("mean", stage.getMean());
+                values.put("std_dev", stage.getStandardDeviation());
+                values.put("ci", stage.getConfidenceInterval());
+                values.put("iterations", stage.getIterations());
+                values.put("warmup_samples", stage.getWarmupSamples());
+                values.put("samples", encodeSamples(stage.getSampleTimes(), stage.getSampleValues()));
+                db.insertOrThrow(TABLE_STAGES, null, values);
+            }
+
+            db.setTransactionSuccessful();
+            return runId;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Загружает запуск с результатами этапов или возвращает null, если его нет.
+     */
+    public RunRecord getRun(long id) {
+        SQLiteDatabase db = getReadableDatabase();
+        String[] args = {String.valueOf(id)};
+
+        List<RunRecord.StageRecord> stages = new ArrayList<>();
+        Cursor cursor = db.query(TABLE_STAGES, STAGE_COLUMNS, "run_id = ?", args, null, null, "position");
+        try {
+            while (cursor.moveToNext()) {
+                byte[] blob = cursor.getBlob(9);
+                int count = blob != null ? ByteBuffer.wrap(blob).order(ByteOrder.LITTLE_ENDIAN).getInt() : 0;
+                int[] times = new int[count];
+                float[] values = new float[count];
+                decodeSamples(blob, times, values);
+                stages.add(new RunRecord.StageRecord(cursor.getString(0), cursor.getString(1),
+                        cursor.getString(2), cursor.getInt(3), cursor.getDouble(4), cursor.getDouble(5),
+                        cursor.getDouble(6), cursor.getInt(7), cursor.getInt(8), times, values));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        cursor = db.query(TABLE_RUNS, RUN_COLUMNS, "id = ?", args, null, null, null);
+        try {
+            return cursor.moveToFirst() ? readRun(cursor, stages) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Последние запуски без результатов этапов, от новых к старым.
+     *
+     * @param device Устройство для отбора или null для всех
+     * @param build  Сборка системы для отбора или null для всех
+     * @param limit  Максимальное число записей
+     */
+    public List<RunRecord> queryRuns(String device, String build, int limit) {
+        StringBuilder selection = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        if (device != null) {
+            selection.append("device = ?");
+            args.add(device);
+        }
+        if (build != null) {
+            if (selection.length() > 0) {
+                selection.append(" AND ");
+            }
+            selection.append("build = ?");
+            args.add(build);
+        }
+
+        List<RunRecord> runs = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().query(TABLE_RUNS, RUN_COLUMNS,
+                selection.length() > 0 ? selection.toString() : null,
+                args.toArray(new String[0]), null, null, "timestamp DESC", String.valueOf(limit));
+        try {
+            while (cursor.moveToNext()) {
+                runs.add(readRun(cursor, Collections.<RunRecord.StageRecord>emptyList()));
+            }
+        } finally {
+            cursor.close();
+        }
+        return runs;
+    }
+
+    private static RunRecord readRun(Cursor cursor, List<RunRecord.StageRecord> stages) {
+        RunRecord.Settings settings = new RunRecord.Settings(cursor.getInt(5), cursor.getInt(6),
+                cursor.getInt(7), cursor.getInt(8), cursor.getInt(9) != 0);
+        RunRecord.Conditions conditions = new RunRecord.Conditions(
+                cursor.isNull(11) ? Double.NaN : cursor.getDouble(11), cursor.getInt(12),
+                cursor.getLong(13), cursor.getInt(14));
+        return new RunRecord(cursor.getLong(0), cursor.getLong(1), cursor.getString(2),
+                cursor.getString(3), cursor.getInt(4), settings, conditions, cursor.getInt(10), stages);
+    }
+
+    /**
+     * Упаковывает временной ряд: число замеров, затем пары (время, значение), little-endian.
+     */
+    static byte[] encodeSamples(int[] times, float[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + times.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(times.length);
+        for (int i = 0; i < times.length; i++) {
+            buffer.putInt(times[i]);
+            buffer.putFloat(values[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Распаковывает временной ряд в массивы длины, записанной в начале блока.
+     */
+    static void decodeSamples(byte[] blob, int[] times, float[] values) {
+        if (blob == null) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(blob).order(ByteOrder.LITTLE_ENDIAN);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            times[i] = buffer.getInt();
+            values[i] = buffer.getFloat();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.fpshowmany.idl.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Загрузка распределения баллов парка устройств.
+ * Основа - эскиз из ресурсов приложения ({@link #ASSET}), если он есть в сборке; к нему
+ * добавляются выгрузки {@link ScorePopulation} в JSON из каталога
+ * {@code <external files>/population/}, например собранные {@code RunFileTool sketch} с
+ * собственной фермы устройств. Синтетические распределения пропускаются: место среди
+ * устройств по ним не показывается.
+ */
+public final class PopulationStore {
+
+    private static final String TAG = "PopulationStore";
+
+    static final String ASSET = "population.json";
+    static final String IMPORT_DIR = "population";
+
+    private PopulationStore() {
+    }
+
+    /**
+     * Загружает распределение. Некорректные импортированные файлы пропускаются; без эскиза
+     * в ресурсах и импорта распределение пустое.
+     *
+     * @throws IOException если эскиз из ресурсов есть, но не читается
+     */
+    public static ScorePopulation load(Context context) throws IOException {
+        ScorePopulation population = new ScorePopulation();
+        InputStream in = null;
+        try {
+            in = context.getAssets().open(ASSET);
+        } catch (FileNotFoundException e) {
+            // Встроенного эскиза нет, остается только импорт
+        }
+        if (in != null) {
+            try {
+                add(population, ScorePopulation.fromJson(readText(in)), ASSET);
+            } finally {
+                in.close();
+            }
+        }
+
+        File directory = context.getExternalFilesDir(IMPORT_DIR);
+        File[] files = directory != null ? directory.listFiles() : null;
+        if (files == null) {
+            return population;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(".json")) {
+                continue;
+            }
+            try {
+                InputStream fileIn = new FileInputStream(file);
+                try {
+                    add(population, ScorePopulation.fromJson(readText(fileIn)), file.getName());
+                } finally {
+                    fileIn.close();
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                Log.w(TAG, "Skipping population file " + file + ": " + e.getMessage());
+            }
+        }
+        return population;
+    }
+
+    private static void add(ScorePopulation population, ScorePopulation source, String name) {
+        if (source.isSynthetic()) {
+            Log.i(TAG, "Skipping synthetic population " + name);
+            return;
+        }
+        population.merge(source);
+    }
+
+    private static String readText(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
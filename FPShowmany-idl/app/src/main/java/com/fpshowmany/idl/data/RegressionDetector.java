@@ -0,0 +1,246 @@
+package com.fpshowmany.idl.data;
+
+import com.fpshowmany.idl.utils.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поиск регрессий производительности: замеры фазы измерения набора базовых запусков
+ * сравниваются с замерами проверяемых запусков по каждому этапу.
+ * <p>
+ * Различие признается, если U-критерий Манна-Уитни значим (уровень делится между этапами
+ * по Бонферрони) и модуль дельты Клиффа не меньше порога этапа. Так шум между запусками
+ * не дает ложных срабатываний, а на больших выборках не отмечаются ничтожные изменения.
+ * Замеры - пропускная способность, поэтому снижение означает регрессию.
+ * Не зависит от Android: используется и в приложении, и в {@code RunFileTool compare}.
+ */
+public final class RegressionDetector {
+
+    public static final double DEFAULT_ALPHA = 0.01;
+    // |дельта Клиффа| 0.33 - граница "среднего" эффекта
+    public static final double DEFAULT_MIN_EFFECT = 0.33;
+    // Меньше замеров - нормальное приближение критерия ненадежно
+    public static final int MIN_SAMPLES = 8;
+
+    public enum Verdict {
+        REGRESSION,
+        IMPROVEMENT,
+        NO_CHANGE,
+        INSUFFICIENT_DATA
+    }
+
+    /**
+     * Результат сравнения одного этапа.
+     */
+    public static final class StageVerdict {
+        private final String stageId;
+        private final int baseCount;
+        private final int otherCount;
+        private final double medianChangePercent;
+        private final double pValue;
+        private final double effectSize;
+        private final Verdict verdict;
+
+        StageVerdict(String stageId, int baseCount, int otherCount, double medianChangePercent,
+                     double pValue, double effectSize, Verdict verdict) {
+            this.stageId = stageId;
+            this.baseCount = baseCount;
+            this.otherCount = otherCount;
+            this.medianChangePercent = medianChangePercent;
+            this.pValue = pValue;
+            this.effectSize = effectSize;
+            this.verdict = verdict;
+        }
+
+        public String getStageId() {
+            return stageId;
+        }
+
+        public int getBaseCount() {
+            return baseCount;
+        }
+
+        public int getOtherCount() {
+            return otherCount;
+        }
+
+        /**
+         * Изменение медианы замеров в процентах относительно базы или NaN без данных.
+         */
+        public double getMedianChangePercent() {
+            return medianChangePercent;
+        }
+
+        /**
+         * p-value без поправки на число этапов или NaN без данных.
+         */
+        public double getPValue() {
+            return pValue;
+        }
+
+        /**
+         * Дельта Клиффа: положительная - проверяемые запуски быстрее.
+         */
+        public double getEffectSize() {
+            return effectSize;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+    }
+
+    /**
+     * Растущий массив замеров.
+     */
+    private static final class Samples {
+        double[] values = new double[64];
+        int count;
+
+        void add(double value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+        }
+    }
+
+    private final Map<String, Samples> base = new LinkedHashMap<>();
+    private final Map<String, Samples> other = new LinkedHashMap<>();
+    private final Map<String, Double> minEffects = new HashMap<>();
+    private double alpha = DEFAULT_ALPHA;
+
+    /**
+     * Общий уровень значимости на все этапы.
+     */
+    public void setAlpha(double alpha) {
+        if (!(alpha > 0 && alpha < 1)) {
+            throw new IllegalArgumentException("Alpha must be in (0, 1): " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    /**
+     * Порог модуля дельты Клиффа для этапа; по умолчанию {@link #DEFAULT_MIN_EFFECT}.
+     */
+    public void setMinEffect(String stageId, double minEffect) {
+        if (!(minEffect >= 0 && minEffect <= 1)) {
+            throw new IllegalArgumentException("Effect threshold must be in [0, 1]: " + minEffect);
+        }
+        minEffects.put(stageId, minEffect);
+    }
+
+    public void addBase(String stageId, double value) {
+        samples(base, stageId).add(value);
+    }
+
+    public void addOther(String stageId, double value) {
+        samples(other, stageId).add(value);
+    }
+
+    /**
+     * Добавляет замеры фазы измерения запуска в базовый набор.
+     */
+    public void addBaseRun(RunRecord run) {
+        addRun(base, run);
+    }
+
+    /**
+     * Добавляет замеры фазы измерения запуска в проверяемый набор.
+     */
+    public void addOtherRun(RunRecord run) {
+        addRun(other, run);
+    }
+
+    private static void addRun(Map<String, Samples> target, RunRecord run) {
+        for (RunRecord.StageRecord stage : run.getStages()) {
+            Samples samples = samples(target, stage.getStageId());
+            for (double value : stage.getMeasurementValues()) {
+                samples.add(value);
+            }
+        }
+    }
+
+    private static Samples samples(Map<String, Samples> target, String stageId) {
+        Samples samples = target.get(stageId);
+        if (samples == null) {
+            samples = new Samples();
+            target.put(stageId, samples);
+        }
+        return samples;
+    }
+
+    /**
+     * Сравнивает наборы по этапам: сначала этапы базы, затем этапы, которые есть только
+     * в проверяемых запусках.
+     */
+    public List<StageVerdict> analyze() {
+        List<String> stageIds = new ArrayList<>(base.keySet());
+        for (String stageId : other.keySet()) {
+            if (!base.containsKey(stageId)) {
+                stageIds.add(stageId);
+            }
+        }
+
+        int tested = 0;
+        for (String stageId : stageIds) {
+            if (hasEnoughData(stageId)) {
+                tested++;
+            }
+        }
+        double stageAlpha = alpha / Math.max(1, tested);
+
+        List<StageVerdict> verdicts = new ArrayList<>(stageIds.size());
+        for (String stageId : stageIds) {
+            Samples a = base.get(stageId);
+            Samples b = other.get(stageId);
+            int countA = a != null ? a.count : 0;
+            int countB = b != null ? b.count : 0;
+            if (!hasEnoughData(stageId)) {
+                verdicts.add(new StageVerdict(stageId, countA, countB, Double.NaN, Double.NaN, 0,
+                        Verdict.INSUFFICIENT_DATA));
+                continue;
+            }
+
+            Statistics.MannWhitneyResult test = Statistics.mannWhitney(a.values, a.count, b.values, b.count);
+            double baseMedian = Statistics.median(a.values, a.count);
+            double change = baseMedian != 0
+                    ? (Statistics.median(b.values, b.count) - baseMedian) / Math.abs(baseMedian) * 100
+                    : Double.NaN;
+            Double minEffect = minEffects.get(stageId);
+            double threshold = minEffect != null ? minEffect : DEFAULT_MIN_EFFECT;
+
+            Verdict verdict = Verdict.NO_CHANGE;
+            if (test.getPValue() < stageAlpha && Math.abs(test.getEffectSize()) >= threshold) {
+                verdict = test.getEffectSize() < 0 ? Verdict.REGRESSION : Verdict.IMPROVEMENT;
+            }
+            verdicts.add(new StageVerdict(stageId, countA, countB, change, test.getPValue(),
+                    test.getEffectSize(), verdict));
+        }
+        return Collections.unmodifiableList(verdicts);
+    }
+
+    private boolean hasEnoughData(String stageId) {
+        Samples a = base.get(stageId);
+        Samples b = other.get(stageId);
+        return a != null && b != null && a.count >= MIN_SAMPLES && b.count >= MIN_SAMPLES;
+    }
+
+    /**
+     * Есть ли среди результатов регрессия.
+     */
+    public static boolean hasRegression(List<StageVerdict> verdicts) {
+        for (StageVerdict verdict : verdicts) {
+            if (verdict.getVerdict() == Verdict.REGRESSION) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,110 @@
+package com.fpshowmany.idl.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Сравнение двух запусков по этапам.
+ * Этапы идут в порядке базового запуска, затем этапы, которые есть только во втором.
+ */
+public final class RunComparison {
+
+    /**
+     * Разница результатов одного этапа. Любая из сторон может отсутствовать (null).
+     */
+    public static final class StageDiff {
+        private final String stageId;
+        private final RunRecord.StageRecord base;
+        private final RunRecord.StageRecord other;
+
+        StageDiff(String stageId, RunRecord.StageRecord base, RunRecord.StageRecord other) {
+            this.stageId = stageId;
+            this.base = base;
+            this.other = other;
+        }
+
+        public String getStageId() {
+            return stageId;
+        }
+
+        /**
+         * Имя этапа из любой доступной стороны.
+         */
+        public String getName() {
+            return base != null ? base.getName() : other.getName();
+        }
+
+        public RunRecord.StageRecord getBase() {
+            return base;
+        }
+
+        public RunRecord.StageRecord getOther() {
+            return other;
+        }
+
+        /**
+         * Изменение среднего в процентах относительно базового запуска или NaN,
+         * если этап есть только в одном запуске.
+         */
+        public double getChangePercent() {
+            if (base == null || other == null || base.getMean() == 0) {
+                return Double.NaN;
+            }
+            return (other.getMean() - base.getMean()) / base.getMean() * 100;
+        }
+
+        /**
+         * Различие значимо, если 95% доверительные интервалы не пересекаются.
+         */
+        public boolean isSignificant() {
+            if (base == null || other == null) {
+                return false;
+            }
+            double gap = Math.abs(other.getMean() - base.getMean());
+            return gap > base.getConfidenceInterval() + other.getConfidenceInterval();
+        }
+    }
+
+    private final RunRecord base;
+    private final RunRecord other;
+    private final List<StageDiff> stages;
+
+    public RunComparison(RunRecord base, RunRecord other) {
+        this.base = base;
+        this.other = other;
+
+        List<StageDiff> diffs = new ArrayList<>();
+        for (RunRecord.StageRecord stage : base.getStages()) {
+            diffs.add(new StageDiff(stage.getStageId(), stage, other.getStage(stage.getStageId())));
+        }
+        for (RunRecord.StageRecord stage : other.getStages()) {
+            if (base.getStage(stage.getStageId()) == null) {
+                diffs.add(new StageDiff(stage.getStageId(), null, stage));
+            }
+        }
+        this.stages = Collections.unmodifiableList(diffs);
+    }
+
+    public RunRecord getBase() {
+        return base;
+    }
+
+    public RunRecord getOther() {
+        return other;
+    }
+
+    public List<StageDiff> getStages() {
+        return stages;
+    }
+
+    /**
+     * Изменение итогового балла в процентах или NaN, если базовый балл нулевой.
+     */
+    public double getTotalChangePercent() {
+        if (base.getTotalScore() == 0) {
+            return Double.NaN;
+        }
+        return (other.getTotalScore() - base.getTotalScore()) * 100.0 / base.getTotalScore();
+    }
+}
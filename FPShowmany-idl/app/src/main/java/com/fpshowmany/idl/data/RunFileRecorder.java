@@ -0,0 +1,172 @@
+package com.fpshowmany.idl.data;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.fpshowmany.idl.BuildConfig;
+import com.fpshowmany.idl.data.file.RunFileFormat;
+import com.fpshowmany.idl.data.file.RunFileWriter;
+import com.fpshowmany.idl.engine.BenchmarkEvent;
+import com.fpshowmany.idl.engine.BenchmarkListener;
+import com.fpshowmany.idl.engine.ChromeTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Записывает ход запуска в файл {@link RunFileFormat} во время теста.
+ * Каждое событие сразу кодируется и сбрасывается на диск, поэтому память не растет с
+ * длительностью теста, а файл прерванного запуска читается до последнего замера.
+ * Как и {@link RunRecorder}, подписывается без объединения и вызывается на фоновом executor.
+ */
+public class RunFileRecorder implements BenchmarkListener {
+
+    private static final String TAG = "RunFileRecorder";
+    private static final String DIRECTORY = "runs";
+
+    private final File directory;
+
+    // Настройки и план задаются с главного потока перед запуском
+    private volatile RunRecord.Settings settings;
+    private volatile String planId;
+
+    // Файл текущего запуска, только на потоке доставки
+    private RunFileWriter writer;
+    private File file;
+    private volatile File lastFile;
+
+    /**
+     * @param directory Каталог для файлов запусков
+     */
+    public RunFileRecorder(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Каталог файлов запусков: во внешнем каталоге приложения, чтобы их можно было забрать
+     * через adb, или во внутреннем, если внешний недоступен.
+     */
+    public static File getDirectory(Context context) {
+        File external = context.getExternalFilesDir(DIRECTORY);
+        return external != null ? external : new File(context.getFilesDir(), DIRECTORY);
+    }
+
+    /**
+     * Новый файл для трассы запуска ({@link ChromeTrace}) в каталоге файлов запусков.
+     */
+    public static File createTraceFile(Context context) {
+        return new File(getDirectory(context), "trace-" + System.currentTimeMillis() + ".json");
+    }
+
+    /**
+     * Запоминает настройки и план следующего запуска.
+     */
+    public void begin(RunRecord.Settings settings, String planId) {
+        this.planId = planId;
+        this.settings = settings;
+    }
+
+    @Override
+    public void onEvent(BenchmarkEvent event) {
+        try {
+            switch (event.getType()) {
+                case STAGE_START:
+                    BenchmarkEvent.StageStart start = (BenchmarkEvent.StageStart) event;
+                    if (start.index == 0) {
+                        open();
+                    }
+                    if (writer != null) {
+                        writer.writeStageStart(start.stage.getId(), start.stage.getName(), start.stage.getUnit());
+                    }
+                    break;
+                case SAMPLE:
+                    if (writer != null) {
+                        BenchmarkEvent.Sample sample = (BenchmarkEvent.Sample) event;
+                        writer.writeSample(sample.activeMillis, sample.phase.ordinal(), sample.throughput);
+                    }
+                    break;
+                case STAGE_COMPLETE:
+                    if (writer != null) {
+                        BenchmarkEvent.StageComplete complete = (BenchmarkEvent.StageComplete) event;
+                        MeasurementResult m = complete.result.getMeasurement();
+                        if (m != null) {
+                            writer.writeStageEnd(complete.result.getScore(), m.getMean(), m.getStandardDeviation(),
+                                    m.getConfidenceInterval(), m.getIterations(), m.getWarmupSamples(),
+                                    m.isSteadyStateReached(), m.isStoppedEarly());
+                        } else {
+                            writer.writeStageEnd(complete.result.getScore(), 0, 0, 0, 0, 0, false, false);
+                        }
+                        for (Map.Entry<String, Double> metric : complete.result.getMetrics().entrySet()) {
+                            writer.writeMetric(metric.getKey(), metric.getValue());
+                        }
+                    }
+                    break;
+                case ERROR:
+                    if (writer != null) {
+                        BenchmarkEvent.Error error = (BenchmarkEvent.Error) event;
+                        writer.writeError(error.stage != null ? error.stage.getId() : null, error.message);
+                    }
+                    break;
+                case RUN_COMPLETE:
+                    if (writer != null) {
+                        writer.writeRunEnd(((BenchmarkEvent.RunComplete) event).totalScore);
+                        close();
+                    }
+                    return;
+                default:
+                    return;
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + file, e);
+            close();
+        }
+    }
+
+    /**
+     * Файл последнего начатого запуска или null.
+     */
+    public File getLastFile() {
+        return lastFile;
+    }
+
+    private void open() throws IOException {
+        // Файл предыдущего, прерванного запуска остается как есть
+        close();
+
+        RunRecord.Settings runSettings = settings;
+        if (runSettings == null || (!directory.isDirectory() && !directory.mkdirs())) {
+            Log.w(TAG, "Run file not recorded");
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        file = new File(directory, "run-" + timestamp + RunFileFormat.EXTENSION);
+        lastFile = file;
+        writer = new RunFileWriter(new FileOutputStream(file));
+        writer.writeRunInfo(timestamp, RunRecorder.getDeviceName(), Build.FINGERPRINT,
+                BuildConfig.VERSION_CODE, runSettings);
+        String runPlan = planId;
+        if (runPlan != null) {
+            writer.writePlan(runPlan);
+        }
+    }
+
+    private void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close " + file, e);
+        }
+        writer = null;
+        file = null;
+    }
+}
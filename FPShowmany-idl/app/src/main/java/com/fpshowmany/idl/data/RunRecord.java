@@ -0,0 +1,276 @@
+package com.fpshowmany.idl.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Сохраненный запуск теста: настройки, условия, устройство, итоговый балл и результаты этапов.
+ * Список этапов пуст у записей, загруженных для списка истории без деталей.
+ */
+public final class RunRecord {
+
+    /**
+     * Настройки, с которыми выполнялся запуск.
+     */
+    public static final class Settings {
+        private final int cpuThreads;
+        private final int gpuMode;
+        private final int durationSeconds;
+        private final int iterations;
+        private final boolean earlyStop;
+
+        public Settings(int cpuThreads, int gpuMode, int durationSeconds, int iterations, boolean earlyStop) {
+            this.cpuThreads = cpuThreads;
+            this.gpuMode = gpuMode;
+            this.durationSeconds = durationSeconds;
+            this.iterations = iterations;
+            this.earlyStop = earlyStop;
+        }
+
+        public int getCpuThreads() {
+            return cpuThreads;
+        }
+
+        public int getGpuMode() {
+            return gpuMode;
+        }
+
+        public int getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public boolean isEarlyStop() {
+            return earlyStop;
+        }
+    }
+
+    /**
+     * Условия запуска: тепловое состояние перед стартом и место в серии запусков.
+     */
+    public static final class Conditions {
+        public static final Conditions UNKNOWN = new Conditions(Double.NaN, -1, 0, 0);
+
+        private final double startTemperature;
+        private final int startThermalStatus;
+        private final long batchId;
+        private final int batchIndex;
+
+        /**
+         * @param startTemperature   Температура перед стартом, °C, или Double.NaN
+         * @param startThermalStatus Тепловой статус перед стартом или -1
+         * @param batchId            Идентификатор серии (время ее начала, мс) или 0 вне серии
+         * @param batchIndex         Номер запуска в серии с нуля
+         */
+        public Conditions(double startTemperature, int startThermalStatus, long batchId, int batchIndex) {
+            this.startTemperature = startTemperature;
+            this.startThermalStatus = startThermalStatus;
+            this.batchId = batchId;
+            this.batchIndex = batchIndex;
+        }
+
+        public double getStartTemperature() {
+            return startTemperature;
+        }
+
+        public int getStartThermalStatus() {
+            return startThermalStatus;
+        }
+
+        public long getBatchId() {
+            return batchId;
+        }
+
+        public int getBatchIndex() {
+            return batchIndex;
+        }
+    }
+
+    /**
+     * Результат одного этапа с временным рядом замеров.
+     */
+    public static final class StageRecord {
+        private final String stageId;
+        private final String name;
+        private final String unit;
+        private final int score;
+        private final double mean;
+        private final double standardDeviation;
+        private final double confidenceInterval;
+        private final int iterations;
+        private final int warmupSamples;
+        private final int[] sampleTimes;
+        private final float[] sampleValues;
+
+        /**
+         * @param sampleTimes  Активное время этапа для каждого замера, мс
+         * @param sampleValues Пропускная способность в каждом замере, в единицах этапа в секунду
+         */
+        public StageRecord(String stageId, String name, String unit, int score,
+                           double mean, double standardDeviation, double confidenceInterval,
+                           int iterations, int warmupSamples, int[] sampleTimes, float[] sampleValues) {
+            if (sampleTimes.length != sampleValues.length) {
+                throw new IllegalArgumentException("Sample arrays differ in length");
+            }
+            this.stageId = stageId;
+            this.name = name;
+            this.unit = unit;
+            this.score = score;
+            this.mean = mean;
+            this.standardDeviation = standardDeviation;
+            this.confidenceInterval = confidenceInterval;
+            this.iterations = iterations;
+            this.warmupSamples = warmupSamples;
+            this.sampleTimes = sampleTimes;
+            this.sampleValues = sampleValues;
+        }
+
+        public String getStageId() {
+            return stageId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getStandardDeviation() {
+            return standardDeviation;
+        }
+
+        /**
+         * Полуширина 95% доверительного интервала среднего.
+         */
+        public double getConfidenceInterval() {
+            return confidenceInterval;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public int getWarmupSamples() {
+            return warmupSamples;
+        }
+
+        public int getSampleCount() {
+            return sampleValues.length;
+        }
+
+        public int[] getSampleTimes() {
+            return sampleTimes;
+        }
+
+        public float[] getSampleValues() {
+            return sampleValues;
+        }
+
+        /**
+         * Замеры фазы измерения: все замеры после прогрева.
+         */
+        public double[] getMeasurementValues() {
+            int start = Math.min(warmupSamples, sampleValues.length);
+            double[] values = new double[sampleValues.length - start];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = sampleValues[start + i];
+            }
+            return values;
+        }
+    }
+
+    private final long id;
+    private final long timestamp;
+    private final String device;
+    private final String build;
+    private final int appVersion;
+    private final Settings settings;
+    private final Conditions conditions;
+    private final int totalScore;
+    private final List<StageRecord> stages;
+
+    /**
+     * @param id        Идентификатор в хранилище или -1 для еще не сохраненной записи
+     * @param timestamp Время завершения, мс с эпохи
+     * @param device    Производитель и модель устройства
+     * @param build     Отпечаток сборки системы
+     */
+    public RunRecord(long id, long timestamp, String device, String build, int appVersion,
+                     Settings settings, int totalScore, List<StageRecord> stages) {
+        this(id, timestamp, device, build, appVersion, settings, Conditions.UNKNOWN, totalScore, stages);
+    }
+
+    public RunRecord(long id, long timestamp, String device, String build, int appVersion,
+                     Settings settings, Conditions conditions, int totalScore, List<StageRecord> stages) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.device = device;
+        this.build = build;
+        this.appVersion = appVersion;
+        this.settings = settings;
+        this.conditions = conditions;
+        this.totalScore = totalScore;
+        this.stages = Collections.unmodifiableList(stages);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public String getBuild() {
+        return build;
+    }
+
+    public int getAppVersion() {
+        return appVersion;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public Conditions getConditions() {
+        return conditions;
+    }
+
+    public int getTotalScore() {
+        return totalScore;
+    }
+
+    public List<StageRecord> getStages() {
+        return stages;
+    }
+
+    /**
+     * Результат этапа по идентификатору или null.
+     */
+    public StageRecord getStage(String stageId) {
+        for (StageRecord stage : stages) {
+            if (stage.getStageId().equals(stageId)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,127 @@
+package com.fpshowmany.idl.data;
+
+import android.os.Build;
+import android.util.Log;
+
+import com.fpshowmany.idl.BuildConfig;
+import com.fpshowmany.idl.engine.BenchmarkEvent;
+import com.fpshowmany.idl.engine.BenchmarkListener;
+import com.fpshowmany.idl.engine.MeasurementResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Записывает завершенные запуски в {@link HistoryStore}.
+ * Подписывается на поток событий без объединения, чтобы получить все замеры, и должен
+ * вызываться на фоновом executor: запись в базу выполняется прямо в {@link #onEvent}.
+ * Прерванные запуски не сохраняются.
+ */
+public class RunRecorder implements BenchmarkListener {
+
+    private static final String TAG = "RunRecorder";
+
+    private final HistoryStore store;
+
+    // Настройки задаются с главного потока перед запуском
+    private volatile RunRecord.Settings settings;
+    private volatile RunRecord.Conditions conditions = RunRecord.Conditions.UNKNOWN;
+
+    // Состояние текущего запуска, только на потоке доставки
+    private final List<RunRecord.StageRecord> stages = new ArrayList<>();
+    private int[] sampleTimes = new int[64];
+    private float[] sampleValues = new float[64];
+    private int sampleCount;
+
+    public RunRecorder(HistoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Запоминает настройки следующего запуска.
+     */
+    public void begin(RunRecord.Settings settings) {
+        begin(settings, RunRecord.Conditions.UNKNOWN);
+    }
+
+    /**
+     * Запоминает настройки и условия следующего запуска.
+     */
+    public void begin(RunRecord.Settings settings, RunRecord.Conditions conditions) {
+        this.conditions = conditions;
+        this.settings = settings;
+    }
+
+    @Override
+    public void onEvent(BenchmarkEvent event) {
+        switch (event.getType()) {
+            case STAGE_START:
+                if (((BenchmarkEvent.StageStart) event).index == 0) {
+                    stages.clear();
+                }
+                sampleCount = 0;
+                break;
+            case SAMPLE:
+                BenchmarkEvent.Sample sample = (BenchmarkEvent.Sample) event;
+                addSample((int) sample.activeMillis, (float) sample.throughput);
+                break;
+            case STAGE_COMPLETE:
+                BenchmarkEvent.StageComplete complete = (BenchmarkEvent.StageComplete) event;
+                stages.add(toRecord(complete));
+                sampleCount = 0;
+                break;
+            case RUN_COMPLETE:
+                save(((BenchmarkEvent.RunComplete) event).totalScore);
+                stages.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void addSample(int time, float value) {
+        if (sampleCount == sampleValues.length) {
+            sampleTimes = Arrays.copyOf(sampleTimes, sampleCount * 2);
+            sampleValues = Arrays.copyOf(sampleValues, sampleCount * 2);
+        }
+        sampleTimes[sampleCount] = time;
+        sampleValues[sampleCount] = value;
+        sampleCount++;
+    }
+
+    private RunRecord.StageRecord toRecord(BenchmarkEvent.StageComplete complete) {
+        MeasurementResult measurement = complete.result.getMeasurement();
+        return new RunRecord.StageRecord(complete.stage.getId(), complete.stage.getName(),
+                complete.stage.getUnit(), complete.result.getScore(),
+                measurement != null ? measurement.getMean() : 0,
+                measurement != null ? measurement.getStandardDeviation() : 0,
+                measurement != null ? measurement.getConfidenceInterval() : 0,
+                measurement != null ? measurement.getIterations() : 0,
+                measurement != null ? measurement.getWarmupSamples() : 0,
+                Arrays.copyOf(sampleTimes, sampleCount), Arrays.copyOf(sampleValues, sampleCount));
+    }
+
+    private void save(int totalScore) {
+        RunRecord.Settings runSettings = settings;
+        if (runSettings == null) {
+            Log.w(TAG, "Run finished without settings, not saved");
+            return;
+        }
+        RunRecord run = new RunRecord(-1, System.currentTimeMillis(), getDeviceName(), Build.FINGERPRINT,
+                BuildConfig.VERSION_CODE, runSettings, conditions, totalScore, new ArrayList<>(stages));
+        try {
+            long id = store.insert(run);
+            Log.i(TAG, "Saved run " + id);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to save run", e);
+        }
+    }
+
+    /**
+     * Производитель и модель устройства, ключ для отбора истории по устройству.
+     */
+    public static String getDeviceName() {
+        return Build.MANUFACTURER + " " + Build.MODEL;
+    }
+}
@@ -0,0 +1,152 @@
+package com.fpshowmany.idl.data;
+
+import com.fpshowmany.idl.engine.ScoreModel;
+import com.fpshowmany.idl.utils.Json;
+import com.fpshowmany.idl.utils.QuantileSketch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Распределение баллов по парку устройств: эскизы {@link QuantileSketch} общего балла
+ * ({@link #TOTAL}) и баллов каждого этапа отдельно для каждого плана ({@link #key}), потому
+ * что баллы разных планов несравнимы. Позволяет сказать, быстрее какой доли устройств
+ * результат, и объединять выгрузки с разных ферм.
+ * <pre>
+ * {"version":1,"scale":1000,"sketches":{"standard:total":{..},"standard:cpu":{..},..}}
+ * </pre>
+ * scale - балл эталонного устройства ({@link ScoreModel#REFERENCE_SCORE}); эскизы
+ * с другой шкалой несовместимы и не загружаются. Распределение с {@code "synthetic":true}
+ * построено не по реальным запускам, а задано вручную.
+ */
+public class ScorePopulation {
+
+    public static final int VERSION = 1;
+    public static final String TOTAL = "total";
+
+    private final Map<String, QuantileSketch> sketches = new LinkedHashMap<>();
+    private boolean synthetic;
+
+    /**
+     * Ключ эскиза: план и {@link #TOTAL} или идентификатор этапа.
+     */
+    public static String key(String planId, String scoreId) {
+        return planId + ":" + scoreId;
+    }
+
+    /**
+     * Добавляет балл в эскиз по ключу {@link #key}.
+     */
+    public void add(String key, double score) {
+        QuantileSketch sketch = sketches.get(key);
+        if (sketch == null) {
+            sketch = new QuantileSketch();
+            sketches.put(key, sketch);
+        }
+        sketch.add(score);
+    }
+
+    /**
+     * Добавляет общий балл и баллы этапов запуска плана planId.
+     */
+    public void addRun(String planId, RunRecord run) {
+        add(key(planId, TOTAL), run.getTotalScore());
+        for (RunRecord.StageRecord stage : run.getStages()) {
+            add(key(planId, stage.getStageId()), stage.getScore());
+        }
+    }
+
+    /**
+     * Добавляет все эскизы другого распределения. Смесь с синтетическим распределением
+     * тоже считается синтетической.
+     */
+    public void merge(ScorePopulation other) {
+        synthetic |= other.synthetic;
+        for (Map.Entry<String, QuantileSketch> entry : other.sketches.entrySet()) {
+            QuantileSketch sketch = sketches.get(entry.getKey());
+            if (sketch == null) {
+                sketch = new QuantileSketch(entry.getValue().getCompression());
+                sketches.put(entry.getKey(), sketch);
+            }
+            sketch.merge(entry.getValue());
+        }
+    }
+
+    /**
+     * Эскиз по ключу или null, если данных нет.
+     */
+    public QuantileSketch getSketch(String key) {
+        return sketches.get(key);
+    }
+
+    /**
+     * Распределение задано вручную, а не собрано по запускам.
+     */
+    public boolean isSynthetic() {
+        return synthetic;
+    }
+
+    public Map<String, QuantileSketch> getSketches() {
+        return Collections.unmodifiableMap(sketches);
+    }
+
+    /**
+     * Процент устройств с баллом ниже заданного, 0-100; NaN, если данных нет.
+     */
+    public double getPercentile(String key, double score) {
+        QuantileSketch sketch = sketches.get(key);
+        if (sketch == null) {
+            return Double.NaN;
+        }
+        return sketch.cdf(score) * 100;
+    }
+
+    public String toJson() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"version\":").append(VERSION)
+                .append(",\"scale\":").append(ScoreModel.REFERENCE_SCORE);
+        if (synthetic) {
+            builder.append(",\"synthetic\":true");
+        }
+        builder.append(",\"sketches\":{");
+        boolean first = true;
+        for (Map.Entry<String, QuantileSketch> entry : sketches.entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append(Json.quote(entry.getKey())).append(':').append(entry.getValue().toJson());
+        }
+        return builder.append("}}").toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException если формат, версия или шкала не поддерживаются
+     */
+    public static ScorePopulation fromJson(String json) {
+        Object root = Json.parse(json);
+        if (!(root instanceof Map)) {
+            throw new IllegalArgumentException("Expected population object");
+        }
+        Map<?, ?> object = (Map<?, ?>) root;
+        Object version = object.get("version");
+        if (!(version instanceof Double) || ((Double) version).intValue() != VERSION) {
+            throw new IllegalArgumentException("Unsupported population version: " + version);
+        }
+        Object scale = object.get("scale");
+        if (!(scale instanceof Double) || ((Double) scale).intValue() != ScoreModel.REFERENCE_SCORE) {
+            throw new IllegalArgumentException("Incompatible score scale: " + scale);
+        }
+        Object sketches = object.get("sketches");
+        if (!(sketches instanceof Map)) {
+            throw new IllegalArgumentException("Population has no sketches");
+        }
+        ScorePopulation population = new ScorePopulation();
+        population.synthetic = Boolean.TRUE.equals(object.get("synthetic"));
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) sketches).entrySet()) {
+            population.sketches.put((String) entry.getKey(), QuantileSketch.fromJson(entry.getValue()));
+        }
+        return population;
+    }
+}
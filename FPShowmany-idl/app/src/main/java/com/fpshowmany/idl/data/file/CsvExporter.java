@@ -0,0 +1,97 @@
+package com.fpshowmany.idl.data.file;
+
+import com.fpshowmany.idl.data.RunRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Потоковый экспорт замеров файла запуска в CSV.
+ * Одна строка на замер; устройство, сборка и время запуска повторяются в каждой строке,
+ * чтобы файлы с разных устройств можно было просто склеить. Значение - скорость счетчика
+ * работы этапа в секунду (операции, байты, кадры), а не отображаемая единица этапа.
+ */
+public class CsvExporter implements RunFileReader.Visitor {
+
+    public static final String HEADER = "device,build,run_timestamp,stage,phase,time_ms,value";
+
+    private final Writer out;
+
+    private String runColumns = ",,";
+    private String stageId = "";
+
+    public CsvExporter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Экспортирует файл запуска из потока.
+     *
+     * @return true, если запуск завершен
+     */
+    public static boolean export(InputStream in, Writer out) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+        boolean complete = new RunFileReader(in).read(new CsvExporter(out));
+        out.flush();
+        return complete;
+    }
+
+    @Override
+    public void onRunInfo(long timestamp, String device, String build, int appVersion,
+                          RunRecord.Settings settings) {
+        runColumns = escape(device) + "," + escape(build) + "," + timestamp;
+    }
+
+    @Override
+    public void onPlan(String planId) {
+    }
+
+    @Override
+    public void onStageStart(String stageId, String name, String unit) {
+        this.stageId = escape(stageId);
+    }
+
+    @Override
+    public void onSample(long activeMillis, int phase, double value) throws IOException {
+        out.write(runColumns);
+        out.write(',');
+        out.write(stageId);
+        out.write(',');
+        out.write(RunFileFormat.phaseName(phase));
+        out.write(',');
+        out.write(Long.toString(activeMillis));
+        out.write(',');
+        out.write(String.format(Locale.US, "%.2f", value));
+        out.write('\n');
+    }
+
+    @Override
+    public void onStageEnd(int score, double mean, double standardDeviation, double confidenceInterval,
+                           int iterations, int warmupSamples, boolean steadyState, boolean stoppedEarly) {
+    }
+
+    @Override
+    public void onMetric(String name, double value) {
+    }
+
+    @Override
+    public void onError(String stageId, String message) {
+    }
+
+    @Override
+    public void onRunEnd(int totalScore) {
+    }
+
+    /**
+     * Экранирует значение по RFC 4180.
+     */
+    static String escape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,188 @@
+package com.fpshowmany.idl.data.file;
+
+import com.fpshowmany.idl.data.RunRecord;
+import com.fpshowmany.idl.utils.Json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Потоковый экспорт файла запуска в JSON.
+ * <pre>
+ * {"version":1,
+ *  "run":{"timestamp":..,"device":..,"build":..,"appVersion":..,"settings":{..}},"plan":..,
+ *  "stages":[{"id":..,"name":..,"unit":..,"samples":[[time_ms,"phase",value],..],
+ *             "result":{..},"metrics":{name:value,..},"errors":[..]},..],
+ *  "errors":[..],"totalScore":..,"complete":true}
+ * </pre>
+ * Замеры пишутся сразу по мере чтения; в памяти держится только результат текущего этапа
+ * и ошибки вне этапов.
+ */
+public class JsonExporter implements RunFileReader.Visitor {
+
+    private final Writer out;
+
+    private boolean stagesOpen = false;
+    private boolean stageOpen = false;
+    private boolean firstSample = true;
+    private String stageResult;
+    private final List<String> stageMetrics = new ArrayList<>();
+    private final List<String> stageErrors = new ArrayList<>();
+    private final List<String> runErrors = new ArrayList<>();
+    private String currentStageId;
+    private int totalScore;
+
+    public JsonExporter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Экспортирует файл запуска из потока.
+     *
+     * @return true, если запуск завершен
+     */
+    public static boolean export(InputStream in, Writer out) throws IOException {
+        JsonExporter exporter = new JsonExporter(out);
+        out.write("{\"version\":" + RunFileFormat.VERSION);
+        boolean complete = new RunFileReader(in).read(exporter);
+        exporter.finish(complete);
+        out.flush();
+        return complete;
+    }
+
+    @Override
+    public void onRunInfo(long timestamp, String device, String build, int appVersion,
+                          RunRecord.Settings settings) throws IOException {
+        out.write(",\"run\":{\"timestamp\":" + timestamp
+                + ",\"device\":" + Json.quote(device)
+                + ",\"build\":" + Json.quote(build)
+                + ",\"appVersion\":" + appVersion
+                + ",\"settings\":{\"cpuThreads\":" + settings.getCpuThreads()
+                + ",\"gpuMode\":" + settings.getGpuMode()
+                + ",\"duration\":" + settings.getDurationSeconds()
+                + ",\"iterations\":" + settings.getIterations()
+                + ",\"earlyStop\":" + settings.isEarlyStop() + "}}");
+    }
+
+    @Override
+    public void onPlan(String planId) throws IOException {
+        out.write(",\"plan\":" + Json.quote(planId));
+    }
+
+    @Override
+    public void onStageStart(String stageId, String name, String unit) throws IOException {
+        if (stagesOpen) {
+            closeStage();
+            out.write(',');
+        } else {
+            out.write(",\"stages\":[");
+            stagesOpen = true;
+        }
+        out.write("{\"id\":" + Json.quote(stageId) + ",\"name\":" + Json.quote(name)
+                + ",\"unit\":" + Json.quote(unit) + ",\"samples\":[");
+        stageOpen = true;
+        firstSample = true;
+        currentStageId = stageId;
+    }
+
+    @Override
+    public void onSample(long activeMillis, int phase, double value) throws IOException {
+        if (!stageOpen) {
+            return;
+        }
+        if (!firstSample) {
+            out.write(',');
+        }
+        firstSample = false;
+        out.write("[" + activeMillis + ",\"" + RunFileFormat.phaseName(phase) + "\","
+                + number(value) + "]");
+    }
+
+    @Override
+    public void onStageEnd(int score, double mean, double standardDeviation, double confidenceInterval,
+                           int iterations, int warmupSamples, boolean steadyState, boolean stoppedEarly) {
+        stageResult = "{\"score\":" + score
+                + ",\"mean\":" + number(mean)
+                + ",\"standardDeviation\":" + number(standardDeviation)
+                + ",\"confidenceInterval\":" + number(confidenceInterval)
+                + ",\"iterations\":" + iterations
+                + ",\"warmupSamples\":" + warmupSamples
+                + ",\"steadyState\":" + steadyState
+                + ",\"stoppedEarly\":" + stoppedEarly + "}";
+    }
+
+    @Override
+    public void onMetric(String name, double value) {
+        if (stageOpen) {
+            stageMetrics.add(Json.quote(name) + ":" + number(value));
+        }
+    }
+
+    @Override
+    public void onError(String stageId, String message) {
+        if (stageOpen && stageId.equals(currentStageId)) {
+            stageErrors.add(Json.quote(message));
+        } else {
+            runErrors.add(Json.quote(message));
+        }
+    }
+
+    @Override
+    public void onRunEnd(int totalScore) {
+        this.totalScore = totalScore;
+    }
+
+    private void closeStage() throws IOException {
+        out.write(']');
+        if (stageResult != null) {
+            out.write(",\"result\":" + stageResult);
+        }
+        if (!stageMetrics.isEmpty()) {
+            out.write(",\"metrics\":{" + join(stageMetrics) + "}");
+        }
+        if (!stageErrors.isEmpty()) {
+            out.write(",\"errors\":[" + join(stageErrors) + "]");
+        }
+        out.write('}');
+        stageOpen = false;
+        stageResult = null;
+        stageMetrics.clear();
+        stageErrors.clear();
+    }
+
+    private void finish(boolean complete) throws IOException {
+        if (stagesOpen) {
+            closeStage();
+            out.write(']');
+        }
+        if (!runErrors.isEmpty()) {
+            out.write(",\"errors\":[" + join(runErrors) + "]");
+        }
+        if (complete) {
+            out.write(",\"totalScore\":" + totalScore);
+        }
+        out.write(",\"complete\":" + complete + "}\n");
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder builder = new StringBuilder();
+        for (String value : values) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        return String.format(Locale.US, "%.4f", value);
+    }
+}
@@ -0,0 +1,154 @@
+package com.fpshowmany.idl.data.file;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Двоичный формат файла запуска (.fpsr).
+ * <p>
+ * Файл начинается с сигнатуры {@link #MAGIC} и версии формата (varint), затем идут записи
+ * вида: тег (1 байт), длина тела (varint), тело. Читатель пропускает записи с неизвестными
+ * тегами, поэтому новые записи можно добавлять без смены версии. Запись {@link #TAG_RUN_END}
+ * есть только у завершенных запусков; файл прерванного запуска читается до последней
+ * целой записи.
+ * <p>
+ * Целые числа - varint (LEB128), знаковые - zigzag varint, строки - длина и UTF-8,
+ * вещественные - 8 байт IEEE 754 big-endian. Замеры этапа кодируются дельтами
+ * относительно предыдущего замера того же этапа: время активной работы в мс вместе с фазой
+ * и значение пропускной способности, квантованное с шагом 1/{@link #VALUE_SCALE}.
+ * Типичный замер занимает 3-6 байт.
+ * <p>
+ * Класс и весь пакет не зависят от Android и используются в анализе на рабочих станциях.
+ */
+public final class RunFileFormat {
+
+    public static final byte[] MAGIC = {'F', 'P', 'S', 'R'};
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".fpsr";
+
+    /** Сведения о запуске: время, устройство, сборка, настройки. */
+    public static final int TAG_RUN_INFO = 1;
+    /** Начало этапа: идентификатор, имя, единицы. */
+    public static final int TAG_STAGE_START = 2;
+    /** Замер окна этапа. */
+    public static final int TAG_SAMPLE = 3;
+    /** Результат этапа. */
+    public static final int TAG_STAGE_END = 4;
+    /** Ошибка: идентификатор этапа (может быть пустым) и сообщение. */
+    public static final int TAG_ERROR = 5;
+    /** Завершение запуска: итоговый балл. */
+    public static final int TAG_RUN_END = 6;
+    /** Дополнительный показатель результата этапа: имя и значение, после записи результата. */
+    public static final int TAG_METRIC = 7;
+    /** План запуска: идентификатор, после сведений о запуске. */
+    public static final int TAG_PLAN = 8;
+
+    // Фазы замеров, совпадают с порядком SteadyStateDetector.Phase
+    public static final int PHASE_WARMUP = 0;
+    public static final int PHASE_MEASUREMENT = 1;
+    public static final int PHASE_COMPLETE = 2;
+
+    /** Число бит фазы в поле времени замера. */
+    static final int PHASE_BITS = 2;
+
+    /** Квантование значений замеров: 0.01 единицы в секунду. */
+    public static final double VALUE_SCALE = 100;
+
+    private static final String[] PHASE_NAMES = {"warmup", "measurement", "complete"};
+
+    private RunFileFormat() {
+    }
+
+    /**
+     * Название фазы для экспорта.
+     */
+    public static String phaseName(int phase) {
+        return phase >= 0 && phase < PHASE_NAMES.length ? PHASE_NAMES[phase] : String.valueOf(phase);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeSignedVarLong(OutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static void writeDouble(OutputStream out, double value) throws IOException {
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+    }
+
+    static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        return readVarLong(in, readByte(in));
+    }
+
+    private static long readVarLong(InputStream in, int first) throws IOException {
+        long value = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while ((b & 0x80) != 0) {
+            if (shift > 63) {
+                throw new IOException("Malformed varint");
+            }
+            b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+    static long readSignedVarLong(InputStream in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static double readDouble(InputStream in) throws IOException {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | readByte(in);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    static String readString(InputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        byte[] bytes = new byte[length];
+        readFully(in, bytes, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    static void readFully(InputStream in, byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.fpshowmany.idl.data.file;
+
+import com.fpshowmany.idl.data.RunRecord;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Потоковое чтение файла запуска в формате {@link RunFileFormat}.
+ * Записи передаются в {@link Visitor} по мере чтения, весь файл в память не загружается.
+ */
+public class RunFileReader {
+
+    /**
+     * Получатель записей файла. Методы вызываются в порядке записей в файле.
+     */
+    public interface Visitor {
+        void onRunInfo(long timestamp, String device, String build, int appVersion,
+                       RunRecord.Settings settings) throws IOException;
+
+        /**
+         * План запуска; в файлах старых версий записи нет.
+         */
+        void onPlan(String planId) throws IOException;
+
+        void onStageStart(String stageId, String name, String unit) throws IOException;
+
+        void onSample(long activeMillis, int phase, double value) throws IOException;
+
+        void onStageEnd(int score, double mean, double standardDeviation, double confidenceInterval,
+                        int iterations, int warmupSamples, boolean steadyState, boolean stoppedEarly)
+                throws IOException;
+
+        /**
+         * Дополнительный показатель результата текущего этапа.
+         */
+        void onMetric(String name, double value) throws IOException;
+
+        /**
+         * @param stageId Этап или пустая строка, если ошибка не относится к этапу
+         */
+        void onError(String stageId, String message) throws IOException;
+
+        void onRunEnd(int totalScore) throws IOException;
+    }
+
+    private final InputStream in;
+
+    public RunFileReader(InputStream in) {
+        this.in = new BufferedInputStream(in);
+    }
+
+    /**
+     * Читает файл до конца, передавая записи получателю.
+     *
+     * @return true, если запуск завершен (есть запись завершения); false для прерванного
+     * запуска или файла, обрезанного посреди записи
+     * @throws IOException если это не файл запуска или версия не поддерживается
+     */
+    public boolean read(Visitor visitor) throws IOException {
+        byte[] magic = new byte[RunFileFormat.MAGIC.length];
+        RunFileFormat.readFully(in, magic, magic.length);
+        if (!Arrays.equals(magic, RunFileFormat.MAGIC)) {
+            throw new IOException("Not a run file");
+        }
+        long version = RunFileFormat.readVarLong(in);
+        if (version > RunFileFormat.VERSION) {
+            throw new IOException("Unsupported run file version " + version);
+        }
+
+        boolean complete = false;
+        long sampleTime = 0;
+        long sampleValue = 0;
+        byte[] body = new byte[64];
+
+        while (true) {
+            int tag = in.read();
+            if (tag < 0) {
+                return complete;
+            }
+
+            ByteArrayInputStream record;
+            try {
+                int length = (int) RunFileFormat.readVarLong(in);
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                RunFileFormat.readFully(in, body, length);
+                record = new ByteArrayInputStream(body, 0, length);
+            } catch (EOFException e) {
+                // Файл обрезан посреди записи: запуск прерван во время записи
+                return false;
+            }
+
+            switch (tag) {
+                case RunFileFormat.TAG_RUN_INFO:
+                    long timestamp = RunFileFormat.readVarLong(record);
+                    String device = RunFileFormat.readString(record);
+                    String build = RunFileFormat.readString(record);
+                    int appVersion = (int) RunFileFormat.readVarLong(record);
+                    int cpuThreads = (int) RunFileFormat.readVarLong(record);
+                    int gpuMode = (int) RunFileFormat.readVarLong(record);
+                    int duration = (int) RunFileFormat.readVarLong(record);
+                    int iterations = (int) RunFileFormat.readVarLong(record);
+                    boolean earlyStop = RunFileFormat.readByte(record) != 0;
+                    visitor.onRunInfo(timestamp, device, build, appVersion,
+                            new RunRecord.Settings(cpuThreads, gpuMode, duration, iterations, earlyStop));
+                    break;
+                case RunFileFormat.TAG_PLAN:
+                    visitor.onPlan(RunFileFormat.readString(record));
+                    break;
+                case RunFileFormat.TAG_STAGE_START:
+                    sampleTime = 0;
+                    sampleValue = 0;
+                    visitor.onStageStart(RunFileFormat.readString(record),
+                            RunFileFormat.readString(record), RunFileFormat.readString(record));
+                    break;
+                case RunFileFormat.TAG_SAMPLE:
+                    long packed = RunFileFormat.readVarLong(record);
+                    sampleTime += packed >>> RunFileFormat.PHASE_BITS;
+                    sampleValue += RunFileFormat.readSignedVarLong(record);
+                    visitor.onSample(sampleTime, (int) (packed & ((1 << RunFileFormat.PHASE_BITS) - 1)),
+                            sampleValue / RunFileFormat.VALUE_SCALE);
+                    break;
+                case RunFileFormat.TAG_STAGE_END:
+                    int score = (int) RunFileFormat.readVarLong(record);
+                    double mean = RunFileFormat.readDouble(record);
+                    double standardDeviation = RunFileFormat.readDouble(record);
+                    double confidenceInterval = RunFileFormat.readDouble(record);
+                    int measured = (int) RunFileFormat.readVarLong(record);
+                    int warmupSamples = (int) RunFileFormat.readVarLong(record);
+                    int flags = RunFileFormat.readByte(record);
+                    visitor.onStageEnd(score, mean, standardDeviation, confidenceInterval,
+                            measured, warmupSamples, (flags & 1) != 0, (flags & 2) != 0);
+                    break;
+                case RunFileFormat.TAG_METRIC:
+                    visitor.onMetric(RunFileFormat.readString(record), RunFileFormat.readDouble(record));
+                    break;
+                case RunFileFormat.TAG_ERROR:
+                    visitor.onError(RunFileFormat.readString(record), RunFileFormat.readString(record));
+                    break;
+                case RunFileFormat.TAG_RUN_END:
+                    complete = true;
+                    visitor.onRunEnd((int) RunFileFormat.readVarLong(record));
+                    break;
+                default:
+                    // Запись из более новой версии формата
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.fpshowmany.idl.data.file;
+
+import com.fpshowmany.idl.data.RegressionDetector;
+import com.fpshowmany.idl.data.RunRecord;
+import com.fpshowmany.idl.data.ScorePopulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Консольный конвертер файлов запуска для анализа вне устройства.
+ * <pre>
+ * java -cp app-classes com.fpshowmany.idl.data.file.RunFileTool csv|json run.fpsr [...]
+ * java -cp app-classes com.fpshowmany.idl.data.file.RunFileTool sketch run.fpsr|population.json [...]
+ * java -cp app-classes com.fpshowmany.idl.data.file.RunFileTool compare base.fpsr [...] -- new.fpsr [...]
+ * </pre>
+ * Результат выводится в stdout:
+ * <ul>
+ * <li>csv - строки замеров всех файлов с одним заголовком;</li>
+ * <li>json - документ запуска, для нескольких файлов - массив документов в порядке аргументов;</li>
+ * <li>sketch - распределение баллов ({@link ScorePopulation}) завершенных запусков по планам,
+ * объединенное с уже собранными эскизами, в JSON; файлы без записи плана пропускаются;</li>
+ * <li>compare - таблица по этапам: регрессии ({@link RegressionDetector}) новых запусков
+ * относительно базовых; прерванные запуски пропускаются.</li>
+ * </ul>
+ * Коды выхода по режимам; у каждого кода одно значение во всех режимах, поэтому сценарию
+ * не нужно знать режим:
+ * <ul>
+ * <li>csv, json, sketch: {@link #EXIT_OK} - все запуски завершены, {@link #EXIT_INCOMPLETE} -
+ * есть прерванные, {@link #EXIT_ERROR} - ошибка чтения или неверные аргументы;</li>
+ * <li>compare: {@link #EXIT_OK} - регрессий нет, {@link #EXIT_INCOMPLETE} - регрессий нет, но
+ * прерванные запуски пропущены, {@link #EXIT_ERROR} - ошибка чтения или неверные аргументы,
+ * {@link #EXIT_REGRESSION} - найдена регрессия, даже если были прерванные запуски.</li>
+ * </ul>
+ */
+public final class RunFileTool {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_INCOMPLETE = 1;
+    static final int EXIT_ERROR = 2;
+    static final int EXIT_REGRESSION = 3;
+
+    private RunFileTool() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || !("csv".equals(args[0]) || "json".equals(args[0])
+                || "sketch".equals(args[0]) || "compare".equals(args[0]))) {
+            System.err.println("Usage: RunFileTool csv|json <file.fpsr>...");
+            System.err.println("       RunFileTool sketch <file.fpsr|population.json>...");
+            System.err.println("       RunFileTool compare <base.fpsr>... -- <new.fpsr>...");
+            System.exit(EXIT_ERROR);
+        }
+        if ("sketch".equals(args[0])) {
+            sketch(args);
+            return;
+        }
+        if ("compare".equals(args[0])) {
+            compare(args);
+            return;
+        }
+
+        boolean csv = "csv".equals(args[0]);
+        // Несколько JSON документов подряд - не JSON, поэтому они выводятся массивом
+        boolean jsonArray = !csv && args.length > 2;
+        boolean allComplete = true;
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        try {
+            if (jsonArray) {
+                out.write('[');
+            }
+            for (int i = 1; i < args.length; i++) {
+                InputStream in = new FileInputStream(args[i]);
+                try {
+                    boolean complete;
+                    if (csv) {
+                        // Заголовок CSV выводится один раз на все файлы
+                        if (i == 1) {
+                            out.write(CsvExporter.HEADER);
+                            out.write('\n');
+                        }
+                        complete = new RunFileReader(in).read(new CsvExporter(out));
+                    } else {
+                        if (jsonArray && i > 1) {
+                            out.write(',');
+                        }
+                        complete = JsonExporter.export(in, out);
+                    }
+                    if (!complete) {
+                        System.err.println(args[i] + ": run is incomplete");
+                        allComplete = false;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            if (jsonArray) {
+                out.write(']');
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(EXIT_ERROR);
+        }
+        System.exit(allComplete ? EXIT_OK : EXIT_INCOMPLETE);
+    }
+
+    private static void sketch(String[] args) {
+        ScorePopulation population = new ScorePopulation();
+        boolean allComplete = true;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                InputStream in = new FileInputStream(args[i]);
+                try {
+                    if (args[i].endsWith(".json")) {
+                        population.merge(ScorePopulation.fromJson(readText(in)));
+                    } else {
+                        PopulationCollector collector = new PopulationCollector(population);
+                        if (!new RunFileReader(in).read(collector)) {
+                            System.err.println(args[i] + ": run is incomplete, skipped");
+                            allComplete = false;
+                        } else if (!collector.hasPlan()) {
+                            System.err.println(args[i] + ": run has no plan, skipped");
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            out.write(population.toJson());
+            out.write('\n');
+            out.flush();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(EXIT_ERROR);
+        }
+        System.exit(allComplete ? EXIT_OK : EXIT_INCOMPLETE);
+    }
+
+    private static void compare(String[] args) {
+        RegressionDetector detector = new RegressionDetector();
+        boolean other = false;
+        boolean allComplete = true;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if ("--".equals(args[i])) {
+                    other = true;
+                    continue;
+                }
+                InputStream in = new FileInputStream(args[i]);
+                try {
+                    SampleCollector collector = new SampleCollector();
+                    if (new RunFileReader(in).read(collector)) {
+                        collector.addTo(detector, other);
+                    } else {
+                        System.err.println(args[i] + ": run is incomplete, skipped");
+                        allComplete = false;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(EXIT_ERROR);
+        }
+        if (!other) {
+            System.err.println("Missing -- between base and new runs");
+            System.exit(EXIT_ERROR);
+        }
+
+        List<RegressionDetector.StageVerdict> verdicts = detector.analyze();
+        System.out.println("stage,base_samples,new_samples,median_change_pct,p_value,cliffs_delta,verdict");
+        for (RegressionDetector.StageVerdict verdict : verdicts) {
+            System.out.println(String.format(Locale.US, "%s,%d,%d,%.2f,%.3g,%.3f,%s",
+                    CsvExporter.escape(verdict.getStageId()), verdict.getBaseCount(), verdict.getOtherCount(),
+                    verdict.getMedianChangePercent(), verdict.getPValue(), verdict.getEffectSize(),
+                    verdict.getVerdict().name().toLowerCase(Locale.ROOT)));
+        }
+        System.out.flush();
+        System.exit(exitCode(RegressionDetector.hasRegression(verdicts), allComplete));
+    }
+
+    static int exitCode(boolean regression, boolean allComplete) {
+        if (regression) {
+            return EXIT_REGRESSION;
+        }
+        return allComplete ? EXIT_OK : EXIT_INCOMPLETE;
+    }
+
+    private static String readText(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Сбор баллов запуска в распределение его плана; прерванные запуски и файлы без плана
+     * не учитываются.
+     */
+    static final class PopulationCollector implements RunFileReader.Visitor {
+        private final ScorePopulation population;
+        // У повторяемого этапа учитывается последнее выполнение, как в итоговом результате
+        private final Map<String, Integer> stageScores = new LinkedHashMap<>();
+        private String planId;
+        private String currentStageId;
+
+        PopulationCollector(ScorePopulation population) {
+            this.population = population;
+        }
+
+        boolean hasPlan() {
+            return planId != null;
+        }
+
+        @Override
+        public void onRunInfo(long timestamp, String device, String build, int appVersion,
+                              RunRecord.Settings settings) {
+        }
+
+        @Override
+        public void onPlan(String planId) {
+            this.planId = planId;
+        }
+
+        @Override
+        public void onStageStart(String stageId, String name, String unit) {
+            currentStageId = stageId;
+        }
+
+        @Override
+        public void onSample(long activeMillis, int phase, double value) {
+        }
+
+        @Override
+        public void onStageEnd(int score, double mean, double standardDeviation, double confidenceInterval,
+                               int iterations, int warmupSamples, boolean steadyState, boolean stoppedEarly) {
+            stageScores.put(currentStageId, score);
+        }
+
+        @Override
+        public void onMetric(String name, double value) {
+        }
+
+        @Override
+        public void onError(String stageId, String message) {
+        }
+
+        @Override
+        public void onRunEnd(int totalScore) {
+            if (planId == null) {
+                // Баллы без плана не с чем сравнивать
+                return;
+            }
+            population.add(ScorePopulation.key(planId, ScorePopulation.TOTAL), totalScore);
+            for (Map.Entry<String, Integer> stage : stageScores.entrySet()) {
+                population.add(ScorePopulation.key(planId, stage.getKey()), stage.getValue());
+            }
+        }
+    }
+
+    /**
+     * Сбор замеров фазы измерения запуска по этапам. Замеры передаются в детектор только
+     * после чтения всего файла, чтобы прерванные запуски не попадали в сравнение.
+     */
+    static final class SampleCollector implements RunFileReader.Visitor {
+        private final List<String> stageIds = new ArrayList<>();
+        private final List<Double> values = new ArrayList<>();
+        private String currentStageId;
+
+        void addTo(RegressionDetector detector, boolean other) {
+            for (int i = 0; i < values.size(); i++) {
+                if (other) {
+                    detector.addOther(stageIds.get(i), values.get(i));
+                } else {
+                    detector.addBase(stageIds.get(i), values.get(i));
+                }
+            }
+        }
+
+        @Override
+        public void onRunInfo(long timestamp, String device, String build, int appVersion,
+                              RunRecord.Settings settings) {
+        }
+
+        @Override
+        public void onPlan(String planId) {
+        }
+
+        @Override
+        public void onStageStart(String stageId, String name, String unit) {
+            currentStageId = stageId;
+        }
+
+        @Override
+        public void onSample(long activeMillis, int phase, double value) {
+            if (phase == RunFileFormat.PHASE_MEASUREMENT && currentStageId != null) {
+                stageIds.add(currentStageId);
+                values.add(value);
+            }
+        }
+
+        @Override
+        public void onStageEnd(int score, double mean, double standardDeviation, double confidenceInterval,
+                               int iterations, int warmupSamples, boolean steadyState, boolean stoppedEarly) {
+        }
+
+        @Override
+        public void onMetric(String name, double value) {
+        }
+
+        @Override
+        public void onError(String stageId, String message) {
+        }
+
+        @Override
+        public void onRunEnd(int totalScore) {
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.fpshowmany.idl.data.file;
+
+import com.fpshowmany.idl.data.RunRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Потоковая запись файла запуска в формате {@link RunFileFormat}.
+ * Каждая запись кодируется сразу и в памяти не накапливается; для дельта-кодирования
+ * хранится только предыдущий замер текущего этапа.
+ */
+public class RunFileWriter implements Closeable, Flushable {
+
+    private final OutputStream out;
+    // Тело текущей записи, переиспользуется
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+
+    private long lastSampleTime;
+    private long lastSampleValue;
+
+    public RunFileWriter(OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out);
+        this.out.write(RunFileFormat.MAGIC);
+        RunFileFormat.writeVarLong(this.out, RunFileFormat.VERSION);
+    }
+
+    public void writeRunInfo(long timestamp, String device, String build, int appVersion,
+                             RunRecord.Settings settings) throws IOException {
+        record.reset();
+        RunFileFormat.writeVarLong(record, timestamp);
+        RunFileFormat.writeString(record, device);
+        RunFileFormat.writeString(record, build);
+        RunFileFormat.writeVarLong(record, appVersion);
+        RunFileFormat.writeVarLong(record, settings.getCpuThreads());
+        RunFileFormat.writeVarLong(record, settings.getGpuMode());
+        RunFileFormat.writeVarLong(record, settings.getDurationSeconds());
+        RunFileFormat.writeVarLong(record, settings.getIterations());
+        record.write(settings.isEarlyStop() ? 1 : 0);
+        writeRecord(RunFileFormat.TAG_RUN_INFO);
+    }
+
+    public void writePlan(String planId) throws IOException {
+        record.reset();
+        RunFileFormat.writeString(record, planId);
+        writeRecord(RunFileFormat.TAG_PLAN);
+    }
+
+    public void writeStageStart(String stageId, String name, String unit) throws IOException {
+        lastSampleTime = 0;
+        lastSampleValue = 0;
+        record.reset();
+        RunFileFormat.writeString(record, stageId);
+        RunFileFormat.writeString(record, name);
+        RunFileFormat.writeString(record, unit);
+        writeRecord(RunFileFormat.TAG_STAGE_START);
+    }
+
+    /**
+     * @param activeMillis Активное время этапа на момент замера, мс
+     * @param phase        Фаза замера, {@link RunFileFormat#PHASE_WARMUP} и т.д.
+     * @param value        Пропускная способность за окно
+     */
+    public void writeSample(long activeMillis, int phase, double value) throws IOException {
+        // Время внутри этапа не убывает; на всякий случай отрицательная дельта обнуляется
+        long timeDelta = Math.max(0, activeMillis - lastSampleTime);
+        long quantized = Math.round(value * RunFileFormat.VALUE_SCALE);
+
+        record.reset();
+        RunFileFormat.writeVarLong(record, (timeDelta << RunFileFormat.PHASE_BITS) | phase);
+        RunFileFormat.writeSignedVarLong(record, quantized - lastSampleValue);
+        writeRecord(RunFileFormat.TAG_SAMPLE);
+
+        lastSampleTime += timeDelta;
+        lastSampleValue = quantized;
+    }
+
+    public void writeStageEnd(int score, double mean, double standardDeviation, double confidenceInterval,
+                              int iterations, int warmupSamples, boolean steadyState, boolean stoppedEarly)
+            throws IOException {
+        record.reset();
+        RunFileFormat.writeVarLong(record, score);
+        RunFileFormat.writeDouble(record, mean);
+        RunFileFormat.writeDouble(record, standardDeviation);
+        RunFileFormat.writeDouble(record, confidenceInterval);
+        RunFileFormat.writeVarLong(record, iterations);
+        RunFileFormat.writeVarLong(record, warmupSamples);
+        record.write((steadyState ? 1 : 0) | (stoppedEarly ? 2 : 0));
+        writeRecord(RunFileFormat.TAG_STAGE_END);
+    }
+
+    /**
+     * Дополнительный показатель результата текущего этапа ({@link com.fpshowmany.idl.engine.StageResult#getMetrics()}).
+     */
+    public void writeMetric(String name, double value) throws IOException {
+        record.reset();
+        RunFileFormat.writeString(record, name);
+        RunFileFormat.writeDouble(record, value);
+        writeRecord(RunFileFormat.TAG_METRIC);
+    }
+
+    /**
+     * @param stageId Этап, в котором произошла ошибка, или null
+     */
+    public void writeError(String stageId, String message) throws IOException {
+        record.reset();
+        RunFileFormat.writeString(record, stageId);
+        RunFileFormat.writeString(record, message);
+        writeRecord(RunFileFormat.TAG_ERROR);
+    }
+
+    public void writeRunEnd(int totalScore) throws IOException {
+        record.reset();
+        RunFileFormat.writeVarLong(record, totalScore);
+        writeRecord(RunFileFormat.TAG_RUN_END);
+    }
+
+    private void writeRecord(int tag) throws IOException {
+        out.write(tag);
+        RunFileFormat.writeVarLong(out, record.size());
+        record.writeTo(out);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
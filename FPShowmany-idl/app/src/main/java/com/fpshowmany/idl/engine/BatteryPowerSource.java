@@ -0,0 +1,63 @@
+package com.fpshowmany.idl.engine;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+
+/**
+ * Мощность по батарее: ток из {@link BatteryManager#BATTERY_PROPERTY_CURRENT_NOW} на
+ * напряжение из последнего ACTION_BATTERY_CHANGED. Знак тока у производителей разный,
+ * поэтому берется модуль; часть устройств отдает ток в мА вместо мкА, такие значения
+ * распознаются по величине. На зарядке ток батареи не равен потреблению, мощность
+ * неизвестна.
+ */
+public class BatteryPowerSource implements PowerSource {
+
+    // Напряжение меняется медленно, липкий broadcast читается не чаще
+    private static final long VOLTAGE_REFRESH_MS = 1000;
+    // Меньше этого по модулю - ток в мА: телефон под нагрузкой потребляет больше 10 мА
+    private static final int MILLIAMPS_LIMIT = 10000;
+
+    private final Context context;
+    private final BatteryManager batteryManager;
+    private long voltageTime = Long.MIN_VALUE;
+    private double volts = -1;
+    private boolean plugged;
+
+    public BatteryPowerSource(Context context) {
+        this.context = context.getApplicationContext();
+        this.batteryManager = (BatteryManager) this.context.getSystemService(Context.BATTERY_SERVICE);
+    }
+
+    @Override
+    public synchronized double readPowerWatts() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - voltageTime >= VOLTAGE_REFRESH_MS) {
+            voltageTime = now;
+            Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (battery != null) {
+                int millivolts = battery.getIntExtra(BatteryManager.EXTRA_VOLTAGE, -1);
+                volts = millivolts > 0 ? millivolts / 1000.0 : -1;
+                plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            }
+        }
+        if (batteryManager == null || volts < 0 || plugged) {
+            return -1;
+        }
+        int current = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+        if (current == Integer.MIN_VALUE || current == 0) {
+            return -1;
+        }
+        return toAmps(current) * volts;
+    }
+
+    /**
+     * Ток в амперах по значению CURRENT_NOW в мкА или мА.
+     */
+    static double toAmps(int current) {
+        int magnitude = Math.abs(current);
+        return magnitude < MILLIAMPS_LIMIT ? magnitude / 1e3 : magnitude / 1e6;
+    }
+}
@@ -0,0 +1,169 @@
+package com.fpshowmany.idl.engine;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Событие теста, публикуемое движком в {@link EventStream}.
+ * Конкретный тип определяется {@link #getType()}, данные - полями соответствующего подкласса.
+ */
+public abstract class BenchmarkEvent {
+
+    public enum Type {
+        STAGE_START,
+        PROGRESS,
+        SAMPLE,
+        STAGE_COMPLETE,
+        RUN_COMPLETE,
+        ERROR
+    }
+
+    private final long timestampNanos = System.nanoTime();
+
+    public abstract Type getType();
+
+    /**
+     * Время публикации события, {@link System#nanoTime()}.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * Можно ли заменить недоставленное событие этого типа более новым.
+     */
+    boolean isConflatable() {
+        return false;
+    }
+
+    /**
+     * Начало этапа.
+     */
+    public static final class StageStart extends BenchmarkEvent {
+        public final BenchmarkStage stage;
+        public final int index;
+        public final int count;
+
+        public StageStart(BenchmarkStage stage, int index, int count) {
+            this.stage = stage;
+            this.index = index;
+            this.count = count;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.STAGE_START;
+        }
+    }
+
+    /**
+     * Промежуточный прогресс этапа.
+     */
+    public static final class Progress extends BenchmarkEvent {
+        public final BenchmarkStage stage;
+        public final int progress;
+        public final float value;
+        public final int score;
+
+        public Progress(BenchmarkStage stage, int progress, float value, int score) {
+            this.stage = stage;
+            this.progress = progress;
+            this.value = value;
+            this.score = score;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.PROGRESS;
+        }
+
+        @Override
+        boolean isConflatable() {
+            return true;
+        }
+    }
+
+    /**
+     * Замер пропускной способности за одно окно.
+     */
+    public static final class Sample extends BenchmarkEvent {
+        public final BenchmarkStage stage;
+        public final SteadyStateDetector.Phase phase;
+        public final double throughput;
+        public final long activeMillis;
+
+        public Sample(BenchmarkStage stage, SteadyStateDetector.Phase phase, double throughput, long activeMillis) {
+            this.stage = stage;
+            this.phase = phase;
+            this.throughput = throughput;
+            this.activeMillis = activeMillis;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.SAMPLE;
+        }
+
+        @Override
+        boolean isConflatable() {
+            return true;
+        }
+    }
+
+    /**
+     * Завершение этапа.
+     */
+    public static final class StageComplete extends BenchmarkEvent {
+        public final BenchmarkStage stage;
+        public final StageResult result;
+
+        public StageComplete(BenchmarkStage stage, StageResult result) {
+            this.stage = stage;
+            this.result = result;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.STAGE_COMPLETE;
+        }
+    }
+
+    /**
+     * Завершение всего теста.
+     */
+    public static final class RunComplete extends BenchmarkEvent {
+        public final int totalScore;
+        // Балл отзывчивости приложений, 0 - прикладные этапы не выполнялись
+        public final int appScore;
+        public final List<StageResult> results;
+
+        public RunComplete(int totalScore, int appScore, List<StageResult> results) {
+            this.totalScore = totalScore;
+            this.appScore = appScore;
+            this.results = Collections.unmodifiableList(results);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.RUN_COMPLETE;
+        }
+    }
+
+    /**
+     * Ошибка во время теста. Этап, в котором она произошла, может быть null.
+     */
+    public static final class Error extends BenchmarkEvent {
+        public final BenchmarkStage stage;
+        public final String message;
+
+        public Error(BenchmarkStage stage, String message) {
+            this.stage = stage;
+            this.message = message;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.ERROR;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.fpshowmany.idl.engine;
+
+/**
+ * Подписчик на события теста.
+ * Вызывается на executor, указанном при подписке в {@link EventStream}.
+ */
+public interface BenchmarkListener {
+    void onEvent(BenchmarkEvent event);
+}
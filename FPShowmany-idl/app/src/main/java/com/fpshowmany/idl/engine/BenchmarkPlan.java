@@ -0,0 +1,553 @@
+package com.fpshowmany.idl.engine;
+
+import android.opengl.GLSurfaceView;
+
+import com.fpshowmany.idl.utils.Json;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * План запуска: упорядоченные шаги с собственными параметрами и общие настройки движка.
+ * Шаг задает этап, время или количество итераций, повторы и паузу для остывания после
+ * каждого выполнения; шаги без времени и итераций делят общую длительность поровну.
+ * Один и тот же движок выполняет и 10-секундную проверку, и многочасовой прогон.
+ * <p>
+ * Планы хранятся в JSON:
+ * <pre>
+ * {"name":"soak","duration":30,"threads":8,"gpu_mode":"3d","iterations":10,"early_stop":false,
+ *  "stages":[{"id":"cpu","duration":900,"iterations":1800,"repeat":3,"cooldown":60,
+ *             "params":{"threads":4}},
+ *            {"id":"gpu"}]}
+ * </pre>
+ * Все ключи, кроме stages и id, необязательны. Встроенные планы - {@link #preset(String)}.
+ */
+public class BenchmarkPlan {
+
+    public static final String PRESET_QUICK = "quick";
+    public static final String PRESET_STANDARD = "standard";
+    public static final String PRESET_ENDURANCE = "endurance";
+    // Прикладные этапы, балл отзывчивости приложений
+    public static final String PRESET_APP = "app";
+    // Проверка стабильности: контроль результатов вычислений и целостности RAM
+    public static final String PRESET_STABILITY = "stability";
+    // План из ручных настроек приложения, см. SettingsManager
+    public static final String PRESET_CUSTOM = "custom";
+
+    // Запас времени шага, заданного только итерациями: прогрев занимает до половины
+    private static final int ITERATION_BUDGET_FACTOR = 4;
+
+    /**
+     * Шаг плана: одно выполнение этапа или серия повторов.
+     */
+    public static final class Step {
+        private final String stageId;
+        private int durationSeconds;
+        private int iterations;
+        private int repeat = 1;
+        private int cooldownSeconds;
+        private final Map<String, String> params = new LinkedHashMap<>();
+
+        public Step(String stageId) {
+            this.stageId = stageId;
+        }
+
+        public String getStageId() {
+            return stageId;
+        }
+
+        /**
+         * Время одного выполнения; 0 - по итерациям или доля общей длительности плана.
+         */
+        public Step setDurationSeconds(int seconds) {
+            if (seconds < 0) {
+                throw new IllegalArgumentException("Duration must not be negative: " + seconds);
+            }
+            this.durationSeconds = seconds;
+            return this;
+        }
+
+        public int getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        /**
+         * Итерации измерения; 0 - значение плана.
+         */
+        public Step setIterations(int iterations) {
+            if (iterations < 0) {
+                throw new IllegalArgumentException("Iterations must not be negative: " + iterations);
+            }
+            this.iterations = iterations;
+            return this;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public Step setRepeat(int repeat) {
+            if (repeat < 1) {
+                throw new IllegalArgumentException("Repeat must be positive: " + repeat);
+            }
+            this.repeat = repeat;
+            return this;
+        }
+
+        public int getRepeat() {
+            return repeat;
+        }
+
+        /**
+         * Простой после каждого выполнения шага, кроме последнего выполнения плана.
+         */
+        public Step setCooldownSeconds(int seconds) {
+            if (seconds < 0) {
+                throw new IllegalArgumentException("Cooldown must not be negative: " + seconds);
+            }
+            this.cooldownSeconds = seconds;
+            return this;
+        }
+
+        public int getCooldownSeconds() {
+            return cooldownSeconds;
+        }
+
+        /**
+         * Параметр этапа, см. {@link StageContext#getParam(String)}.
+         */
+        public Step setParam(String key, String value) {
+            params.put(key, value);
+            return this;
+        }
+
+        public Map<String, String> getParams() {
+            return Collections.unmodifiableMap(params);
+        }
+
+        /**
+         * Собственное время одного выполнения, мс; 0 - доля общей длительности.
+         */
+        long getBudgetMs() {
+            if (durationSeconds > 0) {
+                return durationSeconds * 1000L;
+            }
+            return iterations * StageContext.SAMPLE_WINDOW_MS * ITERATION_BUDGET_FACTOR;
+        }
+    }
+
+    private String name = PRESET_CUSTOM;
+    private List<Step> steps = new ArrayList<>();
+    private int durationSeconds = 30;
+    private int cpuThreads = Runtime.getRuntime().availableProcessors();
+    private int gpuMode = StressTestEngine.GPU_MODE_AUTO;
+    private int iterations = 10;
+    private boolean earlyStop = true;
+
+    public BenchmarkPlan() {
+        setStageIds(Arrays.asList("cpu", "ram", "gpu"));
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Шаги в порядке выполнения.
+     */
+    public void setSteps(List<Step> steps) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Plan has no stages");
+        }
+        this.steps = new ArrayList<>(steps);
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Этапы в порядке выполнения, по идентификаторам; каждый этап - шаг без собственных ограничений.
+     */
+    public void setStageIds(List<String> stageIds) {
+        List<Step> steps = new ArrayList<>(stageIds.size());
+        for (String id : stageIds) {
+            steps.add(new Step(id));
+        }
+        setSteps(steps);
+    }
+
+    public List<String> getStageIds() {
+        List<String> ids = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            ids.add(step.getStageId());
+        }
+        return ids;
+    }
+
+    /**
+     * Общая длительность шагов без собственного времени и итераций.
+     */
+    public void setDurationSeconds(int seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("Duration must be positive: " + seconds);
+        }
+        this.durationSeconds = seconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setCpuThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        this.cpuThreads = threads;
+    }
+
+    public int getCpuThreads() {
+        return cpuThreads;
+    }
+
+    public void setGpuMode(int mode) {
+        this.gpuMode = mode;
+    }
+
+    public int getGpuMode() {
+        return gpuMode;
+    }
+
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public void setEarlyStop(boolean earlyStop) {
+        this.earlyStop = earlyStop;
+    }
+
+    public boolean isEarlyStop() {
+        return earlyStop;
+    }
+
+    /**
+     * Ожидаемая длительность плана с повторами и паузами, сек.
+     * Досрочная остановка может сократить фактическое время.
+     */
+    public int getEstimatedSeconds() {
+        int shared = 0;
+        for (Step step : steps) {
+            if (step.getBudgetMs() == 0) {
+                shared += step.getRepeat();
+            }
+        }
+        long totalMs = shared > 0 ? durationSeconds * 1000L : 0;
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            totalMs += step.getBudgetMs() * step.getRepeat();
+            // После последнего выполнения плана пауза не нужна
+            int cooldowns = i == steps.size() - 1 ? step.getRepeat() - 1 : step.getRepeat();
+            totalMs += step.getCooldownSeconds() * 1000L * cooldowns;
+        }
+        return (int) ((totalMs + 999) / 1000);
+    }
+
+    /**
+     * Настраивает движок по плану.
+     *
+     * @param glSurfaceView Поверхность для GPU этапа, может быть null
+     * @throws IllegalArgumentException если в плане есть неизвестный этап
+     */
+    public void configure(StressTestEngine engine, GLSurfaceView glSurfaceView) {
+        List<ScheduledStage> schedule = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            schedule.add(new ScheduledStage(StressTestEngine.createStage(step.getStageId(), glSurfaceView),
+                    step.getBudgetMs(), step.getIterations(), step.getRepeat(),
+                    step.getCooldownSeconds() * 1000L, step.getParams()));
+        }
+        engine.setSchedule(schedule);
+        engine.setDuration(durationSeconds);
+        engine.setCpuThreads(cpuThreads);
+        engine.setGpuMode(gpuMode);
+        engine.setMeasurementIterations(iterations);
+        engine.setEarlyStop(earlyStop);
+    }
+
+    /**
+     * Встроенный план: {@link #PRESET_QUICK} (около 10 секунд), {@link #PRESET_STANDARD}
+     * (30 секунд), {@link #PRESET_ENDURANCE} (около двух часов с повторами и остыванием)
+     * {@link #PRESET_APP} (прикладные этапы по 6 секунд на одном потоке)
+     * или {@link #PRESET_STABILITY} (проверка вычислений 10 минут и целостности RAM 5 минут).
+     * Потоки и режим GPU остаются по умолчанию, их задает вызывающий.
+     *
+     * @throws IllegalArgumentException если план неизвестен
+     */
+    public static BenchmarkPlan preset(String name) {
+        BenchmarkPlan plan = new BenchmarkPlan();
+        plan.setName(name);
+        switch (name) {
+            case PRESET_QUICK:
+                plan.setIterations(3);
+                plan.setSteps(Arrays.asList(
+                        new Step("cpu").setDurationSeconds(3),
+                        new Step("ram").setDurationSeconds(3),
+                        new Step("gpu").setDurationSeconds(4)));
+                break;
+            case PRESET_STANDARD:
+                break;
+            case PRESET_ENDURANCE:
+                // Итераций хватает на все время шага, шаг завершается по времени
+                plan.setEarlyStop(false);
+                plan.setSteps(Arrays.asList(
+                        new Step("cpu").setDurationSeconds(900).setIterations(1800)
+                                .setRepeat(3).setCooldownSeconds(60),
+                        new Step("ram").setDurationSeconds(900).setIterations(1800),
+                        new Step("gpu").setDurationSeconds(900).setIterations(1800)
+                                .setRepeat(3).setCooldownSeconds(60)));
+                break;
+            case PRESET_APP:
+                List<Step> steps = new ArrayList<>();
+                for (String id : StressTestEngine.APP_STAGE_IDS) {
+                    steps.add(new Step(id).setDurationSeconds(6));
+                }
+                plan.setSteps(steps);
+                break;
+            case PRESET_STABILITY:
+                // Проверка идет все время шага, без досрочной остановки
+                plan.setEarlyStop(false);
+                plan.setSteps(Arrays.asList(
+                        new Step("stability").setDurationSeconds(600).setIterations(1200),
+                        new Step("memtest").setDurationSeconds(300).setIterations(600)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown preset: " + name);
+        }
+        return plan;
+    }
+
+    /**
+     * Загружает план из JSON-файла.
+     *
+     * @throws IllegalArgumentException если план некорректен
+     */
+    public static BenchmarkPlan load(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new EOFException("Truncated plan file: " + file);
+                }
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        BenchmarkPlan plan = fromJson(new String(data, StandardCharsets.UTF_8));
+        if (plan.name.equals(PRESET_CUSTOM)) {
+            String fileName = file.getName();
+            plan.setName(fileName.endsWith(".json") ? fileName.substring(0, fileName.length() - 5) : fileName);
+        }
+        return plan;
+    }
+
+    /**
+     * Разбирает план из JSON (формат в описании класса).
+     *
+     * @throws IllegalArgumentException если план некорректен
+     */
+    public static BenchmarkPlan fromJson(String json) {
+        Map<String, Object> root = asObject(Json.parse(json), "plan");
+        BenchmarkPlan plan = new BenchmarkPlan();
+        if (root.containsKey("name")) {
+            plan.setName(asString(root.get("name"), "name"));
+        }
+        if (root.containsKey("duration")) {
+            plan.setDurationSeconds(asInt(root.get("duration"), "duration"));
+        }
+        if (root.containsKey("threads")) {
+            plan.setCpuThreads(asInt(root.get("threads"), "threads"));
+        }
+        if (root.containsKey("gpu_mode")) {
+            plan.setGpuMode(parseGpuMode(asString(root.get("gpu_mode"), "gpu_mode")));
+        }
+        if (root.containsKey("iterations")) {
+            plan.setIterations(asInt(root.get("iterations"), "iterations"));
+        }
+        if (root.containsKey("early_stop")) {
+            plan.setEarlyStop(Boolean.parseBoolean(asString(root.get("early_stop"), "early_stop")));
+        }
+
+        Object stages = root.get("stages");
+        if (!(stages instanceof List)) {
+            throw new IllegalArgumentException("Plan has no stages");
+        }
+        List<Step> steps = new ArrayList<>();
+        for (Object item : (List<?>) stages) {
+            Map<String, Object> object = asObject(item, "stage");
+            Step step = new Step(asString(object.get("id"), "id").toLowerCase(Locale.ROOT));
+            if (object.containsKey("duration")) {
+                step.setDurationSeconds(asInt(object.get("duration"), "duration"));
+            }
+            if (object.containsKey("iterations")) {
+                step.setIterations(asInt(object.get("iterations"), "iterations"));
+            }
+            if (object.containsKey("repeat")) {
+                step.setRepeat(asInt(object.get("repeat"), "repeat"));
+            }
+            if (object.containsKey("cooldown")) {
+                step.setCooldownSeconds(asInt(object.get("cooldown"), "cooldown"));
+            }
+            if (object.containsKey("params")) {
+                for (Map.Entry<String, Object> param : asObject(object.get("params"), "params").entrySet()) {
+                    step.setParam(param.getKey(), asString(param.getValue(), param.getKey()));
+                }
+            }
+            steps.add(step);
+        }
+        plan.setSteps(steps);
+        return plan;
+    }
+
+    /**
+     * План в JSON; {@link #fromJson(String)} восстанавливает его без потерь.
+     */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"name\":").append(Json.quote(name))
+                .append(",\"duration\":").append(durationSeconds)
+                .append(",\"threads\":").append(cpuThreads)
+                .append(",\"gpu_mode\":").append(gpuMode)
+                .append(",\"iterations\":").append(iterations)
+                .append(",\"early_stop\":").append(earlyStop)
+                .append(",\"stages\":[");
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":").append(Json.quote(step.getStageId()));
+            if (step.getDurationSeconds() > 0) {
+                builder.append(",\"duration\":").append(step.getDurationSeconds());
+            }
+            if (step.getIterations() > 0) {
+                builder.append(",\"iterations\":").append(step.getIterations());
+            }
+            if (step.getRepeat() > 1) {
+                builder.append(",\"repeat\":").append(step.getRepeat());
+            }
+            if (step.getCooldownSeconds() > 0) {
+                builder.append(",\"cooldown\":").append(step.getCooldownSeconds());
+            }
+            if (!step.params.isEmpty()) {
+                builder.append(",\"params\":{");
+                boolean first = true;
+                for (Map.Entry<String, String> param : step.params.entrySet()) {
+                    if (!first) {
+                        builder.append(',');
+                    }
+                    first = false;
+                    builder.append(Json.quote(param.getKey())).append(':').append(Json.quote(param.getValue()));
+                }
+                builder.append('}');
+            }
+            builder.append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object value, String key) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected object: " + key);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static int asInt(Object value, String key) {
+        if (value instanceof Double) {
+            double number = (Double) value;
+            if (number == Math.rint(number) && Math.abs(number) <= Integer.MAX_VALUE) {
+                return (int) number;
+            }
+        } else if (value instanceof String) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                // Ниже - общее сообщение об ошибке
+            }
+        }
+        throw new IllegalArgumentException("Invalid " + key + ": " + value);
+    }
+
+    /**
+     * Строковое значение; числа и логические значения приводятся к строке без дробной части,
+     * если она нулевая.
+     */
+    private static String asString(Object value, String key) {
+        if (value instanceof String || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof Double) {
+            double number = (Double) value;
+            return number == Math.rint(number) && !Double.isInfinite(number)
+                    ? Long.toString((long) number) : value.toString();
+        }
+        throw new IllegalArgumentException("Invalid " + key + ": " + value);
+    }
+
+    /**
+     * Режим GPU по имени: "auto", "2d", "3d" или число.
+     *
+     * @throws IllegalArgumentException если режим неизвестен
+     */
+    public static int parseGpuMode(String value) {
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "auto":
+            case "0":
+                return StressTestEngine.GPU_MODE_AUTO;
+            case "2d":
+            case "1":
+                return StressTestEngine.GPU_MODE_2D;
+            case "3d":
+            case "2":
+                return StressTestEngine.GPU_MODE_3D;
+            default:
+                throw new IllegalArgumentException("Unknown GPU mode: " + value);
+        }
+    }
+
+    /**
+     * Список идентификаторов этапов через запятую.
+     */
+    public static List<String> parseStageIds(String value) {
+        List<String> ids = new ArrayList<>();
+        for (String id : value.split(",")) {
+            if (!id.trim().isEmpty()) {
+                ids.add(id.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return ids;
+    }
+}
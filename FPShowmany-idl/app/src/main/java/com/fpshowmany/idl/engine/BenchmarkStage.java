@@ -0,0 +1,34 @@
+package com.fpshowmany.idl.engine;
+
+/**
+ * Этап тестирования, выполняемый движком.
+ * Этап запускается на потоке планировщика движка, рабочие потоки получает
+ * через {@link StageContext#startWorkers} и должен завершаться, как только
+ * {@link StageContext#isActive()} вернет false.
+ */
+public interface BenchmarkStage {
+
+    /**
+     * Стабильный идентификатор этапа ("cpu", "ram", "gpu", ...).
+     */
+    String getId();
+
+    /**
+     * Название этапа для отображения пользователю.
+     */
+    String getName();
+
+    /**
+     * Единица измерения промежуточного значения прогресса ("FPS", "MB/s", ...).
+     */
+    String getUnit();
+
+    /**
+     * Выполняет этап. Вызывается на потоке планировщика движка.
+     *
+     * @param context Контекст этапа: время, рабочие потоки, замеры, прогресс
+     * @return Результат этапа
+     * @throws Exception Любая ошибка этапа, публикуется как {@link BenchmarkEvent.Error}
+     */
+    StageResult run(StageContext context) throws Exception;
+}
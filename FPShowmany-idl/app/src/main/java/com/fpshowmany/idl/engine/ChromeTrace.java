@@ -0,0 +1,225 @@
+package com.fpshowmany.idl.engine;
+
+import com.fpshowmany.idl.utils.Json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Трасса запуска в формате Chrome Trace Event JSON: открывается в Perfetto UI
+ * (ui.perfetto.dev) и chrome://tracing рядом с системной трассой устройства.
+ * <pre>
+ * {"displayTimeUnit":"ms","traceEvents":[{"ph":"B","name":"stage cpu","pid":..,"tid":..,"ts":..},..],
+ *  "otherData":{"dropped":0}}
+ * </pre>
+ * Время - монотонные часы ({@link System#nanoTime()}) в микросекундах, tid - системные
+ * идентификаторы потоков, поэтому срезы совпадают с потоками процесса в системной трассе.
+ * <p>
+ * События пишутся в заранее выделенные массивы фиксированного размера. При переполнении
+ * новые срезы, счетчики и отметки отбрасываются (их число - в otherData.dropped), а концы
+ * уже открытых срезов пишутся в резерв, чтобы трасса оставалась сбалансированной. Концы
+ * отброшенных срезов тоже отбрасываются: поток помнит, сколько его вложенных срезов не
+ * записано, и закрывает записанный срез только после них.
+ * Потокобезопасен.
+ */
+public final class ChromeTrace {
+
+    public static final int DEFAULT_CAPACITY = 256 * 1024;
+    // Место для концов открытых срезов после переполнения
+    private static final int END_RESERVE = 1024;
+
+    private static final char PHASE_BEGIN = 'B';
+    private static final char PHASE_END = 'E';
+    private static final char PHASE_COUNTER = 'C';
+    private static final char PHASE_INSTANT = 'i';
+
+    private final int pid;
+    private final int capacity;
+
+    private final char[] phases;
+    private final long[] timestamps;
+    private final int[] tids;
+    private final String[] names;
+    private final long[] values;
+    private int size;
+    private long dropped;
+
+    // По tid: {записанные открытые срезы, отброшенные вложенные в них} и имя потока
+    private final Map<Integer, int[]> depths = new HashMap<>();
+    private final Map<Integer, String> threadNames = new HashMap<>();
+
+    public ChromeTrace(int pid) {
+        this(pid, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Максимальное количество событий, не меньше 2 * {@link #END_RESERVE}
+     */
+    public ChromeTrace(int pid, int capacity) {
+        if (capacity < 2 * END_RESERVE) {
+            throw new IllegalArgumentException("Capacity too small: " + capacity);
+        }
+        this.pid = pid;
+        this.capacity = capacity;
+        this.phases = new char[capacity];
+        this.timestamps = new long[capacity];
+        this.tids = new int[capacity];
+        this.names = new String[capacity];
+        this.values = new long[capacity];
+    }
+
+    /**
+     * Начало среза на потоке.
+     *
+     * @param threadName Имя потока, запоминается при первом событии потока
+     */
+    public synchronized void begin(int tid, String threadName, String name, long nanos) {
+        int[] depth = depth(tid, threadName);
+        if (size >= capacity - END_RESERVE) {
+            // Буфер не освобождается, поэтому отброшенные срезы всегда самые вложенные
+            depth[1]++;
+            dropped++;
+            return;
+        }
+        depth[0]++;
+        add(PHASE_BEGIN, nanos, tid, name, 0);
+    }
+
+    /**
+     * Конец последнего открытого среза потока; без открытого среза игнорируется.
+     */
+    public synchronized void end(int tid, long nanos) {
+        int[] depth = depths.get(tid);
+        if (depth == null) {
+            return;
+        }
+        if (depth[1] > 0) {
+            // Конец отброшенного среза
+            depth[1]--;
+            dropped++;
+            return;
+        }
+        if (depth[0] == 0) {
+            return;
+        }
+        if (size >= capacity) {
+            dropped++;
+            return;
+        }
+        depth[0]--;
+        add(PHASE_END, nanos, tid, null, 0);
+    }
+
+    /**
+     * Значение счетчика процесса.
+     */
+    public synchronized void counter(String name, long value, long nanos) {
+        if (size >= capacity - END_RESERVE) {
+            dropped++;
+            return;
+        }
+        add(PHASE_COUNTER, nanos, 0, name, value);
+    }
+
+    /**
+     * Мгновенная отметка на потоке.
+     */
+    public synchronized void instant(int tid, String threadName, String name, long nanos) {
+        if (size >= capacity - END_RESERVE) {
+            dropped++;
+            return;
+        }
+        depth(tid, threadName);
+        add(PHASE_INSTANT, nanos, tid, name, 0);
+    }
+
+    public synchronized int getEventCount() {
+        return size;
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    private int[] depth(int tid, String threadName) {
+        int[] depth = depths.get(tid);
+        if (depth == null) {
+            depth = new int[2];
+            depths.put(tid, depth);
+            threadNames.put(tid, threadName);
+        }
+        return depth;
+    }
+
+    private void add(char phase, long nanos, int tid, String name, long value) {
+        phases[size] = phase;
+        timestamps[size] = nanos;
+        tids[size] = tid;
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Записывает трассу. Срезы, не закрытые к моменту записи, закрываются последней
+     * отметкой времени, чтобы трасса прерванного запуска тоже открывалась.
+     */
+    public synchronized void write(Writer out) throws IOException {
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Map.Entry<Integer, String> entry : threadNames.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":" + pid + ",\"tid\":" + entry.getKey()
+                    + ",\"args\":{\"name\":" + Json.quote(String.valueOf(entry.getValue())) + "}}");
+        }
+
+        long lastNanos = 0;
+        for (int i = 0; i < size; i++) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            lastNanos = Math.max(lastNanos, timestamps[i]);
+            writeEvent(out, phases[i], timestamps[i], tids[i], names[i], values[i]);
+        }
+        for (Map.Entry<Integer, int[]> entry : depths.entrySet()) {
+            for (int d = 0; d < entry.getValue()[0]; d++) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                writeEvent(out, PHASE_END, lastNanos, entry.getKey(), null, 0);
+            }
+        }
+        out.write("],\"otherData\":{\"dropped\":" + dropped + "}}");
+        out.flush();
+    }
+
+    private void writeEvent(Writer out, char phase, long nanos, int tid, String name, long value)
+            throws IOException {
+        StringBuilder builder = new StringBuilder(96);
+        builder.append("{\"ph\":\"").append(phase).append('"');
+        if (name != null) {
+            builder.append(",\"name\":").append(Json.quote(name));
+        }
+        builder.append(",\"pid\":").append(pid);
+        if (phase != PHASE_COUNTER) {
+            builder.append(",\"tid\":").append(tid);
+        }
+        // Микросекунды с дробной частью, чтобы не терять порядок коротких срезов
+        builder.append(",\"ts\":").append(Math.floorDiv(nanos, 1000L)).append('.')
+                .append(String.format(Locale.US, "%03d", Math.floorMod(nanos, 1000L)));
+        if (phase == PHASE_COUNTER) {
+            builder.append(",\"args\":{\"value\":").append(value).append('}');
+        } else if (phase == PHASE_INSTANT) {
+            builder.append(",\"s\":\"t\"");
+        }
+        out.write(builder.append('}').toString());
+    }
+}
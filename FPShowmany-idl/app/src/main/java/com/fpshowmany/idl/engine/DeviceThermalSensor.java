@@ -0,0 +1,42 @@
+package com.fpshowmany.idl.engine;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+/**
+ * Температура батареи из липкого ACTION_BATTERY_CHANGED (в десятых долях градуса) и
+ * тепловой статус {@link PowerManager} с Android 10. Батарея остывает медленнее ядер,
+ * поэтому по ней видно, что корпус вернулся к исходному состоянию.
+ */
+public class DeviceThermalSensor implements ThermalSensor {
+
+    private final Context context;
+    private final PowerManager powerManager;
+
+    public DeviceThermalSensor(Context context) {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    @Override
+    public double readTemperature() {
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return Double.NaN;
+        }
+        int tenths = battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, Integer.MIN_VALUE);
+        return tenths != Integer.MIN_VALUE ? tenths / 10.0 : Double.NaN;
+    }
+
+    @Override
+    public int readThermalStatus() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || powerManager == null) {
+            return -1;
+        }
+        return powerManager.getCurrentThermalStatus();
+    }
+}
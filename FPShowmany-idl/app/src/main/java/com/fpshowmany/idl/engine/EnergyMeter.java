@@ -0,0 +1,84 @@
+package com.fpshowmany.idl.engine;
+
+/**
+ * Энергия этапа по замерам {@link PowerSource}: мощность интегрируется методом трапеций
+ * между соседними замерами. Замер без данных и пауза теста разрывают интегрирование,
+ * поэтому средняя мощность считается только по времени, покрытому замерами.
+ */
+final class EnergyMeter {
+
+    static final String METRIC_ENERGY_J = "energy_j";
+    static final String METRIC_POWER_W = "power_w";
+    static final String METRIC_WORK_PER_J = "work_per_j";
+    static final String METRIC_SCORE_PER_W = "score_per_w";
+
+    private final PowerSource source;
+    private long lastNanos = -1;
+    private double lastWatts;
+    private double joules;
+    private long coveredNanos;
+    private int samples;
+
+    EnergyMeter(PowerSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Замер мощности в момент nanos (System.nanoTime()).
+     */
+    synchronized void sample(long nanos) {
+        double watts = source.readPowerWatts();
+        if (watts < 0) {
+            lastNanos = -1;
+            return;
+        }
+        if (lastNanos >= 0 && nanos > lastNanos) {
+            joules += (lastWatts + watts) / 2 * (nanos - lastNanos) / 1e9;
+            coveredNanos += nanos - lastNanos;
+        }
+        lastNanos = nanos;
+        lastWatts = watts;
+        samples++;
+    }
+
+    /**
+     * Разрыв: интервал до следующего замера не учитывается (пауза теста).
+     */
+    synchronized void gap() {
+        lastNanos = -1;
+    }
+
+    synchronized double getJoules() {
+        return joules;
+    }
+
+    /**
+     * Средняя мощность по покрытому замерами времени, Вт; 0, если его нет.
+     */
+    synchronized double getAverageWatts() {
+        return coveredNanos > 0 ? joules / (coveredNanos / 1e9) : 0;
+    }
+
+    synchronized int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Добавляет показатели энергии к результату этапа: энергию, среднюю мощность, работу на
+     * джоуль (показатель этапа в его единицах в секунду, деленный на ватты) и балл на ватт.
+     * Ничего не добавляет, если замеры не покрыли ни одного интервала.
+     */
+    synchronized void addMetrics(StageResult result) {
+        double watts = getAverageWatts();
+        if (watts <= 0) {
+            return;
+        }
+        result.addMetric(METRIC_ENERGY_J, joules)
+                .addMetric(METRIC_POWER_W, watts)
+                .addMetric(METRIC_SCORE_PER_W, result.getScore() / watts);
+        MeasurementResult measurement = result.getMeasurement();
+        if (measurement != null) {
+            result.addMetric(METRIC_WORK_PER_J, measurement.getMean() / watts);
+        }
+    }
+}
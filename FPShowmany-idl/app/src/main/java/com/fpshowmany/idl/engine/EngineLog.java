@@ -0,0 +1,29 @@
+package com.fpshowmany.idl.engine;
+
+/**
+ * Журнал движка ({@link StressTestEngine#setLog}). Ядро движка не обращается к
+ * android.util.Log напрямую, поэтому работает и в локальных тестах на JVM; в приложении
+ * подставляется {@link LogcatEngineLog}. Вызывается с потоков движка.
+ */
+public interface EngineLog {
+
+    /**
+     * Журнал, который ничего не пишет.
+     */
+    EngineLog NONE = new EngineLog() {
+        @Override
+        public void info(String message) {
+        }
+
+        @Override
+        public void error(String message, Throwable error) {
+        }
+    };
+
+    void info(String message);
+
+    /**
+     * @param error Причина или null
+     */
+    void error(String message, Throwable error);
+}
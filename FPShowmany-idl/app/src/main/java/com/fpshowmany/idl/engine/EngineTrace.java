@@ -0,0 +1,97 @@
+package com.fpshowmany.idl.engine;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.Trace;
+
+import com.fpshowmany.idl.BuildConfig;
+
+/**
+ * Трассировка движка: срезы и счетчики {@link Trace} для системной трассы (Perfetto,
+ * systrace) и, если к запуску подключена {@link ChromeTrace}, те же события в ней.
+ * <p>
+ * Включается при сборке: {@code ./gradlew assembleRelease -PengineTrace=true}. Флаг
+ * {@link #ENABLED} - константа времени компиляции, поэтому в обычной сборке проверки
+ * {@code if (EngineTrace.ENABLED)} вырезаются компилятором вместе с построением имен
+ * срезов, и трассировка ничего не стоит. Имена, собираемые конкатенацией, и вызовы
+ * в горячих циклах нужно обрамлять такой проверкой; остальные методы проверяют флаг сами.
+ * <p>
+ * Срезы должны начинаться и заканчиваться на одном потоке.
+ */
+public final class EngineTrace {
+
+    public static final boolean ENABLED = BuildConfig.ENGINE_TRACE;
+
+    // Трасса текущего запуска, подключается движком
+    private static volatile ChromeTrace chromeTrace;
+
+    private EngineTrace() {
+    }
+
+    static void attach(ChromeTrace trace) {
+        chromeTrace = trace;
+    }
+
+    static void detach() {
+        chromeTrace = null;
+    }
+
+    /**
+     * Начало среза на текущем потоке.
+     */
+    public static void beginSection(String name) {
+        if (!ENABLED) {
+            return;
+        }
+        Trace.beginSection(name);
+        ChromeTrace trace = chromeTrace;
+        if (trace != null) {
+            trace.begin(Process.myTid(), Thread.currentThread().getName(), name, System.nanoTime());
+        }
+    }
+
+    /**
+     * Конец последнего среза текущего потока.
+     */
+    public static void endSection() {
+        if (!ENABLED) {
+            return;
+        }
+        Trace.endSection();
+        ChromeTrace trace = chromeTrace;
+        if (trace != null) {
+            trace.end(Process.myTid(), System.nanoTime());
+        }
+    }
+
+    /**
+     * Значение счетчика. В системной трассе счетчики есть с Android 10.
+     */
+    public static void setCounter(String name, long value) {
+        if (!ENABLED) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.setCounter(name, value);
+        }
+        ChromeTrace trace = chromeTrace;
+        if (trace != null) {
+            trace.counter(name, value, System.nanoTime());
+        }
+    }
+
+    /**
+     * Мгновенная отметка на текущем потоке; в системной трассе - срез нулевой длины.
+     */
+    public static void instant(String name) {
+        if (!ENABLED) {
+            return;
+        }
+        Trace.beginSection(name);
+        Trace.endSection();
+        ChromeTrace trace = chromeTrace;
+        if (trace != null) {
+            trace.instant(Process.myTid(), Thread.currentThread().getName(), name, System.nanoTime());
+        }
+    }
+}
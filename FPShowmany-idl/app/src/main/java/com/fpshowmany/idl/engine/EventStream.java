@@ -0,0 +1,211 @@
+package com.fpshowmany.idl.engine;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Поток событий теста с несколькими подписчиками.
+ * Каждый подписчик получает события на своем executor и в порядке публикации.
+ * Для подписчиков с объединением (conflation) недоставленные события прогресса и
+ * замеров заменяются более новыми, поэтому медленный подписчик (например, UI) видит
+ * последнее значение и не накапливает очередь. События начала/завершения этапов,
+ * завершения теста и ошибок доставляются всегда.
+ * Публикация не блокируется на подписчиках и не замедляет рабочие потоки; подписка,
+ * executor которой отклонил доставку (остановлен), отменяется.
+ * Новый подписчик сразу получает текущее состояние: начало текущего этапа и последний
+ * прогресс, либо событие завершения теста.
+ */
+public final class EventStream {
+
+    /**
+     * Подписка на поток событий.
+     */
+    public interface Subscription {
+        /**
+         * Отменяет подписку. Недоставленные события отбрасываются.
+         */
+        void cancel();
+    }
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Состояние для новых подписчиков, под замком publish/subscribe
+    private final Object lock = new Object();
+    private BenchmarkEvent lastStageStart;
+    private BenchmarkEvent lastProgress;
+    private BenchmarkEvent lastRunComplete;
+
+    /**
+     * Подписывает получателя на события.
+     *
+     * @param listener Получатель
+     * @param executor Executor, на котором вызывается получатель
+     * @param conflate Объединять ли недоставленные события прогресса и замеров
+     * @return Подписка для отмены
+     */
+    public Subscription subscribe(BenchmarkListener listener, Executor executor, boolean conflate) {
+        Subscriber subscriber = new Subscriber(listener, executor, conflate);
+        synchronized (lock) {
+            if (lastRunComplete != null) {
+                subscriber.enqueue(lastRunComplete);
+            } else {
+                if (lastStageStart != null) {
+                    subscriber.enqueue(lastStageStart);
+                }
+                if (lastProgress != null) {
+                    subscriber.enqueue(lastProgress);
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        return subscriber;
+    }
+
+    /**
+     * Публикует событие всем подписчикам.
+     */
+    public void publish(BenchmarkEvent event) {
+        synchronized (lock) {
+            switch (event.getType()) {
+                case STAGE_START:
+                    lastStageStart = event;
+                    lastProgress = null;
+                    break;
+                case PROGRESS:
+                    lastProgress = event;
+                    break;
+                case RUN_COMPLETE:
+                    lastRunComplete = event;
+                    break;
+                default:
+                    break;
+            }
+            for (Subscriber subscriber : subscribers) {
+                subscriber.enqueue(event);
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает сохраненное состояние перед новым запуском.
+     */
+    public void reset() {
+        synchronized (lock) {
+            lastStageStart = null;
+            lastProgress = null;
+            lastRunComplete = null;
+        }
+    }
+
+    /**
+     * Очередь доставки одного подписчика.
+     * Доставка выполняется одной задачей на executor за раз (счетчик wip),
+     * поэтому получатель не вызывается параллельно сам с собой.
+     */
+    private final class Subscriber implements Subscription, Runnable {
+        private final BenchmarkListener listener;
+        private final Executor executor;
+        private final boolean conflate;
+
+        private final ArrayDeque<BenchmarkEvent> queue = new ArrayDeque<>();
+        private BenchmarkEvent pendingProgress;
+        private BenchmarkEvent pendingSample;
+
+        private final AtomicInteger wip = new AtomicInteger(0);
+        private volatile boolean cancelled = false;
+
+        Subscriber(BenchmarkListener listener, Executor executor, boolean conflate) {
+            this.listener = listener;
+            this.executor = executor;
+            this.conflate = conflate;
+        }
+
+        void enqueue(BenchmarkEvent event) {
+            if (cancelled) {
+                return;
+            }
+            synchronized (this) {
+                if (conflate && event.isConflatable()) {
+                    if (event.getType() == BenchmarkEvent.Type.PROGRESS) {
+                        pendingProgress = event;
+                    } else {
+                        pendingSample = event;
+                    }
+                } else {
+                    // Объединенные события не должны обогнать последующие
+                    flushPending();
+                    queue.add(event);
+                }
+            }
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Executor подписчика остановлен: доставлять некуда, а ошибка не должна
+                    // дойти до публикующего потока движка
+                    wip.set(0);
+                    cancel();
+                }
+            }
+        }
+
+        private void flushPending() {
+            BenchmarkEvent first = pendingProgress;
+            BenchmarkEvent second = pendingSample;
+            if (first != null && second != null && second.getTimestampNanos() < first.getTimestampNanos()) {
+                first = pendingSample;
+                second = pendingProgress;
+            }
+            if (first != null) {
+                queue.add(first);
+            }
+            if (second != null) {
+                queue.add(second);
+            }
+            pendingProgress = null;
+            pendingSample = null;
+        }
+
+        private synchronized BenchmarkEvent poll() {
+            if (queue.isEmpty()) {
+                flushPending();
+            }
+            return queue.poll();
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                BenchmarkEvent event;
+                while (!cancelled && (event = poll()) != null) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (RuntimeException e) {
+                        // Оставшиеся события будут доставлены со следующей публикацией
+                        wip.set(0);
+                        throw e;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscribers.remove(this);
+            synchronized (this) {
+                queue.clear();
+                pendingProgress = null;
+                pendingSample = null;
+            }
+        }
+    }
+}
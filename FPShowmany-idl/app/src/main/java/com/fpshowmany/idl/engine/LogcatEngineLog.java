@@ -0,0 +1,21 @@
+package com.fpshowmany.idl.engine;
+
+import android.util.Log;
+
+/**
+ * Журнал движка в logcat.
+ */
+public class LogcatEngineLog implements EngineLog {
+
+    private static final String TAG = "StressTestEngine";
+
+    @Override
+    public void info(String message) {
+        Log.i(TAG, message);
+    }
+
+    @Override
+    public void error(String message, Throwable error) {
+        Log.e(TAG, message, error);
+    }
+}
@@ -0,0 +1,81 @@
+package com.fpshowmany.idl.engine;
+
+/**
+ * Итог измерения одного этапа: среднее значение пропускной способности
+ * и его 95% доверительный интервал по итерациям установившегося режима.
+ */
+public class MeasurementResult {
+
+    private final double mean;
+    private final double standardDeviation;
+    private final double confidenceInterval;
+    private final int iterations;
+    private final int warmupSamples;
+    private final boolean steadyStateReached;
+    private final boolean stoppedEarly;
+
+    public MeasurementResult(double mean, double standardDeviation, double confidenceInterval,
+                             int iterations, int warmupSamples,
+                             boolean steadyStateReached, boolean stoppedEarly) {
+        this.mean = mean;
+        this.standardDeviation = standardDeviation;
+        this.confidenceInterval = confidenceInterval;
+        this.iterations = iterations;
+        this.warmupSamples = warmupSamples;
+        this.steadyStateReached = steadyStateReached;
+        this.stoppedEarly = stoppedEarly;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    /**
+     * Полуширина 95% доверительного интервала (результат = mean ± значение).
+     */
+    public double getConfidenceInterval() {
+        return confidenceInterval;
+    }
+
+    /**
+     * Доверительный интервал относительно среднего (0.02 = ±2%).
+     */
+    public double getRelativeConfidenceInterval() {
+        return mean > 0 ? confidenceInterval / mean : 0;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getWarmupSamples() {
+        return warmupSamples;
+    }
+
+    /**
+     * Был ли достигнут установившийся режим до начала замеров.
+     * false означает, что прогрев прерван по таймауту.
+     */
+    public boolean isSteadyStateReached() {
+        return steadyStateReached;
+    }
+
+    /**
+     * Остановлены ли замеры досрочно из-за достаточно узкого интервала.
+     */
+    public boolean isStoppedEarly() {
+        return stoppedEarly;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f ± %.1f (n=%d, warmup=%d%s%s)",
+                mean, confidenceInterval, iterations, warmupSamples,
+                steadyStateReached ? "" : ", unstable",
+                stoppedEarly ? ", early stop" : "");
+    }
+}
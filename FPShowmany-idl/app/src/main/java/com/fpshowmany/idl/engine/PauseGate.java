@@ -0,0 +1,86 @@
+package com.fpshowmany.idl.engine;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Шлюз паузы, общий для всех потоков движка.
+ * Потоки, вызвавшие {@link #await()} во время паузы, паркуются и не потребляют CPU;
+ * {@link #resume()} будит их сразу. Шлюз также учитывает суммарное время пауз,
+ * чтобы его можно было исключить из расчета пропускной способности и сроков этапов.
+ */
+public final class PauseGate {
+
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean paused = false;
+    private long pauseStartNanos;
+    private long totalPausedNanos;
+
+    /**
+     * Закрывает шлюз. Повторный вызов во время паузы ничего не делает.
+     */
+    public synchronized void pause() {
+        if (paused) {
+            return;
+        }
+        pauseStartNanos = System.nanoTime();
+        paused = true;
+    }
+
+    /**
+     * Открывает шлюз и будит все ожидающие потоки.
+     */
+    public void resume() {
+        synchronized (this) {
+            if (!paused) {
+                return;
+            }
+            totalPausedNanos += System.nanoTime() - pauseStartNanos;
+            paused = false;
+        }
+        for (Thread waiter : waiters) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Суммарное время пауз с момента создания шлюза, включая текущую паузу.
+     */
+    public synchronized long getPausedNanos() {
+        if (paused) {
+            return totalPausedNanos + (System.nanoTime() - pauseStartNanos);
+        }
+        return totalPausedNanos;
+    }
+
+    /**
+     * Блокирует вызывающий поток, пока шлюз закрыт. Без паузы возвращается сразу.
+     *
+     * @throws InterruptedException Если поток прерван во время ожидания
+     */
+    public void await() throws InterruptedException {
+        if (!paused) {
+            return;
+        }
+
+        Thread current = Thread.currentThread();
+        // Регистрация до повторной проверки: resume() после нее обязательно разбудит поток
+        waiters.add(current);
+        try {
+            while (paused) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            waiters.remove(current);
+        }
+    }
+}
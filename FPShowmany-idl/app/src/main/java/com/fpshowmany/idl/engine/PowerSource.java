@@ -0,0 +1,15 @@
+package com.fpshowmany.idl.engine;
+
+/**
+ * Источник мгновенной мощности, потребляемой устройством. Движок опрашивает его во время
+ * этапов ({@link StressTestEngine#setPowerSource}); опрос идет с отдельного потока.
+ */
+public interface PowerSource {
+
+    /**
+     * Текущая мощность, Вт.
+     *
+     * @return -1, если мощность сейчас неизвестна (нет данных, устройство заряжается)
+     */
+    double readPowerWatts();
+}
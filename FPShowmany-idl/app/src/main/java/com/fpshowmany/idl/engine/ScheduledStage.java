@@ -0,0 +1,73 @@
+package com.fpshowmany.idl.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Этап в расписании движка: собственное время, количество итераций, повторы и пауза
+ * после выполнения. Строится из шага {@link BenchmarkPlan}.
+ */
+public final class ScheduledStage {
+
+    private final BenchmarkStage stage;
+    private final long budgetMs;
+    private final int iterations;
+    private final int repeat;
+    private final long cooldownMs;
+    private final Map<String, String> params;
+
+    /**
+     * @param budgetMs   Время одного выполнения; 0 - равная доля общей длительности движка
+     * @param iterations Итерации измерения; 0 - значение движка
+     * @param repeat     Количество выполнений подряд, не меньше 1
+     * @param cooldownMs Простой после каждого выполнения, кроме последнего этапа запуска
+     * @param params     Параметры этапа, см. {@link StageContext#getParam(String)}
+     */
+    public ScheduledStage(BenchmarkStage stage, long budgetMs, int iterations, int repeat,
+                          long cooldownMs, Map<String, String> params) {
+        if (repeat < 1) {
+            throw new IllegalArgumentException("Repeat must be positive: " + repeat);
+        }
+        if (budgetMs < 0 || iterations < 0 || cooldownMs < 0) {
+            throw new IllegalArgumentException("Negative stage limits");
+        }
+        this.stage = stage;
+        this.budgetMs = budgetMs;
+        this.iterations = iterations;
+        this.repeat = repeat;
+        this.cooldownMs = cooldownMs;
+        this.params = Collections.unmodifiableMap(new HashMap<>(params));
+    }
+
+    /**
+     * Этап без собственных ограничений: доля общей длительности, одно выполнение.
+     */
+    public ScheduledStage(BenchmarkStage stage) {
+        this(stage, 0, 0, 1, 0, Collections.<String, String>emptyMap());
+    }
+
+    public BenchmarkStage getStage() {
+        return stage;
+    }
+
+    public long getBudgetMs() {
+        return budgetMs;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getRepeat() {
+        return repeat;
+    }
+
+    public long getCooldownMs() {
+        return cooldownMs;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+}
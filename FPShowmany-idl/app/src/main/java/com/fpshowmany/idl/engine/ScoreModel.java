@@ -0,0 +1,159 @@
+package com.fpshowmany.idl.engine;
+
+import com.fpshowmany.idl.engine.stages.BitmapStage;
+import com.fpshowmany.idl.engine.stages.CapacityProbeStage;
+import com.fpshowmany.idl.engine.stages.CpuStage;
+import com.fpshowmany.idl.engine.stages.DvfsStage;
+import com.fpshowmany.idl.engine.stages.GpuStage;
+import com.fpshowmany.idl.engine.stages.JsonStage;
+import com.fpshowmany.idl.engine.stages.MapStage;
+import com.fpshowmany.idl.engine.stages.MemtestStage;
+import com.fpshowmany.idl.engine.stages.MultiProcessRamStage;
+import com.fpshowmany.idl.engine.stages.NetworkStage;
+import com.fpshowmany.idl.engine.stages.ParallelStage;
+import com.fpshowmany.idl.engine.stages.RamStage;
+import com.fpshowmany.idl.engine.stages.SortStage;
+import com.fpshowmany.idl.engine.stages.SqliteStage;
+import com.fpshowmany.idl.engine.stages.StabilityStage;
+import com.fpshowmany.idl.engine.stages.TextStage;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Модель оценки: результат этапа нормируется на показатель эталонного устройства,
+ * общий балл - взвешенное геометрическое среднее нормированных результатов.
+ * Эталонное устройство получает {@link #REFERENCE_SCORE} на каждом этапе и в сумме;
+ * вдвое более быстрое - вдвое больше. Верхней границы у шкалы нет.
+ * <p>
+ * Геометрическое среднее не зависит от единиц этапов: ускорение любого этапа на 10%
+ * дает одинаковый прирост общего балла с учетом веса.
+ */
+public final class ScoreModel {
+
+    // Балл эталонного устройства
+    public static final int REFERENCE_SCORE = 1000;
+
+    /**
+     * Эталонный показатель и вес этапа.
+     */
+    public static final class Baseline {
+        private final double reference;
+        private final double weight;
+
+        Baseline(double reference, double weight) {
+            this.reference = reference;
+            this.weight = weight;
+        }
+
+        /**
+         * Показатель эталонного устройства в единицах счетчика этапа в секунду.
+         */
+        public double getReference() {
+            return reference;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+    }
+
+    private final Map<String, Baseline> baselines = new LinkedHashMap<>();
+
+    /**
+     * Модель с эталоном по умолчанию: условное устройство среднего класса
+     * (8 ядер, LPDDR4X, GPU уровня Adreno 6xx). Показатели в единицах счетчиков этапов:
+     * CPU - операций/с, RAM - байт/с, GPU - кадров/с во внеэкранном буфере.
+     * Прикладные этапы ({@link StressTestEngine#APP_STAGE_IDS}) на одном потоке: JSON - символов/с,
+     * сортировка - элементов/с, коллекции - операций/с, изображения - штук/с, текст - строк/с.
+     */
+    public static ScoreModel createDefault() {
+        return new ScoreModel()
+                .setBaseline(CpuStage.ID, 50000000, 0.4)
+                .setBaseline(RamStage.ID, 2000.0 * 1024 * 1024, 0.3)
+                .setBaseline(GpuStage.ID, 60, 0.3)
+                .setBaseline(JsonStage.ID, 15.0 * 1024 * 1024, 0.2)
+                .setBaseline(SortStage.ID, 10000000, 0.2)
+                .setBaseline(MapStage.ID, 15000000, 0.2)
+                .setBaseline(BitmapStage.ID, 80, 0.2)
+                .setBaseline(TextStage.ID, 400000, 0.2)
+                .setBaseline(ParallelStage.ID, 30000000, 0.3)
+                .setBaseline(StabilityStage.ID, 800, 0.3)
+                .setBaseline(MemtestStage.ID, 3000.0 * 1024 * 1024, 0.3)
+                .setBaseline(MultiProcessRamStage.ID, 8000.0 * 1024 * 1024, 0.3)
+                .setBaseline(CapacityProbeStage.ID, 2000, 0.2)
+                .setBaseline(DvfsStage.ID, 800, 0.2)
+                .setBaseline(SqliteStage.ID, 5000, 0.2)
+                .setBaseline(NetworkStage.ID, 200, 0.2);
+    }
+
+    /**
+     * Задает эталон этапа.
+     *
+     * @param reference Показатель эталонного устройства, больше нуля
+     * @param weight    Вес этапа в общем балле, больше нуля
+     */
+    public ScoreModel setBaseline(String stageId, double reference, double weight) {
+        if (!(reference > 0) || !(weight > 0)) {
+            throw new IllegalArgumentException("Invalid baseline for " + stageId);
+        }
+        baselines.put(stageId, new Baseline(reference, weight));
+        return this;
+    }
+
+    public Map<String, Baseline> getBaselines() {
+        return Collections.unmodifiableMap(baselines);
+    }
+
+    /**
+     * Балл этапа: {@link #REFERENCE_SCORE}, умноженный на отношение к эталону.
+     *
+     * @param value Показатель в единицах счетчика этапа в секунду
+     * @throws IllegalArgumentException если для этапа нет эталона
+     */
+    public int getStageScore(String stageId, double value) {
+        Baseline baseline = baselines.get(stageId);
+        if (baseline == null) {
+            throw new IllegalArgumentException("No baseline for stage: " + stageId);
+        }
+        if (!(value > 0)) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.round(REFERENCE_SCORE * value / baseline.reference));
+    }
+
+    /**
+     * Общий балл: взвешенное геометрическое среднее баллов этапов.
+     * Этапы без эталона и невыполненные этапы не учитываются, веса остальных нормируются.
+     * Нулевой балл этапа считается за 1, чтобы один сбойный этап не обнулял итог.
+     */
+    public int getTotalScore(List<StageResult> results) {
+        return getGroupScore(results, null);
+    }
+
+    /**
+     * Балл группы этапов, как {@link #getTotalScore}, но только по этапам из stageIds.
+     *
+     * @param stageIds Этапы группы; null - все этапы
+     * @return 0, если ни один этап группы не выполнен
+     */
+    public int getGroupScore(List<StageResult> results, Collection<String> stageIds) {
+        double weightSum = 0;
+        double logSum = 0;
+        for (StageResult result : results) {
+            Baseline baseline = baselines.get(result.getStageId());
+            if (baseline == null || (stageIds != null && !stageIds.contains(result.getStageId()))) {
+                continue;
+            }
+            weightSum += baseline.weight;
+            logSum += baseline.weight * Math.log(Math.max(1, result.getScore()));
+        }
+        if (weightSum == 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.round(Math.exp(logSum / weightSum)));
+    }
+}
@@ -0,0 +1,386 @@
+package com.fpshowmany.idl.engine;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Контекст выполнения одного этапа.
+ * Дает этапу доступ к общему пулу потоков движка, времени этапа, замерам
+ * установившегося режима и отправке прогресса. Движок гарантированно вызывает
+ * {@link #teardown()} после завершения этапа, останавливая все его рабочие потоки.
+ * Время пауз не входит во время этапа: срок этапа сдвигается на длительность пауз.
+ * Параметры шага плана ({@link #getParam(String)}) переопределяют настройки движка:
+ * {@link #PARAM_THREADS}, {@link #PARAM_GPU_MODE}, {@link #PARAM_EARLY_STOP}.
+ */
+public final class StageContext {
+
+    // Интервал замера пропускной способности
+    static final long SAMPLE_WINDOW_MS = 500;
+    private static final int STABILITY_WINDOW = 4;
+    private static final double WARMUP_CV_THRESHOLD = 0.05;
+    private static final double EARLY_STOP_RELATIVE_CI = 0.02;
+
+    private static final long TEARDOWN_TIMEOUT_MS = 2000;
+
+    // Параметры этапа, общие для всех этапов
+    public static final String PARAM_THREADS = "threads";
+    public static final String PARAM_GPU_MODE = "gpu_mode";
+    public static final String PARAM_EARLY_STOP = "early_stop";
+
+    /**
+     * Получатель промежуточных замеров этапа.
+     */
+    public interface SampleListener {
+        void onSample(int progress, double throughput);
+    }
+
+    private final StressTestEngine engine;
+    private final StressTestEngine.Run run;
+    private final BenchmarkStage stage;
+    private final ExecutorService workerPool;
+    private final PauseGate pauseGate;
+    private final int maxWorkers;
+    private final long startTime;
+    private final long budgetMs;
+    private final int iterations;
+    private final Map<String, String> params;
+    private final long pausedNanosAtStart;
+
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final List<WorkerTask> workers = new ArrayList<>();
+
+    StageContext(StressTestEngine engine, StressTestEngine.Run run, ScheduledStage scheduled, long budgetMs) {
+        this.engine = engine;
+        this.run = run;
+        this.stage = scheduled.getStage();
+        this.workerPool = run.workerPool;
+        this.pauseGate = engine.getPauseGate();
+        this.maxWorkers = run.poolSize;
+        this.startTime = System.currentTimeMillis();
+        this.budgetMs = budgetMs;
+        this.iterations = scheduled.getIterations() > 0
+                ? Math.max(2, scheduled.getIterations()) : engine.getMeasurementIterations();
+        this.params = scheduled.getParams();
+        this.pausedNanosAtStart = pauseGate.getPausedNanos();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Срок окончания этапа с учетом пауз, случившихся с его начала.
+     */
+    public long getEndTime() {
+        return startTime + budgetMs + getPausedMillis();
+    }
+
+    /**
+     * Время, отведенное этапу, без учета пауз, мс.
+     */
+    public long getBudgetMs() {
+        return budgetMs;
+    }
+
+    /**
+     * Время этапа без учета пауз, мс.
+     */
+    public long getActiveMillis() {
+        return System.currentTimeMillis() - startTime - getPausedMillis();
+    }
+
+    private long getPausedMillis() {
+        return (pauseGate.getPausedNanos() - pausedNanosAtStart) / 1000000L;
+    }
+
+    public int getCpuThreads() {
+        return getIntParam(PARAM_THREADS, engine.getCpuThreads());
+    }
+
+    /**
+     * @return Контекст приложения или null, см. {@link StressTestEngine#setAppContext}
+     */
+    public Context getAppContext() {
+        return engine.getAppContext();
+    }
+
+    public int getGpuMode() {
+        String mode = params.get(PARAM_GPU_MODE);
+        return mode != null ? BenchmarkPlan.parseGpuMode(mode) : engine.getGpuMode();
+    }
+
+    /**
+     * Количество итераций измерения этого этапа.
+     */
+    public int getMeasurementIterations() {
+        return iterations;
+    }
+
+    public boolean isEarlyStopEnabled() {
+        String earlyStop = params.get(PARAM_EARLY_STOP);
+        return earlyStop != null ? Boolean.parseBoolean(earlyStop) : engine.isEarlyStopEnabled();
+    }
+
+    /**
+     * Параметр шага плана или null, если он не задан.
+     */
+    public String getParam(String key) {
+        return params.get(key);
+    }
+
+    /**
+     * Целочисленный параметр шага плана.
+     *
+     * @throws IllegalArgumentException если значение не число
+     */
+    public int getIntParam(String key, int defaultValue) {
+        String value = params.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+
+    /**
+     * Максимальное количество рабочих потоков, доступных этапу.
+     */
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * Продолжать ли работу. Рабочие потоки этапа должны проверять это условие
+     * в каждом цикле: оно становится false при остановке движка, завершении
+     * замеров или истечении времени этапа.
+     */
+    public boolean isActive() {
+        return run.isActive()
+                && !finished.get()
+                && !Thread.currentThread().isInterrupted()
+                && getActiveMillis() < budgetMs;
+    }
+
+    /**
+     * Тест на паузе; для этапов, которые передают паузу работе вне своих потоков.
+     */
+    public boolean isPaused() {
+        return pauseGate.isPaused();
+    }
+
+    /**
+     * Паркует вызывающий поток, пока тест на паузе, без периодических пробуждений.
+     *
+     * @throws InterruptedException При остановке движка
+     */
+    public void awaitIfPaused() throws InterruptedException {
+        pauseGate.await();
+    }
+
+    /**
+     * Запускает рабочие потоки этапа в общем пуле движка.
+     * Количество ограничивается {@link #getMaxWorkers()}.
+     *
+     * @param count  Желаемое количество потоков
+     * @param worker Задача, выполняемая каждым потоком
+     * @return Фактическое количество запущенных потоков
+     */
+    public int startWorkers(int count, Runnable worker) {
+        int actual = Math.max(1, Math.min(count, maxWorkers));
+        synchronized (workers) {
+            for (int i = 0; i < actual; i++) {
+                WorkerTask task = new WorkerTask(worker);
+                task.future = workerPool.submit(task);
+                workers.add(task);
+            }
+        }
+        return actual;
+    }
+
+    /**
+     * Цикл замеров этапа на вызывающем потоке: каждые {@link #SAMPLE_WINDOW_MS} снимает
+     * прирост счетчика, передает пропускную способность в детектор установившегося
+     * режима и завершает этап по окончании итераций или по истечении времени.
+     * В трассе ({@link EngineTrace}) - счетчик пропускной способности и отметки смены фазы.
+     *
+     * @param counter  Счетчик выполненной работы, увеличиваемый рабочими потоками
+     * @param listener Получатель промежуточных замеров
+     * @return Результат измерения в единицах счетчика в секунду
+     */
+    public MeasurementResult measure(LongAdder counter, SampleListener listener) {
+        // Прогрев занимает не больше половины времени этапа
+        int maxWarmupSamples = (int) (budgetMs / 2 / SAMPLE_WINDOW_MS);
+        SteadyStateDetector detector = new SteadyStateDetector(STABILITY_WINDOW, WARMUP_CV_THRESHOLD,
+                maxWarmupSamples, getMeasurementIterations(),
+                isEarlyStopEnabled() ? EARLY_STOP_RELATIVE_CI : 0);
+
+        long lastCount = counter.sum();
+        long lastActive = getActiveMillis();
+
+        while (isActive() && detector.getPhase() != SteadyStateDetector.Phase.COMPLETE) {
+            try {
+                pauseGate.await();
+                Thread.sleep(SAMPLE_WINDOW_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            long active = getActiveMillis();
+            long count = counter.sum();
+            long windowMs = active - lastActive;
+            long delta = count - lastCount;
+            lastCount = count;
+            lastActive = active;
+
+            // Окно, почти целиком попавшее на паузу, слишком шумное
+            if (windowMs < SAMPLE_WINDOW_MS / 2) {
+                continue;
+            }
+
+            double throughput = delta * 1000.0 / windowMs;
+            SteadyStateDetector.Phase phase = detector.getPhase();
+            detector.offer(throughput);
+            engine.publish(new BenchmarkEvent.Sample(stage, phase, throughput, active));
+            if (EngineTrace.ENABLED) {
+                EngineTrace.setCounter(stage.getId() + " throughput", Math.round(throughput));
+                if (detector.getPhase() != phase) {
+                    EngineTrace.instant(stage.getId() + " " + detector.getPhase().name().toLowerCase(Locale.US));
+                }
+            }
+
+            if (listener != null) {
+                listener.onSample(getTimeProgress(), throughput);
+            }
+        }
+
+        finish();
+        return detector.getResult();
+    }
+
+    /**
+     * Публикует замер этапа, который измеряет сам, без {@link #measure}: например, по шагам,
+     * а не по окнам времени. Замер относится к фазе измерения.
+     */
+    public void reportSample(double throughput) {
+        engine.publish(new BenchmarkEvent.Sample(stage, SteadyStateDetector.Phase.MEASUREMENT,
+                throughput, getActiveMillis()));
+        if (EngineTrace.ENABLED) {
+            EngineTrace.setCounter(stage.getId() + " throughput", Math.round(throughput));
+        }
+    }
+
+    /**
+     * Прогресс этапа по времени без учета пауз, 0-100.
+     */
+    public int getTimeProgress() {
+        return (int) Math.max(0, Math.min(100, getActiveMillis() * 100 / Math.max(1, budgetMs)));
+    }
+
+    /**
+     * Балл этапа по модели оценки движка.
+     *
+     * @param throughput Показатель в единицах счетчика этапа в секунду, как в {@link #measure}
+     */
+    public int score(double throughput) {
+        return engine.getScoreModel().getStageScore(stage.getId(), throughput);
+    }
+
+    /**
+     * Публикует промежуточный прогресс этапа.
+     */
+    public void reportProgress(int progress, float value, int score) {
+        engine.publish(new BenchmarkEvent.Progress(stage, progress, value, score));
+    }
+
+    /**
+     * Публикует сообщение об ошибке без прерывания этапа.
+     */
+    public void reportError(String message) {
+        engine.publish(new BenchmarkEvent.Error(stage, message));
+    }
+
+    /**
+     * Сигнализирует рабочим потокам о завершении этапа.
+     */
+    public void finish() {
+        finished.set(true);
+    }
+
+    /**
+     * Останавливает этап и дожидается завершения всех его рабочих потоков.
+     */
+    void teardown() {
+        finish();
+        List<WorkerTask> tasks;
+        synchronized (workers) {
+            tasks = new ArrayList<>(workers);
+        }
+        for (WorkerTask task : tasks) {
+            task.cancel();
+        }
+
+        long deadline = System.currentTimeMillis() + TEARDOWN_TIMEOUT_MS;
+        for (WorkerTask task : tasks) {
+            try {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !task.done.await(remaining, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Рабочая задача этапа с отметкой завершения.
+     * Задача, отмененная до запуска, считается завершенной сразу.
+     */
+    private static final class WorkerTask implements Runnable {
+        private final Runnable worker;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Future<?> future;
+
+        WorkerTask(Runnable worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                worker.run();
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void cancel() {
+            if (started.compareAndSet(false, true)) {
+                done.countDown();
+            }
+            Future<?> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+        }
+    }
+}
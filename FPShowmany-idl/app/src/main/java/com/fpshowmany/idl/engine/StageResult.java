@@ -0,0 +1,53 @@
+package com.fpshowmany.idl.engine;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Результат выполнения одного этапа: балл, измерение и дополнительные показатели этапа
+ * (например, ускорение параллельного этапа), которые сохраняются в файле запуска.
+ */
+public class StageResult {
+
+    private final String stageId;
+    private final int score;
+    private final MeasurementResult measurement;
+    private final Map<String, Double> metrics = new LinkedHashMap<>();
+
+    public StageResult(String stageId, int score, MeasurementResult measurement) {
+        this.stageId = stageId;
+        this.score = score;
+        this.measurement = measurement;
+    }
+
+    public String getStageId() {
+        return stageId;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Измерение установившегося режима или null, если этап его не проводил.
+     */
+    public MeasurementResult getMeasurement() {
+        return measurement;
+    }
+
+    /**
+     * Добавляет дополнительный показатель. Этап заполняет показатели до возврата результата.
+     */
+    public StageResult addMetric(String name, double value) {
+        metrics.put(name, value);
+        return this;
+    }
+
+    /**
+     * Дополнительные показатели в порядке добавления.
+     */
+    public Map<String, Double> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+}
@@ -0,0 +1,156 @@
+package com.fpshowmany.idl.engine;
+
+import com.fpshowmany.idl.utils.Statistics;
+
+/**
+ * Детектор установившегося режима.
+ * Принимает последовательные замеры пропускной способности: сначала идет прогрев,
+ * пока коэффициент вариации последних замеров не опустится ниже порога,
+ * затем набираются итерации измерения. Замеры могут завершиться досрочно,
+ * если доверительный интервал стал достаточно узким.
+ */
+public class SteadyStateDetector {
+
+    public enum Phase {
+        WARMUP,
+        MEASUREMENT,
+        COMPLETE
+    }
+
+    // Минимум итераций, после которого допускается досрочная остановка
+    static final int MIN_EARLY_STOP_ITERATIONS = 5;
+
+    private final int stabilityWindow;
+    private final double cvThreshold;
+    private final int maxWarmupSamples;
+    private final int iterations;
+    private final double targetRelativeCi;
+
+    private final double[] window;
+    private final double[] scratch;
+    private final double[] samples;
+
+    private Phase phase = Phase.WARMUP;
+    private int windowCount = 0;
+    private int windowPos = 0;
+    private int warmupSamples = 0;
+    private int sampleCount = 0;
+    private boolean steadyStateReached = false;
+    private boolean stoppedEarly = false;
+
+    /**
+     * @param stabilityWindow  Количество последних замеров для оценки стабильности
+     * @param cvThreshold      Порог коэффициента вариации для окончания прогрева
+     * @param maxWarmupSamples Максимум замеров прогрева, после чего измерение начинается принудительно
+     * @param iterations       Количество итераций измерения
+     * @param targetRelativeCi Относительная полуширина интервала для досрочной остановки, 0 - отключено
+     */
+    public SteadyStateDetector(int stabilityWindow, double cvThreshold, int maxWarmupSamples,
+                               int iterations, double targetRelativeCi) {
+        if (stabilityWindow < 2) {
+            throw new IllegalArgumentException("stabilityWindow must be >= 2");
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be >= 1");
+        }
+        this.stabilityWindow = stabilityWindow;
+        this.cvThreshold = cvThreshold;
+        this.maxWarmupSamples = Math.max(maxWarmupSamples, stabilityWindow);
+        this.iterations = iterations;
+        this.targetRelativeCi = targetRelativeCi;
+        this.window = new double[stabilityWindow];
+        this.scratch = new double[stabilityWindow];
+        this.samples = new double[iterations];
+    }
+
+    /**
+     * Добавляет очередной замер.
+     *
+     * @param value Пропускная способность за окно замера
+     * @return Фаза после учета замера
+     */
+    public Phase offer(double value) {
+        switch (phase) {
+            case WARMUP:
+                offerWarmup(value);
+                break;
+            case MEASUREMENT:
+                offerMeasurement(value);
+                break;
+            default:
+                break;
+        }
+        return phase;
+    }
+
+    private void offerWarmup(double value) {
+        warmupSamples++;
+        window[windowPos] = value;
+        windowPos = (windowPos + 1) % stabilityWindow;
+        if (windowCount < stabilityWindow) {
+            windowCount++;
+        }
+
+        if (windowCount == stabilityWindow
+                && Statistics.coefficientOfVariation(window, stabilityWindow) <= cvThreshold) {
+            steadyStateReached = true;
+            phase = Phase.MEASUREMENT;
+        } else if (warmupSamples >= maxWarmupSamples) {
+            // Стабильность не достигнута, измеряем как есть
+            phase = Phase.MEASUREMENT;
+        }
+    }
+
+    private void offerMeasurement(double value) {
+        samples[sampleCount++] = value;
+
+        if (sampleCount >= iterations) {
+            phase = Phase.COMPLETE;
+        } else if (targetRelativeCi > 0 && sampleCount >= MIN_EARLY_STOP_ITERATIONS) {
+            double mean = Statistics.mean(samples, sampleCount);
+            double ci = Statistics.confidenceInterval95(samples, sampleCount);
+            if (mean > 0 && ci / mean <= targetRelativeCi) {
+                stoppedEarly = true;
+                phase = Phase.COMPLETE;
+            }
+        }
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Возвращает результат по набранным итерациям.
+     * Если время этапа истекло еще во время прогрева, результат строится
+     * по последним замерам прогрева и помечается как нестабильный.
+     */
+    public MeasurementResult getResult() {
+        double[] values = samples;
+        int count = sampleCount;
+        if (count == 0) {
+            count = windowCount;
+            for (int i = 0; i < count; i++) {
+                scratch[i] = window[i];
+            }
+            values = scratch;
+        }
+
+        return new MeasurementResult(
+                Statistics.mean(values, count),
+                Statistics.standardDeviation(values, count),
+                Statistics.confidenceInterval95(values, count),
+                count,
+                warmupSamples,
+                steadyStateReached,
+                stoppedEarly);
+    }
+}
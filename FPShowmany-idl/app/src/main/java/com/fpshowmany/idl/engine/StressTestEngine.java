@@ -1,52 +1,165 @@
 package com.fpshowmany.idl.engine;
 
+import android.content.Context;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLU;
-import android.util.Log;
-
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.util.concurrent.ExecutorService;
+import android.os.Process;
+
+import com.fpshowmany.idl.engine.stages.BitmapStage;
+import com.fpshowmany.idl.engine.stages.CapacityProbeStage;
+import com.fpshowmany.idl.engine.stages.CpuStage;
+import com.fpshowmany.idl.engine.stages.DvfsStage;
+import com.fpshowmany.idl.engine.stages.GpuStage;
+import com.fpshowmany.idl.engine.stages.JsonStage;
+import com.fpshowmany.idl.engine.stages.MapStage;
+import com.fpshowmany.idl.engine.stages.MemtestStage;
+import com.fpshowmany.idl.engine.stages.MultiProcessRamStage;
+import com.fpshowmany.idl.engine.stages.NetworkStage;
+import com.fpshowmany.idl.engine.stages.ParallelStage;
+import com.fpshowmany.idl.engine.stages.RamStage;
+import com.fpshowmany.idl.engine.stages.SortStage;
+import com.fpshowmany.idl.engine.stages.SqliteStage;
+import com.fpshowmany.idl.engine.stages.StabilityStage;
+import com.fpshowmany.idl.engine.stages.TextStage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Движок стресс-тестирования.
- * Выполняет тестирование CPU, RAM и GPU.
+ * Последовательно выполняет расписание этапов ({@link ScheduledStage}) на собственном
+ * потоке планировщика; у каждого этапа может быть свое время, число итераций, повторы
+ * и пауза для остывания после выполнения; рабочие потоки этапов берутся из общего пула движка, который
+ * создается один раз на запуск. Каждый этап сначала прогревается до установившегося режима,
+ * затем выполняет серию итераций измерения и сообщает среднее с доверительным интервалом.
+ * Ход теста публикуется в {@link EventStream}, на который подписываются UI и другие потребители.
  */
 public class StressTestEngine {
 
-    private static final String TAG = "StressTestEngine";
+    static final long POWER_SAMPLE_MS = 100;
 
     // Константы режимов GPU
     public static final int GPU_MODE_AUTO = 0;
     public static final int GPU_MODE_2D = 1;
     public static final int GPU_MODE_3D = 2;
 
-    private final TestCallback callback;
-    private final Handler mainHandler;
+    // Прикладные этапы: типичная работа приложения, из них складывается балл отзывчивости
+    public static final List<String> APP_STAGE_IDS = Collections.unmodifiableList(Arrays.asList(
+            JsonStage.ID, SortStage.ID, MapStage.ID, BitmapStage.ID, TextStage.ID));
+
+    private final EventStream events;
 
     private int gpuMode = GPU_MODE_AUTO;
     private int cpuThreads = 4;
     private int duration = 30; // секунды
+    private int measurementIterations = 10;
+    private boolean earlyStop = true;
+    private ScoreModel scoreModel = ScoreModel.createDefault();
+    private volatile File traceFile;
+    private volatile Context appContext;
+    private volatile PowerSource powerSource;
+    private volatile EngineLog log = EngineLog.NONE;
+
+    private final List<ScheduledStage> schedule = new ArrayList<>();
 
-    private ExecutorService cpuExecutor;
-    private ExecutorService ramExecutor;
-    private GLSurfaceView.Renderer gpuRenderer;
+    // Текущий запуск, под замком движка; завершенный запуск остается до следующего start()
+    private Run currentRun;
+    private final PauseGate pauseGate = new PauseGate();
 
-    private AtomicBoolean isRunning = new AtomicBoolean(false);
-    private AtomicBoolean isPaused = new AtomicBoolean(false);
+    // Результаты этапов в порядке выполнения; у повторяемого этапа - результат последнего выполнения
+    private final Map<String, StageResult> results = Collections.synchronizedMap(new LinkedHashMap<String, StageResult>());
 
-    // Результаты
-    private AtomicInteger cpuScore = new AtomicInteger(0);
-    private AtomicInteger ramScore = new AtomicInteger(0);
-    private AtomicInteger gpuScore = new AtomicInteger(0);
+    public StressTestEngine() {
+        this(new EventStream());
+    }
+
+    /**
+     * @param events Поток событий; может переживать движок и использоваться несколькими запусками
+     */
+    public StressTestEngine(EventStream events) {
+        this.events = events;
+    }
 
-    public StressTestEngine(TestCallback callback) {
-        this.callback = callback;
-        this.mainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Поток событий теста.
+     */
+    public EventStream getEvents() {
+        return events;
+    }
+
+    /**
+     * Стандартный набор этапов: CPU, RAM, GPU.
+     *
+     * @param glSurfaceView Поверхность для GPU этапа, может быть null
+     */
+    public static List<BenchmarkStage> createDefaultStages(GLSurfaceView glSurfaceView) {
+        return Arrays.<BenchmarkStage>asList(
+                new CpuStage(),
+                new RamStage(),
+                new GpuStage(glSurfaceView));
+    }
+
+    /**
+     * Создает этап по идентификатору ({@link BenchmarkStage#getId()}).
+     *
+     * @param glSurfaceView Поверхность для GPU этапа, может быть null
+     * @throws IllegalArgumentException если этап неизвестен
+     */
+    public static BenchmarkStage createStage(String id, GLSurfaceView glSurfaceView) {
+        switch (id) {
+            case CpuStage.ID:
+                return new CpuStage();
+            case RamStage.ID:
+                return new RamStage();
+            case GpuStage.ID:
+                return new GpuStage(glSurfaceView);
+            case JsonStage.ID:
+                return new JsonStage();
+            case SortStage.ID:
+                return new SortStage();
+            case MapStage.ID:
+                return new MapStage();
+            case BitmapStage.ID:
+                return new BitmapStage();
+            case TextStage.ID:
+                return new TextStage();
+            case ParallelStage.ID:
+                return new ParallelStage();
+            case StabilityStage.ID:
+                return new StabilityStage();
+            case MemtestStage.ID:
+                return new MemtestStage();
+            case MultiProcessRamStage.ID:
+                return new MultiProcessRamStage();
+            case CapacityProbeStage.ID:
+                return new CapacityProbeStage();
+            case DvfsStage.ID:
+                return new DvfsStage();
+            case SqliteStage.ID:
+                return new SqliteStage();
+            case NetworkStage.ID:
+                return new NetworkStage();
+            default:
+                throw new IllegalArgumentException("Unknown stage: " + id);
+        }
     }
 
     public void setGpuMode(int mode) {
@@ -62,442 +175,443 @@ public class StressTestEngine {
     }
 
     /**
-     * Запуск теста CPU.
+     * Количество итераций измерения после прогрева.
      */
-    public void startCpuTest() {
-        if (!isRunning.compareAndSet(false, true)) {
-            return;
-        }
-
-        cpuScore.set(0);
-        cpuExecutor = Executors.newFixedThreadPool(cpuThreads);
-
-        final long startTime = System.currentTimeMillis();
-        final long endTime = startTime + (duration * 1000 / 3); // Треть от общего времени
-
-        // Запуск потоков для нагрузки на CPU
-        for (int i = 0; i < cpuThreads; i++) {
-            final int threadId = i;
-            cpuExecutor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    long operations = 0;
-                    float lastFps = 0;
-
-                    while (isRunning.get() && System.currentTimeMillis() < endTime) {
-                        if (isPaused.get()) {
-                            try {
-                                Thread.sleep(100);
-                            } catch (InterruptedException e) {
-                                break;
-                            }
-                            continue;
-                        }
-
-                        // Выполняем тяжелые вычисления
-                        for (int j = 0; j < 100000; j++) {
-                            double result = Math.sin(j) * Math.cos(j) * Math.tan(j);
-                            operations++;
-                        }
-
-                        // Расчет FPS
-                        long elapsed = System.currentTimeMillis() - startTime;
-                        if (elapsed > 0) {
-                            lastFps = (operations / 1000f) / (elapsed / 1000f);
-                        }
-
-                        // Обновление прогресса
-                        final float fps = lastFps;
-                        final int progress = (int) ((System.currentTimeMillis() - startTime) * 100 / (endTime - startTime));
-                        final int score = calculateCpuScore(operations, elapsed);
-
-                        mainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                callback.onCpuProgress(progress, fps, score);
-                            }
-                        });
-                    }
-
-                    // Финальный результат CPU
-                    long elapsed = System.currentTimeMillis() - startTime;
-                    int finalScore = calculateCpuScore(operations, elapsed);
-                    cpuScore.set(finalScore);
-
-                    mainHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            callback.onCpuComplete(finalScore);
-                        }
-                    });
-                }
-            });
-        }
+    public void setMeasurementIterations(int iterations) {
+        this.measurementIterations = Math.max(2, iterations);
     }
 
     /**
-     * Запуск теста RAM.
+     * Разрешает досрочное завершение этапа, когда доверительный интервал стал достаточно узким.
      */
-    public void startRamTest() {
-        final long startTime = System.currentTimeMillis();
-        final long endTime = startTime + (duration * 1000 / 3);
-
-        ramExecutor = Executors.newFixedThreadPool(2);
-
-        ramExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                long operations = 0;
-                long totalAllocated = 0;
-                byte[][] blocks = new byte[100][];
-                int blockIndex = 0;
+    public void setEarlyStop(boolean enabled) {
+        this.earlyStop = enabled;
+    }
 
-                while (isRunning.get() && System.currentTimeMillis() < endTime) {
-                    if (isPaused.get()) {
-                        try {
-                            Thread.sleep(100);
-                        } catch (InterruptedException e) {
-                            break;
-                        }
-                        continue;
-                    }
+    /**
+     * Модель оценки этапов и общего балла.
+     */
+    public void setScoreModel(ScoreModel scoreModel) {
+        this.scoreModel = scoreModel;
+    }
 
-                    try {
-                        // Выделяем блок памяти
-                        int blockSize = (int) (Math.random() * 1024 * 1024) + 1024; // 1KB - 1MB
-                        byte[] block = new byte[blockSize];
+    public ScoreModel getScoreModel() {
+        return scoreModel;
+    }
 
-                        // Заполняем данными
-                        for (int i = 0; i < blockSize; i += 1024) {
-                            block[i] = (byte) (Math.random() * 256);
-                        }
+    /**
+     * Файл для трассы следующего запуска в формате {@link ChromeTrace}. Трасса пишется
+     * только в сборке с {@link EngineTrace#ENABLED}; null - не писать.
+     */
+    public void setTraceFile(File file) {
+        this.traceFile = file;
+    }
 
-                        blocks[blockIndex] = block;
-                        blockIndex = (blockIndex + 1) % blocks.length;
+    /**
+     * Контекст приложения для этапов, которым нужны системные службы (память, процессы).
+     * Без него такие этапы оценивают ресурсы только по своему процессу.
+     */
+    public void setAppContext(Context context) {
+        this.appContext = context != null ? context.getApplicationContext() : null;
+    }
 
-                        operations++;
-                        totalAllocated += blockSize;
+    /**
+     * @return Контекст приложения или null
+     */
+    public Context getAppContext() {
+        return appContext;
+    }
 
-                        // Освобождаем старые блоки
-                        if (blockIndex == 0) {
-                            for (int i = 0; i < blocks.length / 2; i++) {
-                                blocks[i] = null;
-                            }
-                        }
+    /**
+     * Источник мощности для показателей энергии этапов (см. {@link EnergyMeter}); во время
+     * этапа он опрашивается каждые {@link #POWER_SAMPLE_MS} мс. null - не измерять.
+     */
+    public void setPowerSource(PowerSource source) {
+        this.powerSource = source;
+    }
 
-                        // Расчет OPS (Operations Per Second)
-                        long elapsed = System.currentTimeMillis() - startTime;
-                        if (elapsed > 0) {
-                            float opsPerSecond = (operations * 1000f) / elapsed;
-
-                            final int progress = (int) ((System.currentTimeMillis() - startTime) * 100 / (endTime - startTime));
-                            final int score = calculateRamScore(operations, totalAllocated, elapsed);
-
-                            final float finalOpsPerSecond = opsPerSecond;
-                            mainHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    callback.onRamProgress(progress, finalOpsPerSecond, score);
-                                }
-                            });
-                        }
-                    } catch (OutOfMemoryError e) {
-                        // Очищаем память и продолжаем
-                        System.gc();
-                        for (int i = 0; i < blocks.length; i++) {
-                            blocks[i] = null;
-                        }
-                        blockIndex = 0;
-                    }
-                }
+    /**
+     * Журнал хода запуска: паузы, результаты и сбои этапов, запись трассы. null - не писать.
+     */
+    public void setLog(EngineLog log) {
+        this.log = log != null ? log : EngineLog.NONE;
+    }
 
-                long elapsed = System.currentTimeMillis() - startTime;
-                int finalScore = calculateRamScore(operations, totalAllocated, elapsed);
-                ramScore.set(finalScore);
+    /**
+     * Задает этапы теста в порядке выполнения; общая длительность делится между ними поровну.
+     */
+    public void setStages(List<BenchmarkStage> stages) {
+        List<ScheduledStage> scheduled = new ArrayList<>(stages.size());
+        for (BenchmarkStage stage : stages) {
+            scheduled.add(new ScheduledStage(stage));
+        }
+        setSchedule(scheduled);
+    }
 
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        callback.onRamComplete(finalScore);
-                    }
-                });
-            }
-        });
+    /**
+     * Задает расписание этапов. Этапы без собственного времени делят общую длительность
+     * ({@link #setDuration(int)}) поровну между своими выполнениями.
+     */
+    public void setSchedule(List<ScheduledStage> schedule) {
+        if (isRunning()) {
+            throw new IllegalStateException("Cannot change stages while running");
+        }
+        this.schedule.clear();
+        this.schedule.addAll(schedule);
     }
 
     /**
-     * Запуск теста GPU.
+     * Запуск теста: все этапы выполняются последовательно на потоке планировщика.
+     * Пока предыдущий запуск активен, вызов ничего не делает; после {@link #stopAll()} или
+     * из получателя RunComplete новый запуск начинается сразу.
      */
-    public void startGpuTest(GLSurfaceView glSurfaceView) {
-        if (glSurfaceView == null) {
-            // Если GLSurfaceView недоступен, завершаем тест с базовым результатом
-            gpuScore.set(1000);
-            mainHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    callback.onGpuComplete(1000);
-                }
-            });
+    public synchronized void start() {
+        if (schedule.isEmpty()) {
+            throw new IllegalStateException("No stages configured");
+        }
+        if (currentRun != null && currentRun.isActive()) {
             return;
         }
 
-        final long startTime = System.currentTimeMillis();
-        final long endTime = startTime + (duration * 1000 / 3);
-
-        // Настройка рендерера в зависимости от режима
-        setupGpuRenderer(glSurfaceView);
-
-        glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
-        glSurfaceView.onResume();
-
-        // Мониторинг FPS
-        new Thread(new Runnable() {
-            private long frameCount = 0;
-            private long lastFpsTime = startTime;
+        results.clear();
+        events.reset();
 
+        int poolSize = Math.max(cpuThreads, Runtime.getRuntime().availableProcessors());
+        final Run run = new Run(poolSize, powerSource != null);
+        currentRun = run;
+        final List<ScheduledStage> pipeline = new ArrayList<>(schedule);
+        run.scheduler.execute(new Runnable() {
             @Override
             public void run() {
-                while (isRunning.get() && System.currentTimeMillis() < endTime) {
-                    if (isPaused.get()) {
-                        try {
-                            Thread.sleep(100);
-                        } catch (InterruptedException e) {
-                            break;
-                        }
-                        continue;
-                    }
+                runPipeline(run, pipeline);
+            }
+        });
+    }
 
-                    frameCount++;
-                    long currentTime = System.currentTimeMillis();
-                    long elapsed = currentTime - lastFpsTime;
-
-                    if (elapsed >= 1000) {
-                        float fps = (frameCount * 1000f) / elapsed;
-                        int progress = (int) ((currentTime - startTime) * 100 / (endTime - startTime));
-                        int score = calculateGpuScore(fps);
-
-                        frameCount = 0;
-                        lastFpsTime = currentTime;
-
-                        final float finalFps = fps;
-                        final int finalScore = score;
-                        mainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                callback.onGpuProgress(progress, finalFps, finalScore);
-                            }
-                        });
-                    }
+    private void runPipeline(Run run, List<ScheduledStage> pipeline) {
+        int total = 0;
+        int shared = 0;
+        for (ScheduledStage scheduled : pipeline) {
+            total += scheduled.getRepeat();
+            if (scheduled.getBudgetMs() == 0) {
+                shared += scheduled.getRepeat();
+            }
+        }
+        long sharedBudgetMs = shared > 0 ? duration * 1000L / shared : 0;
 
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        break;
+        File trace = traceFile;
+        ChromeTrace chromeTrace = null;
+        if (EngineTrace.ENABLED && trace != null) {
+            chromeTrace = new ChromeTrace(Process.myPid());
+            EngineTrace.attach(chromeTrace);
+        }
+        EngineTrace.beginSection("run");
+        boolean traceClosed = false;
+        BenchmarkEvent complete = null;
+        try {
+            int index = 0;
+            for (ScheduledStage scheduled : pipeline) {
+                BenchmarkStage stage = scheduled.getStage();
+                long budgetMs = scheduled.getBudgetMs() > 0 ? scheduled.getBudgetMs() : sharedBudgetMs;
+                for (int r = 0; r < scheduled.getRepeat() && run.isActive(); r++, index++) {
+                    runStage(run, scheduled, budgetMs, index, total);
+                    if (index < total - 1 && scheduled.getCooldownMs() > 0 && run.isActive()) {
+                        log.info(stage.getId() + ": cooldown " + scheduled.getCooldownMs() + " ms");
+                        EngineTrace.beginSection("cooldown");
+                        try {
+                            Thread.sleep(scheduled.getCooldownMs());
+                        } finally {
+                            EngineTrace.endSection();
+                        }
                     }
                 }
+                if (!run.isActive()) {
+                    break;
+                }
+            }
 
-                long elapsed = System.currentTimeMillis() - startTime;
-                int finalScore = calculateGpuScore((frameCount * 1000f) / elapsed);
-                gpuScore.set(finalScore);
-
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        callback.onGpuComplete(finalScore);
-                    }
-                });
+            if (run.isActive()) {
+                // Трасса закрывается до RunComplete, чтобы получатели события уже видели файл
+                closeTrace(chromeTrace, trace);
+                traceClosed = true;
+                complete = new BenchmarkEvent.RunComplete(getTotalScore(), getAppScore(), getResults());
+            }
+        } catch (InterruptedException e) {
+            // Остановка во время паузы между этапами
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!traceClosed) {
+                closeTrace(chromeTrace, trace);
             }
-        }).start();
+            // Останавливаются пулы этого запуска, а не следующего
+            run.finish();
+        }
+        // Запуск уже завершен: получатель события может начать следующий
+        if (complete != null) {
+            events.publish(complete);
+        }
     }
 
-    private void setupGpuRenderer(GLSurfaceView glSurfaceView) {
-        final boolean is3DMode = (gpuMode == GPU_MODE_3D) || (gpuMode == GPU_MODE_AUTO);
-
-        glSurfaceView.setRenderer(new GLSurfaceView.Renderer() {
-            private float rotation = 0f;
-
-            @Override
-            public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-                gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
-                gl.glEnable(GL10.GL_DEPTH_TEST);
+    /**
+     * Закрывает срез запуска и записывает трассу, если она велась.
+     */
+    private void closeTrace(ChromeTrace chromeTrace, File file) {
+        EngineTrace.endSection();
+        if (chromeTrace == null) {
+            return;
+        }
+        EngineTrace.detach();
+        try {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
             }
-
-            @Override
-            public void onSurfaceChanged(GL10 gl, int width, int height) {
-                gl.glViewport(0, 0, width, height);
-                gl.glMatrixMode(GL10.GL_PROJECTION);
-                gl.glLoadIdentity();
-                GLU.gluPerspective(gl, 45.0f, (float) width / height, 0.1f, 100.0f);
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+            try {
+                chromeTrace.write(out);
+            } finally {
+                out.close();
             }
+            log.info("Trace written to " + file + ": " + chromeTrace.getEventCount() + " events, "
+                    + chromeTrace.getDroppedCount() + " dropped");
+        } catch (IOException e) {
+            log.error("Failed to write trace " + file, e);
+        }
+    }
 
-            @Override
-            public void onDrawFrame(GL10 gl) {
-                gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
-                gl.glMatrixMode(GL10.GL_MODELVIEW);
-                gl.glLoadIdentity();
-
-                // Вращение объекта
-                rotation += 2.0f;
+    private void runStage(Run run, ScheduledStage scheduled, long budgetMs, int index, int total) {
+        BenchmarkStage stage = scheduled.getStage();
+        events.publish(new BenchmarkEvent.StageStart(stage, index, total));
 
-                if (is3DMode) {
-                    // 3D режим - вращающийся куб с улучшенной детализацией
-                    drawDetailedCube(gl);
-                } else {
-                    // 2D режим - сложные 2D фигуры
-                    drawComplex2DScene(gl);
+        StageContext context = new StageContext(this, run, scheduled, budgetMs);
+        run.currentStage = context;
+        if (EngineTrace.ENABLED) {
+            EngineTrace.beginSection("stage " + stage.getId());
+        }
+        EnergyMeter energy = null;
+        ScheduledFuture<?> sampling = null;
+        if (run.powerSampler != null) {
+            energy = new EnergyMeter(powerSource);
+            sampling = startPowerSampling(run.powerSampler, energy);
+        }
+        try {
+            StageResult result = stage.run(context);
+            if (sampling != null) {
+                sampling.cancel(false);
+                energy.sample(System.nanoTime());
+            }
+            if (result != null && run.isActive()) {
+                if (energy != null) {
+                    energy.addMetrics(result);
                 }
+                results.put(stage.getId(), result);
+                log.info(stage.getId() + ": " + result.getScore() + " " + result.getMeasurement());
+                events.publish(new BenchmarkEvent.StageComplete(stage, result));
             }
-
-            private void drawDetailedCube(GL10 gl) {
-                // Вершины куба
-                float vertices[] = {
-                        -1.0f, -1.0f,  1.0f,
-                         1.0f, -1.0f,  1.0f,
-                         1.0f,  1.0f,  1.0f,
-                        -1.0f,  1.0f,  1.0f,
-                        -1.0f, -1.0f, -1.0f,
-                        -1.0f,  1.0f, -1.0f,
-                         1.0f,  1.0f, -1.0f,
-                         1.0f, -1.0f, -1.0f
-                };
-
-                // Нормали для освещения
-                float normals[] = {
-                        0, 0, 1,  0, 0, 1,  0, 0, 1,  0, 0, 1,
-                        0, 0,-1,  0, 0,-1,  0, 0,-1,  0, 0,-1,
-                        0, 1, 0,  0, 1, 0,  0, 1, 0,  0, 1, 0,
-                        0,-1, 0,  0,-1, 0,  0,-1, 0,  0,-1, 0,
-                        1, 0, 0,  1, 0, 0,  1, 0, 0,  1, 0, 0,
-                       -1, 0, 0, -1, 0, 0, -1, 0, 0, -1, 0, 0
-                };
-
-                byte indices[] = {
-                        0, 1, 2, 0, 2, 3,    // Передняя грань
-                        4, 5, 6, 4, 6, 7,    // Задняя грань
-                        3, 2, 6, 3, 6, 5,    // Верхняя грань
-                        0, 3, 5, 0, 5, 4,    // Левая грань
-                        1, 7, 6, 1, 6, 2,    // Правая грань
-                        4, 7, 1, 4, 1, 0     // Нижняя грань
-                };
-
-                FloatBuffer vertexBuffer = createFloatBuffer(vertices);
-                FloatBuffer normalBuffer = createFloatBuffer(normals);
-
-                gl.glTranslatef(0.0f, 0.0f, -6.0f);
-                gl.glRotatef(rotation, 1.0f, 1.0f, 0.0f);
-
-                gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-                gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
-
-                gl.glVertexPointer(3, GL10.GL_FLOAT, 0, vertexBuffer);
-                gl.glNormalPointer(GL10.GL_FLOAT, 0, normalBuffer);
-
-                gl.glDrawElements(GL10.GL_TRIANGLES, indices.length, GL10.GL_UNSIGNED_BYTE, ByteBuffer.wrap(indices));
-
-                gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
-                gl.glDisableClientState(GL10.GL_NORMAL_ARRAY);
+        } catch (Exception e) {
+            log.error("Stage " + stage.getId() + " failed", e);
+            events.publish(new BenchmarkEvent.Error(stage, stage.getName() + ": " + e.getMessage()));
+        } finally {
+            if (sampling != null) {
+                sampling.cancel(false);
             }
+            context.teardown();
+            run.currentStage = null;
+            EngineTrace.endSection();
+        }
+    }
 
-            private void drawComplex2DScene(GL10 gl) {
-                // Рисуем сложную 2D сцену с множеством примитивов
-                for (int i = 0; i < 20; i++) {
-                    float x = (float) (Math.random() * 4 - 2);
-                    float y = (float) (Math.random() * 4 - 2);
-
-                    gl.glTranslatef(x, y, 0);
-                    gl.glRotatef(rotation * 2, 0, 0, 1);
-
-                    // Рисуем треугольник
-                    float[] triangle = {
-                            0.5f, 0.0f, 0.0f,
-                           -0.5f, 0.4f, 0.0f,
-                           -0.5f, -0.4f, 0.0f
-                    };
-
-                    FloatBuffer triangleBuffer = createFloatBuffer(triangle);
-                    gl.glVertexPointer(3, GL10.GL_FLOAT, 0, triangleBuffer);
-                    gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-
-                    float r = (float) Math.random();
-                    float g = (float) Math.random();
-                    float b = (float) Math.random();
-                    gl.glColor4f(r, g, b, 1.0f);
-
-                    gl.glDrawArrays(GL10.GL_TRIANGLES, 0, 3);
-
-                    gl.glLoadIdentity();
+    /**
+     * Опрос мощности на отдельном потоке; время паузы теста не интегрируется.
+     */
+    private ScheduledFuture<?> startPowerSampling(ScheduledExecutorService powerSampler, final EnergyMeter energy) {
+        energy.sample(System.nanoTime());
+        return powerSampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (pauseGate.isPaused()) {
+                    energy.gap();
+                } else {
+                    energy.sample(System.nanoTime());
                 }
             }
-
-            private FloatBuffer createFloatBuffer(float[] data) {
-                ByteBuffer buffer = ByteBuffer.allocateDirect(data.length * 4);
-                buffer.order(ByteOrder.nativeOrder());
-                FloatBuffer fb = buffer.asFloatBuffer();
-                fb.put(data);
-                fb.position(0);
-                return fb;
-            }
-        });
+        }, POWER_SAMPLE_MS, POWER_SAMPLE_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Пауза тестирования.
+     * Пауза тестирования. Рабочие потоки паркуются в {@link PauseGate},
+     * время паузы не учитывается в замерах и сроках этапов.
      */
     public void pause() {
-        isPaused.set(true);
+        pauseGate.pause();
     }
 
     /**
-     * Возобновление тестирования.
+     * Возобновление тестирования. Рабочие потоки продолжают работу сразу.
      */
     public void resume() {
-        isPaused.set(false);
+        pauseGate.resume();
     }
 
     /**
-     * Остановка всех тестов.
+     * Остановка всех тестов. Прерывает текущий этап, рабочие потоки и поток планировщика.
      */
     public void stopAll() {
-        isRunning.set(false);
-        isPaused.set(false);
-
-        if (cpuExecutor != null) {
-            cpuExecutor.shutdownNow();
+        Run run;
+        synchronized (this) {
+            run = currentRun;
         }
-        if (ramExecutor != null) {
-            ramExecutor.shutdownNow();
+        pauseGate.resume();
+        if (run != null) {
+            run.stop();
         }
     }
 
-    private int calculateCpuScore(long operations, long elapsedMs) {
-        if (elapsedMs <= 0) return 0;
-        float opsPerSecond = (operations * 1000f) / elapsedMs;
-        return Math.min((int) (opsPerSecond / 10), 10000);
+    /**
+     * Дожидается окончания текущего запуска, в том числе остановленного через
+     * {@link #stopAll()}: этап снят, последние события опубликованы.
+     *
+     * @return false, если время вышло
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        Run run;
+        synchronized (this) {
+            run = currentRun;
+        }
+        return run == null || run.scheduler.awaitTermination(timeout, unit);
+    }
+
+    void publish(BenchmarkEvent event) {
+        events.publish(event);
+    }
+
+    synchronized boolean isRunning() {
+        return currentRun != null && currentRun.isActive();
+    }
+
+    PauseGate getPauseGate() {
+        return pauseGate;
     }
 
-    private int calculateRamScore(long operations, long allocatedBytes, long elapsedMs) {
-        if (elapsedMs <= 0) return 0;
-        float mbPerSecond = (allocatedBytes / (1024f * 1024f)) / (elapsedMs / 1000f);
-        return Math.min((int) (mbPerSecond * 100), 10000);
+    int getCpuThreads() {
+        return cpuThreads;
     }
 
-    private int calculateGpuScore(float fps) {
-        return Math.min((int) (fps * 100), 10000);
+    int getGpuMode() {
+        return gpuMode;
     }
 
-    public int getCpuScore() {
-        return cpuScore.get();
+    int getMeasurementIterations() {
+        return measurementIterations;
     }
 
-    public int getRamScore() {
-        return ramScore.get();
+    boolean isEarlyStopEnabled() {
+        return earlyStop;
     }
 
-    public int getGpuScore() {
-        return gpuScore.get();
+    /**
+     * Результат этапа по идентификатору или null, если этап не выполнялся.
+     */
+    public StageResult getResult(String stageId) {
+        return results.get(stageId);
     }
 
+    /**
+     * Результаты всех завершенных этапов в порядке выполнения.
+     */
+    public List<StageResult> getResults() {
+        synchronized (results) {
+            return new ArrayList<>(results.values());
+        }
+    }
+
+    /**
+     * Общий балл по {@link ScoreModel}: взвешенное геометрическое среднее баллов этапов.
+     */
     public int getTotalScore() {
-        return cpuScore.get() + ramScore.get() + gpuScore.get();
+        return scoreModel.getTotalScore(getResults());
+    }
+
+    /**
+     * Балл отзывчивости приложений: балл по {@link ScoreModel} только прикладных этапов
+     * ({@link #APP_STAGE_IDS}); 0, если они не выполнялись.
+     */
+    public int getAppScore() {
+        return scoreModel.getGroupScore(getResults(), APP_STAGE_IDS);
+    }
+
+    /**
+     * Один запуск: его пулы потоков, текущий этап и признак активности. Каждый запуск
+     * останавливает только свои пулы, поэтому запоздавшее завершение старого запуска не
+     * затрагивает новый.
+     */
+    static final class Run {
+        final ThreadPoolExecutor workerPool;
+        final ScheduledExecutorService scheduler;
+        final ScheduledExecutorService powerSampler;
+        final int poolSize;
+        volatile StageContext currentStage;
+        private final AtomicBoolean active = new AtomicBoolean(true);
+
+        Run(int poolSize, boolean samplePower) {
+            this.poolSize = poolSize;
+            workerPool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("StressTest-worker"));
+            // Потоки создаются заранее, чтобы не тратить время на границах этапов
+            workerPool.prestartAllCoreThreads();
+            scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("StressTest-scheduler"));
+            powerSampler = samplePower
+                    ? Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("StressTest-power")) : null;
+        }
+
+        boolean isActive() {
+            return active.get();
+        }
+
+        /**
+         * Остановка извне: прерывает текущий этап, рабочие потоки и поток планировщика.
+         */
+        void stop() {
+            active.set(false);
+            StageContext stage = currentStage;
+            if (stage != null) {
+                stage.finish();
+            }
+            scheduler.shutdownNow();
+            shutdownWorkers();
+        }
+
+        /**
+         * Завершение на потоке планировщика: сам поток не прерывается.
+         */
+        void finish() {
+            active.set(false);
+            scheduler.shutdown();
+            shutdownWorkers();
+        }
+
+        private void shutdownWorkers() {
+            workerPool.shutdownNow();
+            if (powerSampler != null) {
+                powerSampler.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Фабрика именованных потоков движка.
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, prefix + "-" + counter.incrementAndGet());
+        }
     }
 }
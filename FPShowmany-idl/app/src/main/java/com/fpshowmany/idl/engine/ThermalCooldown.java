@@ -0,0 +1,136 @@
+package com.fpshowmany.idl.engine;
+
+/**
+ * Остывание между запусками серии. Перед первым запуском запоминается исходное состояние
+ * ({@link #captureBaseline()}); перед каждым следующим {@link #await()} ждет, пока
+ * температура не вернется в полосу исходная + band, а тепловой статус - к исходному,
+ * но не дольше тайм-аута. Если устройство было нагрето уже при захвате, полоса
+ * отсчитывается от нагретого состояния. Класс не пишет в журнал: исходное и последнее
+ * прочитанное состояние доступны через геттеры.
+ */
+public class ThermalCooldown {
+
+    /**
+     * Монотонные часы ожидания.
+     */
+    public interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+        };
+
+        long nanoTime();
+    }
+
+    public static final double DEFAULT_BAND = 2.0;
+    public static final long DEFAULT_TIMEOUT_MS = 10 * 60 * 1000;
+    static final long POLL_MS = 5000;
+
+    private final ThermalSensor sensor;
+    private final Clock clock;
+    private final double band;
+    private final long timeoutMs;
+    private final long pollMs;
+    private double baselineTemperature = Double.NaN;
+    private int baselineStatus = -1;
+    private double lastTemperature = Double.NaN;
+    private int lastStatus = -1;
+    private long lastWaitMs;
+
+    /**
+     * @param band      Допуск над исходной температурой, °C, не меньше нуля
+     * @param timeoutMs Наибольшее время ожидания, мс
+     * @throws IllegalArgumentException при отрицательном band или timeoutMs
+     */
+    public ThermalCooldown(ThermalSensor sensor, double band, long timeoutMs) {
+        this(sensor, Clock.SYSTEM, band, timeoutMs, POLL_MS);
+    }
+
+    ThermalCooldown(ThermalSensor sensor, Clock clock, double band, long timeoutMs, long pollMs) {
+        if (!(band >= 0) || timeoutMs < 0) {
+            throw new IllegalArgumentException("Invalid cooldown: band " + band + ", timeout " + timeoutMs);
+        }
+        this.sensor = sensor;
+        this.clock = clock;
+        this.band = band;
+        this.timeoutMs = timeoutMs;
+        this.pollMs = pollMs;
+    }
+
+    /**
+     * Запоминает текущее состояние как исходное.
+     */
+    public void captureBaseline() {
+        baselineTemperature = sensor.readTemperature();
+        baselineStatus = sensor.readThermalStatus();
+    }
+
+    /**
+     * @return Исходная температура, °C, или Double.NaN
+     */
+    public double getBaselineTemperature() {
+        return baselineTemperature;
+    }
+
+    /**
+     * @return Исходный тепловой статус или -1
+     */
+    public int getBaselineStatus() {
+        return baselineStatus;
+    }
+
+    /**
+     * @return Температура последнего опроса {@link #await()}, °C, или Double.NaN
+     */
+    public double getLastTemperature() {
+        return lastTemperature;
+    }
+
+    /**
+     * @return Тепловой статус последнего опроса {@link #await()} или -1
+     */
+    public int getLastStatus() {
+        return lastStatus;
+    }
+
+    /**
+     * @return Длительность последнего {@link #await()}, мс
+     */
+    public long getLastWaitMs() {
+        return lastWaitMs;
+    }
+
+    /**
+     * Вернулось ли состояние к исходному. Неизвестные температура или статус не мешают.
+     */
+    boolean isWithinBand(double temperature, int status) {
+        boolean temperatureOk = Double.isNaN(temperature) || Double.isNaN(baselineTemperature)
+                || temperature <= baselineTemperature + band;
+        boolean statusOk = status < 0 || baselineStatus < 0 || status <= baselineStatus;
+        return temperatureOk && statusOk;
+    }
+
+    /**
+     * Ждет возврата в полосу.
+     *
+     * @return true, если устройство остыло; false по тайм-ауту
+     * @throws InterruptedException если ожидание прервано
+     */
+    public boolean await() throws InterruptedException {
+        long start = clock.nanoTime();
+        while (true) {
+            lastTemperature = sensor.readTemperature();
+            lastStatus = sensor.readThermalStatus();
+            lastWaitMs = (clock.nanoTime() - start) / 1000000L;
+            if (isWithinBand(lastTemperature, lastStatus)) {
+                return true;
+            }
+            if (lastWaitMs >= timeoutMs) {
+                return false;
+            }
+            Thread.sleep(Math.min(pollMs, timeoutMs - lastWaitMs));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.fpshowmany.idl.engine;
+
+/**
+ * Тепловое состояние устройства для остывания между запусками ({@link ThermalCooldown}).
+ */
+public interface ThermalSensor {
+
+    /**
+     * Температура, °C.
+     *
+     * @return Double.NaN, если неизвестна
+     */
+    double readTemperature();
+
+    /**
+     * Тепловой статус системы (PowerManager.THERMAL_STATUS_*).
+     *
+     * @return -1, если неизвестен
+     */
+    int readThermalStatus();
+}
@@ -0,0 +1,119 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Прикладной этап: декодирование JPEG и масштабирование до превью, как при загрузке
+ * картинок в ленту. Изображение {@link #WIDTH}x{@link #HEIGHT} генерируется и сжимается
+ * один раз; за одну операцию оно декодируется и уменьшается с фильтрацией.
+ * Счетчик - обработанные изображения.
+ */
+public class BitmapStage extends WorkloadStage {
+
+    public static final String ID = "bitmap";
+
+    static final int WIDTH = 1024;
+    static final int HEIGHT = 768;
+    static final int THUMB_WIDTH = 320;
+    static final int THUMB_HEIGHT = 240;
+    private static final int JPEG_QUALITY = 90;
+
+    private volatile byte[] encoded;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Изображения";
+    }
+
+    @Override
+    public String getUnit() {
+        return "img/s";
+    }
+
+    @Override
+    protected void prepare() {
+        Bitmap source = Bitmap.createBitmap(createPixels(new Random(SEED)), WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!source.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IllegalStateException("JPEG encoding failed");
+            }
+            encoded = out.toByteArray();
+        } finally {
+            source.recycle();
+        }
+    }
+
+    @Override
+    protected Kernel createKernel(int worker) {
+        final byte[] data = encoded;
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return new Kernel() {
+            @Override
+            public long run() {
+                Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                if (decoded == null) {
+                    throw new IllegalStateException("JPEG decoding failed");
+                }
+                Bitmap thumbnail = Bitmap.createScaledBitmap(decoded, THUMB_WIDTH, THUMB_HEIGHT, true);
+                if (thumbnail != decoded) {
+                    thumbnail.recycle();
+                }
+                decoded.recycle();
+                return 1;
+            }
+        };
+    }
+
+    /**
+     * Картинка, похожая на фотографию: плавные градиенты, несколько пятен и слабый шум,
+     * чтобы JPEG сжимался как обычный снимок, а не как шум или заливка.
+     */
+    static int[] createPixels(Random random) {
+        int spots = 12;
+        int[] spotX = new int[spots];
+        int[] spotY = new int[spots];
+        int[] spotRadius = new int[spots];
+        int[] spotColor = new int[spots];
+        for (int i = 0; i < spots; i++) {
+            spotX[i] = random.nextInt(WIDTH);
+            spotY[i] = random.nextInt(HEIGHT);
+            spotRadius[i] = 40 + random.nextInt(160);
+            spotColor[i] = random.nextInt(0x1000000);
+        }
+
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = x * 255 / WIDTH;
+                int g = y * 255 / HEIGHT;
+                int b = (x + y) * 255 / (WIDTH + HEIGHT);
+                for (int i = 0; i < spots; i++) {
+                    int dx = x - spotX[i];
+                    int dy = y - spotY[i];
+                    if (dx * dx + dy * dy < spotRadius[i] * spotRadius[i]) {
+                        r = (r + (spotColor[i] >> 16 & 0xFF)) / 2;
+                        g = (g + (spotColor[i] >> 8 & 0xFF)) / 2;
+                        b = (b + (spotColor[i] & 0xFF)) / 2;
+                    }
+                }
+                int noise = random.nextInt(9) - 4;
+                r = Math.max(0, Math.min(255, r + noise));
+                g = Math.max(0, Math.min(255, g + noise));
+                b = Math.max(0, Math.min(255, b + noise));
+                pixels[y * WIDTH + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return pixels;
+    }
+}
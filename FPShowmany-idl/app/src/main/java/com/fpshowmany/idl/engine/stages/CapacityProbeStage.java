@@ -0,0 +1,288 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Debug;
+import android.util.Log;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+import com.fpshowmany.idl.utils.Statistics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Поиск доступного объема памяти: этап шагами по {@link #PARAM_STEP_MB} занимает память
+ * вне кучи ({@link OffHeapRegion}), касаясь каждой страницы, и после каждого шага смотрит на
+ * {@link SystemMemory}, PSS процесса ({@link Debug}) и уровни onTrimMemory. Первый признак
+ * нехватки отмечает объем до нехватки памяти; рост прекращается, когда до порога LMK
+ * остается меньше {@link Probe#SAFETY_STEPS} шагов или система сообщает о критической
+ * нехватке, после чего вся память освобождается. Объем до убийства процесса оценивается
+ * как занятое плюс остаток до порога.
+ * <p>
+ * Показатель этапа - средняя скорость занятия памяти по шагам, МБ/с; скорость каждого шага
+ * публикуется как замер. Объемы - показатели результата в МБ.
+ */
+public class CapacityProbeStage implements BenchmarkStage {
+
+    public static final String ID = "memcap";
+
+    public static final String PARAM_STEP_MB = "step_mb";
+
+    static final String METRIC_PRESSURE_MB = "pressure_mb";
+    static final String METRIC_KILL_ESTIMATE_MB = "kill_estimate_mb";
+    static final String METRIC_PEAK_MB = "peak_mb";
+    static final String METRIC_PEAK_PSS_MB = "peak_pss_mb";
+    static final String METRIC_STEPS = "steps";
+
+    static final int DEFAULT_STEP_MB = 128;
+    static final int MAX_STEP_MB = 1024;
+
+    private static final String TAG = "CapacityProbeStage";
+    private static final long MB = 1024 * 1024;
+    private static final int PAGE_SIZE = 4096;
+    // Пауза после шага, чтобы система успела отреагировать на новый объем
+    private static final long SETTLE_MS = 100;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Объем памяти";
+    }
+
+    @Override
+    public String getUnit() {
+        return "MB/s";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        Context appContext = context.getAppContext();
+        SystemMemory memory = new SystemMemory(appContext);
+        int stepMb = Math.max(1, Math.min(MAX_STEP_MB, context.getIntParam(PARAM_STEP_MB, DEFAULT_STEP_MB)));
+        Probe probe = new Probe(stepMb * MB);
+
+        final AtomicInteger trimLevel = new AtomicInteger();
+        ComponentCallbacks2 callbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                EngineTrace.instant("memcap trim " + level);
+                int pressure = runningTrimLevel(level);
+                if (pressure > trimLevel.get()) {
+                    trimLevel.set(pressure);
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimLevel.set(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+            }
+        };
+        if (appContext != null) {
+            appContext.registerComponentCallbacks(callbacks);
+        }
+
+        List<OffHeapRegion> regions = new ArrayList<>();
+        double[] throughputs = new double[16];
+        long peakPss = 0;
+        try {
+            while (context.isActive()) {
+                try {
+                    context.awaitIfPaused();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                OffHeapRegion region;
+                long start = System.nanoTime();
+                try {
+                    region = OffHeapRegion.allocate("memcap-" + regions.size(), stepMb * 1024 * 1024);
+                } catch (OutOfMemoryError e) {
+                    memory.update();
+                    probe.onAllocationFailed(memory.getAvailableBytes(), memory.getThresholdBytes());
+                    break;
+                }
+                regions.add(region);
+                touchPages(region);
+                double throughput = probe.getStepBytes() * 1e9 / MB / Math.max(1, System.nanoTime() - start);
+
+                try {
+                    Thread.sleep(SETTLE_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                memory.update();
+                long pss = Debug.getPss() * 1024;
+                peakPss = Math.max(peakPss, pss);
+
+                int step = probe.getSteps();
+                if (step == throughputs.length) {
+                    throughputs = Arrays.copyOf(throughputs, step * 2);
+                }
+                throughputs[step] = throughput;
+                context.reportSample(throughput);
+                context.reportProgress(context.getTimeProgress(), (float) throughput, context.score(throughput));
+                if (EngineTrace.ENABLED) {
+                    EngineTrace.setCounter("memcap allocated", probe.getAllocatedBytes() + probe.getStepBytes());
+                    EngineTrace.setCounter("memcap available", memory.getAvailableBytes());
+                }
+                Log.i(TAG, String.format(Locale.US, "%d MB: %.0f MB/s, avail %d MB, threshold %d MB, pss %d MB, trim %d",
+                        (probe.getAllocatedBytes() + probe.getStepBytes()) / MB, throughput,
+                        memory.getAvailableBytes() / MB, memory.getThresholdBytes() / MB, pss / MB, trimLevel.get()));
+
+                if (!probe.onStep(memory.getAvailableBytes(), memory.getThresholdBytes(),
+                        memory.isLowMemory(), trimLevel.get())) {
+                    break;
+                }
+            }
+        } finally {
+            // Отступление: вся занятая память возвращается системе
+            for (OffHeapRegion region : regions) {
+                region.close();
+            }
+            if (appContext != null) {
+                appContext.unregisterComponentCallbacks(callbacks);
+            }
+        }
+
+        int steps = probe.getSteps();
+        MeasurementResult result = new MeasurementResult(Statistics.mean(throughputs, steps),
+                Statistics.standardDeviation(throughputs, steps), Statistics.confidenceInterval95(throughputs, steps),
+                steps, 0, steps > 0, false);
+        StageResult stageResult = new StageResult(ID, context.score(result.getMean()), result)
+                .addMetric(METRIC_STEPS, steps)
+                .addMetric(METRIC_PEAK_MB, (double) probe.getAllocatedBytes() / MB)
+                .addMetric(METRIC_PEAK_PSS_MB, (double) peakPss / MB);
+        if (probe.getPressureBytes() >= 0) {
+            stageResult.addMetric(METRIC_PRESSURE_MB, (double) probe.getPressureBytes() / MB);
+        }
+        if (probe.getKillEstimateBytes() >= 0) {
+            stageResult.addMetric(METRIC_KILL_ESTIMATE_MB, (double) probe.getKillEstimateBytes() / MB);
+        }
+        return stageResult;
+    }
+
+    // Запись в каждую страницу, чтобы система действительно выделила память
+    private static void touchPages(OffHeapRegion region) {
+        ByteBuffer buffer = region.getBuffer();
+        int size = buffer.capacity();
+        for (int offset = 0; offset < size; offset += PAGE_SIZE) {
+            buffer.put(offset, (byte) 1);
+        }
+    }
+
+    /**
+     * Решения пробы по состоянию памяти после каждого шага.
+     */
+    /**
+     * Уровень onTrimMemory как признак нехватки памяти у работающего процесса: уровни
+     * RUNNING_MODERATE, RUNNING_LOW и RUNNING_CRITICAL как есть, остальные - 0. UI_HIDDEN
+     * означает уход в фон, а BACKGROUND, MODERATE и COMPLETE - место процесса в списке
+     * кэшированных, а не нехватку памяти во время работы.
+     */
+    static int runningTrimLevel(int level) {
+        switch (level) {
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+                return level;
+            default:
+                return 0;
+        }
+    }
+
+    static final class Probe {
+        // Рост прекращается, когда до порога остается меньше стольких шагов
+        static final int SAFETY_STEPS = 2;
+
+        private final long stepBytes;
+        private long allocatedBytes;
+        private int steps;
+        private long pressureBytes = -1;
+        private long killEstimateBytes = -1;
+
+        Probe(long stepBytes) {
+            this.stepBytes = stepBytes;
+        }
+
+        /**
+         * Шаг выполнен: занято еще {@link #getStepBytes()}.
+         *
+         * @param trimLevel Наибольший уровень {@link #runningTrimLevel} с начала пробы, 0 - не было
+         * @return Продолжать ли рост
+         */
+        boolean onStep(long availBytes, long thresholdBytes, boolean lowMemory, int trimLevel) {
+            long before = allocatedBytes;
+            allocatedBytes += stepBytes;
+            steps++;
+            long headroom = availBytes - thresholdBytes;
+            boolean pressure = lowMemory || trimLevel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE
+                    || headroom < thresholdBytes * SystemMemory.RESERVE_THRESHOLDS;
+            if (pressure && pressureBytes < 0) {
+                // Последний объем, при котором признаков нехватки еще не было
+                pressureBytes = before;
+            }
+            boolean critical = lowMemory || trimLevel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                    || headroom < stepBytes * SAFETY_STEPS;
+            if (critical) {
+                killEstimateBytes = allocatedBytes + Math.max(0, headroom);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Шаг не выделен: предел процесса достигнут раньше системного.
+         */
+        void onAllocationFailed(long availBytes, long thresholdBytes) {
+            if (pressureBytes < 0) {
+                pressureBytes = allocatedBytes;
+            }
+            killEstimateBytes = allocatedBytes + Math.max(0, availBytes - thresholdBytes);
+        }
+
+        long getStepBytes() {
+            return stepBytes;
+        }
+
+        long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        int getSteps() {
+            return steps;
+        }
+
+        /**
+         * @return Объем до первого признака нехватки или -1, если ее не было
+         */
+        long getPressureBytes() {
+            return pressureBytes;
+        }
+
+        /**
+         * @return Оценка объема до убийства процесса или -1, если проба не дошла до предела
+         */
+        long getKillEstimateBytes() {
+            return killEstimateBytes;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.fpshowmany.idl.engine.stages;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Политики cpufreq ядра Linux: каждая политика - кластер ядер с общей частотой
+ * (/sys/devices/system/cpu/cpufreq/policyN). На части устройств файлы закрыты SELinux,
+ * тогда список политик пуст или частота не читается.
+ */
+public final class CpuFreq {
+
+    public static final File DEFAULT_ROOT = new File("/sys/devices/system/cpu/cpufreq");
+
+    /**
+     * Политика: имя, ядра и текущая частота.
+     */
+    public static final class Policy {
+        private final String name;
+        private final String cpus;
+        private final File curFreqFile;
+        private final long maxFreqKhz;
+
+        Policy(String name, String cpus, File curFreqFile, long maxFreqKhz) {
+            this.name = name;
+            this.cpus = cpus;
+            this.curFreqFile = curFreqFile;
+            this.maxFreqKhz = maxFreqKhz;
+        }
+
+        /**
+         * Имя каталога политики, например policy4.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Ядра политики из affected_cpus, через пробел.
+         */
+        public String getCpus() {
+            return cpus;
+        }
+
+        /**
+         * Паспортная максимальная частота, кГц; 0, если неизвестна.
+         */
+        public long getMaxFreqKhz() {
+            return maxFreqKhz;
+        }
+
+        /**
+         * Текущая частота, кГц.
+         *
+         * @return -1, если файл не читается
+         */
+        public long readCurFreqKhz() {
+            return readLong(curFreqFile);
+        }
+
+        /**
+         * Открывает текущую частоту для частого чтения без выделения памяти.
+         *
+         * @throws IOException если файл не открывается
+         */
+        public FreqReader openCurFreq() throws IOException {
+            return new FreqReader(curFreqFile);
+        }
+    }
+
+    /**
+     * Открытый файл частоты: каждое чтение перечитывает его с начала в свой буфер.
+     */
+    public static final class FreqReader implements Closeable {
+        private final RandomAccessFile file;
+        private final byte[] buffer = new byte[24];
+
+        FreqReader(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+        }
+
+        /**
+         * Текущая частота, кГц.
+         *
+         * @return -1, если файл не читается
+         */
+        public long readKhz() {
+            int count;
+            try {
+                file.seek(0);
+                count = file.read(buffer);
+            } catch (IOException e) {
+                return -1;
+            }
+            long value = 0;
+            int digits = 0;
+            for (int i = 0; i < count; i++) {
+                int digit = buffer[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                digits++;
+            }
+            return digits > 0 ? value : -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    private CpuFreq() {
+    }
+
+    /**
+     * Политики с читаемой текущей частотой, по возрастанию номера.
+     */
+    public static List<Policy> discover(File root) {
+        List<Policy> policies = new ArrayList<>();
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return policies;
+        }
+        for (File dir : dirs) {
+            if (!dir.getName().startsWith("policy")) {
+                continue;
+            }
+            File curFreq = new File(dir, "scaling_cur_freq");
+            if (readLong(curFreq) < 0) {
+                continue;
+            }
+            String cpus = readLine(new File(dir, "affected_cpus"));
+            long max = readLong(new File(dir, "cpuinfo_max_freq"));
+            policies.add(new Policy(dir.getName(), cpus != null ? cpus : "", curFreq, Math.max(0, max)));
+        }
+        // policy10 после policy9
+        Collections.sort(policies, new Comparator<Policy>() {
+            @Override
+            public int compare(Policy a, Policy b) {
+                return Integer.compare(number(a.getName()), number(b.getName()));
+            }
+        });
+        return policies;
+    }
+
+    private static int number(String policyName) {
+        try {
+            return Integer.parseInt(policyName.substring("policy".length()));
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private static long readLong(File file) {
+        String line = readLine(file);
+        if (line == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(line);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String readLine(File file) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            return line != null ? line.trim() : null;
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+}
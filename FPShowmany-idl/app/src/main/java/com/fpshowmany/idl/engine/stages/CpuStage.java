@@ -0,0 +1,76 @@
+package com.fpshowmany.idl.engine.stages;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Этап нагрузки на CPU.
+ * Все потоки выполняют тригонометрические вычисления, замеряется суммарное число операций в секунду.
+ */
+public class CpuStage implements BenchmarkStage {
+
+    public static final String ID = "cpu";
+
+    // Операций в одной порции вычислений
+    private static final int BATCH = 100000;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Тест CPU";
+    }
+
+    @Override
+    public String getUnit() {
+        return "kops/s";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        final LongAdder operations = new LongAdder();
+
+        // Запуск потоков для нагрузки на CPU
+        context.startWorkers(context.getCpuThreads(), new Runnable() {
+            @Override
+            public void run() {
+                while (context.isActive()) {
+                    try {
+                        context.awaitIfPaused();
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+
+                    if (EngineTrace.ENABLED) {
+                        EngineTrace.beginSection("cpu batch");
+                    }
+                    // Выполняем тяжелые вычисления
+                    for (int j = 0; j < BATCH; j++) {
+                        double result = Math.sin(j) * Math.cos(j) * Math.tan(j);
+                    }
+                    operations.add(BATCH);
+                    if (EngineTrace.ENABLED) {
+                        EngineTrace.endSection();
+                    }
+                }
+            }
+        });
+
+        MeasurementResult result = context.measure(operations, new StageContext.SampleListener() {
+            @Override
+            public void onSample(int progress, double throughput) {
+                context.reportProgress(progress, (float) (throughput / 1000), context.score(throughput));
+            }
+        });
+
+        return new StageResult(ID, context.score(result.getMean()), result);
+    }
+}
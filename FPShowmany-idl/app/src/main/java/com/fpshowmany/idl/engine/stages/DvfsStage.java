@@ -0,0 +1,430 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.util.Log;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+import com.fpshowmany.idl.utils.Statistics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отклик регулятора частоты (DVFS) на прерывистую нагрузку, как у интерфейса: вспышки
+ * работы по {@link #PARAM_BURST_MS} мс каждые {@link #PARAM_PERIOD_MS} мс, между ними
+ * простой. Вспышки всех потоков идут по общему расписанию. Во вспышке работа выполняется
+ * короткими порциями одинакового размера, по времени порций видно, как растет скорость
+ * после простоя; одновременно каждые {@link #FREQ_SAMPLE_MS} мс читается частота
+ * каждого кластера ({@link CpuFreq}) через файлы, открытые на все время этапа, чтобы опрос
+ * не выделял памяти и не нагружал ядро открытием файлов.
+ * <p>
+ * Показатель этапа - скорость работы во вспышке, Mops/s: чем быстрее регулятор поднимает
+ * частоту, тем она выше. Показатели результата - медианы по вспышкам: время до
+ * {@link #RAMP_FRACTION} пиковой скорости работы и, для каждого кластера, время подъема
+ * частоты до {@link #RAMP_FRACTION} максимума после начала вспышки и спада до уровня
+ * простоя после ее конца. Первая вспышка калибровочная и не учитывается.
+ * Параметры шага: {@link #PARAM_BURST_MS}, {@link #PARAM_PERIOD_MS}, число потоков -
+ * {@link StageContext#PARAM_THREADS}, по умолчанию один.
+ */
+public class DvfsStage implements BenchmarkStage {
+
+    public static final String ID = "dvfs";
+
+    public static final String PARAM_BURST_MS = "burst_ms";
+    public static final String PARAM_PERIOD_MS = "period_ms";
+
+    static final String METRIC_BURSTS = "bursts";
+    static final String METRIC_WORK_RAMP_MS = "work_ramp_ms";
+    static final String METRIC_RAMP_UP_MS = "ramp_up_ms_";
+    static final String METRIC_RAMP_DOWN_MS = "ramp_down_ms_";
+    static final String METRIC_MAX_MHZ = "max_mhz_";
+
+    static final int DEFAULT_BURST_MS = 200;
+    static final int DEFAULT_PERIOD_MS = 1000;
+    static final double RAMP_FRACTION = 0.9;
+    // Частота простоя: не выше минимальной наблюдаемой плюс эта доля
+    static final double IDLE_MARGIN = 0.1;
+    static final long FREQ_SAMPLE_MS = 2;
+    // Прогресс публикуется реже, чем опрашивается частота
+    static final long PROGRESS_INTERVAL_MS = 100;
+
+    // Порция работы - доли миллисекунды даже на быстрых ядрах
+    static final int SLICE_ITERATIONS = 20000;
+    private static final int MAX_SLICES = 1 << 16;
+    // Запас до первой вспышки, чтобы все потоки успели стартовать
+    private static final long START_DELAY_MS = 300;
+
+    private static final String TAG = "DvfsStage";
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Отклик частоты CPU";
+    }
+
+    @Override
+    public String getUnit() {
+        return "Mops/s";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        final long burstNanos = Math.max(1, context.getIntParam(PARAM_BURST_MS, DEFAULT_BURST_MS)) * 1000000L;
+        final long periodNanos = Math.max(burstNanos / 1000000L + 1,
+                context.getIntParam(PARAM_PERIOD_MS, DEFAULT_PERIOD_MS)) * 1000000L;
+        final long origin = System.nanoTime() + START_DELAY_MS * 1000000L;
+        final Results results = new Results();
+        final AtomicInteger sink = new AtomicInteger();
+
+        context.startWorkers(context.getIntParam(StageContext.PARAM_THREADS, 1), new Runnable() {
+            @Override
+            public void run() {
+                long[] sliceEnds = new long[MAX_SLICES];
+                long bestSliceNanos = Long.MAX_VALUE;
+                int state = 1;
+                try {
+                    while (context.isActive()) {
+                        context.awaitIfPaused();
+                        long burst = nextBurst(origin, periodNanos, System.nanoTime());
+                        long start = origin + burst * periodNanos;
+                        sleepUntil(start);
+                        long end = start + burstNanos;
+
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.beginSection("dvfs burst");
+                        }
+                        int slices = 0;
+                        long now = System.nanoTime();
+                        while (now < end) {
+                            state = work(state);
+                            now = System.nanoTime();
+                            if (slices < MAX_SLICES) {
+                                sliceEnds[slices] = now;
+                            }
+                            slices++;
+                        }
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.endSection();
+                        }
+
+                        int recorded = Math.min(slices, MAX_SLICES);
+                        bestSliceNanos = Math.min(bestSliceNanos, minSliceNanos(start, sliceEnds, recorded));
+                        if (burst == 0) {
+                            continue;
+                        }
+                        double rate = (double) slices * SLICE_ITERATIONS * 1000 / (now - start);
+                        double ramp = rampNanos(start, sliceEnds, recorded,
+                                (long) (bestSliceNanos / RAMP_FRACTION));
+                        results.addBurst(rate, ramp >= 0 ? ramp / 1e6 : -1);
+                        context.reportSample(rate);
+                    }
+                } catch (InterruptedException e) {
+                    // Остановка движка
+                }
+                sink.addAndGet(state);
+            }
+        });
+
+        List<CpuFreq.Policy> policies = CpuFreq.discover(CpuFreq.DEFAULT_ROOT);
+        if (policies.isEmpty()) {
+            Log.w(TAG, "cpufreq is not readable, reporting work ramp only");
+        }
+        FreqTrace[] traces = new FreqTrace[policies.size()];
+        CpuFreq.FreqReader[] readers = new CpuFreq.FreqReader[policies.size()];
+        String[] counters = new String[policies.size()];
+        try {
+            for (int i = 0; i < traces.length; i++) {
+                traces[i] = new FreqTrace((int) (periodNanos / 1000000L / FREQ_SAMPLE_MS) + 16);
+                counters[i] = "dvfs " + policies.get(i).getName();
+                try {
+                    readers[i] = policies.get(i).openCurFreq();
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot open " + policies.get(i).getName(), e);
+                }
+            }
+            sampleFrequencies(context, readers, counters, traces, origin, burstNanos, periodNanos, results);
+        } finally {
+            for (CpuFreq.FreqReader reader : readers) {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        // Файл только читался
+                    }
+                }
+            }
+        }
+
+        double[] rates = results.getRates();
+        MeasurementResult measurement = new MeasurementResult(Statistics.mean(rates, rates.length),
+                Statistics.standardDeviation(rates, rates.length),
+                Statistics.confidenceInterval95(rates, rates.length), rates.length, 0, rates.length > 0, false);
+        StageResult result = new StageResult(ID, context.score(measurement.getMean()), measurement)
+                .addMetric(METRIC_BURSTS, rates.length);
+        double[] workRamps = results.getWorkRamps();
+        if (workRamps.length > 0) {
+            result.addMetric(METRIC_WORK_RAMP_MS, Statistics.median(workRamps, workRamps.length));
+        }
+        for (int i = 0; i < traces.length; i++) {
+            String name = policies.get(i).getName();
+            FreqTrace trace = traces[i];
+            if (trace.rampUpCount > 0) {
+                result.addMetric(METRIC_RAMP_UP_MS + name, Statistics.median(trace.rampUps, trace.rampUpCount));
+            }
+            if (trace.rampDownCount > 0) {
+                result.addMetric(METRIC_RAMP_DOWN_MS + name,
+                        Statistics.median(trace.rampDowns, trace.rampDownCount));
+            }
+            if (trace.maxKhz > 0) {
+                result.addMetric(METRIC_MAX_MHZ + name, trace.maxKhz / 1000.0);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Опрос частот кластеров на потоке этапа, пока этап активен. В конце каждого периода
+     * считаются подъем и спад частоты в нем. Кластеры без открытого файла (null) пропускаются.
+     */
+    private void sampleFrequencies(StageContext context, CpuFreq.FreqReader[] readers, String[] counters,
+                                   FreqTrace[] traces, long origin, long burstNanos, long periodNanos,
+                                   Results results) {
+        long period = -1;
+        long periodStart = 0;
+        long lastProgress = 0;
+        while (context.isActive()) {
+            try {
+                context.awaitIfPaused();
+                Thread.sleep(FREQ_SAMPLE_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long now = System.nanoTime();
+            if (now < origin) {
+                continue;
+            }
+            long current = (now - origin) / periodNanos;
+            if (current != period) {
+                // Калибровочная вспышка только задает пределы частоты
+                boolean analyze = period > 0 && current == period + 1;
+                for (FreqTrace trace : traces) {
+                    trace.finishPeriod(analyze, burstNanos / 1e6);
+                }
+                period = current;
+                periodStart = origin + current * periodNanos;
+            }
+            double time = (now - periodStart) / 1e6;
+            for (int i = 0; i < traces.length; i++) {
+                long khz = readers[i] != null ? readers[i].readKhz() : -1;
+                if (khz > 0) {
+                    traces[i].add(time, khz);
+                    if (EngineTrace.ENABLED) {
+                        EngineTrace.setCounter(counters[i], khz);
+                    }
+                }
+            }
+            if (now - lastProgress >= PROGRESS_INTERVAL_MS * 1000000L) {
+                lastProgress = now;
+                context.reportProgress(context.getTimeProgress(), (float) results.getLastRate(),
+                        context.score(results.getLastRate()));
+            }
+        }
+    }
+
+    // Порция целочисленной работы; результат нужен, чтобы цикл не был выброшен
+    static int work(int state) {
+        for (int i = 0; i < SLICE_ITERATIONS; i++) {
+            state ^= state << 13;
+            state ^= state >>> 17;
+            state ^= state << 5;
+        }
+        return state;
+    }
+
+    /**
+     * Номер ближайшей вспышки, которая еще не началась (или начинается сейчас).
+     */
+    static long nextBurst(long origin, long periodNanos, long now) {
+        if (now <= origin) {
+            return 0;
+        }
+        return (now - origin + periodNanos - 1) / periodNanos;
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            Thread.sleep(remaining / 1000000L, (int) (remaining % 1000000L));
+        }
+    }
+
+    /**
+     * Самая короткая порция во вспышке; Long.MAX_VALUE, если порций нет.
+     */
+    static long minSliceNanos(long start, long[] sliceEnds, int count) {
+        long min = Long.MAX_VALUE;
+        long previous = start;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, sliceEnds[i] - previous);
+            previous = sliceEnds[i];
+        }
+        return min;
+    }
+
+    /**
+     * Время от начала вспышки до начала первой порции не длиннее targetNanos.
+     *
+     * @return -1, если такой порции нет
+     */
+    static long rampNanos(long start, long[] sliceEnds, int count, long targetNanos) {
+        long previous = start;
+        for (int i = 0; i < count; i++) {
+            if (sliceEnds[i] - previous <= targetNanos) {
+                return previous - start;
+            }
+            previous = sliceEnds[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Замеры частоты одного кластера за текущий период и итоги по периодам.
+     */
+    static final class FreqTrace {
+        private double[] times;
+        private long[] khz;
+        private int count;
+
+        long maxKhz;
+        long minKhz = Long.MAX_VALUE;
+
+        double[] rampUps = new double[16];
+        int rampUpCount;
+        double[] rampDowns = new double[16];
+        int rampDownCount;
+
+        FreqTrace(int capacity) {
+            times = new double[capacity];
+            khz = new long[capacity];
+        }
+
+        /**
+         * @param time Время от начала периода (и вспышки), мс
+         */
+        void add(double time, long value) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                khz = Arrays.copyOf(khz, count * 2);
+            }
+            times[count] = time;
+            khz[count] = value;
+            count++;
+            maxKhz = Math.max(maxKhz, value);
+            minKhz = Math.min(minKhz, value);
+        }
+
+        /**
+         * Завершает период: при analyze считает подъем после начала вспышки до
+         * {@link #RAMP_FRACTION} максимума и спад после ее конца до уровня простоя.
+         *
+         * @param burstMs Длительность вспышки, мс
+         */
+        void finishPeriod(boolean analyze, double burstMs) {
+            if (analyze && count > 0) {
+                double up = firstAtOrAbove(times, khz, count, 0, (long) (maxKhz * RAMP_FRACTION));
+                if (up >= 0 && up <= burstMs) {
+                    rampUps = append(rampUps, rampUpCount++, up);
+                }
+                double idle = minKhz * (1 + IDLE_MARGIN);
+                double down = firstAtOrBelow(times, khz, count, burstMs, (long) idle);
+                if (down >= 0) {
+                    rampDowns = append(rampDowns, rampDownCount++, down - burstMs);
+                }
+            }
+            count = 0;
+        }
+
+        private static double[] append(double[] values, int index, double value) {
+            if (index == values.length) {
+                values = Arrays.copyOf(values, index * 2);
+            }
+            values[index] = value;
+            return values;
+        }
+    }
+
+    /**
+     * Время первого замера не раньше from с частотой не ниже target.
+     *
+     * @return -1, если такого замера нет
+     */
+    static double firstAtOrAbove(double[] times, long[] khz, int count, double from, long target) {
+        for (int i = 0; i < count; i++) {
+            if (times[i] >= from && khz[i] >= target) {
+                return times[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Время первого замера не раньше from с частотой не выше target.
+     *
+     * @return -1, если такого замера нет
+     */
+    static double firstAtOrBelow(double[] times, long[] khz, int count, double from, long target) {
+        for (int i = 0; i < count; i++) {
+            if (times[i] >= from && khz[i] <= target) {
+                return times[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Итоги вспышек всех потоков.
+     */
+    private static final class Results {
+        private double[] rates = new double[64];
+        private double[] workRamps = new double[64];
+        private int rateCount;
+        private int rampCount;
+        private volatile double lastRate;
+
+        synchronized void addBurst(double rate, double rampMs) {
+            if (rateCount == rates.length) {
+                rates = Arrays.copyOf(rates, rateCount * 2);
+            }
+            rates[rateCount++] = rate;
+            if (rampMs >= 0) {
+                if (rampCount == workRamps.length) {
+                    workRamps = Arrays.copyOf(workRamps, rampCount * 2);
+                }
+                workRamps[rampCount++] = rampMs;
+            }
+            lastRate = rate;
+        }
+
+        synchronized double[] getRates() {
+            return Arrays.copyOf(rates, rateCount);
+        }
+
+        synchronized double[] getWorkRamps() {
+            return Arrays.copyOf(workRamps, rampCount);
+        }
+
+        double getLastRate() {
+            return lastRate;
+        }
+    }
+}
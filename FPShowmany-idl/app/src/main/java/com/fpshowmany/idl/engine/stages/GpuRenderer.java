@@ -0,0 +1,162 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.opengl.GLSurfaceView;
+import android.opengl.GLU;
+
+import com.fpshowmany.idl.engine.EngineTrace;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Рендерер GPU теста: вращающийся куб (3D) или набор случайных треугольников (2D).
+ * Считает отрисованные кадры.
+ */
+class GpuRenderer implements GLSurfaceView.Renderer {
+
+    private final LongAdder frames = new LongAdder();
+    private volatile boolean is3DMode = true;
+    private float rotation = 0f;
+
+    @Override
+    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        gl.glEnable(GL10.GL_DEPTH_TEST);
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 gl, int width, int height) {
+        gl.glViewport(0, 0, width, height);
+        gl.glMatrixMode(GL10.GL_PROJECTION);
+        gl.glLoadIdentity();
+        GLU.gluPerspective(gl, 45.0f, (float) width / height, 0.1f, 100.0f);
+    }
+
+    @Override
+    public void onDrawFrame(GL10 gl) {
+        EngineTrace.beginSection("gpu frame");
+        gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+        gl.glMatrixMode(GL10.GL_MODELVIEW);
+        gl.glLoadIdentity();
+
+        // Вращение объекта
+        rotation += 2.0f;
+
+        if (is3DMode) {
+            // 3D режим - вращающийся куб с улучшенной детализацией
+            drawDetailedCube(gl);
+        } else {
+            // 2D режим - сложные 2D фигуры
+            drawComplex2DScene(gl);
+        }
+
+        frames.increment();
+        EngineTrace.endSection();
+    }
+
+    private void drawDetailedCube(GL10 gl) {
+        // Вершины куба
+        float vertices[] = {
+                -1.0f, -1.0f,  1.0f,
+                 1.0f, -1.0f,  1.0f,
+                 1.0f,  1.0f,  1.0f,
+                -1.0f,  1.0f,  1.0f,
+                -1.0f, -1.0f, -1.0f,
+                -1.0f,  1.0f, -1.0f,
+                 1.0f,  1.0f, -1.0f,
+                 1.0f, -1.0f, -1.0f
+        };
+
+        // Нормали для освещения
+        float normals[] = {
+                0, 0, 1,  0, 0, 1,  0, 0, 1,  0, 0, 1,
+                0, 0,-1,  0, 0,-1,  0, 0,-1,  0, 0,-1,
+                0, 1, 0,  0, 1, 0,  0, 1, 0,  0, 1, 0,
+                0,-1, 0,  0,-1, 0,  0,-1, 0,  0,-1, 0,
+                1, 0, 0,  1, 0, 0,  1, 0, 0,  1, 0, 0,
+               -1, 0, 0, -1, 0, 0, -1, 0, 0, -1, 0, 0
+        };
+
+        byte indices[] = {
+                0, 1, 2, 0, 2, 3,    // Передняя грань
+                4, 5, 6, 4, 6, 7,    // Задняя грань
+                3, 2, 6, 3, 6, 5,    // Верхняя грань
+                0, 3, 5, 0, 5, 4,    // Левая грань
+                1, 7, 6, 1, 6, 2,    // Правая грань
+                4, 7, 1, 4, 1, 0     // Нижняя грань
+        };
+
+        FloatBuffer vertexBuffer = createFloatBuffer(vertices);
+        FloatBuffer normalBuffer = createFloatBuffer(normals);
+
+        gl.glTranslatef(0.0f, 0.0f, -6.0f);
+        gl.glRotatef(rotation, 1.0f, 1.0f, 0.0f);
+
+        gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
+
+        gl.glVertexPointer(3, GL10.GL_FLOAT, 0, vertexBuffer);
+        gl.glNormalPointer(GL10.GL_FLOAT, 0, normalBuffer);
+
+        gl.glDrawElements(GL10.GL_TRIANGLES, indices.length, GL10.GL_UNSIGNED_BYTE, ByteBuffer.wrap(indices));
+
+        gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+        gl.glDisableClientState(GL10.GL_NORMAL_ARRAY);
+    }
+
+    private void drawComplex2DScene(GL10 gl) {
+        // Рисуем сложную 2D сцену с множеством примитивов
+        for (int i = 0; i < 20; i++) {
+            float x = (float) (Math.random() * 4 - 2);
+            float y = (float) (Math.random() * 4 - 2);
+
+            gl.glTranslatef(x, y, 0);
+            gl.glRotatef(rotation * 2, 0, 0, 1);
+
+            // Рисуем треугольник
+            float[] triangle = {
+                    0.5f, 0.0f, 0.0f,
+                   -0.5f, 0.4f, 0.0f,
+                   -0.5f, -0.4f, 0.0f
+            };
+
+            FloatBuffer triangleBuffer = createFloatBuffer(triangle);
+            gl.glVertexPointer(3, GL10.GL_FLOAT, 0, triangleBuffer);
+            gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+
+            float r = (float) Math.random();
+            float g = (float) Math.random();
+            float b = (float) Math.random();
+            gl.glColor4f(r, g, b, 1.0f);
+
+            gl.glDrawArrays(GL10.GL_TRIANGLES, 0, 3);
+
+            gl.glLoadIdentity();
+        }
+    }
+
+    private FloatBuffer createFloatBuffer(float[] data) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length * 4);
+        buffer.order(ByteOrder.nativeOrder());
+        FloatBuffer fb = buffer.asFloatBuffer();
+        fb.put(data);
+        fb.position(0);
+        return fb;
+    }
+
+    /**
+     * Счетчик отрисованных кадров.
+     */
+    LongAdder getFrameCounter() {
+        return frames;
+    }
+
+    void set3DMode(boolean enabled) {
+        this.is3DMode = enabled;
+    }
+}
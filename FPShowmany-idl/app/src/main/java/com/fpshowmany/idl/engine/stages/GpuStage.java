@@ -0,0 +1,186 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.opengl.GLSurfaceView;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+import com.fpshowmany.idl.engine.StressTestEngine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Этап нагрузки на GPU.
+ * Рендерит сцену в переданный GLSurfaceView или, если его нет, во внеэкранный
+ * pbuffer на рабочем потоке движка, и замеряет количество кадров в секунду.
+ * Внеэкранный режим не зависит от UI и используется при запуске из сервиса.
+ */
+public class GpuStage implements BenchmarkStage {
+
+    public static final String ID = "gpu";
+
+    // Размер внеэкранной поверхности
+    private static final int OFFSCREEN_WIDTH = 1280;
+    private static final int OFFSCREEN_HEIGHT = 720;
+
+    private final GLSurfaceView glSurfaceView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final GpuRenderer renderer = new GpuRenderer();
+    private boolean rendererInstalled = false;
+
+    /**
+     * @param glSurfaceView Поверхность для рендеринга; null - рендеринг во внеэкранный буфер
+     */
+    public GpuStage(GLSurfaceView glSurfaceView) {
+        this.glSurfaceView = glSurfaceView;
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Тест GPU";
+    }
+
+    @Override
+    public String getUnit() {
+        return "FPS";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        int gpuMode = context.getGpuMode();
+        renderer.set3DMode(gpuMode == StressTestEngine.GPU_MODE_3D || gpuMode == StressTestEngine.GPU_MODE_AUTO);
+
+        LongAdder frames = renderer.getFrameCounter();
+        frames.reset();
+
+        StageContext.SampleListener listener = new StageContext.SampleListener() {
+            @Override
+            public void onSample(int progress, double throughput) {
+                float fps = (float) throughput;
+                context.reportProgress(progress, fps, context.score(throughput));
+            }
+        };
+
+        if (glSurfaceView == null) {
+            context.startWorkers(1, new Runnable() {
+                @Override
+                public void run() {
+                    renderOffscreen(context);
+                }
+            });
+            MeasurementResult result = context.measure(frames, listener);
+            return new StageResult(ID, context.score(result.getMean()), result);
+        }
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // setRenderer допускается только один раз за жизнь GLSurfaceView
+                if (!rendererInstalled) {
+                    glSurfaceView.setRenderer(renderer);
+                    rendererInstalled = true;
+                }
+                glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+                glSurfaceView.setVisibility(View.VISIBLE);
+                glSurfaceView.onResume();
+            }
+        });
+
+        try {
+            MeasurementResult result = context.measure(frames, listener);
+            return new StageResult(ID, context.score(result.getMean()), result);
+        } finally {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    glSurfaceView.onPause();
+                    glSurfaceView.setVisibility(View.GONE);
+                }
+            });
+        }
+    }
+
+    /**
+     * Цикл рендеринга во внеэкранный pbuffer. Выполняется на рабочем потоке этапа,
+     * EGL контекст создается и уничтожается на этом же потоке.
+     */
+    private void renderOffscreen(StageContext context) {
+        EGL10 egl = (EGL10) EGLContext.getEGL();
+        EGLDisplay display = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+        EGLContext eglContext = EGL10.EGL_NO_CONTEXT;
+        EGLSurface surface = EGL10.EGL_NO_SURFACE;
+
+        try {
+            if (!egl.eglInitialize(display, new int[2])) {
+                throw new IllegalStateException("eglInitialize failed: " + egl.eglGetError());
+            }
+
+            int[] configAttribs = {
+                    EGL10.EGL_RED_SIZE, 8,
+                    EGL10.EGL_GREEN_SIZE, 8,
+                    EGL10.EGL_BLUE_SIZE, 8,
+                    EGL10.EGL_DEPTH_SIZE, 16,
+                    EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+                    EGL10.EGL_NONE
+            };
+            EGLConfig[] configs = new EGLConfig[1];
+            int[] numConfigs = new int[1];
+            if (!egl.eglChooseConfig(display, configAttribs, configs, 1, numConfigs) || numConfigs[0] == 0) {
+                throw new IllegalStateException("No pbuffer EGL config");
+            }
+
+            eglContext = egl.eglCreateContext(display, configs[0], EGL10.EGL_NO_CONTEXT, null);
+            surface = egl.eglCreatePbufferSurface(display, configs[0], new int[]{
+                    EGL10.EGL_WIDTH, OFFSCREEN_WIDTH,
+                    EGL10.EGL_HEIGHT, OFFSCREEN_HEIGHT,
+                    EGL10.EGL_NONE
+            });
+            if (!egl.eglMakeCurrent(display, surface, surface, eglContext)) {
+                throw new IllegalStateException("eglMakeCurrent failed: " + egl.eglGetError());
+            }
+
+            GL10 gl = (GL10) eglContext.getGL();
+            renderer.onSurfaceCreated(gl, configs[0]);
+            renderer.onSurfaceChanged(gl, OFFSCREEN_WIDTH, OFFSCREEN_HEIGHT);
+
+            while (context.isActive()) {
+                context.awaitIfPaused();
+                renderer.onDrawFrame(gl);
+                // Без swapBuffers кадр считается готовым только после завершения работы GPU
+                EngineTrace.beginSection("gpu finish");
+                gl.glFinish();
+                EngineTrace.endSection();
+            }
+        } catch (InterruptedException e) {
+            // Остановка движка
+        } catch (RuntimeException e) {
+            context.reportError("GPU: " + e.getMessage());
+        } finally {
+            egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+            if (surface != EGL10.EGL_NO_SURFACE) {
+                egl.eglDestroySurface(display, surface);
+            }
+            if (eglContext != EGL10.EGL_NO_CONTEXT) {
+                egl.eglDestroyContext(display, eglContext);
+            }
+            egl.eglTerminate(display);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Прикладной этап: разбор и сериализация JSON ответа сервера через org.json.
+ * Документ - лента из {@link #ITEMS} записей с вложенными объектами и массивами;
+ * за одну операцию документ разбирается, поля записей читаются и дополняются, и он сериализуется обратно.
+ * Счетчик - символы документа, показатель - MB/s.
+ */
+public class JsonStage extends WorkloadStage {
+
+    public static final String ID = "json";
+
+    private static final int ITEMS = 200;
+    private static final double MB = 1024 * 1024;
+
+    private static final String[] TAGS = {"news", "sport", "tech", "music", "travel", "food", "games", "video"};
+
+    private volatile String document;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "JSON";
+    }
+
+    @Override
+    public String getUnit() {
+        return "MB/s";
+    }
+
+    @Override
+    protected void prepare() {
+        document = createDocument(new Random(SEED));
+    }
+
+    @Override
+    protected Kernel createKernel(int worker) {
+        final String json = document;
+        return new Kernel() {
+            @Override
+            public long run() {
+                try {
+                    JSONObject root = new JSONObject(json);
+                    JSONArray items = root.getJSONArray("items");
+                    long likes = 0;
+                    for (int i = 0; i < items.length(); i++) {
+                        JSONObject item = items.getJSONObject(i);
+                        likes += item.getInt("likes");
+                        item.getString("title");
+                        item.getJSONObject("author").getString("name");
+                        item.put("seen", true);
+                    }
+                    root.put("total_likes", likes);
+                    root.toString();
+                } catch (JSONException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                return json.length();
+            }
+        };
+    }
+
+    @Override
+    protected float toDisplayValue(double throughput) {
+        return (float) (throughput / MB);
+    }
+
+    private static String createDocument(Random random) {
+        try {
+            JSONArray items = new JSONArray();
+            for (int i = 0; i < ITEMS; i++) {
+                JSONObject author = new JSONObject()
+                        .put("id", random.nextInt(1000000))
+                        .put("name", randomWord(random, 6) + " " + randomWord(random, 8))
+                        .put("verified", random.nextBoolean());
+                JSONArray tags = new JSONArray();
+                for (int t = random.nextInt(4); t >= 0; t--) {
+                    tags.put(TAGS[random.nextInt(TAGS.length)]);
+                }
+                items.put(new JSONObject()
+                        .put("id", 1000000000L + random.nextInt(Integer.MAX_VALUE))
+                        .put("title", randomSentence(random, 6))
+                        .put("body", randomSentence(random, 30))
+                        .put("likes", random.nextInt(100000))
+                        .put("rating", random.nextInt(500) / 100.0)
+                        .put("author", author)
+                        .put("tags", tags));
+            }
+            return new JSONObject()
+                    .put("page", 1)
+                    .put("next", "https://api.example.com/v1/feed?cursor=" + randomWord(random, 16))
+                    .put("items", items)
+                    .toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.fpshowmany.idl.engine.stages;
+
+import java.util.Arrays;
+
+/**
+ * Задержки отдельных операций для процентилей. Хранит последние {@code capacity} значений
+ * в заранее выделенном массиве, поэтому запись не выделяет памяти и не искажает замер;
+ * сумма и число считаются по всем записям. Класс не потокобезопасен.
+ */
+final class LatencyRecorder {
+
+    /**
+     * Процентили задержки в показателях этапов и суффиксы их имен.
+     */
+    static final double[] PERCENTILES = {50, 95, 99};
+    static final String[] PERCENTILE_SUFFIXES = {"_p50_us", "_p95_us", "_p99_us"};
+
+    private final long[] nanos;
+    // Сколько значений записано в кольцо; меньше count после addAll с переполненным кольцом
+    private long written;
+    private long count;
+    private long totalNanos;
+
+    /**
+     * @throws IllegalArgumentException если capacity меньше 1
+     */
+    LatencyRecorder(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        nanos = new long[capacity];
+    }
+
+    void record(long latencyNanos) {
+        nanos[(int) (written++ % nanos.length)] = latencyNanos;
+        count++;
+        totalNanos += latencyNanos;
+    }
+
+    /**
+     * Добавляет записи другого регистратора, например потока клиента: его сохраненные
+     * значения попадают в кольцо, счетчики складываются.
+     */
+    void addAll(LatencyRecorder other) {
+        int size = (int) Math.min(other.written, other.nanos.length);
+        for (int i = 0; i < size; i++) {
+            nanos[(int) (written++ % nanos.length)] = other.nanos[i];
+        }
+        count += other.count;
+        totalNanos += other.totalNanos;
+    }
+
+    void reset() {
+        written = 0;
+        count = 0;
+        totalNanos = 0;
+    }
+
+    /**
+     * Число записанных операций.
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Сумма всех задержек, нс.
+     */
+    long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Процентили по сохраненным значениям методом ближайшего ранга, мкс.
+     *
+     * @param percentiles Процентили от 0 до 100
+     * @return Значения в порядке percentiles; нули, если записей нет
+     */
+    double[] percentilesMicros(double... percentiles) {
+        double[] result = new double[percentiles.length];
+        int size = (int) Math.min(written, nanos.length);
+        if (size == 0) {
+            return result;
+        }
+        long[] sorted = Arrays.copyOf(nanos, size);
+        Arrays.sort(sorted);
+        for (int i = 0; i < percentiles.length; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100 * size);
+            result[i] = sorted[Math.max(0, Math.min(size - 1, rank - 1))] / 1000.0;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,454 @@
+package com.fpshowmany.idl.engine.stages;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Эхо-серверы и клиенты на 127.0.0.1 для сетевого этапа. Виды передачи:
+ * {@link #STREAM} - TCP на блокирующих потоках, поток сервера на соединение;
+ * {@link #SELECTOR} - TCP, сервер на неблокирующих каналах с одним {@link Selector},
+ * клиент на блокирующем {@link SocketChannel}; {@link #UDP} - {@link DatagramChannel},
+ * клиент ждет ответ через свой Selector не дольше {@link #UDP_TIMEOUT_MS}.
+ * Потоки серверов берутся из переданного пула и завершаются при закрытии сервера.
+ */
+final class LoopbackEcho {
+
+    static final String STREAM = "stream";
+    static final String SELECTOR = "selector";
+    static final String UDP = "udp";
+    static final String[] TRANSPORTS = {STREAM, SELECTOR, UDP};
+
+    // Наибольшее сообщение; дейтаграмма такого размера проходит loopback без фрагментации
+    static final int MAX_MESSAGE = 32768;
+    // Наименьшее сообщение: в начале дейтаграммы номер запроса
+    static final int MIN_MESSAGE = 4;
+    static final long UDP_TIMEOUT_MS = 200;
+
+    private static final int BACKLOG = 64;
+
+    private LoopbackEcho() {
+    }
+
+    interface Server extends Closeable {
+        int getPort();
+    }
+
+    interface Client extends Closeable {
+        /**
+         * Отправляет length байт и дожидается их эха.
+         *
+         * @return false, если ответ потерян (только UDP)
+         * @throws IOException при ошибке соединения
+         */
+        boolean exchange(int length) throws IOException;
+    }
+
+    /**
+     * @throws IllegalArgumentException при неизвестном виде передачи
+     */
+    static Server startServer(String transport, ExecutorService executor) throws IOException {
+        switch (transport) {
+            case STREAM:
+                return new StreamServer(executor);
+            case SELECTOR:
+                return new SelectorServer(executor);
+            case UDP:
+                return new UdpServer(executor);
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException при неизвестном виде передачи
+     */
+    static Client connect(String transport, int port) throws IOException {
+        switch (transport) {
+            case STREAM:
+                return new StreamClient(port);
+            case SELECTOR:
+                return new ChannelClient(port);
+            case UDP:
+                return new UdpClient(port);
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+    }
+
+    static void checkLength(int length) {
+        if (length < MIN_MESSAGE || length > MAX_MESSAGE) {
+            throw new IllegalArgumentException("Message length out of range: " + length);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Соединение уже разорвано
+        }
+    }
+
+    private static InetSocketAddress loopback(int port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Сервер на блокирующих потоках: поток приема и по потоку на соединение.
+     */
+    private static final class StreamServer implements Server {
+        private final ServerSocket serverSocket;
+        private final ExecutorService executor;
+        private final List<Socket> sockets = new ArrayList<>();
+
+        StreamServer(ExecutorService executor) throws IOException {
+            this.executor = executor;
+            serverSocket = new ServerSocket(0, BACKLOG, InetAddress.getLoopbackAddress());
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    acceptLoop();
+                }
+            });
+        }
+
+        private void acceptLoop() {
+            try {
+                while (!serverSocket.isClosed()) {
+                    final Socket socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    synchronized (sockets) {
+                        sockets.add(socket);
+                    }
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            echo(socket);
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                // Сервер закрыт
+            }
+        }
+
+        private void echo(Socket socket) {
+            byte[] buffer = new byte[MAX_MESSAGE];
+            try {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                // Клиент отключился
+            } finally {
+                closeQuietly(socket);
+            }
+        }
+
+        @Override
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    closeQuietly(socket);
+                }
+                sockets.clear();
+            }
+        }
+    }
+
+    /**
+     * Сервер на неблокирующих каналах: один поток и Selector на все соединения. У соединения
+     * свой буфер; пока эхо не отправлено целиком, соединение ждет записи, а не чтения.
+     */
+    private static final class SelectorServer implements Server {
+        private final Selector selector;
+        private final ServerSocketChannel serverChannel;
+        private final List<SocketChannel> channels = new ArrayList<>();
+
+        SelectorServer(ExecutorService executor) throws IOException {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().bind(loopback(0), BACKLOG);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    selectLoop();
+                }
+            });
+        }
+
+        private void selectLoop() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException | CancelledKeyException e) {
+                // Сервер закрыт
+            }
+        }
+
+        private void handle(SelectionKey key) throws IOException {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                SocketChannel channel = serverChannel.accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    synchronized (channels) {
+                        channels.add(channel);
+                    }
+                    channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(MAX_MESSAGE));
+                }
+                return;
+            }
+            SocketChannel channel = (SocketChannel) key.channel();
+            ByteBuffer buffer = (ByteBuffer) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    if (channel.read(buffer) < 0) {
+                        key.cancel();
+                        channel.close();
+                        return;
+                    }
+                    buffer.flip();
+                }
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else {
+                    buffer.clear();
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException | CancelledKeyException e) {
+                // Ошибка одного соединения не останавливает сервер; ключ может быть отменен
+                // закрытием сервера с другого потока
+                key.cancel();
+                closeQuietly(channel);
+            }
+        }
+
+        @Override
+        public int getPort() {
+            return serverChannel.socket().getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            selector.close();
+            serverChannel.close();
+            synchronized (channels) {
+                for (SocketChannel channel : channels) {
+                    closeQuietly(channel);
+                }
+                channels.clear();
+            }
+        }
+    }
+
+    /**
+     * UDP сервер: отправляет каждую дейтаграмму обратно отправителю.
+     */
+    private static final class UdpServer implements Server {
+        private final DatagramChannel channel;
+
+        UdpServer(ExecutorService executor) throws IOException {
+            channel = DatagramChannel.open();
+            channel.socket().bind(loopback(0));
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    echoLoop();
+                }
+            });
+        }
+
+        private void echoLoop() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_MESSAGE);
+            try {
+                while (channel.isOpen()) {
+                    buffer.clear();
+                    SocketAddress sender = channel.receive(buffer);
+                    buffer.flip();
+                    channel.send(buffer, sender);
+                }
+            } catch (IOException e) {
+                // Сервер закрыт
+            }
+        }
+
+        @Override
+        public int getPort() {
+            return channel.socket().getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class StreamClient implements Client {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final byte[] sendBuffer = new byte[MAX_MESSAGE];
+        private final byte[] receiveBuffer = new byte[MAX_MESSAGE];
+
+        StreamClient(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+        }
+
+        @Override
+        public boolean exchange(int length) throws IOException {
+            checkLength(length);
+            out.write(sendBuffer, 0, length);
+            int received = 0;
+            while (received < length) {
+                int read = in.read(receiveBuffer, received, length - received);
+                if (read < 0) {
+                    throw new EOFException("Connection closed after " + received + " of " + length + " bytes");
+                }
+                received += read;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static final class ChannelClient implements Client {
+        private final SocketChannel channel;
+        private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_MESSAGE);
+        private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_MESSAGE);
+
+        ChannelClient(int port) throws IOException {
+            channel = SocketChannel.open(loopback(port));
+            channel.socket().setTcpNoDelay(true);
+        }
+
+        @Override
+        public boolean exchange(int length) throws IOException {
+            checkLength(length);
+            sendBuffer.clear();
+            sendBuffer.limit(length);
+            while (sendBuffer.hasRemaining()) {
+                channel.write(sendBuffer);
+            }
+            receiveBuffer.clear();
+            receiveBuffer.limit(length);
+            while (receiveBuffer.hasRemaining()) {
+                if (channel.read(receiveBuffer) < 0) {
+                    throw new EOFException("Connection closed after " + receiveBuffer.position()
+                            + " of " + length + " bytes");
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * UDP клиент: в начале дейтаграммы номер запроса, поэтому запоздавший ответ на
+     * потерянный запрос не засчитывается следующему.
+     */
+    private static final class UdpClient implements Client {
+        private final DatagramChannel channel;
+        private final Selector selector;
+        private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_MESSAGE);
+        private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_MESSAGE);
+        private int sequence;
+
+        UdpClient(int port) throws IOException {
+            channel = DatagramChannel.open();
+            channel.connect(loopback(port));
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+
+        @Override
+        public boolean exchange(int length) throws IOException {
+            checkLength(length);
+            sequence++;
+            sendBuffer.clear();
+            sendBuffer.putInt(0, sequence);
+            sendBuffer.limit(length);
+            if (channel.write(sendBuffer) == 0) {
+                // Буфер отправки переполнен: дейтаграмма не ушла
+                return false;
+            }
+            long deadline = System.nanoTime() + UDP_TIMEOUT_MS * 1000000L;
+            while (true) {
+                receiveBuffer.clear();
+                int read = channel.read(receiveBuffer);
+                if (read > 0) {
+                    if (receiveBuffer.getInt(0) == sequence) {
+                        return read == length;
+                    }
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                selector.select(Math.max(1, remaining / 1000000L));
+                selector.selectedKeys().clear();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            selector.close();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.util.ArrayMap;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Прикладной этап: поиск и обновление в коллекциях, которыми пользуются приложения:
+ * {@link HashMap} с упакованными ключами, {@link ArrayMap} со строковыми ключами
+ * (как в Bundle) и {@link SparseArray} с ключами int. Ключи и последовательность запросов
+ * фиксированы, около четверти запросов - промахи; каждый {@link #CHURN_INTERVAL}-й
+ * запрос заменяет запись. Счетчик - операции с коллекциями.
+ */
+public class MapStage extends WorkloadStage {
+
+    public static final String ID = "maps";
+
+    static final int KEYS = 4096;
+    // ArrayMap рассчитан на небольшие коллекции, в нем часть ключей
+    static final int ARRAY_MAP_KEYS = 512;
+    static final int QUERIES = 65536;
+    static final int CHURN_INTERVAL = 16;
+
+    private volatile int[] keys;
+    private volatile String[] names;
+    private volatile int[] queries;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Коллекции";
+    }
+
+    @Override
+    public String getUnit() {
+        return "Mops/s";
+    }
+
+    @Override
+    protected void prepare() {
+        Random random = new Random(SEED);
+        int[] newKeys = new int[KEYS];
+        String[] newNames = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            newKeys[i] = random.nextInt(KEYS * 64);
+            newNames[i] = "key_" + randomWord(random, 4 + random.nextInt(8));
+        }
+        // Индексы ключей; индекс за пределами набора - промах
+        int[] newQueries = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            newQueries[i] = random.nextInt(KEYS + KEYS / 3);
+        }
+        keys = newKeys;
+        names = newNames;
+        queries = newQueries;
+    }
+
+    @Override
+    protected Kernel createKernel(int worker) {
+        final int[] keys = this.keys;
+        final String[] names = this.names;
+        final int[] queries = this.queries;
+
+        final HashMap<Integer, String> hashMap = new HashMap<>();
+        final ArrayMap<String, Integer> arrayMap = new ArrayMap<>();
+        final SparseArray<String> sparseArray = new SparseArray<>();
+        for (int i = 0; i < KEYS; i++) {
+            hashMap.put(keys[i], names[i]);
+            sparseArray.put(keys[i], names[i]);
+            if (i < ARRAY_MAP_KEYS) {
+                arrayMap.put(names[i], keys[i]);
+            }
+        }
+        // Промахи - ключи и имена, которых нет в коллекциях
+        final String[] missingNames = new String[KEYS / 3];
+        for (int i = 0; i < missingNames.length; i++) {
+            missingNames[i] = "missing_" + i;
+        }
+
+        return new Kernel() {
+            private int found;
+
+            @Override
+            public long run() {
+                long operations = 0;
+                for (int q = 0; q < queries.length; q++) {
+                    int index = queries[q];
+                    int key = index < KEYS ? keys[index] : -index;
+                    String name = index < KEYS ? names[index % ARRAY_MAP_KEYS]
+                            : missingNames[index - KEYS];
+
+                    if (hashMap.get(key) != null) {
+                        found++;
+                    }
+                    if (sparseArray.get(key) != null) {
+                        found++;
+                    }
+                    if (arrayMap.get(name) != null) {
+                        found++;
+                    }
+                    operations += 3;
+                    if (q % CHURN_INTERVAL == 0 && index < KEYS) {
+                        hashMap.put(key, names[index]);
+                        sparseArray.put(key, names[index]);
+                        arrayMap.put(names[index % ARRAY_MAP_KEYS], key);
+                        operations += 3;
+                    }
+                }
+                return operations;
+            }
+        };
+    }
+
+    @Override
+    protected float toDisplayValue(double throughput) {
+        return (float) (throughput / 1000000);
+    }
+}
@@ -0,0 +1,130 @@
+package com.fpshowmany.idl.engine.stages;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Тестовые шаблоны памяти в духе memtest86 над 64-битными словами буфера.
+ * Каждый шаблон записывает область и читает ее обратно; расхождения передаются
+ * в {@link MismatchListener} со смещением слова от начала буфера.
+ */
+final class MemoryPatterns {
+
+    static final int WALKING_ONES = 0;
+    static final int WALKING_ZEROS = 1;
+    static final int ADDRESS = 2;
+    static final int MOVING_INVERSIONS = 3;
+    static final int RANDOM = 4;
+
+    static final String[] NAMES = {"walking ones", "walking zeros", "address", "moving inversions", "random"};
+
+    /**
+     * Получатель расхождений.
+     */
+    interface MismatchListener {
+        /**
+         * @param offset Смещение слова в байтах
+         */
+        void onMismatch(long offset, long expected, long actual);
+    }
+
+    private MemoryPatterns() {
+    }
+
+    /**
+     * Один проход шаблона по буферу.
+     *
+     * @param seed Параметр прохода: номер бита для бегущих единиц и нулей, значение
+     *             для бегущих инверсий, зерно для случайного блока, база адреса
+     * @return Прочитанные и записанные байты
+     */
+    static long run(int pattern, ByteBuffer buffer, long seed, MismatchListener listener) {
+        LongBuffer words = buffer.asLongBuffer();
+        long bytes = (long) words.capacity() * 8;
+        if (pattern == MOVING_INVERSIONS) {
+            fill(pattern, words, seed);
+            movingInversions(words, seed, listener);
+            return bytes * 5;
+        }
+        fill(pattern, words, seed);
+        verify(pattern, words, seed, listener);
+        return bytes * 2;
+    }
+
+    /**
+     * Значение слова index в шаблоне.
+     */
+    static long expected(int pattern, long seed, int index, long randomState) {
+        switch (pattern) {
+            case WALKING_ONES:
+                return 1L << (seed & 63);
+            case WALKING_ZEROS:
+                return ~(1L << (seed & 63));
+            case ADDRESS:
+                // Адрес слова в собственной ячейке находит перепутанные и замкнутые линии адреса
+                return seed + (long) index * 8;
+            case MOVING_INVERSIONS:
+                return seed;
+            case RANDOM:
+                return randomState;
+            default:
+                throw new IllegalArgumentException("Unknown pattern: " + pattern);
+        }
+    }
+
+    static void fill(int pattern, LongBuffer words, long seed) {
+        long state = seed | 1;
+        for (int i = 0; i < words.capacity(); i++) {
+            if (pattern == RANDOM) {
+                state = next(state);
+            }
+            words.put(i, expected(pattern, seed, i, state));
+        }
+    }
+
+    static void verify(int pattern, LongBuffer words, long seed, MismatchListener listener) {
+        long state = seed | 1;
+        for (int i = 0; i < words.capacity(); i++) {
+            if (pattern == RANDOM) {
+                state = next(state);
+            }
+            long expected = expected(pattern, seed, i, state);
+            long actual = words.get(i);
+            if (actual != expected) {
+                listener.onMismatch((long) i * 8, expected, actual);
+            }
+        }
+    }
+
+    /**
+     * Бегущие инверсии после заполнения значением value: по возрастанию адресов
+     * проверяется value и пишется инверсия, затем по убыванию проверяется инверсия
+     * и пишется value.
+     */
+    static void movingInversions(LongBuffer words, long value, MismatchListener listener) {
+        long inverted = ~value;
+        int count = words.capacity();
+        for (int i = 0; i < count; i++) {
+            long actual = words.get(i);
+            if (actual != value) {
+                listener.onMismatch((long) i * 8, value, actual);
+            }
+            words.put(i, inverted);
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            long actual = words.get(i);
+            if (actual != inverted) {
+                listener.onMismatch((long) i * 8, inverted, actual);
+            }
+            words.put(i, value);
+        }
+    }
+
+    // xorshift64: быстрый, воспроизводимый по зерну
+    static long next(long state) {
+        state ^= state << 13;
+        state ^= state >>> 7;
+        state ^= state << 17;
+        return state;
+    }
+}
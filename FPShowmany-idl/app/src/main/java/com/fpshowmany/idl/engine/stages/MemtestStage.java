@@ -0,0 +1,190 @@
+package com.fpshowmany.idl.engine.stages;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Проверка целостности RAM: каждый поток CPU держит свою область вне кучи
+ * ({@link OffHeapRegion}) и по кругу прогоняет шаблоны {@link MemoryPatterns} -
+ * бегущие единицы и нули, адрес в адресе, бегущие инверсии и случайный блок по зерну.
+ * Счетчик - прочитанные и записанные байты.
+ * <p>
+ * Размер областей - доля свободной памяти системы сверх порога нехватки
+ * ({@link SystemMemory}); при нехватке памяти во время этапа области уменьшаются вдвое,
+ * а на минимальном размере освобождаются до ее окончания, чтобы не вызвать LMK.
+ * Расхождения публикуются как ошибки этапа с номером области и смещением, первые
+ * {@link #MAX_REPORTED_ERRORS} - каждое отдельно; при любом расхождении балл этапа 0.
+ */
+public class MemtestStage implements BenchmarkStage {
+
+    public static final String ID = "memtest";
+
+    static final String METRIC_ERRORS = "errors";
+    static final String METRIC_REGION_MB = "region_mb";
+    static final String METRIC_SHRINKS = "shrinks";
+
+    static final int MAX_REPORTED_ERRORS = 10;
+
+    static final int MB = 1024 * 1024;
+    static final int MIN_REGION = 4 * MB;
+    static final int MAX_REGION = 256 * MB;
+    static final long MAX_TOTAL = 2048L * MB;
+    // Тест занимает половину запаса свободной памяти
+    static final int BUDGET_DIVISOR = 2;
+
+    // Ожидание потока, освободившего память из-за нехватки
+    private static final long PRESSURE_WAIT_MS = 200;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Целостность RAM";
+    }
+
+    @Override
+    public String getUnit() {
+        return "MB/s";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        final SystemMemory memory = new SystemMemory(context.getAppContext());
+        final int threads = Math.max(1, context.getCpuThreads());
+        final int initialRegion = regionSize(memory.getHeadroomBytes(), threads);
+        final AtomicInteger regionTarget = new AtomicInteger(initialRegion);
+        final AtomicInteger workerIndex = new AtomicInteger();
+        final AtomicLong errors = new AtomicLong();
+        final LongAdder bytes = new LongAdder();
+        final AtomicBoolean released = new AtomicBoolean();
+        final AtomicInteger shrinks = new AtomicInteger();
+
+        context.startWorkers(threads, new Runnable() {
+            @Override
+            public void run() {
+                final int worker = workerIndex.getAndIncrement();
+                MemoryPatterns.MismatchListener listener = new MemoryPatterns.MismatchListener() {
+                    @Override
+                    public void onMismatch(long offset, long expected, long actual) {
+                        if (errors.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+                            context.reportError(String.format(Locale.US,
+                                    "%s: область %d, смещение 0x%x: %016x вместо %016x (биты %016x)",
+                                    getName(), worker, offset, actual, expected, actual ^ expected));
+                        }
+                    }
+                };
+                OffHeapRegion region = null;
+                int pass = worker;
+                try {
+                    while (context.isActive()) {
+                        context.awaitIfPaused();
+                        int size = regionTarget.get();
+                        boolean release = released.get();
+                        if (region != null && (release || region.size() > size)) {
+                            region.close();
+                            region = null;
+                        }
+                        if (release) {
+                            Thread.sleep(PRESSURE_WAIT_MS);
+                            continue;
+                        }
+                        if (region == null) {
+                            try {
+                                region = OffHeapRegion.allocate("memtest-" + worker, size);
+                            } catch (OutOfMemoryError e) {
+                                EngineTrace.instant("memtest oom");
+                                regionTarget.compareAndSet(size, Math.max(MIN_REGION, size / 2));
+                                Thread.sleep(PRESSURE_WAIT_MS);
+                                continue;
+                            }
+                        }
+
+                        int pattern = pass % MemoryPatterns.NAMES.length;
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.beginSection("memtest " + MemoryPatterns.NAMES[pattern]);
+                        }
+                        bytes.add(MemoryPatterns.run(pattern, region.getBuffer(), passSeed(pattern, pass), listener));
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.endSection();
+                        }
+                        pass++;
+                    }
+                } catch (InterruptedException e) {
+                    // Остановка движка
+                } finally {
+                    if (region != null) {
+                        region.close();
+                    }
+                }
+            }
+        });
+
+        MeasurementResult result = context.measure(bytes, new StageContext.SampleListener() {
+            @Override
+            public void onSample(int progress, double throughput) {
+                memory.update();
+                boolean pressure = memory.isUnderPressure();
+                int size = regionTarget.get();
+                if (pressure && size > MIN_REGION) {
+                    regionTarget.set(Math.max(MIN_REGION, size / 2));
+                    shrinks.incrementAndGet();
+                    EngineTrace.instant("memtest shrink");
+                }
+                // На минимальном размере память освобождается полностью
+                released.set(pressure && size == MIN_REGION);
+                context.reportProgress(progress, (float) (throughput / MB),
+                        errors.get() == 0 ? context.score(throughput) : 0);
+            }
+        });
+
+        long errorCount = errors.get();
+        if (errorCount > MAX_REPORTED_ERRORS) {
+            context.reportError(getName() + ": всего расхождений " + errorCount);
+        }
+        int score = errorCount == 0 ? context.score(result.getMean()) : 0;
+        return new StageResult(ID, score, result)
+                .addMetric(METRIC_ERRORS, errorCount)
+                .addMetric(METRIC_REGION_MB, (double) initialRegion * threads / MB)
+                .addMetric(METRIC_SHRINKS, shrinks.get());
+    }
+
+    /**
+     * Размер области одного потока: {@link #BUDGET_DIVISOR}-я часть запаса памяти, не больше
+     * {@link #MAX_TOTAL} на все потоки, в пределах [{@link #MIN_REGION}, {@link #MAX_REGION}],
+     * кратно мегабайту.
+     */
+    static int regionSize(long headroomBytes, int threads) {
+        long total = Math.min(MAX_TOTAL, headroomBytes / BUDGET_DIVISOR);
+        long perThread = total / Math.max(1, threads) / MB * MB;
+        return (int) Math.max(MIN_REGION, Math.min(MAX_REGION, perThread));
+    }
+
+    /**
+     * Параметр прохода шаблона: бегущий бит сдвигается на каждом круге, значения
+     * инверсий и случайного блока меняются.
+     */
+    static long passSeed(int pattern, int pass) {
+        int round = pass / MemoryPatterns.NAMES.length;
+        switch (pattern) {
+            case MemoryPatterns.WALKING_ONES:
+            case MemoryPatterns.WALKING_ZEROS:
+                return round & 63;
+            case MemoryPatterns.ADDRESS:
+                return 0;
+            default:
+                return MemoryPatterns.next(WorkloadStage.SEED + round);
+        }
+    }
+}
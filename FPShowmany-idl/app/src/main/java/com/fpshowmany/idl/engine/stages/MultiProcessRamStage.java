@@ -0,0 +1,254 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+import com.fpshowmany.idl.service.MemoryWorkerService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Нагрузка на RAM из нескольких процессов ({@link MemoryWorkerService}): каждый процесс
+ * выделяет свою область вне кучи и непрерывно пишет и читает ее, поэтому нагрузка не
+ * ограничена кучей приложения и создает нехватку памяти во всей системе. Счетчик - байты,
+ * прочитанные и записанные всеми процессами.
+ * <p>
+ * По умолчанию области вместе занимают всю свободную память до порога нехватки
+ * ({@link SystemMemory}), так что система может начать убивать процессы. Процесс, убитый
+ * системой, публикуется как ошибка этапа; служба привязана с BIND_AUTO_CREATE, поэтому
+ * система перезапускает ее, и нагрузка возобновляется. Параметры шага:
+ * {@link #PARAM_PROCESSES} и {@link #PARAM_REGION_MB}. Требует контекст приложения.
+ */
+public class MultiProcessRamStage implements BenchmarkStage {
+
+    public static final String ID = "ram_multi";
+
+    public static final String PARAM_PROCESSES = "processes";
+    public static final String PARAM_REGION_MB = "region_mb";
+
+    static final String METRIC_PROCESSES = "processes";
+    static final String METRIC_REGION_MB = "region_mb";
+    static final String METRIC_KILLED = "killed";
+    static final String METRIC_LOW_MEMORY_SAMPLES = "low_memory_samples";
+    static final String METRIC_MIN_AVAILABLE_MB = "min_available_mb";
+
+    static final int MIN_REGION_MB = 16;
+    static final int MAX_REGION_MB = 1024;
+
+    private static final String TAG = "MultiProcessRamStage";
+    private static final double MB = 1024 * 1024;
+    // Опрос паузы движка для передачи ее процессам
+    private static final long PAUSE_POLL_MS = 100;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "RAM в нескольких процессах";
+    }
+
+    @Override
+    public String getUnit() {
+        return "MB/s";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        final Context appContext = context.getAppContext();
+        if (appContext == null) {
+            throw new IllegalStateException("Application context is required");
+        }
+        final SystemMemory memory = new SystemMemory(appContext);
+        int processes = Math.max(1, Math.min(MemoryWorkerService.PROCESSES.size(),
+                context.getIntParam(PARAM_PROCESSES, MemoryWorkerService.PROCESSES.size())));
+        final int regionMb = context.getIntParam(PARAM_REGION_MB,
+                regionSizeMb(memory.getAvailableBytes() - memory.getThresholdBytes(), processes));
+
+        final LongAdder bytes = new LongAdder();
+        final AtomicInteger killed = new AtomicInteger();
+        HandlerThread replyThread = new HandlerThread("MemoryWorkers-replies");
+        replyThread.start();
+        final Messenger replyTo = new Messenger(new Handler(replyThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MemoryWorkerService.MSG_PROGRESS:
+                        bytes.add(msg.getData().getLong(MemoryWorkerService.KEY_BYTES));
+                        break;
+                    case MemoryWorkerService.MSG_FAILED:
+                        context.reportError(getName() + ": "
+                                + msg.getData().getString(MemoryWorkerService.KEY_MESSAGE));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+
+        final List<WorkerConnection> connections = new ArrayList<>(processes);
+        try {
+            for (int i = 0; i < processes; i++) {
+                WorkerConnection connection = new WorkerConnection(context, i, regionMb, replyTo, killed);
+                Intent intent = new Intent(appContext, MemoryWorkerService.PROCESSES.get(i));
+                if (appContext.bindService(intent, connection, Context.BIND_AUTO_CREATE)) {
+                    connections.add(connection);
+                } else {
+                    context.reportError(getName() + ": процесс " + i + " не запущен");
+                }
+            }
+
+            // Пауза движка передается процессам
+            context.startWorkers(1, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (context.isActive()) {
+                            if (context.isPaused()) {
+                                sendAll(connections, MemoryWorkerService.MSG_PAUSE);
+                                context.awaitIfPaused();
+                                sendAll(connections, MemoryWorkerService.MSG_RESUME);
+                            }
+                            Thread.sleep(PAUSE_POLL_MS);
+                        }
+                    } catch (InterruptedException e) {
+                        // Остановка движка
+                    }
+                }
+            });
+
+            final AtomicInteger lowMemorySamples = new AtomicInteger();
+            final AtomicLong minAvailable = new AtomicLong(Long.MAX_VALUE);
+            MeasurementResult result = context.measure(bytes, new StageContext.SampleListener() {
+                @Override
+                public void onSample(int progress, double throughput) {
+                    memory.update();
+                    if (memory.isLowMemory()) {
+                        lowMemorySamples.incrementAndGet();
+                    }
+                    minAvailable.set(Math.min(minAvailable.get(), memory.getAvailableBytes()));
+                    if (EngineTrace.ENABLED) {
+                        EngineTrace.setCounter("ram_multi available", memory.getAvailableBytes());
+                    }
+                    context.reportProgress(progress, (float) (throughput / MB), context.score(throughput));
+                }
+            });
+
+            StageResult stageResult = new StageResult(ID, context.score(result.getMean()), result)
+                    .addMetric(METRIC_PROCESSES, connections.size())
+                    .addMetric(METRIC_REGION_MB, regionMb)
+                    .addMetric(METRIC_KILLED, killed.get())
+                    .addMetric(METRIC_LOW_MEMORY_SAMPLES, lowMemorySamples.get());
+            if (minAvailable.get() != Long.MAX_VALUE) {
+                stageResult.addMetric(METRIC_MIN_AVAILABLE_MB, minAvailable.get() / MB);
+            }
+            return stageResult;
+        } finally {
+            for (WorkerConnection connection : connections) {
+                connection.stop();
+                appContext.unbindService(connection);
+            }
+            replyThread.quitSafely();
+        }
+    }
+
+    private static void sendAll(List<WorkerConnection> connections, int what) {
+        for (WorkerConnection connection : connections) {
+            connection.send(what);
+        }
+    }
+
+    /**
+     * Размер области одного процесса: свободная память до порога нехватки поровну на
+     * процессы, в пределах [{@link #MIN_REGION_MB}, {@link #MAX_REGION_MB}].
+     */
+    static int regionSizeMb(long freeBytes, int processes) {
+        long perProcess = Math.max(0, freeBytes) / Math.max(1, processes) / (1024 * 1024);
+        return (int) Math.max(MIN_REGION_MB, Math.min(MAX_REGION_MB, perProcess));
+    }
+
+    /**
+     * Подключение к процессу. Колбэки приходят на главном потоке.
+     */
+    private final class WorkerConnection implements ServiceConnection {
+        private final StageContext context;
+        private final int index;
+        private final int regionMb;
+        private final Messenger replyTo;
+        private final AtomicInteger killed;
+        private volatile Messenger service;
+        private volatile boolean stopped;
+
+        WorkerConnection(StageContext context, int index, int regionMb, Messenger replyTo, AtomicInteger killed) {
+            this.context = context;
+            this.index = index;
+            this.regionMb = regionMb;
+            this.replyTo = replyTo;
+            this.killed = killed;
+        }
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            if (stopped) {
+                return;
+            }
+            service = new Messenger(binder);
+            Message start = Message.obtain(null, MemoryWorkerService.MSG_START, regionMb, 0);
+            start.replyTo = replyTo;
+            try {
+                service.send(start);
+            } catch (RemoteException e) {
+                Log.w(TAG, "Worker " + index + " is gone", e);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+            if (stopped) {
+                return;
+            }
+            // Процесс убит системой; после перезапуска придет onServiceConnected
+            killed.incrementAndGet();
+            EngineTrace.instant("ram_multi killed");
+            context.reportError(getName() + ": процесс " + index + " завершен системой");
+        }
+
+        void send(int what) {
+            Messenger current = service;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.send(Message.obtain(null, what));
+            } catch (RemoteException e) {
+                Log.w(TAG, "Worker " + index + " is gone", e);
+            }
+        }
+
+        void stop() {
+            send(MemoryWorkerService.MSG_STOP);
+            stopped = true;
+        }
+    }
+}
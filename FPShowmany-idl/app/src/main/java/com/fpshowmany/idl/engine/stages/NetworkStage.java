@@ -0,0 +1,256 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.util.Log;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+import com.fpshowmany.idl.utils.Statistics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Сетевой этап на loopback (127.0.0.1, внешняя сеть не нужна): эхо-сервер и клиенты
+ * в процессе приложения для каждого вида передачи {@link LoopbackEcho#TRANSPORTS} -
+ * блокирующие потоки TCP, TCP на неблокирующем Selector и UDP. Для каждого вида сначала
+ * один клиент гоняет сообщения размеров {@link #THROUGHPUT_SIZES} (пропускная способность
+ * в обе стороны, {@code <вид>_<размер>k_mb_s}), затем {@link #CONCURRENCY} клиентов
+ * одновременно шлют сообщения по {@link #LATENCY_SIZE} байт (задержка запроса и ответа
+ * {@code <вид>_c<клиенты>_p50_us}, {@code _p95_us}, {@code _p99_us} и сообщения в секунду
+ * {@code <вид>_c<клиенты>_msg_s}). Каждому замеру достается равная доля времени этапа.
+ * <p>
+ * Показатель этапа - среднее геометрическое пропускной способности по всем видам и
+ * размерам, МБ/с. Потерянные UDP ответы считаются в {@code udp_lost}. Параметр шага
+ * {@link #PARAM_TRANSPORT} (stream, selector или udp) оставляет один вид передачи.
+ */
+public class NetworkStage implements BenchmarkStage {
+
+    public static final String ID = "network";
+
+    public static final String PARAM_TRANSPORT = "transport";
+
+    static final int[] THROUGHPUT_SIZES = {1024, 8192, 32768};
+    static final int LATENCY_SIZE = 64;
+    static final int[] CONCURRENCY = {1, 4, 16};
+    static final int MAX_LATENCIES = 1 << 16;
+
+    private static final String TAG = "NetworkStage";
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Сеть (loopback)";
+    }
+
+    @Override
+    public String getUnit() {
+        return "MB/s";
+    }
+
+    @Override
+    public StageResult run(StageContext context) {
+        List<String> transports = selectTransports(context.getParam(PARAM_TRANSPORT));
+        int cellsPerTransport = THROUGHPUT_SIZES.length + CONCURRENCY.length;
+        int cells = transports.size() * cellsPerTransport;
+
+        List<String> names = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        double[] throughputs = new double[transports.size() * THROUGHPUT_SIZES.length];
+        int throughputCount = 0;
+        long lost = 0;
+        int done = 0;
+        float lastValue = 0;
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (int t = 0; t < transports.size() && context.isActive(); t++) {
+                String transport = transports.get(t);
+                // Время распределено заранее: сбой одного вида не сдвигает остальные
+                int cell = t * cellsPerTransport;
+                LoopbackEcho.Server server = null;
+                try {
+                    server = LoopbackEcho.startServer(transport, executor);
+                    for (int i = 0; i < cellsPerTransport && context.isActive(); i++, cell++) {
+                        boolean latency = i >= THROUGHPUT_SIZES.length;
+                        int size = latency ? LATENCY_SIZE : THROUGHPUT_SIZES[i];
+                        int clients = latency ? CONCURRENCY[i - THROUGHPUT_SIZES.length] : 1;
+                        long deadline = context.getBudgetMs() * (cell + 1) / cells;
+                        String name = latency ? transport + "_c" + clients : transport + "_" + size / 1024 + "k";
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.beginSection("network " + name);
+                        }
+                        Cell result;
+                        try {
+                            result = runCell(context, executor, transport, server.getPort(), size, clients, deadline);
+                        } finally {
+                            if (EngineTrace.ENABLED) {
+                                EngineTrace.endSection();
+                            }
+                        }
+                        lost += result.lost;
+                        double seconds = Math.max(1, result.activeMillis) / 1000.0;
+                        if (latency) {
+                            double[] percentiles = result.latencies.percentilesMicros(LatencyRecorder.PERCENTILES);
+                            for (int p = 0; p < LatencyRecorder.PERCENTILE_SUFFIXES.length; p++) {
+                                names.add(name + LatencyRecorder.PERCENTILE_SUFFIXES[p]);
+                                values.add(percentiles[p]);
+                            }
+                            names.add(name + "_msg_s");
+                            values.add(result.latencies.getCount() / seconds);
+                            Log.i(TAG, String.format(Locale.US, "%s: %.0f msg/s, p50 %.0f us, p99 %.0f us",
+                                    name, result.latencies.getCount() / seconds, percentiles[0], percentiles[2]));
+                        } else {
+                            // Каждый обмен - сообщение туда и эхо обратно
+                            double mbps = 2.0 * size * result.latencies.getCount() / seconds / (1024 * 1024);
+                            throughputs[throughputCount++] = mbps;
+                            names.add(name + "_mb_s");
+                            values.add(mbps);
+                            lastValue = (float) mbps;
+                            context.reportSample(mbps);
+                            Log.i(TAG, String.format(Locale.US, "%s: %.1f MB/s", name, mbps));
+                        }
+                        done++;
+                        context.reportProgress(context.getTimeProgress(), lastValue, context.score(lastValue));
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, transport + " failed", e);
+                    context.reportError(getName() + ": " + transport + ": " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } finally {
+                    if (server != null) {
+                        try {
+                            server.close();
+                        } catch (IOException e) {
+                            Log.w(TAG, "Cannot close " + transport + " server", e);
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double score = Statistics.geometricMean(throughputs, throughputCount);
+        MeasurementResult measurement = new MeasurementResult(score, 0, 0, throughputCount, 0,
+                done == cells, false);
+        StageResult result = new StageResult(ID, context.score(score), measurement);
+        for (int i = 0; i < names.size(); i++) {
+            result.addMetric(names.get(i), values.get(i));
+        }
+        if (transports.contains(LoopbackEcho.UDP)) {
+            result.addMetric("udp_lost", lost);
+        }
+        return result;
+    }
+
+    /**
+     * Виды передачи для этапа; transport - null или имя вида без учета регистра.
+     *
+     * @throws IllegalArgumentException при неизвестном виде
+     */
+    static List<String> selectTransports(String transport) {
+        List<String> transports = new ArrayList<>();
+        for (String name : LoopbackEcho.TRANSPORTS) {
+            if (transport == null || name.equalsIgnoreCase(transport.trim())) {
+                transports.add(name);
+            }
+        }
+        if (transports.isEmpty()) {
+            throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+        return transports;
+    }
+
+    /**
+     * Один замер: clients клиентов параллельно обмениваются сообщениями size байт с сервером,
+     * пока активное время этапа не дойдет до deadline мс.
+     */
+    private static Cell runCell(final StageContext context, ExecutorService executor, final String transport,
+                                int port, final int size, int clients, final long deadline)
+            throws IOException, InterruptedException {
+        List<LoopbackEcho.Client> connections = new ArrayList<>(clients);
+        List<Future<long[]>> futures = new ArrayList<>(clients);
+        final LatencyRecorder[] recorders = new LatencyRecorder[clients];
+        Cell cell = new Cell(new LatencyRecorder(MAX_LATENCIES));
+        try {
+            for (int i = 0; i < clients; i++) {
+                connections.add(LoopbackEcho.connect(transport, port));
+                recorders[i] = new LatencyRecorder(Math.max(1, MAX_LATENCIES / clients));
+            }
+            long start = context.getActiveMillis();
+            for (int i = 0; i < clients; i++) {
+                final LoopbackEcho.Client client = connections.get(i);
+                final LatencyRecorder recorder = recorders[i];
+                futures.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        long lost = 0;
+                        while (context.isActive() && context.getActiveMillis() < deadline) {
+                            context.awaitIfPaused();
+                            long begin = System.nanoTime();
+                            if (client.exchange(size)) {
+                                recorder.record(System.nanoTime() - begin);
+                            } else {
+                                lost++;
+                            }
+                        }
+                        return new long[]{lost};
+                    }
+                }));
+            }
+            for (int i = 0; i < clients; i++) {
+                try {
+                    cell.lost += futures.get(i).get()[0];
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof InterruptedException) {
+                        throw (InterruptedException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+                cell.latencies.addAll(recorders[i]);
+            }
+            cell.activeMillis = context.getActiveMillis() - start;
+            return cell;
+        } finally {
+            for (Future<long[]> future : futures) {
+                future.cancel(true);
+            }
+            for (LoopbackEcho.Client client : connections) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // Соединение уже разорвано
+                }
+            }
+        }
+    }
+
+    private static final class Cell {
+        final LatencyRecorder latencies;
+        long lost;
+        long activeMillis;
+
+        Cell(LatencyRecorder latencies) {
+            this.latencies = latencies;
+        }
+    }
+}
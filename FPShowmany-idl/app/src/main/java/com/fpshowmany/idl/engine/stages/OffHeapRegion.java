@@ -0,0 +1,86 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.os.Build;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Область памяти вне кучи Java. С Android 8.1 - анонимная разделяемая память
+ * ({@link SharedMemory}), которая не ограничена размером кучи приложения; на старых
+ * версиях - прямой буфер, который ART выделяет в куче, поэтому размер ограничен ею.
+ * Порядок байтов буфера - родной.
+ */
+public final class OffHeapRegion implements Closeable {
+
+    private final SharedMemory sharedMemory;
+    private ByteBuffer buffer;
+
+    private OffHeapRegion(SharedMemory sharedMemory, ByteBuffer buffer) {
+        this.sharedMemory = sharedMemory;
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Выделяет область. Страницы разделяемой памяти занимаются при первой записи.
+     *
+     * @param name Имя для отладки (видно в /proc/pid/maps)
+     * @throws OutOfMemoryError если память не выделена
+     */
+    public static OffHeapRegion allocate(String name, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid region size: " + size);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            SharedMemory memory = null;
+            try {
+                memory = SharedMemory.create(name, size);
+                return new OffHeapRegion(memory, memory.mapReadWrite());
+            } catch (ErrnoException e) {
+                if (memory != null) {
+                    memory.close();
+                }
+                OutOfMemoryError error = new OutOfMemoryError("Shared memory " + size + " bytes: " + e.getMessage());
+                error.initCause(e);
+                throw error;
+            }
+        }
+        return new OffHeapRegion(null, ByteBuffer.allocateDirect(size));
+    }
+
+    /**
+     * Оборачивает готовый буфер, для тестов.
+     */
+    static OffHeapRegion wrap(ByteBuffer buffer) {
+        return new OffHeapRegion(null, buffer);
+    }
+
+    public ByteBuffer getBuffer() {
+        if (buffer == null) {
+            throw new IllegalStateException("Region is closed");
+        }
+        return buffer;
+    }
+
+    public int size() {
+        return getBuffer().capacity();
+    }
+
+    /**
+     * Возвращает память системе; прямой буфер освобождается сборщиком мусора.
+     */
+    @Override
+    public void close() {
+        if (buffer == null) {
+            return;
+        }
+        if (sharedMemory != null) {
+            SharedMemory.unmap(buffer);
+            sharedMemory.close();
+        }
+        buffer = null;
+    }
+}
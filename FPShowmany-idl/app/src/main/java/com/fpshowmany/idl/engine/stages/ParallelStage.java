@@ -0,0 +1,389 @@
+package com.fpshowmany.idl.engine.stages;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Этап параллельной обработки изображения: размытие по плиткам, где стоимость плитки
+ * растет сверху вниз (радиус ядра от 1 до {@link TiledBlur#MAX_RADIUS}), поэтому работа
+ * неравномерна. В отличие от CPU этапа здесь важны деление задач, перехват работы
+ * и то, как разнородные ядра справляются с неравной нагрузкой.
+ * <p>
+ * Сначала один кадр обрабатывается последовательно и по {@link #COMPARE_FRAMES} кадров
+ * тремя способами: ForkJoinPool с рекурсивным делением диапазона плиток, фиксированный
+ * пул с равными непрерывными частями и parallel stream (в собственном ForkJoinPool с тем же
+ * числом потоков). Для каждого способа в показатели результата пишутся ускорение
+ * относительно последовательного кадра, перехваты задач на кадр (для ForkJoinPool) и
+ * дисбаланс - отношение самой загруженной нити к средней загрузке (1 - идеально).
+ * Затем замеряется пропускная способность варианта ForkJoinPool в пикселях в секунду.
+ * Число потоков - {@link StageContext#getCpuThreads()}.
+ */
+public class ParallelStage implements BenchmarkStage {
+
+    public static final String ID = "parallel";
+
+    static final String VARIANT_FORK_JOIN = "forkjoin";
+    static final String VARIANT_FIXED = "fixed";
+    static final String VARIANT_STREAM = "stream";
+
+    static final String METRIC_THREADS = "threads";
+    static final String METRIC_SPEEDUP = "speedup_";
+    static final String METRIC_STEALS = "steals_";
+    static final String METRIC_IMBALANCE = "imbalance_";
+
+    static final int COMPARE_FRAMES = 3;
+    // Диапазон плиток, который ForkJoin задача обрабатывает без деления
+    static final int SPLIT_THRESHOLD = 2;
+
+    private static final int WIDTH = 1536;
+    private static final int HEIGHT = 1024;
+    private static final int TILE_SIZE = 64;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Параллельная обработка";
+    }
+
+    @Override
+    public String getUnit() {
+        return "Mpx/s";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        final int threads = Math.max(1, context.getCpuThreads());
+        final TiledBlur blur = new TiledBlur(WIDTH, HEIGHT, TILE_SIZE, WorkloadStage.SEED);
+        final ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+        ExecutorService fixedPool = Executors.newFixedThreadPool(threads);
+        List<double[]> comparison = new ArrayList<>();
+        try {
+            comparison = compare(context, blur, threads, forkJoinPool, fixedPool);
+
+            final LongAdder pixels = new LongAdder();
+            context.startWorkers(1, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (context.isActive()) {
+                            context.awaitIfPaused();
+                            forkJoinPool.invoke(new TileTask(blur, 0, blur.getTileCount(), null, pixels));
+                        }
+                    } catch (InterruptedException e) {
+                        // Остановка движка
+                    } catch (RuntimeException e) {
+                        // Пул останавливается по окончании этапа, прерванный кадр не ошибка
+                        if (context.isActive()) {
+                            context.reportError(getName() + ": " + e.getMessage());
+                        }
+                    }
+                }
+            });
+
+            MeasurementResult result = context.measure(pixels, new StageContext.SampleListener() {
+                @Override
+                public void onSample(int progress, double throughput) {
+                    context.reportProgress(progress, (float) (throughput / 1000000), context.score(throughput));
+                }
+            });
+
+            StageResult stageResult = new StageResult(ID, context.score(result.getMean()), result);
+            stageResult.addMetric(METRIC_THREADS, threads);
+            String[] variants = {VARIANT_FORK_JOIN, VARIANT_FIXED, VARIANT_STREAM};
+            for (int i = 0; i < comparison.size(); i++) {
+                double[] values = comparison.get(i);
+                stageResult.addMetric(METRIC_SPEEDUP + variants[i], values[0]);
+                if (!Double.isNaN(values[1])) {
+                    stageResult.addMetric(METRIC_STEALS + variants[i], values[1]);
+                }
+                stageResult.addMetric(METRIC_IMBALANCE + variants[i], values[2]);
+            }
+            return stageResult;
+        } finally {
+            forkJoinPool.shutdownNow();
+            fixedPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Сравнение способов распараллеливания, пока этап активен.
+     *
+     * @return По способу в порядке forkjoin, fixed, stream: {ускорение, перехваты на кадр
+     * или NaN, дисбаланс}; способы, на которые не хватило времени, отсутствуют
+     */
+    private List<double[]> compare(StageContext context, TiledBlur blur, int threads,
+                                   ForkJoinPool forkJoinPool, ExecutorService fixedPool) {
+        List<double[]> results = new ArrayList<>();
+        LoadTracker tracker = new LoadTracker();
+
+        long start = System.nanoTime();
+        runSequential(blur, tracker);
+        double sequentialNanos = System.nanoTime() - start;
+
+        for (int variant = 0; variant < 3 && context.isActive(); variant++) {
+            tracker.reset();
+            long steals = forkJoinPool.getStealCount();
+            long elapsed = 0;
+            for (int frame = 0; frame < COMPARE_FRAMES; frame++) {
+                long frameStart = System.nanoTime();
+                switch (variant) {
+                    case 0:
+                        forkJoinPool.invoke(new TileTask(blur, 0, blur.getTileCount(), tracker, null));
+                        break;
+                    case 1:
+                        runFixed(blur, fixedPool, threads, tracker);
+                        break;
+                    default:
+                        runStream(blur, forkJoinPool, tracker);
+                        break;
+                }
+                elapsed += System.nanoTime() - frameStart;
+            }
+            double stealsPerFrame = variant == 1 ? Double.NaN
+                    : (forkJoinPool.getStealCount() - steals) / (double) COMPARE_FRAMES;
+            results.add(new double[]{
+                    sequentialNanos / (elapsed / (double) COMPARE_FRAMES),
+                    stealsPerFrame,
+                    tracker.getImbalance(threads)});
+        }
+        return results;
+    }
+
+    static void runSequential(TiledBlur blur, LoadTracker tracker) {
+        for (int tile = 0; tile < blur.getTileCount(); tile++) {
+            processTile(blur, tile, tracker, null);
+        }
+    }
+
+    /**
+     * Фиксированный пул: плитки делятся на равные непрерывные части по числу потоков.
+     */
+    static void runFixed(final TiledBlur blur, ExecutorService pool, int threads, final LoadTracker tracker) {
+        int tiles = blur.getTileCount();
+        int chunk = (tiles + threads - 1) / threads;
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int from = 0; from < tiles; from += chunk) {
+            final int start = from;
+            final int end = Math.min(tiles, from + chunk);
+            futures.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int tile = start; tile < end; tile++) {
+                        processTile(blur, tile, tracker, null);
+                    }
+                    return null;
+                }
+            }));
+        }
+        await(futures);
+    }
+
+    /**
+     * Parallel stream; запускается внутри пула, чтобы использовать его потоки, а не общий пул.
+     */
+    static void runStream(final TiledBlur blur, ForkJoinPool pool, final LoadTracker tracker) {
+        List<Future<?>> futures = new ArrayList<>(1);
+        futures.add(pool.submit(new Runnable() {
+            @Override
+            public void run() {
+                IntStream.range(0, blur.getTileCount()).parallel().forEach(new IntConsumer() {
+                    @Override
+                    public void accept(int tile) {
+                        processTile(blur, tile, tracker, null);
+                    }
+                });
+            }
+        }));
+        await(futures);
+    }
+
+    private static void await(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    static void processTile(TiledBlur blur, int tile, LoadTracker tracker, LongAdder pixels) {
+        long start = tracker != null ? System.nanoTime() : 0;
+        int processed = blur.processTile(tile);
+        if (tracker != null) {
+            tracker.add(System.nanoTime() - start);
+        }
+        if (pixels != null) {
+            pixels.add(processed);
+        }
+    }
+
+    /**
+     * Рекурсивная задача: делит диапазон плиток пополам до {@link #SPLIT_THRESHOLD}.
+     */
+    static final class TileTask extends RecursiveAction {
+        private final TiledBlur blur;
+        private final int from;
+        private final int to;
+        private final LoadTracker tracker;
+        private final LongAdder pixels;
+
+        TileTask(TiledBlur blur, int from, int to, LoadTracker tracker, LongAdder pixels) {
+            this.blur = blur;
+            this.from = from;
+            this.to = to;
+            this.tracker = tracker;
+            this.pixels = pixels;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int tile = from; tile < to; tile++) {
+                    processTile(blur, tile, tracker, pixels);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(blur, from, middle, tracker, pixels),
+                    new TileTask(blur, middle, to, tracker, pixels));
+        }
+    }
+
+    /**
+     * Время работы каждого потока над плитками.
+     */
+    static final class LoadTracker {
+        private final ConcurrentHashMap<Thread, AtomicLong> busyNanos = new ConcurrentHashMap<>();
+
+        void add(long nanos) {
+            Thread thread = Thread.currentThread();
+            AtomicLong busy = busyNanos.get(thread);
+            if (busy == null) {
+                AtomicLong created = new AtomicLong();
+                busy = busyNanos.putIfAbsent(thread, created);
+                if (busy == null) {
+                    busy = created;
+                }
+            }
+            busy.addAndGet(nanos);
+        }
+
+        void reset() {
+            busyNanos.clear();
+        }
+
+        /**
+         * Отношение загрузки самого занятого потока к идеальной (вся работа поровну
+         * на threads потоков); потоки, не получившие работы, тоже учитываются.
+         */
+        double getImbalance(int threads) {
+            long total = 0;
+            long max = 0;
+            for (AtomicLong busy : busyNanos.values()) {
+                total += busy.get();
+                max = Math.max(max, busy.get());
+            }
+            return total > 0 ? max / (total / (double) threads) : Double.NaN;
+        }
+    }
+
+    /**
+     * Синтетическое изображение в оттенках серого и размытие по плиткам.
+     * Радиус квадратного ядра растет с номером строки, от 1 вверху до {@link #MAX_RADIUS}.
+     */
+    static final class TiledBlur {
+        static final int MAX_RADIUS = 7;
+
+        private final int width;
+        private final int height;
+        private final int tileSize;
+        private final int tilesX;
+        private final int tileCount;
+        private final int[] source;
+        private final int[] target;
+
+        TiledBlur(int width, int height, int tileSize, long seed) {
+            this.width = width;
+            this.height = height;
+            this.tileSize = tileSize;
+            this.tilesX = (width + tileSize - 1) / tileSize;
+            this.tileCount = tilesX * ((height + tileSize - 1) / tileSize);
+            this.source = new int[width * height];
+            this.target = new int[width * height];
+            Random random = new Random(seed);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    source[y * width + x] = ((x ^ y) & 0xFF) / 2 + random.nextInt(128);
+                }
+            }
+        }
+
+        int getTileCount() {
+            return tileCount;
+        }
+
+        int radius(int y) {
+            return 1 + (MAX_RADIUS - 1) * y / height;
+        }
+
+        int[] copyTarget() {
+            return target.clone();
+        }
+
+        /**
+         * Размывает плитку; разные плитки пишут в разные пиксели, синхронизация не нужна.
+         *
+         * @return Количество обработанных пикселей
+         */
+        int processTile(int tile) {
+            int x0 = tile % tilesX * tileSize;
+            int y0 = tile / tilesX * tileSize;
+            int x1 = Math.min(width, x0 + tileSize);
+            int y1 = Math.min(height, y0 + tileSize);
+            for (int y = y0; y < y1; y++) {
+                int r = radius(y);
+                int yStart = Math.max(0, y - r);
+                int yEnd = Math.min(height - 1, y + r);
+                for (int x = x0; x < x1; x++) {
+                    int xStart = Math.max(0, x - r);
+                    int xEnd = Math.min(width - 1, x + r);
+                    int sum = 0;
+                    for (int sy = yStart; sy <= yEnd; sy++) {
+                        int row = sy * width;
+                        for (int sx = xStart; sx <= xEnd; sx++) {
+                            sum += source[row + sx];
+                        }
+                    }
+                    target[y * width + x] = sum / ((yEnd - yStart + 1) * (xEnd - xStart + 1));
+                }
+            }
+            return (x1 - x0) * (y1 - y0);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.fpshowmany.idl.engine.stages;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Этап нагрузки на RAM.
+ * Выделяет и заполняет блоки памяти, замеряется объем выделенной памяти в секунду.
+ */
+public class RamStage implements BenchmarkStage {
+
+    public static final String ID = "ram";
+
+    private static final double MB = 1024 * 1024;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Тест RAM";
+    }
+
+    @Override
+    public String getUnit() {
+        return "MB/s";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        final LongAdder allocatedBytes = new LongAdder();
+
+        context.startWorkers(1, new Runnable() {
+            @Override
+            public void run() {
+                byte[][] blocks = new byte[100][];
+                int blockIndex = 0;
+
+                while (context.isActive()) {
+                    try {
+                        context.awaitIfPaused();
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+
+                    try {
+                        // Выделяем блок памяти
+                        int blockSize = (int) (Math.random() * 1024 * 1024) + 1024; // 1KB - 1MB
+                        byte[] block = new byte[blockSize];
+
+                        // Заполняем данными
+                        for (int i = 0; i < blockSize; i += 1024) {
+                            block[i] = (byte) (Math.random() * 256);
+                        }
+
+                        blocks[blockIndex] = block;
+                        blockIndex = (blockIndex + 1) % blocks.length;
+
+                        allocatedBytes.add(blockSize);
+
+                        // Освобождаем старые блоки
+                        if (blockIndex == 0) {
+                            EngineTrace.instant("ram release");
+                            for (int i = 0; i < blocks.length / 2; i++) {
+                                blocks[i] = null;
+                            }
+                        }
+                    } catch (OutOfMemoryError e) {
+                        // Очищаем память и продолжаем
+                        EngineTrace.instant("ram oom");
+                        EngineTrace.beginSection("ram gc");
+                        System.gc();
+                        for (int i = 0; i < blocks.length; i++) {
+                            blocks[i] = null;
+                        }
+                        blockIndex = 0;
+                        EngineTrace.endSection();
+                    }
+                }
+            }
+        });
+
+        MeasurementResult result = context.measure(allocatedBytes, new StageContext.SampleListener() {
+            @Override
+            public void onSample(int progress, double throughput) {
+                // Расчет MB/s
+                float mbPerSecond = (float) (throughput / MB);
+                if (EngineTrace.ENABLED) {
+                    Runtime runtime = Runtime.getRuntime();
+                    EngineTrace.setCounter("ram heap used", runtime.totalMemory() - runtime.freeMemory());
+                }
+                context.reportProgress(progress, mbPerSecond, context.score(throughput));
+            }
+        });
+
+        return new StageResult(ID, context.score(result.getMean()), result);
+    }
+}
@@ -0,0 +1,120 @@
+package com.fpshowmany.idl.engine.stages;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Прикладной этап: сортировка массива чисел ({@link #INTS} элементов, Dual-Pivot Quicksort)
+ * и массива объектов с компаратором ({@link #ITEMS} записей, TimSort), как при
+ * упорядочивании списков в приложении. Каждая операция сортирует копию исходных данных.
+ * Счетчик - отсортированные элементы.
+ */
+public class SortStage extends WorkloadStage {
+
+    public static final String ID = "sort";
+
+    static final int INTS = 100000;
+    static final int ITEMS = 20000;
+
+    /**
+     * Запись списка: цена, название и время.
+     */
+    static final class Item {
+        final int price;
+        final String name;
+        final long time;
+
+        Item(int price, String name, long time) {
+            this.price = price;
+            this.name = name;
+            this.time = time;
+        }
+    }
+
+    // По цене, затем по названию, затем по времени - типичная многоключевая сортировка
+    static final Comparator<Item> ORDER = new Comparator<Item>() {
+        @Override
+        public int compare(Item a, Item b) {
+            if (a.price != b.price) {
+                return a.price < b.price ? -1 : 1;
+            }
+            int byName = a.name.compareTo(b.name);
+            if (byName != 0) {
+                return byName;
+            }
+            return Long.compare(a.time, b.time);
+        }
+    };
+
+    private volatile int[] ints;
+    private volatile Item[] items;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Сортировка";
+    }
+
+    @Override
+    public String getUnit() {
+        return "Mel/s";
+    }
+
+    @Override
+    protected void prepare() {
+        Random random = new Random(SEED);
+        int[] newInts = new int[INTS];
+        for (int i = 0; i < INTS; i++) {
+            newInts[i] = random.nextInt();
+        }
+        Item[] newItems = new Item[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            // Немного повторяющихся цен, чтобы работали вторичные ключи
+            newItems[i] = new Item(random.nextInt(ITEMS / 4), randomWord(random, 3 + random.nextInt(6)),
+                    random.nextLong());
+        }
+        ints = newInts;
+        items = newItems;
+    }
+
+    @Override
+    protected SortKernel createKernel(int worker) {
+        return new SortKernel(ints, items);
+    }
+
+    @Override
+    protected float toDisplayValue(double throughput) {
+        return (float) (throughput / 1000000);
+    }
+
+    /**
+     * Ядро с собственными рабочими копиями массивов.
+     */
+    static final class SortKernel implements Kernel {
+        private final int[] sourceInts;
+        private final Item[] sourceItems;
+        final int[] workInts;
+        final Item[] workItems;
+
+        SortKernel(int[] ints, Item[] items) {
+            this.sourceInts = ints;
+            this.sourceItems = items;
+            this.workInts = new int[ints.length];
+            this.workItems = new Item[items.length];
+        }
+
+        @Override
+        public long run() {
+            System.arraycopy(sourceInts, 0, workInts, 0, sourceInts.length);
+            Arrays.sort(workInts);
+            System.arraycopy(sourceItems, 0, workItems, 0, sourceItems.length);
+            Arrays.sort(workItems, ORDER);
+            return workInts.length + workItems.length;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+import com.fpshowmany.idl.utils.Statistics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Этап базы данных: временная база SQLite в каталоге файлов приложения в нескольких
+ * конфигурациях ({@link #JOURNALS} x {@link #SYNCHRONOUS}) - журнал WAL или откатный
+ * (DELETE), synchronous NORMAL или FULL. В каждой конфигурации по очереди выполняются
+ * операции {@link #OPERATIONS}: вставка пакетами по {@link #BATCH_ROWS} строк в транзакции,
+ * одиночная вставка (своя транзакция на строку), поиск по индексу, чтение диапазона по
+ * индексу ({@link #SCAN_ROWS} строк) и одиночное обновление. Каждой паре конфигурация и
+ * операция достается равная доля времени этапа.
+ * <p>
+ * Для каждой пары показатели результата - операции в секунду ({@code <конфигурация>_<операция>_ops})
+ * и процентили задержки операции в мкс ({@code _p50_us}, {@code _p95_us}, {@code _p99_us});
+ * у пакетной вставки операция - строка, задержка - транзакция пакета. Показатель этапа -
+ * среднее геометрическое операций в секунду по всем парам. Операции, которые нечего или
+ * некуда выполнять (пустая таблица, предел {@link #MAX_ROWS}), пропускаются и в среднее не
+ * входят. Параметр шага
+ * {@link #PARAM_JOURNAL} (wal или delete) оставляет один вид журнала. Требует контекст
+ * приложения.
+ */
+public class SqliteStage implements BenchmarkStage {
+
+    public static final String ID = "sqlite";
+
+    public static final String PARAM_JOURNAL = "journal";
+
+    static final String[] JOURNALS = {"WAL", "DELETE"};
+    static final String[] SYNCHRONOUS = {"NORMAL", "FULL"};
+
+    static final int OP_INSERT_BATCH = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_LOOKUP = 2;
+    static final int OP_SCAN = 3;
+    static final int OP_UPDATE = 4;
+    static final String[] OPERATIONS = {"insert_batch", "insert", "lookup", "scan", "update"};
+
+    static final int BATCH_ROWS = 500;
+    static final int SCAN_ROWS = 100;
+    // Предел размера базы: около 20 МБ
+    static final int MAX_ROWS = 200000;
+    // Строки сверх пакетной вставки, чтобы одиночной вставке было куда писать
+    static final int INSERT_RESERVE = 20000;
+    static final int MAX_LATENCIES = 1 << 16;
+
+    private static final String TAG = "SqliteStage";
+    private static final String DB_DIR = "bench";
+    private static final String DB_NAME = "sqlite-stage.db";
+    private static final int VALUES = 16;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "База данных SQLite";
+    }
+
+    @Override
+    public String getUnit() {
+        return "ops/s";
+    }
+
+    @Override
+    public StageResult run(StageContext context) {
+        Context appContext = context.getAppContext();
+        if (appContext == null) {
+            throw new IllegalStateException("Application context is required");
+        }
+        File dir = new File(appContext.getFilesDir(), DB_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + dir);
+        }
+        File file = new File(dir, DB_NAME);
+        List<String[]> configs = selectConfigs(context.getParam(PARAM_JOURNAL));
+        int cells = configs.size() * OPERATIONS.length;
+
+        String[] values = new String[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = WorkloadStage.randomWord(new Random(WorkloadStage.SEED + i), 64);
+        }
+
+        List<String> names = new ArrayList<>(cells);
+        double[] rates = new double[cells];
+        double[][] percentiles = new double[cells][];
+        LatencyRecorder latencies = new LatencyRecorder(MAX_LATENCIES);
+        int cell = 0;
+        int done = 0;
+        try {
+            for (String[] config : configs) {
+                if (!context.isActive()) {
+                    break;
+                }
+                String configName = config[0].toLowerCase(Locale.US) + "_" + config[1].toLowerCase(Locale.US);
+                SQLiteDatabase.deleteDatabase(file);
+                SQLiteDatabase db = open(file, config[0], config[1]);
+                try {
+                    Table table = new Table(db, values);
+                    for (int op = 0; op < OPERATIONS.length && context.isActive(); op++) {
+                        long deadline = context.getBudgetMs() * ++cell / cells;
+                        if (!canRun(op, table.getRows())) {
+                            // Пустая таблица (simpleQueryForLong бросает исключение) или нет места
+                            Log.w(TAG, configName + " " + OPERATIONS[op] + ": " + table.getRows()
+                                    + " rows, skipped");
+                            continue;
+                        }
+                        latencies.reset();
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.beginSection("sqlite " + configName + " " + OPERATIONS[op]);
+                        }
+                        long ops;
+                        try {
+                            ops = runOperation(context, table, op, deadline, latencies);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        } finally {
+                            if (EngineTrace.ENABLED) {
+                                EngineTrace.endSection();
+                            }
+                        }
+                        if (ops == 0) {
+                            // Нулевая скорость обнулила бы среднее геометрическое
+                            Log.w(TAG, configName + " " + OPERATIONS[op] + ": no operations, skipped");
+                            continue;
+                        }
+                        rates[done] = ops * 1e9 / Math.max(1, latencies.getTotalNanos());
+                        percentiles[done] = latencies.percentilesMicros(LatencyRecorder.PERCENTILES);
+                        names.add(configName + "_" + OPERATIONS[op]);
+                        context.reportSample(rates[done]);
+                        context.reportProgress(context.getTimeProgress(), (float) rates[done],
+                                context.score(rates[done]));
+                        Log.i(TAG, String.format(Locale.US, "%s %s: %.0f ops/s, p50 %.0f us, p99 %.0f us",
+                                configName, OPERATIONS[op], rates[done], percentiles[done][0], percentiles[done][2]));
+                        done++;
+                    }
+                    table.close();
+                } finally {
+                    db.close();
+                }
+            }
+        } finally {
+            SQLiteDatabase.deleteDatabase(file);
+        }
+
+        double score = Statistics.geometricMean(rates, done);
+        MeasurementResult measurement = new MeasurementResult(score, 0, 0, done, 0, done == cells, false);
+        StageResult result = new StageResult(ID, context.score(score), measurement);
+        for (int i = 0; i < done; i++) {
+            result.addMetric(names.get(i) + "_ops", rates[i]);
+            for (int p = 0; p < LatencyRecorder.PERCENTILE_SUFFIXES.length; p++) {
+                result.addMetric(names.get(i) + LatencyRecorder.PERCENTILE_SUFFIXES[p], percentiles[i][p]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Конфигурации {журнал, synchronous}; journal - null или имя журнала без учета регистра.
+     *
+     * @throws IllegalArgumentException при неизвестном журнале
+     */
+    static List<String[]> selectConfigs(String journal) {
+        List<String[]> configs = new ArrayList<>();
+        for (String mode : JOURNALS) {
+            if (journal != null && !mode.equalsIgnoreCase(journal.trim())) {
+                continue;
+            }
+            for (String synchronous : SYNCHRONOUS) {
+                configs.add(new String[]{mode, synchronous});
+            }
+        }
+        if (configs.isEmpty()) {
+            throw new IllegalArgumentException("Unknown journal: " + journal);
+        }
+        return configs;
+    }
+
+    private static SQLiteDatabase open(File file, String journal, String synchronous) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        if ("WAL".equals(journal)) {
+            db.enableWriteAheadLogging();
+        } else {
+            db.disableWriteAheadLogging();
+            // По умолчанию Android может выбрать TRUNCATE или PERSIST
+            Cursor cursor = db.rawQuery("PRAGMA journal_mode=" + journal, null);
+            try {
+                if (cursor.moveToFirst() && !journal.equalsIgnoreCase(cursor.getString(0))) {
+                    Log.w(TAG, "Journal mode is " + cursor.getString(0) + " instead of " + journal);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        db.execSQL("PRAGMA synchronous=" + synchronous);
+        db.execSQL("CREATE TABLE items ("
+                + "id INTEGER PRIMARY KEY, "
+                + "key INTEGER NOT NULL, "
+                + "value TEXT NOT NULL, "
+                + "counter INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_items_key ON items (key)");
+        return db;
+    }
+
+    /**
+     * Выполняет операцию, пока активное время этапа не дойдет до deadline мс.
+     *
+     * @return Число операций (для пакетной вставки - строк)
+     */
+    private static long runOperation(StageContext context, Table table, int op, long deadline,
+                                     LatencyRecorder latencies) throws InterruptedException {
+        long ops = 0;
+        while (context.isActive() && context.getActiveMillis() < deadline) {
+            context.awaitIfPaused();
+            long start = System.nanoTime();
+            switch (op) {
+                case OP_INSERT_BATCH:
+                    if (!canRun(op, table.getRows())) {
+                        return ops;
+                    }
+                    table.insertBatch(BATCH_ROWS);
+                    ops += BATCH_ROWS;
+                    break;
+                case OP_INSERT:
+                    if (!canRun(op, table.getRows())) {
+                        return ops;
+                    }
+                    table.insert();
+                    ops++;
+                    break;
+                case OP_LOOKUP:
+                    table.lookup();
+                    ops++;
+                    break;
+                case OP_SCAN:
+                    table.scan();
+                    ops++;
+                    break;
+                case OP_UPDATE:
+                    table.update();
+                    ops++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation: " + op);
+            }
+            latencies.record(System.nanoTime() - start);
+        }
+        return ops;
+    }
+
+    /**
+     * Можно ли выполнить операцию при rows строках: вставкам нужно место до {@link #MAX_ROWS}
+     * (пакетная оставляет {@link #INSERT_RESERVE} одиночной), чтению и обновлению - строки.
+     */
+    static boolean canRun(int op, int rows) {
+        switch (op) {
+            case OP_INSERT_BATCH:
+                return rows + BATCH_ROWS <= MAX_ROWS - INSERT_RESERVE;
+            case OP_INSERT:
+                return rows < MAX_ROWS;
+            default:
+                return rows > 0;
+        }
+    }
+
+    /**
+     * Ключ строки i: перестановка 32-битных чисел, поэтому ключи уникальны и разбросаны по индексу.
+     */
+    static long key(int i) {
+        int x = i * 0x9E3779B1;
+        x ^= x >>> 16;
+        x *= 0x85EBCA6B;
+        x ^= x >>> 13;
+        return x & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Таблица этапа и подготовленные запросы к ней. Запросы идут по ключам уже вставленных
+     * строк в псевдослучайном порядке.
+     */
+    private static final class Table {
+        private final SQLiteDatabase db;
+        private final String[] values;
+        private final SQLiteStatement insert;
+        private final SQLiteStatement lookup;
+        private final SQLiteStatement update;
+        private final String[] scanArgs = new String[1];
+        private int rows;
+        private int state = 1;
+
+        Table(SQLiteDatabase db, String[] values) {
+            this.db = db;
+            this.values = values;
+            insert = db.compileStatement("INSERT INTO items (key, value, counter) VALUES (?, ?, 0)");
+            lookup = db.compileStatement("SELECT counter FROM items WHERE key = ?");
+            update = db.compileStatement("UPDATE items SET counter = counter + 1 WHERE key = ?");
+        }
+
+        int getRows() {
+            return rows;
+        }
+
+        void insertBatch(int count) {
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < count; i++) {
+                    insert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        void insert() {
+            insert.bindLong(1, key(rows));
+            insert.bindString(2, values[rows % values.length]);
+            insert.executeInsert();
+            rows++;
+        }
+
+        void lookup() {
+            lookup.bindLong(1, randomKey());
+            lookup.simpleQueryForLong();
+        }
+
+        void scan() {
+            scanArgs[0] = Long.toString(randomKey());
+            Cursor cursor = db.rawQuery("SELECT id, value FROM items WHERE key >= ? ORDER BY key LIMIT "
+                    + SCAN_ROWS, scanArgs);
+            try {
+                while (cursor.moveToNext()) {
+                    cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        void update() {
+            update.bindLong(1, randomKey());
+            update.executeUpdateDelete();
+        }
+
+        private long randomKey() {
+            state ^= state << 13;
+            state ^= state >>> 17;
+            state ^= state << 5;
+            return key((state & 0x7FFFFFFF) % Math.max(1, rows));
+        }
+
+        void close() {
+            insert.close();
+            lookup.close();
+            update.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.fpshowmany.idl.engine.stages;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Проверка стабильности CPU, как torture-тест Prime95: ищет неверные результаты, а не
+ * только медленные. Все потоки CPU по кругу выполняют детерминированные ядра
+ * (целочисленное, умножение матриц double, сортировку, CRC32) на фиксированных входах,
+ * и каждая контрольная сумма сверяется с заранее известной {@link #EXPECTED}. Ядра
+ * используют только точно определенные в Java операции (целочисленные, арифметику и sqrt
+ * double), поэтому суммы одинаковы на любом исправном устройстве.
+ * <p>
+ * Расхождение публикуется как ошибка этапа; первые {@link #MAX_REPORTED_ERRORS}
+ * расхождений - каждое отдельно, остальные - итогом в конце этапа. При любом расхождении
+ * балл этапа 0. Счетчик - проверенные прогоны ядер.
+ */
+public class StabilityStage implements BenchmarkStage {
+
+    public static final String ID = "stability";
+
+    static final String METRIC_CHECKS = "checks";
+    static final String METRIC_ERRORS = "errors";
+
+    static final int MAX_REPORTED_ERRORS = 10;
+
+    static final String[] KERNELS = {"int", "fp", "sort", "crc"};
+    static final int INPUTS = 4;
+
+    // Контрольные суммы исправного устройства: [ядро][вход]
+    static final long[][] EXPECTED = {
+            {0x36a00c7020d08ff6L, 0xc4841239290ac0e1L, 0x9900ce62988cec10L, 0x80dbc85b0710b0e7L},
+            {0x5183afcfb87f31b5L, 0x9b9c5c962d124959L, 0xf581de96ead45b82L, 0x583b22c0bbd4059bL},
+            {0xa786812344fb2612L, 0x2048f32d7f991820L, 0xd3995186e6b8287dL, 0xb61f1908abd17c8aL},
+            {0x2aa0da72L, 0x42018220L, 0x1beb6a9aL, 0x710ace6fL},
+    };
+
+    static final int INT_ROUNDS = 200000;
+    static final int MATRIX_SIZE = 48;
+    static final int SORT_SIZE = 32768;
+    static final int CRC_SIZE = 256 * 1024;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Стабильность CPU";
+    }
+
+    @Override
+    public String getUnit() {
+        return "checks/s";
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        final LongAdder checks = new LongAdder();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicInteger workerIndex = new AtomicInteger();
+
+        context.startWorkers(context.getCpuThreads(), new Runnable() {
+            @Override
+            public void run() {
+                int worker = workerIndex.getAndIncrement();
+                Workspace workspace = new Workspace();
+                // Потоки начинают с разных ядер, чтобы одновременно нагружать разные блоки
+                int job = worker;
+                try {
+                    while (context.isActive()) {
+                        context.awaitIfPaused();
+                        int kernel = job % KERNELS.length;
+                        int input = job / KERNELS.length % INPUTS;
+                        job++;
+
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.beginSection("stability " + KERNELS[kernel]);
+                        }
+                        long checksum = compute(kernel, input, workspace);
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.endSection();
+                        }
+                        if (checksum != EXPECTED[kernel][input]) {
+                            if (errors.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+                                context.reportError(String.format(Locale.US,
+                                        "%s: неверный результат ядра %s (вход %d, поток %d): %016x вместо %016x",
+                                        getName(), KERNELS[kernel], input, worker, checksum,
+                                        EXPECTED[kernel][input]));
+                            }
+                        }
+                        checks.increment();
+                    }
+                } catch (InterruptedException e) {
+                    // Остановка движка
+                }
+            }
+        });
+
+        MeasurementResult result = context.measure(checks, new StageContext.SampleListener() {
+            @Override
+            public void onSample(int progress, double throughput) {
+                context.reportProgress(progress, (float) throughput,
+                        errors.get() == 0 ? context.score(throughput) : 0);
+            }
+        });
+
+        long errorCount = errors.get();
+        if (errorCount > MAX_REPORTED_ERRORS) {
+            context.reportError(getName() + ": всего неверных результатов " + errorCount);
+        }
+        int score = errorCount == 0 ? context.score(result.getMean()) : 0;
+        return new StageResult(ID, score, result)
+                .addMetric(METRIC_CHECKS, checks.sum())
+                .addMetric(METRIC_ERRORS, errorCount);
+    }
+
+    /**
+     * Рабочие массивы потока, чтобы ядра не выделяли память на каждом прогоне.
+     */
+    static final class Workspace {
+        final double[] a = new double[MATRIX_SIZE * MATRIX_SIZE];
+        final double[] b = new double[MATRIX_SIZE * MATRIX_SIZE];
+        final double[] c = new double[MATRIX_SIZE * MATRIX_SIZE];
+        final int[] ints = new int[SORT_SIZE];
+        final byte[] bytes = new byte[CRC_SIZE];
+        final CRC32 crc = new CRC32();
+    }
+
+    static long seed(int kernel, int input) {
+        return WorkloadStage.SEED * 31 + kernel * INPUTS + input;
+    }
+
+    /**
+     * Контрольная сумма ядра на входе.
+     */
+    static long compute(int kernel, int input, Workspace workspace) {
+        long seed = seed(kernel, input);
+        switch (kernel) {
+            case 0:
+                return integerKernel(seed);
+            case 1:
+                return matrixKernel(seed, workspace);
+            case 2:
+                return sortKernel(seed, workspace);
+            case 3:
+                return crcKernel(seed, workspace);
+            default:
+                throw new IllegalArgumentException("Unknown kernel: " + kernel);
+        }
+    }
+
+    // Сдвиги, умножение, деление и вращения 64-битных целых
+    static long integerKernel(long seed) {
+        long x = seed | 1;
+        long acc = seed;
+        for (int i = 0; i < INT_ROUNDS; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            acc = acc * 0x9E3779B97F4A7C15L + x;
+            acc ^= Long.rotateLeft(acc, 23);
+            if ((i & 63) == 0) {
+                acc += x / ((x >>> 40) | 1);
+            }
+        }
+        return acc;
+    }
+
+    // Умножение матриц и корни: сложение, умножение и sqrt double округляются однозначно
+    static long matrixKernel(long seed, Workspace workspace) {
+        Random random = new Random(seed);
+        double[] a = workspace.a;
+        double[] b = workspace.b;
+        double[] c = workspace.c;
+        for (int i = 0; i < a.length; i++) {
+            a[i] = random.nextDouble() - 0.5;
+            b[i] = random.nextDouble() - 0.5;
+        }
+        int n = MATRIX_SIZE;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double sum = 0;
+                for (int k = 0; k < n; k++) {
+                    sum += a[i * n + k] * b[k * n + j];
+                }
+                c[i * n + j] = sum;
+            }
+        }
+        long checksum = 0;
+        for (int i = 0; i < c.length; i++) {
+            double value = c[i] / (1 + Math.sqrt(Math.abs(c[i])));
+            checksum = checksum * 31 + Double.doubleToLongBits(value);
+        }
+        return checksum;
+    }
+
+    // Сортировка массива, который не помещается в L1
+    static long sortKernel(long seed, Workspace workspace) {
+        Random random = new Random(seed);
+        int[] ints = workspace.ints;
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = random.nextInt();
+        }
+        Arrays.sort(ints);
+        long checksum = 0;
+        for (int i = 0; i < ints.length; i++) {
+            checksum = checksum * 31 + (long) ints[i] * (i + 1);
+        }
+        return checksum;
+    }
+
+    // CRC32 буфера, на ARMv8 - аппаратные инструкции
+    static long crcKernel(long seed, Workspace workspace) {
+        new Random(seed).nextBytes(workspace.bytes);
+        CRC32 crc = workspace.crc;
+        crc.reset();
+        crc.update(workspace.bytes, 0, workspace.bytes.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,77 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+/**
+ * Состояние памяти системы по {@link ActivityManager.MemoryInfo}: свободно, порог,
+ * ниже которого система начинает убивать фоновые процессы, и признак нехватки памяти.
+ * Без контекста (юнит-тесты) оценивает память по куче своего процесса.
+ * Не потокобезопасен: {@link #update()} и чтение - на одном потоке.
+ */
+public final class SystemMemory {
+
+    // Запас над порогом: сколько порогов свободной памяти оставлять системе
+    static final int RESERVE_THRESHOLDS = 2;
+
+    private final ActivityManager activityManager;
+    private final ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+
+    /**
+     * @param context Контекст приложения, может быть null
+     */
+    public SystemMemory(Context context) {
+        this.activityManager = context != null
+                ? (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE) : null;
+        update();
+    }
+
+    /**
+     * Перечитывает состояние памяти.
+     */
+    public void update() {
+        if (activityManager != null) {
+            activityManager.getMemoryInfo(info);
+            return;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        info.totalMem = runtime.maxMemory();
+        info.availMem = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        info.threshold = 0;
+        info.lowMemory = false;
+    }
+
+    public long getTotalBytes() {
+        return info.totalMem;
+    }
+
+    public long getAvailableBytes() {
+        return info.availMem;
+    }
+
+    public long getThresholdBytes() {
+        return info.threshold;
+    }
+
+    /**
+     * Система сама считает, что памяти мало.
+     */
+    public boolean isLowMemory() {
+        return info.lowMemory;
+    }
+
+    /**
+     * Сколько еще можно занять, оставив системе {@link #RESERVE_THRESHOLDS} порога
+     * сверх порога нехватки памяти; 0, если запаса уже нет.
+     */
+    public long getHeadroomBytes() {
+        return Math.max(0, info.availMem - info.threshold * (1 + RESERVE_THRESHOLDS));
+    }
+
+    /**
+     * Память на исходе: система сообщает о нехватке или запас исчерпан.
+     */
+    public boolean isUnderPressure() {
+        return info.lowMemory || getHeadroomBytes() == 0;
+    }
+}
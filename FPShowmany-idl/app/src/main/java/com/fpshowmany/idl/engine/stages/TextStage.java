@@ -0,0 +1,152 @@
+package com.fpshowmany.idl.engine.stages;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Прикладной этап: обработка текста регулярными выражениями, как разбор логов,
+ * поиск ссылок в сообщениях и форматирование строк. За одну операцию разбираются
+ * {@link #LINES} строк журнала: поля строки выделяются одним выражением, в сообщении
+ * ищутся ссылки и адреса почты, из полей собирается краткая строка.
+ * Счетчик - обработанные строки.
+ */
+public class TextStage extends WorkloadStage {
+
+    public static final String ID = "text";
+
+    static final int LINES = 2000;
+
+    // 2024-05-01 12:34:56.789 I/ActivityManager( 1234): сообщение
+    static final Pattern LINE = Pattern.compile(
+            "^(\\d{4}-\\d{2}-\\d{2}) (\\d{2}:\\d{2}:\\d{2}\\.\\d{3}) ([VDIWE])/([\\w.]+)\\(\\s*(\\d+)\\): (.*)$");
+    static final Pattern LINK = Pattern.compile(
+            "(https?://[\\w.-]+(?:/[\\w./?=&%-]*)?)|([\\w.+-]+@[\\w-]+\\.[\\w.]+)");
+
+    private static final String[] LEVELS = {"V", "D", "I", "W", "E"};
+    private static final String[] TAGS = {"ActivityManager", "OkHttp", "Choreographer", "chromium",
+            "WindowManager", "app.Feed", "SQLiteLog", "ImageLoader"};
+
+    private volatile String[] lines;
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Текст и regex";
+    }
+
+    @Override
+    public String getUnit() {
+        return "klines/s";
+    }
+
+    @Override
+    protected void prepare() {
+        lines = createLines(new Random(SEED));
+    }
+
+    @Override
+    protected TextKernel createKernel(int worker) {
+        return new TextKernel(lines);
+    }
+
+    @Override
+    protected float toDisplayValue(double throughput) {
+        return (float) (throughput / 1000);
+    }
+
+    /**
+     * Ядро с собственными Matcher и буфером строки.
+     */
+    static final class TextKernel implements Kernel {
+        private final String[] lines;
+        private final Matcher lineMatcher = LINE.matcher("");
+        private final Matcher linkMatcher = LINK.matcher("");
+        private final StringBuilder builder = new StringBuilder(128);
+
+        // Итоги последней порции, для проверки
+        int matched;
+        int links;
+        int words;
+        int checksum;
+
+        TextKernel(String[] lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public long run() {
+            matched = 0;
+            links = 0;
+            words = 0;
+            checksum = 0;
+            for (String line : lines) {
+                if (!lineMatcher.reset(line).matches()) {
+                    continue;
+                }
+                matched++;
+                String message = lineMatcher.group(6);
+                linkMatcher.reset(message);
+                while (linkMatcher.find()) {
+                    links++;
+                }
+                words += message.split(" ").length;
+
+                builder.setLength(0);
+                builder.append(lineMatcher.group(3)).append(' ')
+                        .append(lineMatcher.group(4).toLowerCase(Locale.US)).append('#')
+                        .append(Integer.parseInt(lineMatcher.group(5))).append(" @")
+                        .append(lineMatcher.group(2), 0, 8).append(": ")
+                        .append(message.length() > 40 ? message.substring(0, 40) : message);
+                checksum = checksum * 31 + builder.toString().hashCode();
+            }
+            return lines.length;
+        }
+    }
+
+    static String[] createLines(Random random) {
+        String[] result = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            String message;
+            switch (random.nextInt(6)) {
+                case 0:
+                    message = "Start proc " + random.nextInt(32768) + ":com.example." + randomWord(random, 6)
+                            + "/u0a" + random.nextInt(400) + " for activity";
+                    break;
+                case 1:
+                    message = "Displayed com.example.app/.MainActivity: +" + random.nextInt(2000) + "ms";
+                    break;
+                case 2:
+                    message = "--> GET https://api.example.com/v1/" + randomWord(random, 5) + "?page="
+                            + random.nextInt(50) + "&lang=en";
+                    break;
+                case 3:
+                    message = "user " + randomWord(random, 7) + "@example.com signed in from "
+                            + randomSentence(random, 3);
+                    break;
+                case 4:
+                    message = "Skipped " + random.nextInt(120) + " frames! The application may be doing too much"
+                            + " work on its main thread.";
+                    break;
+                default:
+                    message = randomSentence(random, 4 + random.nextInt(12));
+                    break;
+            }
+            // Каждая сотая строка не в формате журнала, как обрывки трассировок стека
+            if (random.nextInt(100) == 0) {
+                result[i] = "\tat com.example." + randomWord(random, 8) + ".run(Unknown Source)";
+                continue;
+            }
+            result[i] = String.format(Locale.US, "2024-05-%02d %02d:%02d:%02d.%03d %s/%s(%5d): %s",
+                    1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                    random.nextInt(1000), LEVELS[random.nextInt(LEVELS.length)],
+                    TAGS[random.nextInt(TAGS.length)], random.nextInt(32768), message);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+package com.fpshowmany.idl.engine.stages;
+
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.MeasurementResult;
+import com.fpshowmany.idl.engine.StageContext;
+import com.fpshowmany.idl.engine.StageResult;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Основа этапов с прикладной нагрузкой: типичная работа приложения на фиксированных
+ * наборах данных. Данные генерируются из постоянного зерна ({@link #SEED}), поэтому
+ * на всех устройствах выполняется одна и та же работа.
+ * <p>
+ * По умолчанию этап однопоточный, как работа на главном потоке приложения; параметр шага
+ * {@link StageContext#PARAM_THREADS} запускает многопоточный вариант. Общие данные
+ * готовятся один раз в {@link #prepare()}, изменяемые буферы у каждого потока свои.
+ */
+abstract class WorkloadStage implements BenchmarkStage {
+
+    static final long SEED = 0x5EEDL;
+
+    /**
+     * Порция работы одного рабочего потока.
+     */
+    interface Kernel {
+        /**
+         * Выполняет порцию работы.
+         *
+         * @return Количество выполненных операций в единицах счетчика этапа
+         */
+        long run();
+    }
+
+    /**
+     * Готовит общие неизменяемые данные перед запуском рабочих потоков.
+     */
+    protected void prepare() {
+    }
+
+    /**
+     * Создает ядро рабочего потока; вызывается на этом потоке.
+     *
+     * @param worker Номер потока, с 0
+     */
+    protected abstract Kernel createKernel(int worker);
+
+    /**
+     * Значение для отображения в единицах {@link #getUnit()}.
+     *
+     * @param throughput Операций в секунду
+     */
+    protected float toDisplayValue(double throughput) {
+        return (float) throughput;
+    }
+
+    @Override
+    public StageResult run(final StageContext context) {
+        prepare();
+        final LongAdder operations = new LongAdder();
+        final AtomicInteger workerIndex = new AtomicInteger();
+        final String section = getId() + " kernel";
+
+        context.startWorkers(context.getIntParam(StageContext.PARAM_THREADS, 1), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Kernel kernel = createKernel(workerIndex.getAndIncrement());
+                    while (context.isActive()) {
+                        context.awaitIfPaused();
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.beginSection(section);
+                        }
+                        operations.add(kernel.run());
+                        if (EngineTrace.ENABLED) {
+                            EngineTrace.endSection();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Остановка движка
+                } catch (RuntimeException e) {
+                    context.reportError(getName() + ": " + e.getMessage());
+                }
+            }
+        });
+
+        MeasurementResult result = context.measure(operations, new StageContext.SampleListener() {
+            @Override
+            public void onSample(int progress, double throughput) {
+                context.reportProgress(progress, toDisplayValue(throughput), context.score(throughput));
+            }
+        });
+
+        return new StageResult(getId(), context.score(result.getMean()), result);
+    }
+
+    /**
+     * Предложение из случайных слов латиницей.
+     */
+    static String randomSentence(Random random, int words) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(randomWord(random, 2 + random.nextInt(9)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Случайное слово из строчных латинских букв.
+     */
+    static String randomWord(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,336 @@
+package com.fpshowmany.idl.service;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import com.fpshowmany.idl.R;
+import com.fpshowmany.idl.data.HistoryStore;
+import com.fpshowmany.idl.data.RunFileRecorder;
+import com.fpshowmany.idl.data.RunRecord;
+import com.fpshowmany.idl.data.RunRecorder;
+import com.fpshowmany.idl.engine.BatteryPowerSource;
+import com.fpshowmany.idl.engine.BenchmarkEvent;
+import com.fpshowmany.idl.engine.BenchmarkListener;
+import com.fpshowmany.idl.engine.BenchmarkPlan;
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.DeviceThermalSensor;
+import com.fpshowmany.idl.engine.EngineTrace;
+import com.fpshowmany.idl.engine.EventStream;
+import com.fpshowmany.idl.engine.LogcatEngineLog;
+import com.fpshowmany.idl.engine.StressTestEngine;
+import com.fpshowmany.idl.engine.ThermalSensor;
+import com.fpshowmany.idl.ui.TestActivity;
+import com.fpshowmany.idl.utils.SettingsManager;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Foreground-сервис, в котором выполняется стресс-тест.
+ * Движок живет независимо от UI: активности подключаются к сервису через
+ * {@link LocalBinder} и подписываются на {@link #getEvents()}, а при отключении тест
+ * продолжается. Поток событий общий для всех запусков сервиса, новый подписчик
+ * сразу получает текущее состояние теста. Завершенные запуски сохраняются в историю
+ * ({@link HistoryStore}), а ход каждого запуска пишется в файл ({@link RunFileRecorder})
+ * на отдельном потоке.
+ */
+public class BenchmarkService extends Service implements BenchmarkListener {
+
+    public static final String ACTION_START = "com.fpshowmany.idl.action.START";
+    public static final String ACTION_STOP = "com.fpshowmany.idl.action.STOP";
+
+    private static final String CHANNEL_ID = "benchmark";
+    private static final int NOTIFICATION_ID = 1;
+    private static final String WAKE_LOCK_TAG = "FPShowmany:benchmark";
+
+    // Минимальный интервал обновления уведомления
+    private static final long NOTIFICATION_INTERVAL_MS = 1000;
+    // Запас времени удержания wake lock сверх длительности теста
+    private static final long WAKE_LOCK_MARGIN_MS = 60 * 1000;
+    private static final long RECORDER_KEEP_ALIVE_SECONDS = 10;
+
+    private final LocalBinder binder = new LocalBinder();
+    private final EventStream events = new EventStream();
+    private EventStream.Subscription subscription;
+
+    private RunRecorder recorder;
+    private RunFileRecorder fileRecorder;
+
+    private StressTestEngine engine;
+    private String planId;
+    private PowerManager.WakeLock wakeLock;
+    private NotificationManager notificationManager;
+
+    // Состояние для уведомления
+    private boolean isRunning = false;
+    private boolean isComplete = false;
+    private BenchmarkStage currentStage;
+    private int stageIndex;
+    private int stageCount;
+    private int lastProgress;
+    private long lastNotificationTime;
+
+    /**
+     * Binder для клиентов внутри процесса.
+     */
+    public class LocalBinder extends Binder {
+        public BenchmarkService getService() {
+            return BenchmarkService.this;
+        }
+    }
+
+    /**
+     * Запускает тест в сервисе с текущими настройками.
+     */
+    public static void start(Context context) {
+        Intent intent = new Intent(context, BenchmarkService.class);
+        intent.setAction(ACTION_START);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.notification_channel_benchmark), NotificationManager.IMPORTANCE_LOW);
+            channel.setDescription(getString(R.string.notification_channel_description));
+            notificationManager.createNotificationChannel(channel);
+        }
+        subscription = events.subscribe(this, ContextCompat.getMainExecutor(this), true);
+
+        // Запись в историю получает все замеры и работает с базой вне главного потока.
+        // Поток записи завершается сам после простоя, поэтому уже опубликованный результат
+        // сохраняется и после остановки сервиса
+        recorder = new RunRecorder(HistoryStore.getInstance(this));
+        ThreadPoolExecutor recorderExecutor = new ThreadPoolExecutor(0, 1,
+                RECORDER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        events.subscribe(recorder, recorderExecutor, false);
+        fileRecorder = new RunFileRecorder(RunFileRecorder.getDirectory(this));
+        events.subscribe(fileRecorder, recorderExecutor, false);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_STOP.equals(action)) {
+            stopTest();
+            return START_NOT_STICKY;
+        }
+
+        if (ACTION_START.equals(action)) {
+            startTest();
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * Запускает тест, если он еще не выполняется.
+     */
+    public void startTest() {
+        if (isRunning) {
+            return;
+        }
+
+        ServiceCompat.startForeground(this, NOTIFICATION_ID,
+                buildNotification(getString(R.string.notification_running), 0),
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+                        ? ServiceInfo.FOREGROUND_SERVICE_TYPE_SPECIAL_USE : 0);
+
+        BenchmarkPlan plan = new SettingsManager(this).createPlan();
+        planId = plan.getName();
+        engine = new StressTestEngine(events);
+        engine.setAppContext(this);
+        engine.setPowerSource(new BatteryPowerSource(this));
+        engine.setLog(new LogcatEngineLog());
+        // GPU этап рендерит во внеэкранный буфер, UI для теста не нужен
+        plan.configure(engine, null);
+        if (EngineTrace.ENABLED) {
+            engine.setTraceFile(RunFileRecorder.createTraceFile(this));
+        }
+        RunRecord.Settings runSettings = new RunRecord.Settings(plan.getCpuThreads(), plan.getGpuMode(),
+                plan.getEstimatedSeconds(), plan.getIterations(), plan.isEarlyStop());
+        ThermalSensor sensor = new DeviceThermalSensor(this);
+        recorder.begin(runSettings, new RunRecord.Conditions(sensor.readTemperature(),
+                sensor.readThermalStatus(), 0, 0));
+        fileRecorder.begin(runSettings, plan.getName());
+
+        acquireWakeLock(plan.getEstimatedSeconds() * 1000L + WAKE_LOCK_MARGIN_MS);
+
+        isRunning = true;
+        isComplete = false;
+        currentStage = null;
+        engine.start();
+    }
+
+    /**
+     * Останавливает тест и сервис.
+     */
+    public void stopTest() {
+        if (engine != null) {
+            engine.stopAll();
+        }
+        isRunning = false;
+        finishForeground();
+    }
+
+    public void pauseTest() {
+        if (engine != null) {
+            engine.pause();
+        }
+    }
+
+    public void resumeTest() {
+        if (engine != null) {
+            engine.resume();
+        }
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public boolean isComplete() {
+        return isComplete;
+    }
+
+    /**
+     * План последнего запуска ({@link BenchmarkPlan#getName()}) или null.
+     */
+    public String getPlanId() {
+        return planId;
+    }
+
+    /**
+     * Движок последнего запуска или null.
+     */
+    public StressTestEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Поток событий теста. Подписчики получают события на выбранном executor
+     * и могут подписываться и отписываться в любой момент, не влияя на тест.
+     */
+    public EventStream getEvents() {
+        return events;
+    }
+
+    @Override
+    public void onEvent(BenchmarkEvent event) {
+        switch (event.getType()) {
+            case STAGE_START:
+                BenchmarkEvent.StageStart start = (BenchmarkEvent.StageStart) event;
+                currentStage = start.stage;
+                stageIndex = start.index;
+                stageCount = start.count;
+                lastProgress = 0;
+                updateNotification(true);
+                break;
+            case PROGRESS:
+                lastProgress = ((BenchmarkEvent.Progress) event).progress;
+                updateNotification(false);
+                break;
+            case RUN_COMPLETE:
+                isComplete = true;
+                isRunning = false;
+                finishForeground();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        subscription.cancel();
+        if (engine != null) {
+            engine.stopAll();
+        }
+        releaseWakeLock();
+        super.onDestroy();
+    }
+
+    /**
+     * Снимает foreground-статус. Сервис останавливается, когда от него отключатся все клиенты.
+     */
+    private void finishForeground() {
+        releaseWakeLock();
+        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+        stopSelf();
+    }
+
+    private void acquireWakeLock(long timeoutMs) {
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+        wakeLock.setReferenceCounted(false);
+        wakeLock.acquire(timeoutMs);
+    }
+
+    private void releaseWakeLock() {
+        if (wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+        wakeLock = null;
+    }
+
+    private void updateNotification(boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        if (!isRunning || (!force && now - lastNotificationTime < NOTIFICATION_INTERVAL_MS)) {
+            return;
+        }
+        lastNotificationTime = now;
+
+        String text = currentStage != null
+                ? getString(R.string.notification_stage, currentStage.getName(), stageIndex + 1, stageCount)
+                : getString(R.string.notification_running);
+        int progress = stageCount > 0 ? (stageIndex * 100 + lastProgress) / stageCount : 0;
+        notificationManager.notify(NOTIFICATION_ID, buildNotification(text, progress));
+    }
+
+    private Notification buildNotification(String text, int progress) {
+        Intent openIntent = new Intent(this, TestActivity.class);
+        openIntent.putExtra(TestActivity.EXTRA_ATTACH_ONLY, true);
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, openIntent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+
+        Intent stopIntent = new Intent(this, BenchmarkService.class);
+        stopIntent.setAction(ACTION_STOP);
+        PendingIntent stopPendingIntent = PendingIntent.getService(this, 1, stopIntent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(text)
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setProgress(100, progress, false)
+                .setContentIntent(contentIntent)
+                .addAction(R.drawable.ic_close, getString(R.string.btn_stop), stopPendingIntent)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+    }
+}
@@ -0,0 +1,234 @@
+package com.fpshowmany.idl.service;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.fpshowmany.idl.engine.stages.OffHeapRegion;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Служба нагрузки на память в отдельном процессе. Каждый процесс имеет свою кучу и свой
+ * лимит, поэтому несколько таких процессов нагружают память всей системы, а не только
+ * кучу приложения. Процессы объявлены в манифесте подклассами из {@link #PROCESSES},
+ * у каждого свой android:process.
+ * <p>
+ * Управление - через {@link Messenger}: {@link #MSG_START} с размером области в МБ (arg1)
+ * и получателем ответов (replyTo), затем {@link #MSG_PAUSE}, {@link #MSG_RESUME},
+ * {@link #MSG_STOP}. Служба выделяет область вне кучи, попеременно записывает и читает ее
+ * целиком и каждые {@link #PROGRESS_INTERVAL_MS} отправляет {@link #MSG_PROGRESS}
+ * с байтами за интервал ({@link #KEY_BYTES}) и pid процесса (arg1). Если память
+ * выделить не удалось - {@link #MSG_FAILED} с текстом ошибки ({@link #KEY_MESSAGE}).
+ */
+public class MemoryWorkerService extends Service {
+
+    private static final String TAG = "MemoryWorkerService";
+
+    public static final int MSG_START = 1;
+    public static final int MSG_PAUSE = 2;
+    public static final int MSG_RESUME = 3;
+    public static final int MSG_STOP = 4;
+    public static final int MSG_PROGRESS = 10;
+    public static final int MSG_FAILED = 11;
+
+    public static final String KEY_BYTES = "bytes";
+    public static final String KEY_MESSAGE = "message";
+
+    static final long PROGRESS_INTERVAL_MS = 250;
+
+    // Процессы службы; порядок совпадает с объявлениями в манифесте
+    public static final List<Class<? extends MemoryWorkerService>> PROCESSES = Collections.unmodifiableList(
+            Arrays.<Class<? extends MemoryWorkerService>>asList(
+                    Process0.class, Process1.class, Process2.class, Process3.class));
+
+    public static final class Process0 extends MemoryWorkerService {
+    }
+
+    public static final class Process1 extends MemoryWorkerService {
+    }
+
+    public static final class Process2 extends MemoryWorkerService {
+    }
+
+    public static final class Process3 extends MemoryWorkerService {
+    }
+
+    private HandlerThread handlerThread;
+    private Messenger messenger;
+    private Streamer streamer;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        handlerThread = new HandlerThread("MemoryWorker-control");
+        handlerThread.start();
+        messenger = new Messenger(new Handler(handlerThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                handleControl(msg);
+            }
+        });
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return messenger.getBinder();
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        stopStreamer();
+        return false;
+    }
+
+    @Override
+    public void onDestroy() {
+        stopStreamer();
+        handlerThread.quitSafely();
+        super.onDestroy();
+    }
+
+    // Вызывается на потоке управления
+    private void handleControl(Message msg) {
+        switch (msg.what) {
+            case MSG_START:
+                stopStreamer();
+                streamer = new Streamer(msg.arg1 * 1024L * 1024L, msg.replyTo);
+                new Thread(streamer, "MemoryWorker-stream").start();
+                break;
+            case MSG_PAUSE:
+                if (streamer != null) {
+                    streamer.setPaused(true);
+                }
+                break;
+            case MSG_RESUME:
+                if (streamer != null) {
+                    streamer.setPaused(false);
+                }
+                break;
+            case MSG_STOP:
+                stopStreamer();
+                break;
+            default:
+                Log.w(TAG, "Unknown message: " + msg.what);
+                break;
+        }
+    }
+
+    private void stopStreamer() {
+        Streamer current = streamer;
+        streamer = null;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    /**
+     * Поток записи и чтения области.
+     */
+    private static final class Streamer implements Runnable {
+        private final long size;
+        private final Messenger replyTo;
+        private volatile boolean running = true;
+        private boolean paused;
+        // Сумма прочитанного, чтобы компилятор не выбросил чтение
+        volatile long checksum;
+
+        Streamer(long size, Messenger replyTo) {
+            this.size = size;
+            this.replyTo = replyTo;
+        }
+
+        synchronized void setPaused(boolean paused) {
+            this.paused = paused;
+            notifyAll();
+        }
+
+        synchronized void stop() {
+            running = false;
+            notifyAll();
+        }
+
+        private synchronized void awaitIfPaused() throws InterruptedException {
+            while (paused && running) {
+                wait();
+            }
+        }
+
+        @Override
+        public void run() {
+            OffHeapRegion region;
+            try {
+                region = OffHeapRegion.allocate("memory-worker", (int) Math.min(Integer.MAX_VALUE - 8, size));
+            } catch (OutOfMemoryError e) {
+                Message failed = Message.obtain(null, MSG_FAILED);
+                failed.getData().putString(KEY_MESSAGE, e.getMessage());
+                send(failed);
+                return;
+            }
+
+            try {
+                LongBuffer words = region.getBuffer().asLongBuffer();
+                int count = words.capacity();
+                long pending = 0;
+                long lastReport = SystemClock.elapsedRealtime();
+                long pass = 0;
+                long sum = 0;
+                while (running) {
+                    awaitIfPaused();
+                    for (int i = 0; i < count; i++) {
+                        words.put(i, i ^ pass);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        sum += words.get(i);
+                    }
+                    pass++;
+                    pending += (long) count * 16;
+
+                    long now = SystemClock.elapsedRealtime();
+                    if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+                        Message progress = Message.obtain(null, MSG_PROGRESS, Process.myPid(), 0);
+                        Bundle data = progress.getData();
+                        data.putLong(KEY_BYTES, pending);
+                        if (!send(progress)) {
+                            break;
+                        }
+                        pending = 0;
+                        lastReport = now;
+                    }
+                }
+                checksum = sum;
+            } catch (InterruptedException e) {
+                // Остановка службы
+            } finally {
+                region.close();
+            }
+        }
+
+        /**
+         * @return false, если получатель недоступен (основной процесс завершен)
+         */
+        private boolean send(Message message) {
+            try {
+                replyTo.send(message);
+                return true;
+            } catch (RemoteException e) {
+                Log.w(TAG, "Engine is gone, stopping", e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.fpshowmany.idl.ui;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+
+import com.fpshowmany.idl.R;
+import com.fpshowmany.idl.data.HistoryStore;
+import com.fpshowmany.idl.data.RegressionDetector;
+import com.fpshowmany.idl.data.RunComparison;
+import com.fpshowmany.idl.data.RunRecord;
+import com.fpshowmany.idl.databinding.ActivityCompareBinding;
+import com.fpshowmany.idl.databinding.ItemCompareStageBinding;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Активность сравнения запуска с базовыми запусками из истории.
+ * Показывает итоговый балл и баллы этапов последнего базового и проверяемого запусков
+ * с изменением в процентах. Регрессии и улучшения по замерам всех базовых запусков
+ * ({@link RegressionDetector}) выделяются цветом; для этапа с достаточным числом замеров
+ * изменение - по медианам замеров.
+ */
+public class CompareActivity extends AppCompatActivity {
+
+    // long[]: базовые запуски, от новых к старым
+    public static final String EXTRA_BASE_IDS = "base_ids";
+    public static final String EXTRA_OTHER_ID = "other_id";
+
+    private ActivityCompareBinding binding;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = ActivityCompareBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+
+        binding.toolbar.setNavigationOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                finish();
+            }
+        });
+
+        long[] baseIds = getIntent().getLongArrayExtra(EXTRA_BASE_IDS);
+        loadComparison(baseIds != null ? baseIds : new long[0], getIntent().getLongExtra(EXTRA_OTHER_ID, -1));
+    }
+
+    private void loadComparison(final long[] baseIds, final long otherId) {
+        final HistoryStore store = HistoryStore.getInstance(this);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                RunRecord other = store.getRun(otherId);
+                RegressionDetector detector = new RegressionDetector();
+                RunRecord latestBase = null;
+                for (long baseId : baseIds) {
+                    RunRecord base = store.getRun(baseId);
+                    if (base == null) {
+                        continue;
+                    }
+                    if (latestBase == null) {
+                        latestBase = base;
+                    }
+                    detector.addBaseRun(base);
+                }
+                final RunComparison comparison = latestBase != null && other != null
+                        ? new RunComparison(latestBase, other) : null;
+                final Map<String, RegressionDetector.StageVerdict> verdicts = new HashMap<>();
+                if (comparison != null) {
+                    detector.addOtherRun(other);
+                    for (RegressionDetector.StageVerdict verdict : detector.analyze()) {
+                        verdicts.put(verdict.getStageId(), verdict);
+                    }
+                }
+                final int baseCount = baseIds.length;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        if (comparison == null) {
+                            Toast.makeText(CompareActivity.this, R.string.compare_run_missing, Toast.LENGTH_SHORT).show();
+                            finish();
+                            return;
+                        }
+                        showComparison(comparison, verdicts, baseCount);
+                    }
+                });
+            }
+        });
+    }
+
+    private void showComparison(RunComparison comparison, Map<String, RegressionDetector.StageVerdict> verdicts,
+                                int baseCount) {
+        DateFormat format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        RunRecord base = comparison.getBase();
+        RunRecord other = comparison.getOther();
+        String baseText = getString(R.string.compare_base,
+                format.format(new Date(base.getTimestamp())), base.getDevice());
+        if (baseCount > 1) {
+            baseText += getString(R.string.compare_base_more, baseCount - 1);
+        }
+        binding.tvBaseRun.setText(baseText);
+        binding.tvOtherRun.setText(getString(R.string.compare_other,
+                format.format(new Date(other.getTimestamp())), other.getDevice()));
+
+        bindRow(binding.rowTotal, getString(R.string.compare_total),
+                String.valueOf(base.getTotalScore()), String.valueOf(other.getTotalScore()),
+                comparison.getTotalChangePercent(), null);
+
+        for (RunComparison.StageDiff diff : comparison.getStages()) {
+            ItemCompareStageBinding row = ItemCompareStageBinding.inflate(getLayoutInflater(),
+                    binding.containerStages, true);
+            RegressionDetector.StageVerdict verdict = verdicts.get(diff.getStageId());
+            double change = diff.getChangePercent();
+            if (verdict != null && verdict.getVerdict() != RegressionDetector.Verdict.INSUFFICIENT_DATA
+                    && !Double.isNaN(verdict.getMedianChangePercent())) {
+                change = verdict.getMedianChangePercent();
+            }
+            bindRow(row, diff.getName(), formatScore(diff.getBase()), formatScore(diff.getOther()),
+                    change, verdict != null ? verdict.getVerdict() : null);
+        }
+    }
+
+    private void bindRow(ItemCompareStageBinding row, String name, String baseScore, String otherScore,
+                         double changePercent, RegressionDetector.Verdict verdict) {
+        row.tvStageName.setText(name);
+        row.tvScores.setText(getString(R.string.compare_scores, baseScore, otherScore));
+
+        if (Double.isNaN(changePercent)) {
+            row.tvChange.setText(R.string.compare_missing);
+            return;
+        }
+        row.tvChange.setText(String.format("%+.1f%%", changePercent));
+        if (verdict == RegressionDetector.Verdict.REGRESSION) {
+            row.tvChange.setTextColor(ContextCompat.getColor(this, R.color.error));
+        } else if (verdict == RegressionDetector.Verdict.IMPROVEMENT) {
+            row.tvChange.setTextColor(ContextCompat.getColor(this, R.color.success));
+        }
+    }
+
+    private String formatScore(RunRecord.StageRecord stage) {
+        return stage != null ? String.valueOf(stage.getScore()) : getString(R.string.compare_missing);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdownNow();
+        binding = null;
+    }
+}
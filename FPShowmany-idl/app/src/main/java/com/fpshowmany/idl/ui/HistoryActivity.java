@@ -0,0 +1,135 @@
+package com.fpshowmany.idl.ui;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.SparseBooleanArray;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.fpshowmany.idl.R;
+import com.fpshowmany.idl.data.HistoryStore;
+import com.fpshowmany.idl.data.RunRecord;
+import com.fpshowmany.idl.databinding.ActivityHistoryBinding;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Активность истории запусков.
+ * Показывает последние сохраненные запуски и открывает сравнение выбранных:
+ * самый новый из выбранных запусков проверяется относительно остальных.
+ */
+public class HistoryActivity extends AppCompatActivity {
+
+    // Сколько последних запусков показывать в списке
+    private static final int HISTORY_LIMIT = 500;
+
+    private ActivityHistoryBinding binding;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final List<RunRecord> runs = new ArrayList<>();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = ActivityHistoryBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+
+        setupUI();
+        loadRuns();
+    }
+
+    private void setupUI() {
+        binding.toolbar.setNavigationOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                finish();
+            }
+        });
+
+        binding.lvRuns.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                binding.btnCompare.setEnabled(binding.lvRuns.getCheckedItemCount() >= 2);
+            }
+        });
+
+        binding.btnCompare.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                openComparison();
+            }
+        });
+    }
+
+    private void loadRuns() {
+        final HistoryStore store = HistoryStore.getInstance(this);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<RunRecord> loaded = store.queryRuns(null, null, HISTORY_LIMIT);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isDestroyed()) {
+                            showRuns(loaded);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void showRuns(List<RunRecord> loaded) {
+        runs.clear();
+        runs.addAll(loaded);
+
+        DateFormat format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        List<String> items = new ArrayList<>(runs.size());
+        for (RunRecord run : runs) {
+            items.add(getString(R.string.history_item, format.format(new Date(run.getTimestamp())),
+                    run.getDevice(), run.getTotalScore()));
+        }
+        binding.lvRuns.setAdapter(new ArrayAdapter<>(this,
+                android.R.layout.simple_list_item_multiple_choice, items));
+        binding.tvEmpty.setVisibility(runs.isEmpty() ? View.VISIBLE : View.GONE);
+        binding.btnCompare.setEnabled(false);
+    }
+
+    private void openComparison() {
+        SparseBooleanArray checked = binding.lvRuns.getCheckedItemPositions();
+        List<RunRecord> selected = new ArrayList<>();
+        for (int i = 0; i < checked.size(); i++) {
+            if (checked.valueAt(i)) {
+                selected.add(runs.get(checked.keyAt(i)));
+            }
+        }
+        if (selected.size() < 2) {
+            return;
+        }
+
+        // Список отсортирован от новых к старым: самый новый проверяется, остальные - база
+        long[] baseIds = new long[selected.size() - 1];
+        for (int i = 1; i < selected.size(); i++) {
+            baseIds[i - 1] = selected.get(i).getId();
+        }
+        Intent intent = new Intent(this, CompareActivity.class);
+        intent.putExtra(CompareActivity.EXTRA_BASE_IDS, baseIds);
+        intent.putExtra(CompareActivity.EXTRA_OTHER_ID, selected.get(0).getId());
+        startActivity(intent);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdownNow();
+        binding = null;
+    }
+}
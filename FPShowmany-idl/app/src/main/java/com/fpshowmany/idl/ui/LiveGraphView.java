@@ -0,0 +1,324 @@
+package com.fpshowmany.idl.ui;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+import com.fpshowmany.idl.R;
+import com.fpshowmany.idl.engine.stages.CpuFreq;
+import com.fpshowmany.idl.utils.FloatRing;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Живой график теста: пропускная способность этапа, время кадра интерфейса и наибольшая
+ * частота CPU за последние {@link #CAPACITY} кадров. Значения добавляются на каждом кадре
+ * дисплея ({@link Choreographer}) в кольцевые буферы {@link FloatRing}; каждая линия
+ * масштабируется по своему максимуму в окне, текущие значения подписаны слева сверху.
+ * <p>
+ * Отрисовка и кадровый колбэк не выделяют память: точки линий, подписи и файлы частоты
+ * подготовлены заранее, числа форматируются в массивы символов. Колбэк работает, только
+ * пока вид прикреплен к окну и виден.
+ */
+public class LiveGraphView extends View implements Choreographer.FrameCallback {
+
+    private static final String TAG = "LiveGraphView";
+
+    // Около 10 секунд при 60 Гц
+    static final int CAPACITY = 600;
+    // Частота читается раз в столько кадров: sysfs медленнее кадра
+    private static final int FREQ_EVERY_FRAMES = 15;
+    // Кадр дольше этого - пауза отрисовки (уход в фон), а не время кадра
+    private static final long MAX_FRAME_NANOS = 500000000L;
+    private static final int LABEL_CHARS = 32;
+
+    private final FloatRing throughput = new FloatRing(CAPACITY);
+    private final FloatRing frameMillis = new FloatRing(CAPACITY);
+    private final FloatRing frequencyMhz = new FloatRing(CAPACITY);
+
+    private final Paint throughputPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint frameTimePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint frequencyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint gridPaint = new Paint();
+    private final Paint captionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint scorePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float[] points = new float[(CAPACITY - 1) * 4];
+    private final char[] label = new char[LABEL_CHARS];
+    private final float textSize;
+    private final String frameTimeUnit;
+    private final String frequencyUnit;
+    private final String scoreLabel;
+
+    private CpuFreq.FreqReader[] freqReaders = new CpuFreq.FreqReader[0];
+    private String unit = "";
+    private float latestValue = Float.NaN;
+    private int latestScore;
+    private float latestMhz = Float.NaN;
+    private long lastFrameNanos;
+    private int frameIndex;
+    private boolean ticking;
+
+    public LiveGraphView(Context context) {
+        this(context, null);
+    }
+
+    public LiveGraphView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 12, getResources().getDisplayMetrics());
+        float stroke = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 2, getResources().getDisplayMetrics());
+        setupLine(throughputPaint, ContextCompat.getColor(context, R.color.graph_throughput), stroke);
+        setupLine(frameTimePaint, ContextCompat.getColor(context, R.color.graph_frame_time), stroke);
+        setupLine(frequencyPaint, ContextCompat.getColor(context, R.color.graph_frequency), stroke);
+        gridPaint.setColor(ContextCompat.getColor(context, R.color.divider));
+        gridPaint.setStrokeWidth(1);
+        captionPaint.setColor(ContextCompat.getColor(context, R.color.text_secondary));
+        captionPaint.setTextSize(textSize);
+        captionPaint.setTextAlign(Paint.Align.RIGHT);
+        scorePaint.setColor(ContextCompat.getColor(context, R.color.primary));
+        scorePaint.setTextSize(textSize * 2);
+        scorePaint.setFakeBoldText(true);
+        scorePaint.setTextAlign(Paint.Align.RIGHT);
+        frameTimeUnit = context.getString(R.string.graph_frame_time_unit);
+        frequencyUnit = context.getString(R.string.graph_frequency_unit);
+        scoreLabel = context.getString(R.string.label_score);
+    }
+
+    private void setupLine(Paint paint, int color, float stroke) {
+        paint.setColor(color);
+        paint.setStrokeWidth(stroke);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setTextSize(textSize);
+    }
+
+    /**
+     * Новый этап: у пропускной способности другие единицы, ее история сбрасывается.
+     */
+    public void startStage(String unit) {
+        this.unit = unit;
+        throughput.clear();
+        latestValue = Float.NaN;
+        latestScore = 0;
+    }
+
+    /**
+     * Последние показатели этапа из события прогресса; на графике они появляются со следующим кадром.
+     */
+    public void setProgress(float value, int score) {
+        latestValue = value;
+        latestScore = score;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        openFrequencies();
+        updateTicking();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stopTicking();
+        closeFrequencies();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        updateTicking();
+    }
+
+    private void updateTicking() {
+        if (isAttachedToWindow() && isShown()) {
+            if (!ticking) {
+                ticking = true;
+                lastFrameNanos = 0;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        } else {
+            stopTicking();
+        }
+    }
+
+    private void stopTicking() {
+        if (ticking) {
+            ticking = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!ticking) {
+            return;
+        }
+        long delta = lastFrameNanos != 0 ? frameTimeNanos - lastFrameNanos : 0;
+        lastFrameNanos = frameTimeNanos;
+        if (delta > 0 && delta < MAX_FRAME_NANOS) {
+            frameMillis.add(delta / 1e6f);
+            throughput.add(latestValue);
+            if (frameIndex++ % FREQ_EVERY_FRAMES == 0) {
+                latestMhz = readMaxMhz();
+            }
+            frequencyMhz.add(latestMhz);
+            invalidate();
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void openFrequencies() {
+        List<CpuFreq.Policy> policies = CpuFreq.discover(CpuFreq.DEFAULT_ROOT);
+        CpuFreq.FreqReader[] readers = new CpuFreq.FreqReader[policies.size()];
+        int count = 0;
+        for (CpuFreq.Policy policy : policies) {
+            try {
+                readers[count] = policy.openCurFreq();
+                count++;
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot open " + policy.getName(), e);
+            }
+        }
+        freqReaders = count == readers.length ? readers : Arrays.copyOf(readers, count);
+    }
+
+    private void closeFrequencies() {
+        for (CpuFreq.FreqReader reader : freqReaders) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Файл только для чтения
+            }
+        }
+        freqReaders = new CpuFreq.FreqReader[0];
+    }
+
+    /**
+     * Наибольшая текущая частота среди кластеров, МГц; Float.NaN, если не читается.
+     */
+    private float readMaxMhz() {
+        long max = -1;
+        for (CpuFreq.FreqReader reader : freqReaders) {
+            max = Math.max(max, reader.readKhz());
+        }
+        return max > 0 ? max / 1000f : Float.NaN;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float right = getWidth() - getPaddingRight();
+        float bottom = getHeight() - getPaddingBottom();
+        if (right <= left || bottom <= top) {
+            return;
+        }
+        canvas.drawLine(left, bottom, right, bottom, gridPaint);
+        canvas.drawLine(left, (top + bottom) / 2, right, (top + bottom) / 2, gridPaint);
+
+        drawSeries(canvas, frequencyMhz, frequencyPaint, left, top, right, bottom);
+        drawSeries(canvas, frameMillis, frameTimePaint, left, top, right, bottom);
+        drawSeries(canvas, throughput, throughputPaint, left, top, right, bottom);
+
+        float line = textSize * 1.3f;
+        drawLabel(canvas, latestValue, 1, unit, throughputPaint, left, top + line);
+        drawLabel(canvas, frameMillis.getLast(), 1, frameTimeUnit, frameTimePaint, left, top + line * 2);
+        drawLabel(canvas, latestMhz, 0, frequencyUnit, frequencyPaint, left, top + line * 3);
+
+        int length = formatNumber(label, 0, latestScore, 0);
+        canvas.drawText(label, 0, length, right, top + scorePaint.getTextSize(), scorePaint);
+        canvas.drawText(scoreLabel, right, top + scorePaint.getTextSize() + line, captionPaint);
+    }
+
+    /**
+     * Линия по значениям буфера: ось X - все окно, Y - от нуля до максимума в окне с запасом.
+     * Пропуски разрывают линию.
+     */
+    private void drawSeries(Canvas canvas, FloatRing ring, Paint paint,
+                            float left, float top, float right, float bottom) {
+        int size = ring.size();
+        float max = ring.max();
+        if (size < 2 || !(max > 0)) {
+            return;
+        }
+        float scaleY = (bottom - top) / (max * 1.15f);
+        float stepX = (right - left) / (CAPACITY - 1);
+        // Новые значения прижаты к правому краю
+        float startX = right - (size - 1) * stepX;
+        int count = 0;
+        float previous = ring.get(0);
+        for (int i = 1; i < size; i++) {
+            float value = ring.get(i);
+            if (!Float.isNaN(previous) && !Float.isNaN(value)) {
+                points[count++] = startX + (i - 1) * stepX;
+                points[count++] = bottom - previous * scaleY;
+                points[count++] = startX + i * stepX;
+                points[count++] = bottom - value * scaleY;
+            }
+            previous = value;
+        }
+        canvas.drawLines(points, 0, count, paint);
+    }
+
+    private void drawLabel(Canvas canvas, float value, int decimals, String suffix, Paint paint, float x, float y) {
+        if (Float.isNaN(value)) {
+            return;
+        }
+        int length = formatNumber(label, 0, value, decimals);
+        label[length++] = ' ';
+        int suffixLength = Math.min(suffix.length(), LABEL_CHARS - length);
+        suffix.getChars(0, suffixLength, label, length);
+        canvas.drawText(label, 0, length + suffixLength, x, y, paint);
+    }
+
+    /**
+     * Записывает число с заданным числом знаков после точки в буфер без выделения памяти.
+     * Буфер должен вмещать знак, 19 цифр целой части, точку и дробную часть.
+     *
+     * @return Индекс после последнего записанного символа
+     */
+    static int formatNumber(char[] buffer, int offset, double value, int decimals) {
+        int position = offset;
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(value * scale);
+        long whole = scaled / scale;
+        long fraction = scaled % scale;
+
+        int start = position;
+        do {
+            buffer[position++] = (char) ('0' + whole % 10);
+            whole /= 10;
+        } while (whole > 0);
+        // Цифры целой части записаны в обратном порядке
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+        if (decimals > 0) {
+            buffer[position++] = '.';
+            for (int i = decimals - 1; i >= 0; i--) {
+                buffer[position + i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            position += decimals;
+        }
+        return position;
+    }
+}
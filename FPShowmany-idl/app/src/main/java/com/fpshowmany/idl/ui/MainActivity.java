@@ -11,7 +11,7 @@ import com.fpshowmany.idl.utils.SettingsManager;
 
 /**
  * Главная активность приложения.
- * Содержит только две кнопки: "Начать тест!" и "Настройки".
+ * Содержит кнопки "Начать тест!", "История" и "Настройки".
  */
 public class MainActivity extends AppCompatActivity {
 
@@ -39,6 +39,15 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        // Кнопка истории запусков
+        binding.btnHistory.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent intent = new Intent(MainActivity.this, HistoryActivity.class);
+                startActivity(intent);
+            }
+        });
+
         // Кнопка настроек
         binding.btnSettings.setOnClickListener(new View.OnClickListener() {
             @Override
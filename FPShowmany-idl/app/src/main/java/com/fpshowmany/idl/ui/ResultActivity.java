@@ -2,23 +2,33 @@ package com.fpshowmany.idl.ui;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
 import android.view.animation.AnimationUtils;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.fpshowmany.idl.R;
+import com.fpshowmany.idl.data.PopulationStore;
+import com.fpshowmany.idl.data.ScorePopulation;
 import com.fpshowmany.idl.databinding.ActivityResultBinding;
 import com.fpshowmany.idl.utils.ResultEvaluator;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Активность отображения результатов теста.
- * Показывает итоговый балл и рейтинг устройства.
+ * Показывает итоговый балл, рейтинг устройства и место среди других устройств.
  */
 public class ResultActivity extends AppCompatActivity {
 
+    private static final String TAG = "ResultActivity";
+
     private ActivityResultBinding binding;
     private ResultEvaluator evaluator;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,6 +42,41 @@ public class ResultActivity extends AppCompatActivity {
         setupUI(score);
         setupClickHandlers();
         animateResults();
+        String planId = getIntent().getStringExtra("plan");
+        if (planId != null) {
+            loadPercentile(planId, score);
+        }
+    }
+
+    /**
+     * Загружает распределение баллов плана в фоне и показывает, быстрее какой доли устройств
+     * результат. Без собранных по запускам данных для плана место не показывается.
+     */
+    private void loadPercentile(final String planId, final int score) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final double percentile;
+                try {
+                    percentile = PopulationStore.load(ResultActivity.this)
+                            .getPercentile(ScorePopulation.key(planId, ScorePopulation.TOTAL), score);
+                } catch (IOException | IllegalArgumentException e) {
+                    Log.w(TAG, "Population is not available", e);
+                    return;
+                }
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (binding == null || Double.isNaN(percentile)) {
+                            return;
+                        }
+                        binding.tvPercentile.setText(getString(R.string.result_percentile,
+                                (int) Math.floor(percentile)));
+                        binding.tvPercentile.setVisibility(View.VISIBLE);
+                    }
+                });
+            }
+        });
     }
 
     private void setupUI(int score) {
@@ -64,6 +109,12 @@ public class ResultActivity extends AppCompatActivity {
             binding.tvRamScore.setText(String.format("%d", ramScore));
             binding.tvGpuScore.setText(String.format("%d", gpuScore));
         }
+
+        int appScore = getIntent().getIntExtra("app_score", 0);
+        if (appScore > 0) {
+            binding.tvAppScore.setText(String.format("%d", appScore));
+            binding.rowAppScore.setVisibility(View.VISIBLE);
+        }
     }
 
     private void setupClickHandlers() {
@@ -112,6 +163,13 @@ public class ResultActivity extends AppCompatActivity {
                 .start();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdownNow();
+        binding = null;
+    }
+
     @Override
     public void onBackPressed() {
         super.onBackPressed();
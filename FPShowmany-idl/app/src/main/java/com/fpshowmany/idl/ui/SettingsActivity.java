@@ -11,11 +11,12 @@ import androidx.appcompat.app.AppCompatDelegate;
 
 import com.fpshowmany.idl.R;
 import com.fpshowmany.idl.databinding.ActivitySettingsBinding;
+import com.fpshowmany.idl.engine.BenchmarkPlan;
 import com.fpshowmany.idl.utils.SettingsManager;
 
 /**
  * Активность настроек теста.
- * Позволяет настроить параметры стресс-теста: режим GPU, длительность, количество потоков.
+ * Позволяет выбрать программу теста и настроить параметры: режим GPU, длительность, количество потоков.
  */
 public class SettingsActivity extends AppCompatActivity {
 
@@ -24,6 +25,16 @@ public class SettingsActivity extends AppCompatActivity {
 
     private static final String[] CPU_THREADS = {"1", "2", "4", "8", "Максимум"};
 
+    // Порядок совпадает с R.array.plan_options
+    private static final String[] PLAN_PRESETS = {
+            BenchmarkPlan.PRESET_QUICK,
+            BenchmarkPlan.PRESET_STANDARD,
+            BenchmarkPlan.PRESET_ENDURANCE,
+            BenchmarkPlan.PRESET_APP,
+            BenchmarkPlan.PRESET_STABILITY,
+            BenchmarkPlan.PRESET_CUSTOM
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -33,9 +44,11 @@ public class SettingsActivity extends AppCompatActivity {
         settingsManager = new SettingsManager(this);
 
         setupToolbar();
+        setupPlan();
         setupGPU_mode();
         setupDuration();
         setupCpuThreads();
+        setupMeasurement();
         loadSettings();
     }
 
@@ -52,6 +65,29 @@ public class SettingsActivity extends AppCompatActivity {
         });
     }
 
+    private void setupPlan() {
+        binding.spinnerPlan.setOnItemSelectedListener(new android.widget.AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(android.widget.AdapterView<?> parent, View view, int position, long id) {
+                settingsManager.setPlanPreset(PLAN_PRESETS[position]);
+                updateManualControls();
+            }
+
+            @Override
+            public void onNothingSelected(android.widget.AdapterView<?> parent) {}
+        });
+    }
+
+    /**
+     * Длительность и итерации задаются вручную только в своей программе.
+     */
+    private void updateManualControls() {
+        boolean custom = BenchmarkPlan.PRESET_CUSTOM.equals(settingsManager.getPlanPreset());
+        binding.seekbarDuration.setEnabled(custom);
+        binding.seekbarIterations.setEnabled(custom);
+        binding.switchEarlyStop.setEnabled(custom);
+    }
+
     private void setupGPU_mode() {
         binding.rgGpuMode.setOnCheckedChangeListener(new android.widget.RadioGroup.OnCheckedChangeListener() {
             @Override
@@ -117,7 +153,41 @@ public class SettingsActivity extends AppCompatActivity {
         });
     }
 
+    private void setupMeasurement() {
+        binding.seekbarIterations.setMax(27); // 3-30 итераций
+        binding.seekbarIterations.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                int iterations = 3 + progress; // Минимум 3 итерации
+                binding.tvIterationsValue.setText(String.valueOf(iterations));
+                settingsManager.setMeasurementIterations(iterations);
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {}
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {}
+        });
+
+        binding.switchEarlyStop.setOnCheckedChangeListener(new android.widget.CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(android.widget.CompoundButton buttonView, boolean isChecked) {
+                settingsManager.setEarlyStopEnabled(isChecked);
+            }
+        });
+    }
+
     private void loadSettings() {
+        // Загрузка программы теста
+        String preset = settingsManager.getPlanPreset();
+        for (int i = 0; i < PLAN_PRESETS.length; i++) {
+            if (PLAN_PRESETS[i].equals(preset)) {
+                binding.spinnerPlan.setSelection(i);
+            }
+        }
+        updateManualControls();
+
         // Загрузка режима GPU
         int gpuMode = settingsManager.getGpuMode();
         switch (gpuMode) {
@@ -148,6 +218,12 @@ public class SettingsActivity extends AppCompatActivity {
             default: threadIndex = 4; break;
         }
         binding.spinnerThreads.setSelection(threadIndex);
+
+        // Загрузка параметров измерения
+        int iterations = settingsManager.getMeasurementIterations();
+        binding.seekbarIterations.setProgress(iterations - 3);
+        binding.tvIterationsValue.setText(String.valueOf(iterations));
+        binding.switchEarlyStop.setChecked(settingsManager.isEarlyStopEnabled());
     }
 
     @Override
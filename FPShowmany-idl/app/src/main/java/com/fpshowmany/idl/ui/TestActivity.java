@@ -1,34 +1,58 @@
 package com.fpshowmany.idl.ui;
 
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
-import android.opengl.GLSurfaceView;
+import android.content.ServiceConnection;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.IBinder;
 import android.view.View;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 
 import com.fpshowmany.idl.R;
 import com.fpshowmany.idl.databinding.ActivityTestBinding;
-import com.fpshowmany.idl.engine.StressTestEngine;
-import com.fpshowmany.idl.utils.SettingsManager;
+import com.fpshowmany.idl.engine.BenchmarkEvent;
+import com.fpshowmany.idl.engine.BenchmarkListener;
+import com.fpshowmany.idl.engine.BenchmarkStage;
+import com.fpshowmany.idl.engine.EventStream;
+import com.fpshowmany.idl.engine.StageResult;
+import com.fpshowmany.idl.service.BenchmarkService;
 
 /**
  * Активность выполнения стресс-теста.
- * Запускает тестирование CPU, GPU и RAM и отображает результаты в реальном времени.
+ * Сам тест выполняется в {@link BenchmarkService}; активность только подписывается на его
+ * события (на главном потоке, с объединением прогресса), отображает прогресс в реальном
+ * времени и не прерывает тест при уходе в фон.
  */
-public class TestActivity extends AppCompatActivity implements StressTestEngine.TestCallback {
+public class TestActivity extends AppCompatActivity implements BenchmarkListener {
+
+    /**
+     * Только подключиться к уже идущему тесту, не запуская новый.
+     */
+    public static final String EXTRA_ATTACH_ONLY = "attach_only";
 
     private ActivityTestBinding binding;
-    private SettingsManager settingsManager;
-    private StressTestEngine stressEngine;
-    private Handler mainHandler;
 
-    private boolean isTesting = false;
-    private int totalScore = 0;
-    private int testStage = 0; // 0: CPU, 1: RAM, 2: GPU
+    private BenchmarkService service;
+    private EventStream.Subscription subscription;
+    private boolean isBound = false;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((BenchmarkService.LocalBinder) binder).getService();
+            subscription = service.getEvents().subscribe(TestActivity.this,
+                    ContextCompat.getMainExecutor(TestActivity.this), true);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,175 +60,107 @@ public class TestActivity extends AppCompatActivity implements StressTestEngine.
         binding = ActivityTestBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
-        settingsManager = new SettingsManager(this);
-        mainHandler = new Handler(Looper.getMainLooper());
-
         setupUI();
-        startTest();
+        if (savedInstanceState == null && !getIntent().getBooleanExtra(EXTRA_ATTACH_ONLY, false)) {
+            BenchmarkService.start(this);
+        }
     }
 
     private void setupUI() {
         binding.toolbar.setNavigationOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (isTesting) {
-                    stressEngine.stopAll();
+                if (service != null) {
+                    service.stopTest();
                 }
                 finish();
             }
         });
     }
 
-    private void startTest() {
-        isTesting = true;
-        testStage = 0;
-
-        // Показываем первый этап
-        showStage(getString(R.string.stage_cpu));
-
-        stressEngine = new StressTestEngine(this, this);
-        stressEngine.setCpuThreads(settingsManager.getCpuThreads());
-        stressEngine.setGpuMode(settingsManager.getGpuMode());
-        stressEngine.setDuration(settingsManager.getTestDuration());
-
-        // Запускаем тест CPU
-        stressEngine.startCpuTest();
-    }
-
-    private void showStage(final String stageName) {
-        mainHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                binding.tvCurrentStage.setText(stageName);
-                binding.progressBar.setProgress(0);
-            }
-        });
-    }
-
-    private void updateProgress(final int progress) {
-        mainHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                binding.progressBar.setProgress(progress);
-            }
-        });
-    }
-
-    private void updateStats(final float fps, final int score) {
-        mainHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                binding.tvFps.setText(String.format("%.1f FPS", fps));
-                binding.tvCurrentScore.setText(String.format("%d", score));
-            }
-        });
-    }
-
-    private void nextStage() {
-        testStage++;
-
-        switch (testStage) {
-            case 1:
-                showStage(getString(R.string.stage_ram));
-                stressEngine.startRamTest();
-                break;
-            case 2:
-                showStage(getString(R.string.stage_gpu));
-                stressEngine.startGpuTest(binding.glSurfaceView);
-                break;
-            case 3:
-                // Все этапы завершены
-                finishTest();
-                break;
-        }
-    }
-
-    private void finishTest() {
-        isTesting = false;
-
-        mainHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                Toast.makeText(TestActivity.this, R.string.test_complete, Toast.LENGTH_SHORT).show();
-
-                // Переходим к экрану результатов
-                Intent intent = new Intent(TestActivity.this, ResultActivity.class);
-                intent.putExtra("score", totalScore);
-                startActivity(intent);
-
-                finish();
-            }
-        });
-    }
-
     @Override
-    public void onCpuProgress(int progress, float fps, int score) {
-        updateProgress(progress);
-        updateStats(fps, score);
+    protected void onStart() {
+        super.onStart();
+        isBound = bindService(new Intent(this, BenchmarkService.class), connection, Context.BIND_AUTO_CREATE);
     }
 
     @Override
-    public void onRamProgress(int progress, float opsPerSecond, int score) {
-        updateProgress(progress);
-        updateStats(opsPerSecond, score);
+    protected void onStop() {
+        super.onStop();
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+        service = null;
+        if (isBound) {
+            unbindService(connection);
+            isBound = false;
+        }
     }
 
-    @Override
-    public void onGpuProgress(int progress, float fps, int score) {
-        updateProgress(progress);
-        updateStats(fps, score);
+    private void showStage(BenchmarkStage stage) {
+        binding.tvCurrentStage.setText(stage.getName());
+        binding.progressBar.setProgress(0);
+        binding.liveGraph.startStage(stage.getUnit());
     }
 
-    @Override
-    public void onCpuComplete(int score) {
-        totalScore += score;
-        nextStage();
+    private void updateProgress(int progress) {
+        binding.progressBar.setProgress(progress);
     }
 
-    @Override
-    public void onRamComplete(int score) {
-        totalScore += score;
-        nextStage();
+    // Без форматирования строк: график рисует значения сам на следующем кадре
+    private void updateStats(float value, int score) {
+        binding.liveGraph.setProgress(value, score);
     }
 
-    @Override
-    public void onGpuComplete(int score) {
-        totalScore += score;
-        nextStage();
-    }
+    private void finishTest(BenchmarkEvent.RunComplete complete) {
+        Toast.makeText(this, R.string.test_complete, Toast.LENGTH_SHORT).show();
 
-    @Override
-    public void onError(String message) {
-        mainHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                Toast.makeText(TestActivity.this, message, Toast.LENGTH_LONG).show();
-            }
-        });
-    }
-
-    @Override
-    protected void onPause() {
-        super.onPause();
-        if (isTesting) {
-            stressEngine.pause();
+        // Переходим к экрану результатов: план, итоговый балл, балл отзывчивости приложений
+        // и баллы этапов ("cpu_score" и т.д.)
+        Intent intent = new Intent(this, ResultActivity.class);
+        if (service != null) {
+            intent.putExtra("plan", service.getPlanId());
+        }
+        intent.putExtra("score", complete.totalScore);
+        intent.putExtra("app_score", complete.appScore);
+        for (StageResult result : complete.results) {
+            intent.putExtra(result.getStageId() + "_score", result.getScore());
         }
+        startActivity(intent);
+
+        finish();
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        if (isTesting) {
-            stressEngine.resume();
+    public void onEvent(BenchmarkEvent event) {
+        // События приходят на главном потоке
+        switch (event.getType()) {
+            case STAGE_START:
+                showStage(((BenchmarkEvent.StageStart) event).stage);
+                break;
+            case PROGRESS:
+                BenchmarkEvent.Progress progress = (BenchmarkEvent.Progress) event;
+                updateProgress(progress.progress);
+                updateStats(progress.value, progress.score);
+                break;
+            case STAGE_COMPLETE:
+                updateProgress(100);
+                break;
+            case RUN_COMPLETE:
+                finishTest((BenchmarkEvent.RunComplete) event);
+                break;
+            case ERROR:
+                Toast.makeText(this, ((BenchmarkEvent.Error) event).message, Toast.LENGTH_LONG).show();
+                break;
+            default:
+                break;
         }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (stressEngine != null) {
-            stressEngine.stopAll();
-        }
         binding = null;
     }
 }
@@ -0,0 +1,94 @@
+package com.fpshowmany.idl.utils;
+
+/**
+ * Кольцевой буфер последних значений на примитивном массиве: добавление и чтение без
+ * выделения памяти, при заполнении новое значение вытесняет самое старое. Float.NaN -
+ * пропуск (значение неизвестно), он не учитывается в {@link #min()} и {@link #max()}.
+ * Класс не потокобезопасен.
+ */
+public final class FloatRing {
+
+    private final float[] values;
+    // Индекс следующей записи
+    private int head;
+    private int size;
+
+    /**
+     * @throws IllegalArgumentException если capacity меньше 1
+     */
+    public FloatRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        values = new float[capacity];
+    }
+
+    public void add(float value) {
+        values[head] = value;
+        head = head + 1 == values.length ? 0 : head + 1;
+        if (size < values.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Значение по индексу от самого старого (0) до самого нового (size() - 1).
+     *
+     * @throws IndexOutOfBoundsException если индекс вне [0, size())
+     */
+    public float get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        int position = head - size + index;
+        return values[position < 0 ? position + values.length : position];
+    }
+
+    /**
+     * Самое новое значение или Float.NaN, если буфер пуст.
+     */
+    public float getLast() {
+        return size > 0 ? get(size - 1) : Float.NaN;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Наименьшее значение без пропусков; Float.NaN, если значений нет.
+     */
+    public float min() {
+        float min = Float.NaN;
+        for (int i = 0; i < size; i++) {
+            float value = values[i];
+            if (!Float.isNaN(value) && !(value >= min)) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Наибольшее значение без пропусков; Float.NaN, если значений нет.
+     */
+    public float max() {
+        float max = Float.NaN;
+        for (int i = 0; i < size; i++) {
+            float value = values[i];
+            if (!Float.isNaN(value) && !(value <= max)) {
+                max = value;
+            }
+        }
+        return max;
+    }
+}
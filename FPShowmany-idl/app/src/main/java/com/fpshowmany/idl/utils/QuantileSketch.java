@@ -0,0 +1,363 @@
+package com.fpshowmany.idl.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Компактный объединяемый эскиз распределения (сливающийся t-digest).
+ * Хранит не больше ~{@code compression} центроидов (среднее, вес): на хвостах центроиды
+ * мельче, поэтому точность процентилей у краев выше, чем в середине.
+ * Эскизы с разных устройств и из разных выгрузок складываются через {@link #merge}.
+ * <p>
+ * Поиск доли значений ниже заданного ({@link #cdf}) - двоичный поиск по ограниченному
+ * числу центроидов с заранее посчитанными рангами, время не зависит от количества
+ * добавленных значений. Класс не потокобезопасен.
+ */
+public final class QuantileSketch {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+
+    // Центроиды, упорядоченные по среднему
+    private double[] means = new double[0];
+    private double[] weights = new double[0];
+    // Ранг середины каждого центроида
+    private double[] ranks = new double[0];
+    private int centroidCount;
+    private double totalWeight;
+
+    // Несжатые добавления
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int bufferSize;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression Параметр сжатия: больше - точнее и крупнее эскиз
+     */
+    public QuantileSketch(double compression) {
+        if (!(compression >= 10)) {
+            throw new IllegalArgumentException("Compression too small: " + compression);
+        }
+        this.compression = compression;
+        int bufferCapacity = (int) (compression * 5);
+        this.bufferMeans = new double[bufferCapacity];
+        this.bufferWeights = new double[bufferCapacity];
+    }
+
+    public double getCompression() {
+        return compression;
+    }
+
+    /**
+     * Количество значений в эскизе (сумма весов).
+     */
+    public double getCount() {
+        return totalWeight + bufferedWeight();
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Добавляет значение с весом; NaN и бесконечности пропускаются.
+     */
+    public void add(double value, double weight) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || !(weight > 0)) {
+            return;
+        }
+        if (bufferSize == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferSize] = value;
+        bufferWeights[bufferSize] = weight;
+        bufferSize++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Добавляет в этот эскиз все значения другого.
+     */
+    public void merge(QuantileSketch other) {
+        other.compress();
+        for (int i = 0; i < other.centroidCount; i++) {
+            if (bufferSize == bufferMeans.length) {
+                compress();
+            }
+            bufferMeans[bufferSize] = other.means[i];
+            bufferWeights[bufferSize] = other.weights[i];
+            bufferSize++;
+        }
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Доля значений меньше x, 0-1, с линейной интерполяцией между центроидами.
+     * Для пустого эскиза - NaN.
+     */
+    public double cdf(double x) {
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (x < min) {
+            return 0;
+        }
+        if (x >= max) {
+            return 1;
+        }
+        // Первый центроид со средним больше x
+        int index = Arrays.binarySearch(means, 0, centroidCount, x);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            while (index < centroidCount && means[index] <= x) {
+                index++;
+            }
+        }
+
+        double leftMean;
+        double leftRank;
+        if (index == 0) {
+            leftMean = min;
+            leftRank = 0;
+        } else {
+            leftMean = means[index - 1];
+            leftRank = rankAt(index - 1);
+        }
+        double rightMean;
+        double rightRank;
+        if (index == centroidCount) {
+            rightMean = max;
+            rightRank = totalWeight;
+        } else {
+            rightMean = means[index];
+            rightRank = rankAt(index);
+        }
+        double fraction = rightMean > leftMean ? (x - leftMean) / (rightMean - leftMean) : 1;
+        return (leftRank + fraction * (rightRank - leftRank)) / totalWeight;
+    }
+
+    /**
+     * Значение квантиля q (0-1); обратная к {@link #cdf}. Для пустого эскиза - NaN.
+     */
+    public double quantile(double q) {
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        double target = Math.max(0, Math.min(1, q)) * totalWeight;
+        double leftMean = min;
+        double leftRank = 0;
+        for (int i = 0; i < centroidCount; i++) {
+            double rank = rankAt(i);
+            if (target <= rank) {
+                double span = rank - leftRank;
+                return span > 0 ? leftMean + (target - leftRank) / span * (means[i] - leftMean) : means[i];
+            }
+            leftMean = means[i];
+            leftRank = rank;
+        }
+        double span = totalWeight - leftRank;
+        return span > 0 ? leftMean + (target - leftRank) / span * (max - leftMean) : max;
+    }
+
+    /**
+     * Количество центроидов после сжатия.
+     */
+    public int getCentroidCount() {
+        compress();
+        return centroidCount;
+    }
+
+    private double rankAt(int index) {
+        return ranks[index];
+    }
+
+    private double bufferedWeight() {
+        double weight = 0;
+        for (int i = 0; i < bufferSize; i++) {
+            weight += bufferWeights[i];
+        }
+        return weight;
+    }
+
+    /**
+     * Сливает буфер с центроидами: соседние центроиды объединяются, пока их размер
+     * укладывается в предел масштабной функции k(q) = compression / 2π * asin(2q - 1).
+     */
+    private void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+        int n = centroidCount + bufferSize;
+        double[] allMeans = new double[n];
+        double[] allWeights = new double[n];
+        System.arraycopy(means, 0, allMeans, 0, centroidCount);
+        System.arraycopy(weights, 0, allWeights, 0, centroidCount);
+        System.arraycopy(bufferMeans, 0, allMeans, centroidCount, bufferSize);
+        System.arraycopy(bufferWeights, 0, allWeights, centroidCount, bufferSize);
+        sortByMean(allMeans, allWeights, n);
+
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += allWeights[i];
+        }
+
+        double[] newMeans = new double[n];
+        double[] newWeights = new double[n];
+        int count = 0;
+        double mergedWeight = 0;
+        double limit = kInverse(k(0) + 1);
+        newMeans[0] = allMeans[0];
+        newWeights[0] = allWeights[0];
+        for (int i = 1; i < n; i++) {
+            double projected = mergedWeight + newWeights[count] + allWeights[i];
+            if (projected / total <= limit) {
+                double weight = newWeights[count] + allWeights[i];
+                newMeans[count] += (allMeans[i] - newMeans[count]) * allWeights[i] / weight;
+                newWeights[count] = weight;
+            } else {
+                mergedWeight += newWeights[count];
+                limit = kInverse(k(mergedWeight / total) + 1);
+                count++;
+                newMeans[count] = allMeans[i];
+                newWeights[count] = allWeights[i];
+            }
+        }
+        count++;
+
+        means = Arrays.copyOf(newMeans, count);
+        weights = Arrays.copyOf(newWeights, count);
+        ranks = new double[count];
+        double cumulative = 0;
+        for (int i = 0; i < count; i++) {
+            ranks[i] = cumulative + weights[i] / 2;
+            cumulative += weights[i];
+        }
+        centroidCount = count;
+        totalWeight = total;
+        bufferSize = 0;
+    }
+
+    private double k(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    private double kInverse(double k) {
+        if (k >= compression / 4) {
+            return 1;
+        }
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+
+    private static void sortByMean(double[] values, double[] weights, int n) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        final double[] keys = values;
+        Arrays.sort(order, new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(keys[a], keys[b]);
+            }
+        });
+        double[] sortedValues = new double[n];
+        double[] sortedWeights = new double[n];
+        for (int i = 0; i < n; i++) {
+            sortedValues[i] = values[order[i]];
+            sortedWeights[i] = weights[order[i]];
+        }
+        System.arraycopy(sortedValues, 0, values, 0, n);
+        System.arraycopy(sortedWeights, 0, weights, 0, n);
+    }
+
+    /**
+     * Эскиз в JSON: {"compression":..,"min":..,"max":..,"centroids":[[mean,weight],..]}.
+     */
+    public String toJson() {
+        compress();
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"compression\":").append(number(compression));
+        if (centroidCount > 0) {
+            builder.append(",\"min\":").append(number(min))
+                    .append(",\"max\":").append(number(max));
+        }
+        builder.append(",\"centroids\":[");
+        for (int i = 0; i < centroidCount; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('[').append(number(means[i])).append(',').append(number(weights[i])).append(']');
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * Восстанавливает эскиз из разобранного JSON ({@link Json#parse}).
+     *
+     * @throws IllegalArgumentException если формат неверен
+     */
+    public static QuantileSketch fromJson(Object json) {
+        if (!(json instanceof Map)) {
+            throw new IllegalArgumentException("Expected sketch object");
+        }
+        Map<?, ?> object = (Map<?, ?>) json;
+        Object compression = object.get("compression");
+        QuantileSketch sketch = new QuantileSketch(compression instanceof Double
+                ? (Double) compression : DEFAULT_COMPRESSION);
+        Object centroids = object.get("centroids");
+        if (!(centroids instanceof List)) {
+            throw new IllegalArgumentException("Sketch has no centroids");
+        }
+        List<double[]> parsed = new ArrayList<>();
+        for (Object item : (List<?>) centroids) {
+            if (!(item instanceof List) || ((List<?>) item).size() != 2) {
+                throw new IllegalArgumentException("Bad centroid: " + item);
+            }
+            List<?> pair = (List<?>) item;
+            if (!(pair.get(0) instanceof Double) || !(pair.get(1) instanceof Double)) {
+                throw new IllegalArgumentException("Bad centroid: " + item);
+            }
+            parsed.add(new double[]{(Double) pair.get(0), (Double) pair.get(1)});
+        }
+        for (double[] centroid : parsed) {
+            sketch.add(centroid[0], centroid[1]);
+        }
+        // Границы хранятся отдельно: средние крайних центроидов не совпадают с min/max
+        if (object.get("min") instanceof Double && object.get("max") instanceof Double && !parsed.isEmpty()) {
+            sketch.min = Math.min(sketch.min, (Double) object.get("min"));
+            sketch.max = Math.max(sketch.max, (Double) object.get("max"));
+        }
+        return sketch;
+    }
+
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.US, "%.6g", value);
+    }
+}
@@ -4,10 +4,13 @@ import android.content.Context;
 import android.graphics.Color;
 
 import com.fpshowmany.idl.R;
+import com.fpshowmany.idl.engine.ScoreModel;
 
 /**
  * Утилита для оценки результатов тестирования.
  * Определяет уровень производительности на основе набранных баллов.
+ * Границы уровней заданы долями балла эталонного устройства ({@link ScoreModel#REFERENCE_SCORE}):
+ * эталон находится в середине уровня "Нормально".
  */
 public class ResultEvaluator {
 
@@ -42,6 +45,9 @@ public class ResultEvaluator {
         }
     }
 
+    // Нижние границы уровней NOT_BAD..EXCELLENT относительно эталона; геометрический шаг ~1.6
+    private static final double[] RATING_RATIOS = {0.25, 0.5, 0.8, 1.25, 2.0};
+
     private final Context context;
 
     public ResultEvaluator(Context context) {
@@ -55,19 +61,26 @@ public class ResultEvaluator {
      * @return Уровень производительности
      */
     public Rating getRating(int score) {
-        if (score < 1000) {
-            return Rating.VERY_BAD;
-        } else if (score < 3000) {
-            return Rating.BAD;
-        } else if (score < 5000) {
-            return Rating.NOT_BAD;
-        } else if (score < 7000) {
-            return Rating.NORMAL;
-        } else if (score < 9000) {
-            return Rating.GOOD;
-        } else {
-            return Rating.EXCELLENT;
+        return Rating.values()[getRatingIndex(score)];
+    }
+
+    /**
+     * Индекс уровня в {@link Rating} для балла.
+     */
+    static int getRatingIndex(int score) {
+        for (int i = 0; i < RATING_RATIOS.length; i++) {
+            if (score < getThreshold(i)) {
+                return i;
+            }
         }
+        return RATING_RATIOS.length;
+    }
+
+    /**
+     * Нижняя граница уровня, следующего за уровнем с индексом index, в баллах.
+     */
+    static int getThreshold(int index) {
+        return (int) Math.round(ScoreModel.REFERENCE_SCORE * RATING_RATIOS[index]);
     }
 
     /**
@@ -3,6 +3,8 @@ package com.fpshowmany.idl.utils;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import com.fpshowmany.idl.engine.BenchmarkPlan;
+
 /**
  * Менеджер настроек приложения.
  * Сохраняет и загружает настройки тестирования.
@@ -13,6 +15,9 @@ public class SettingsManager {
     private static final String KEY_GPU_MODE = "gpu_mode";
     private static final String KEY_DURATION = "duration";
     private static final String KEY_CPU_THREADS = "cpu_threads";
+    private static final String KEY_ITERATIONS = "measurement_iterations";
+    private static final String KEY_EARLY_STOP = "early_stop";
+    private static final String KEY_PLAN = "plan";
 
     public static final int GPU_MODE_AUTO = 0;
     public static final int GPU_MODE_2D = 1;
@@ -47,4 +52,60 @@ public class SettingsManager {
     public void setCpuThreads(int threads) {
         prefs.edit().putInt(KEY_CPU_THREADS, threads).apply();
     }
+
+    public int getMeasurementIterations() {
+        return prefs.getInt(KEY_ITERATIONS, 10); // По умолчанию 10 итераций
+    }
+
+    public void setMeasurementIterations(int iterations) {
+        prefs.edit().putInt(KEY_ITERATIONS, iterations).apply();
+    }
+
+    public boolean isEarlyStopEnabled() {
+        return prefs.getBoolean(KEY_EARLY_STOP, true);
+    }
+
+    public void setEarlyStopEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_EARLY_STOP, enabled).apply();
+    }
+
+    /**
+     * Выбранный план: {@link BenchmarkPlan#PRESET_QUICK}, {@link BenchmarkPlan#PRESET_STANDARD},
+     * {@link BenchmarkPlan#PRESET_ENDURANCE}, {@link BenchmarkPlan#PRESET_APP} или {@link BenchmarkPlan#PRESET_CUSTOM}.
+     */
+    public String getPlanPreset() {
+        return prefs.getString(KEY_PLAN, BenchmarkPlan.PRESET_CUSTOM);
+    }
+
+    public void setPlanPreset(String preset) {
+        prefs.edit().putString(KEY_PLAN, preset).apply();
+    }
+
+    /**
+     * План запуска по настройкам. Встроенный план задает этапы и время, потоки и режим GPU
+     * берутся из настроек; для {@link BenchmarkPlan#PRESET_CUSTOM} все параметры - ручные.
+     */
+    public BenchmarkPlan createPlan() {
+        return createPlan(getPlanPreset());
+    }
+
+    /**
+     * План запуска по имени встроенного плана с потоками и режимом GPU из настроек.
+     *
+     * @throws IllegalArgumentException если план неизвестен
+     */
+    public BenchmarkPlan createPlan(String preset) {
+        BenchmarkPlan plan;
+        if (BenchmarkPlan.PRESET_CUSTOM.equals(preset)) {
+            plan = new BenchmarkPlan();
+            plan.setDurationSeconds(getTestDuration());
+            plan.setIterations(getMeasurementIterations());
+            plan.setEarlyStop(isEarlyStopEnabled());
+        } else {
+            plan = BenchmarkPlan.preset(preset);
+        }
+        plan.setCpuThreads(getCpuThreads());
+        plan.setGpuMode(getGpuMode());
+        return plan;
+    }
 }
@@ -0,0 +1,208 @@
+package com.fpshowmany.idl.utils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Базовые статистические функции для обработки результатов замеров.
+ */
+public final class Statistics {
+
+    // Квантили t-распределения Стьюдента для 95% двустороннего интервала, df = 1..30
+    private static final double[] T_975 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    private static final double Z_975 = 1.959964;
+
+    private Statistics() {
+    }
+
+    /**
+     * Среднее арифметическое первых {@code count} значений.
+     */
+    public static double mean(double[] values, int count) {
+        if (count <= 0) return 0;
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        return sum / count;
+    }
+
+    /**
+     * Выборочное стандартное отклонение (с поправкой Бесселя).
+     */
+    public static double standardDeviation(double[] values, int count) {
+        if (count < 2) return 0;
+        double mean = mean(values, count);
+        double sumSq = 0;
+        for (int i = 0; i < count; i++) {
+            double d = values[i] - mean;
+            sumSq += d * d;
+        }
+        return Math.sqrt(sumSq / (count - 1));
+    }
+
+    /**
+     * Коэффициент вариации (отношение стандартного отклонения к среднему).
+     * Для нулевого среднего возвращает бесконечность.
+     */
+    public static double coefficientOfVariation(double[] values, int count) {
+        double mean = mean(values, count);
+        if (mean == 0) return Double.POSITIVE_INFINITY;
+        return standardDeviation(values, count) / Math.abs(mean);
+    }
+
+    /**
+     * Квантиль 0.975 t-распределения для заданного числа степеней свободы.
+     */
+    public static double studentT975(int degreesOfFreedom) {
+        if (degreesOfFreedom < 1) return Double.POSITIVE_INFINITY;
+        if (degreesOfFreedom <= T_975.length) return T_975[degreesOfFreedom - 1];
+        // Разложение Корниша-Фишера, погрешность < 0.001 при df > 30
+        double z = Z_975;
+        double df = degreesOfFreedom;
+        return z + (z * z * z + z) / (4 * df)
+                + (5 * Math.pow(z, 5) + 16 * z * z * z + 3 * z) / (96 * df * df);
+    }
+
+    /**
+     * Полуширина 95% доверительного интервала для среднего.
+     */
+    public static double confidenceInterval95(double[] values, int count) {
+        if (count < 2) return 0;
+        return studentT975(count - 1) * standardDeviation(values, count) / Math.sqrt(count);
+    }
+
+    /**
+     * Результат U-критерия Манна-Уитни для выборок a и b.
+     */
+    public static final class MannWhitneyResult {
+        private final double u;
+        private final double pValue;
+        private final double effectSize;
+
+        MannWhitneyResult(double u, double pValue, double effectSize) {
+            this.u = u;
+            this.pValue = pValue;
+            this.effectSize = effectSize;
+        }
+
+        /**
+         * Статистика U для выборки b: число пар, где значение из b больше, плюс половина равных.
+         */
+        public double getU() {
+            return u;
+        }
+
+        /**
+         * Двусторонний p-value (нормальное приближение с поправкой на связки и непрерывность).
+         */
+        public double getPValue() {
+            return pValue;
+        }
+
+        /**
+         * Дельта Клиффа, от -1 до 1: положительная - значения b в основном больше значений a.
+         */
+        public double getEffectSize() {
+            return effectSize;
+        }
+    }
+
+    /**
+     * U-критерий Манна-Уитни: не требует нормальности распределения замеров.
+     * Нормальное приближение применимо начиная с ~8 значений в каждой выборке.
+     */
+    public static MannWhitneyResult mannWhitney(double[] a, int countA, double[] b, int countB) {
+        if (countA < 1 || countB < 1) {
+            throw new IllegalArgumentException("Both samples must be non-empty");
+        }
+        int n = countA + countB;
+        double[] values = new double[n];
+        boolean[] fromB = new boolean[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i < countA ? a[i] : b[i - countA];
+            fromB[i] = i >= countA;
+            order[i] = i;
+        }
+        final double[] keys = values;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer x, Integer y) {
+                return Double.compare(keys[x], keys[y]);
+            }
+        });
+
+        // Средние ранги для связок
+        double rankSumB = 0;
+        double tieCorrection = 0;
+        int i = 0;
+        while (i < n) {
+            int j = i;
+            while (j + 1 < n && values[order[j + 1]] == values[order[i]]) {
+                j++;
+            }
+            double rank = (i + j) / 2.0 + 1;
+            for (int k = i; k <= j; k++) {
+                if (fromB[order[k]]) {
+                    rankSumB += rank;
+                }
+            }
+            double ties = j - i + 1;
+            tieCorrection += ties * ties * ties - ties;
+            i = j + 1;
+        }
+
+        double pairs = (double) countA * countB;
+        double u = rankSumB - countB * (countB + 1) / 2.0;
+        double mean = pairs / 2;
+        double variance = pairs / 12 * ((n + 1) - tieCorrection / ((double) n * (n - 1)));
+        double pValue;
+        if (variance <= 0) {
+            pValue = 1;
+        } else {
+            double z = Math.max(0, Math.abs(u - mean) - 0.5) / Math.sqrt(variance);
+            pValue = Math.min(1, 2 * (1 - normalCdf(z)));
+        }
+        return new MannWhitneyResult(u, pValue, 2 * u / pairs - 1);
+    }
+
+    /**
+     * Функция стандартного нормального распределения (Абрамовиц-Стиган 7.1.26, погрешность < 1.5e-7).
+     */
+    public static double normalCdf(double z) {
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1 / (1 + 0.3275911 * x);
+        double erf = 1 - (((((1.061405429 * t - 1.453152027) * t) + 1.421413741) * t - 0.284496736) * t
+                + 0.254829592) * t * Math.exp(-x * x);
+        return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+
+    /**
+     * Среднее геометрическое первых {@code count} значений; значения не больше нуля
+     * считаются очень малыми положительными. 0, если значений нет.
+     */
+    public static double geometricMean(double[] values, int count) {
+        if (count <= 0) return 0;
+        double logSum = 0;
+        for (int i = 0; i < count; i++) {
+            logSum += Math.log(Math.max(values[i], 1e-9));
+        }
+        return Math.exp(logSum / count);
+    }
+
+    /**
+     * Медиана первых {@code count} значений; массив не изменяется.
+     */
+    public static double median(double[] values, int count) {
+        if (count <= 0) return 0;
+        double[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return count % 2 == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+    }
+}
@@ -1,6 +1,5 @@
 package com.fpshowmany.idl;
 
-import com.fpshowmany.idl.utils.ResultEvaluator;
 import com.fpshowmany.idl.utils.SettingsManager;
 
 import org.junit.Test;
@@ -11,28 +10,6 @@ import static org.junit.Assert.*;
  */
 public class UnitTest {
 
-    @Test
-    public void testRatingLevels() {
-        // Тест уровней оценки
-        // Очень Плохо: 0-1000
-        assertTrue(true); // Placeholder
-
-        // Плохо: 1001-3000
-        assertTrue(true);
-
-        // Неплохо: 3001-5000
-        assertTrue(true);
-
-        // Нормально: 5001-7000
-        assertTrue(true);
-
-        // Хорошо: 7001-9000
-        assertTrue(true);
-
-        // Отлично: 9000+
-        assertTrue(true);
-    }
-
     @Test
     public void testSettingsDefaults() {
         // Тест значений по умолчанию для настроек
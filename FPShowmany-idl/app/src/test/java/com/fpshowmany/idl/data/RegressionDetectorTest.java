@@ -0,0 +1,88 @@
+package com.fpshowmany.idl.data;
+
+import com.fpshowmany.idl.utils.Statistics;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Тесты поиска регрессий.
+ */
+public class RegressionDetectorTest {
+
+    private static RegressionDetector.Verdict analyzeShift(double shift, double noise, int count) {
+        Random random = new Random(7);
+        RegressionDetector detector = new RegressionDetector();
+        for (int i = 0; i < count; i++) {
+            detector.addBase("cpu", 1000 + random.nextGaussian() * noise);
+            detector.addOther("cpu", 1000 + shift + random.nextGaussian() * noise);
+        }
+        List<RegressionDetector.StageVerdict> verdicts = detector.analyze();
+        assertEquals(1, verdicts.size());
+        return verdicts.get(0).getVerdict();
+    }
+
+    @Test
+    public void testMannWhitneySeparatedSamples() {
+        double[] a = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        double[] b = {11, 12, 13, 14, 15, 16, 17, 18, 19, 20};
+        Statistics.MannWhitneyResult result = Statistics.mannWhitney(a, a.length, b, b.length);
+        assertEquals(100, result.getU(), 0);
+        assertEquals(1, result.getEffectSize(), 0);
+        // Точное значение для n = 10 + 10 - 1.08e-5, нормальное приближение дает ~1.8e-4
+        assertTrue(result.getPValue() < 0.001);
+    }
+
+    @Test
+    public void testMannWhitneyTiesGiveNoDifference() {
+        double[] a = {5, 5, 5, 5};
+        Statistics.MannWhitneyResult result = Statistics.mannWhitney(a, a.length, a, a.length);
+        assertEquals(0, result.getEffectSize(), 0);
+        assertEquals(1, result.getPValue(), 0);
+    }
+
+    @Test
+    public void testRegressionDetected() {
+        assertEquals(RegressionDetector.Verdict.REGRESSION, analyzeShift(-50, 20, 30));
+    }
+
+    @Test
+    public void testImprovementDetected() {
+        assertEquals(RegressionDetector.Verdict.IMPROVEMENT, analyzeShift(50, 20, 30));
+    }
+
+    @Test
+    public void testNoiseIsNotFlagged() {
+        assertEquals(RegressionDetector.Verdict.NO_CHANGE, analyzeShift(0, 20, 30));
+    }
+
+    @Test
+    public void testTinyShiftBelowEffectThreshold() {
+        // На большой выборке сдвиг значим, но эффект меньше порога
+        assertEquals(RegressionDetector.Verdict.NO_CHANGE, analyzeShift(-3, 20, 5000));
+    }
+
+    @Test
+    public void testInsufficientData() {
+        RegressionDetector detector = new RegressionDetector();
+        detector.addBase("gpu", 60);
+        detector.addOther("ram", 100);
+        List<RegressionDetector.StageVerdict> verdicts = detector.analyze();
+        assertEquals(2, verdicts.size());
+        assertEquals("gpu", verdicts.get(0).getStageId());
+        assertEquals(RegressionDetector.Verdict.INSUFFICIENT_DATA, verdicts.get(0).getVerdict());
+        assertEquals(RegressionDetector.Verdict.INSUFFICIENT_DATA, verdicts.get(1).getVerdict());
+        assertFalse(RegressionDetector.hasRegression(verdicts));
+    }
+
+    @Test
+    public void testRunSamplesSkipWarmup() {
+        float[] values = {1, 2, 100, 100};
+        RunRecord.StageRecord stage = new RunRecord.StageRecord("cpu", "CPU", "ops", 0, 0, 0, 0, 2, 2,
+                new int[4], values);
+        assertArrayEquals(new double[]{100, 100}, stage.getMeasurementValues(), 0);
+    }
+}
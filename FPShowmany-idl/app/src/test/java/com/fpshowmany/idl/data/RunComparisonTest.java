@@ -0,0 +1,75 @@
+package com.fpshowmany.idl.data;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+/**
+ * Тесты сравнения запусков и упаковки временных рядов.
+ */
+public class RunComparisonTest {
+
+    private static RunRecord.StageRecord stage(String id, int score, double mean, double ci) {
+        return new RunRecord.StageRecord(id, id.toUpperCase(), "ops", score, mean, 0, ci, 10, 4,
+                new int[0], new float[0]);
+    }
+
+    private static RunRecord run(int total, RunRecord.StageRecord... stages) {
+        return new RunRecord(1, 0, "device", "build", 1, new RunRecord.Settings(4, 0, 30, 10, true),
+                total, Arrays.asList(stages));
+    }
+
+    @Test
+    public void testChangePercent() {
+        RunComparison comparison = new RunComparison(
+                run(1000, stage("cpu", 500, 200, 1)),
+                run(1100, stage("cpu", 550, 220, 1)));
+
+        assertEquals(10.0, comparison.getTotalChangePercent(), 1e-9);
+        assertEquals(1, comparison.getStages().size());
+        assertEquals(10.0, comparison.getStages().get(0).getChangePercent(), 1e-9);
+        assertTrue(comparison.getStages().get(0).isSignificant());
+    }
+
+    @Test
+    public void testOverlappingIntervalsAreNotSignificant() {
+        RunComparison comparison = new RunComparison(
+                run(1000, stage("cpu", 500, 200, 15)),
+                run(1010, stage("cpu", 505, 210, 15)));
+
+        assertFalse(comparison.getStages().get(0).isSignificant());
+    }
+
+    @Test
+    public void testStagesPresentInOneRunOnly() {
+        RunComparison comparison = new RunComparison(
+                run(1000, stage("cpu", 500, 200, 1), stage("gpu", 500, 60, 1)),
+                run(1000, stage("cpu", 500, 200, 1), stage("ram", 500, 80, 1)));
+
+        assertEquals(3, comparison.getStages().size());
+        assertEquals("cpu", comparison.getStages().get(0).getStageId());
+
+        RunComparison.StageDiff gpu = comparison.getStages().get(1);
+        assertNull(gpu.getOther());
+        assertTrue(Double.isNaN(gpu.getChangePercent()));
+
+        RunComparison.StageDiff ram = comparison.getStages().get(2);
+        assertNull(ram.getBase());
+        assertEquals("RAM", ram.getName());
+    }
+
+    @Test
+    public void testSamplesRoundTrip() {
+        int[] times = {500, 1000, 1500};
+        float[] values = {1.5f, 2.25f, 3f};
+        byte[] blob = HistoryStore.encodeSamples(times, values);
+        assertEquals(4 + 3 * 8, blob.length);
+
+        int[] decodedTimes = new int[3];
+        float[] decodedValues = new float[3];
+        HistoryStore.decodeSamples(blob, decodedTimes, decodedValues);
+        assertArrayEquals(times, decodedTimes);
+        assertArrayEquals(values, decodedValues, 0f);
+    }
+}
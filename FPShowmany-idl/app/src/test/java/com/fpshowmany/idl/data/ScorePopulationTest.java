@@ -0,0 +1,68 @@
+package com.fpshowmany.idl.data;
+
+import com.fpshowmany.idl.engine.ScoreModel;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты распределения баллов.
+ */
+public class ScorePopulationTest {
+
+    @Test
+    public void testPercentile() {
+        ScorePopulation population = new ScorePopulation();
+        for (int score = 1; score <= 1000; score++) {
+            population.add(ScorePopulation.TOTAL, score);
+        }
+        assertEquals(75, population.getPercentile(ScorePopulation.TOTAL, 750), 1);
+        assertTrue(Double.isNaN(population.getPercentile("cpu", 750)));
+    }
+
+    @Test
+    public void testMergeAndJsonRoundTrip() {
+        ScorePopulation a = new ScorePopulation();
+        ScorePopulation b = new ScorePopulation();
+        for (int score = 0; score < 500; score++) {
+            a.add("cpu", score);
+            b.add("cpu", score + 500);
+            b.add("gpu", score);
+        }
+        a.merge(ScorePopulation.fromJson(b.toJson()));
+        assertEquals(1000, a.getSketch("cpu").getCount(), 0.01);
+        assertEquals(50, a.getPercentile("cpu", 500), 1);
+        assertNotNull(a.getSketch("gpu"));
+    }
+
+    @Test
+    public void testPlansAreSeparate() {
+        ScorePopulation population = new ScorePopulation();
+        for (int score = 1; score <= 100; score++) {
+            population.add(ScorePopulation.key("quick", ScorePopulation.TOTAL), score);
+            population.add(ScorePopulation.key("endurance", ScorePopulation.TOTAL), score * 10);
+        }
+        assertEquals(50, population.getPercentile(ScorePopulation.key("quick", ScorePopulation.TOTAL), 50), 2);
+        assertEquals(5, population.getPercentile(ScorePopulation.key("endurance", ScorePopulation.TOTAL), 50), 2);
+        assertTrue(Double.isNaN(population.getPercentile(ScorePopulation.key("app", ScorePopulation.TOTAL), 50)));
+    }
+
+    @Test
+    public void testSyntheticFlag() {
+        ScorePopulation synthetic = ScorePopulation.fromJson("{\"version\":1,\"scale\":"
+                + ScoreModel.REFERENCE_SCORE + ",\"synthetic\":true,\"sketches\":{}}");
+        assertTrue(synthetic.isSynthetic());
+        assertTrue(ScorePopulation.fromJson(synthetic.toJson()).isSynthetic());
+
+        ScorePopulation real = new ScorePopulation();
+        assertFalse(ScorePopulation.fromJson(real.toJson()).isSynthetic());
+        real.merge(synthetic);
+        assertTrue(real.isSynthetic());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherScaleRejected() {
+        ScorePopulation.fromJson("{\"version\":1,\"scale\":" + (ScoreModel.REFERENCE_SCORE * 10)
+                + ",\"sketches\":{}}");
+    }
+}
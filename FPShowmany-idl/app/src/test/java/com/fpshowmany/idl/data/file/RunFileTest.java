@@ -0,0 +1,197 @@
+package com.fpshowmany.idl.data.file;
+
+import com.fpshowmany.idl.data.RunRecord;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Тесты двоичного формата запуска и экспорта.
+ */
+public class RunFileTest {
+
+    private static final RunRecord.Settings SETTINGS = new RunRecord.Settings(8, 2, 60, 10, true);
+
+    /**
+     * Записывает запуск из двух этапов; второй этап завершается ошибкой.
+     */
+    private static byte[] writeRun(boolean complete) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RunFileWriter writer = new RunFileWriter(bytes);
+        writer.writeRunInfo(1700000000000L, "Acme, Phone", "acme/phone:14", 3, SETTINGS);
+        writer.writePlan("standard");
+
+        writer.writeStageStart("cpu", "Тест CPU", "kops/s");
+        writer.writeSample(500, RunFileFormat.PHASE_WARMUP, 1234567.891);
+        writer.writeSample(1000, RunFileFormat.PHASE_MEASUREMENT, 1234000.5);
+        writer.writeSample(1500, RunFileFormat.PHASE_MEASUREMENT, 1300000);
+        writer.writeStageEnd(10000, 1267000.25, 33000, 41000, 2, 1, true, false);
+        writer.writeMetric("speedup", 5.5);
+
+        writer.writeStageStart("gpu", "Тест GPU", "FPS");
+        writer.writeSample(500, RunFileFormat.PHASE_WARMUP, 59.94);
+        writer.writeError("gpu", "EGL \"context\" lost");
+
+        if (complete) {
+            writer.writeRunEnd(10000);
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Получатель, собирающий записи в текстовом виде.
+     */
+    private static final class Collector implements RunFileReader.Visitor {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void onRunInfo(long timestamp, String device, String build, int appVersion,
+                              RunRecord.Settings settings) {
+            records.add("run " + timestamp + " " + device + " " + build + " " + appVersion
+                    + " " + settings.getCpuThreads() + " " + settings.isEarlyStop());
+        }
+
+        @Override
+        public void onPlan(String planId) {
+            records.add("plan " + planId);
+        }
+
+        @Override
+        public void onStageStart(String stageId, String name, String unit) {
+            records.add("start " + stageId + " " + name + " " + unit);
+        }
+
+        @Override
+        public void onSample(long activeMillis, int phase, double value) {
+            records.add(String.format(java.util.Locale.US, "sample %d %d %.2f", activeMillis, phase, value));
+        }
+
+        @Override
+        public void onStageEnd(int score, double mean, double standardDeviation, double confidenceInterval,
+                               int iterations, int warmupSamples, boolean steadyState, boolean stoppedEarly) {
+            records.add("end " + score + " " + mean + " " + iterations + " " + steadyState + " " + stoppedEarly);
+        }
+
+        @Override
+        public void onMetric(String name, double value) {
+            records.add("metric " + name + " " + value);
+        }
+
+        @Override
+        public void onError(String stageId, String message) {
+            records.add("error " + stageId + " " + message);
+        }
+
+        @Override
+        public void onRunEnd(int totalScore) {
+            records.add("done " + totalScore);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Collector collector = new Collector();
+        boolean complete = new RunFileReader(new ByteArrayInputStream(writeRun(true))).read(collector);
+
+        assertTrue(complete);
+        assertEquals(Arrays.asList(
+                "run 1700000000000 Acme, Phone acme/phone:14 3 8 true",
+                "plan standard",
+                "start cpu Тест CPU kops/s",
+                "sample 500 0 1234567.89",
+                "sample 1000 1 1234000.50",
+                "sample 1500 1 1300000.00",
+                "end 10000 1267000.25 2 true false",
+                "metric speedup 5.5",
+                "start gpu Тест GPU FPS",
+                "sample 500 0 59.94",
+                "error gpu EGL \"context\" lost",
+                "done 10000"), collector.records);
+    }
+
+    @Test
+    public void testSamplesAreCompact() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RunFileWriter writer = new RunFileWriter(bytes);
+        writer.writeStageStart("gpu", "GPU", "FPS");
+        writer.flush();
+        int before = bytes.size();
+        for (int i = 1; i <= 1000; i++) {
+            writer.writeSample(i * 500L, RunFileFormat.PHASE_MEASUREMENT, 60 + (i % 3) * 0.5);
+        }
+        writer.flush();
+        // Тег, длина и две коротких дельты
+        assertTrue((bytes.size() - before) / 1000.0 <= 6);
+    }
+
+    @Test
+    public void testTruncatedRunIsIncomplete() throws IOException {
+        byte[] full = writeRun(false);
+        Collector collector = new Collector();
+        // Обрезаем посреди последней записи
+        byte[] truncated = Arrays.copyOf(full, full.length - 3);
+        assertFalse(new RunFileReader(new ByteArrayInputStream(truncated)).read(collector));
+        assertEquals("sample 500 0 59.94", collector.records.get(collector.records.size() - 1));
+    }
+
+    @Test
+    public void testUnknownRecordsAreSkipped() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RunFileWriter writer = new RunFileWriter(bytes);
+        writer.writeStageStart("cpu", "CPU", "ops");
+        writer.flush();
+        // Запись с неизвестным тегом из будущей версии
+        bytes.write(99);
+        bytes.write(3);
+        bytes.write(new byte[]{1, 2, 3});
+        writer.writeRunEnd(42);
+        writer.close();
+
+        Collector collector = new Collector();
+        assertTrue(new RunFileReader(new ByteArrayInputStream(bytes.toByteArray())).read(collector));
+        assertEquals(Arrays.asList("start cpu CPU ops", "done 42"), collector.records);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsForeignFile() throws IOException {
+        new RunFileReader(new ByteArrayInputStream("hello world".getBytes())).read(new Collector());
+    }
+
+    @Test
+    public void testCsvExport() throws IOException {
+        StringWriter out = new StringWriter();
+        assertTrue(CsvExporter.export(new ByteArrayInputStream(writeRun(true)), out));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(CsvExporter.HEADER, lines[0]);
+        assertEquals(5, lines.length);
+        assertEquals("\"Acme, Phone\",acme/phone:14,1700000000000,cpu,warmup,500,1234567.89", lines[1]);
+        assertEquals("\"Acme, Phone\",acme/phone:14,1700000000000,gpu,warmup,500,59.94", lines[4]);
+    }
+
+    @Test
+    public void testJsonExport() throws IOException {
+        StringWriter out = new StringWriter();
+        assertFalse(JsonExporter.export(new ByteArrayInputStream(writeRun(false)), out));
+
+        String json = out.toString();
+        assertTrue(json.startsWith("{\"version\":1,\"run\":{\"timestamp\":1700000000000,\"device\":\"Acme, Phone\""));
+        assertTrue(json.contains("\"settings\":{\"cpuThreads\":8,\"gpuMode\":2,\"duration\":60,"
+                + "\"iterations\":10,\"earlyStop\":true}},\"plan\":\"standard\",\"stages\":["));
+        assertTrue(json.contains("\"samples\":[[500,\"warmup\",1234567.8900],[1000,\"measurement\",1234000.5000]"));
+        assertTrue(json.contains("\"result\":{\"score\":10000,"));
+        assertTrue(json.contains("\"metrics\":{\"speedup\":5.5000}"));
+        assertTrue(json.contains("\"errors\":[\"EGL \\\"context\\\" lost\"]}]"));
+        assertTrue(json.endsWith(",\"complete\":false}\n"));
+        assertFalse(json.contains("totalScore"));
+    }
+}
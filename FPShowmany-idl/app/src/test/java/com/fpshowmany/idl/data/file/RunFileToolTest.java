@@ -0,0 +1,21 @@
+package com.fpshowmany.idl.data.file;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты консольного конвертера: коды выхода различимы без знания режима.
+ */
+public class RunFileToolTest {
+
+    @Test
+    public void testExitCodes() {
+        assertEquals(RunFileTool.EXIT_OK, RunFileTool.exitCode(false, true));
+        assertEquals(RunFileTool.EXIT_INCOMPLETE, RunFileTool.exitCode(false, false));
+        assertEquals(RunFileTool.EXIT_REGRESSION, RunFileTool.exitCode(true, true));
+        assertEquals(RunFileTool.EXIT_REGRESSION, RunFileTool.exitCode(true, false));
+        // Регрессия не совпадает ни с прерванным запуском, ни с ошибкой
+        assertFalse(RunFileTool.EXIT_REGRESSION == RunFileTool.EXIT_INCOMPLETE);
+        assertFalse(RunFileTool.EXIT_REGRESSION == RunFileTool.EXIT_ERROR);
+    }
+}
@@ -0,0 +1,108 @@
+package com.fpshowmany.idl.engine;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Тесты плана запуска.
+ */
+public class BenchmarkPlanTest {
+
+    @Test
+    public void testParseStageIds() {
+        assertEquals(Arrays.asList("cpu", "gpu"), BenchmarkPlan.parseStageIds(" CPU, ,gpu "));
+        assertTrue(BenchmarkPlan.parseStageIds("").isEmpty());
+    }
+
+    @Test
+    public void testParseGpuMode() {
+        assertEquals(StressTestEngine.GPU_MODE_AUTO, BenchmarkPlan.parseGpuMode("auto"));
+        assertEquals(StressTestEngine.GPU_MODE_2D, BenchmarkPlan.parseGpuMode("2D"));
+        assertEquals(StressTestEngine.GPU_MODE_3D, BenchmarkPlan.parseGpuMode("2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownGpuMode() {
+        BenchmarkPlan.parseGpuMode("4k");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyStagesRejected() {
+        new BenchmarkPlan().setStageIds(Collections.<String>emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStageRejected() {
+        StressTestEngine.createStage("disk", null);
+    }
+
+    @Test
+    public void testPresetDurations() {
+        assertEquals(10, BenchmarkPlan.preset(BenchmarkPlan.PRESET_QUICK).getEstimatedSeconds());
+        assertEquals(30, BenchmarkPlan.preset(BenchmarkPlan.PRESET_STANDARD).getEstimatedSeconds());
+        // 3x900 + 3 паузы, 900, 3x900 + 2 паузы: после последнего выполнения паузы нет
+        assertEquals(6600, BenchmarkPlan.preset(BenchmarkPlan.PRESET_ENDURANCE).getEstimatedSeconds());
+        assertEquals(30, BenchmarkPlan.preset(BenchmarkPlan.PRESET_APP).getEstimatedSeconds());
+        assertEquals(900, BenchmarkPlan.preset(BenchmarkPlan.PRESET_STABILITY).getEstimatedSeconds());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPreset() {
+        BenchmarkPlan.preset("forever");
+    }
+
+    @Test
+    public void testIterationOnlyStepGetsOwnBudget() {
+        BenchmarkPlan plan = new BenchmarkPlan();
+        plan.setDurationSeconds(20);
+        plan.setSteps(Arrays.asList(
+                new BenchmarkPlan.Step("cpu").setIterations(5),
+                new BenchmarkPlan.Step("ram")));
+        // 5 итераций по 0.5 с с запасом на прогрев + вся общая длительность на RAM
+        assertEquals(10 + 20, plan.getEstimatedSeconds());
+    }
+
+    @Test
+    public void testFromJson() {
+        BenchmarkPlan plan = BenchmarkPlan.fromJson("{\"name\":\"soak\",\"duration\":12,\"threads\":3,"
+                + "\"gpu_mode\":\"3d\",\"early_stop\":false,\"stages\":["
+                + "{\"id\":\"CPU\",\"duration\":60,\"repeat\":2,\"cooldown\":5,\"params\":{\"threads\":2}},"
+                + "{\"id\":\"gpu\",\"iterations\":8}]}");
+        assertEquals("soak", plan.getName());
+        assertEquals(12, plan.getDurationSeconds());
+        assertEquals(3, plan.getCpuThreads());
+        assertEquals(StressTestEngine.GPU_MODE_3D, plan.getGpuMode());
+        assertFalse(plan.isEarlyStop());
+        assertEquals(Arrays.asList("cpu", "gpu"), plan.getStageIds());
+
+        BenchmarkPlan.Step cpu = plan.getSteps().get(0);
+        assertEquals(60, cpu.getDurationSeconds());
+        assertEquals(2, cpu.getRepeat());
+        assertEquals(5, cpu.getCooldownSeconds());
+        assertEquals("2", cpu.getParams().get("threads"));
+        assertEquals(8, plan.getSteps().get(1).getIterations());
+    }
+
+    @Test
+    public void testJsonRoundTrip() {
+        BenchmarkPlan plan = BenchmarkPlan.preset(BenchmarkPlan.PRESET_ENDURANCE);
+        plan.getSteps().get(1).setParam("note", "a \"quoted\" value");
+        BenchmarkPlan copy = BenchmarkPlan.fromJson(plan.toJson());
+        assertEquals(plan.toJson(), copy.toJson());
+        assertEquals(plan.getEstimatedSeconds(), copy.getEstimatedSeconds());
+        assertEquals("a \"quoted\" value", copy.getSteps().get(1).getParams().get("note"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJsonWithoutStagesRejected() {
+        BenchmarkPlan.fromJson("{\"duration\":10}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFractionalRepeatRejected() {
+        BenchmarkPlan.fromJson("{\"stages\":[{\"id\":\"cpu\",\"repeat\":1.5}]}");
+    }
+}
@@ -0,0 +1,132 @@
+package com.fpshowmany.idl.engine;
+
+import com.fpshowmany.idl.utils.Json;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Тесты трассы в формате Chrome Trace Event.
+ */
+public class ChromeTraceTest {
+
+    private static List<?> events(ChromeTrace trace) throws IOException {
+        StringWriter out = new StringWriter();
+        trace.write(out);
+        Map<?, ?> root = (Map<?, ?>) Json.parse(out.toString());
+        return (List<?>) root.get("traceEvents");
+    }
+
+    private static int count(List<?> events, String phase) {
+        int count = 0;
+        for (Object event : events) {
+            if (phase.equals(((Map<?, ?>) event).get("ph"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testEventsAndThreadNames() throws IOException {
+        ChromeTrace trace = new ChromeTrace(42);
+        trace.begin(7, "worker-1", "stage cpu", 1000000);
+        trace.counter("cpu throughput", 123, 1500000);
+        trace.instant(7, "worker-1", "cpu measurement", 1750500);
+        trace.end(7, 2000000);
+
+        List<?> events = events(trace);
+        assertEquals(5, events.size());
+        Map<?, ?> metadata = (Map<?, ?>) events.get(0);
+        assertEquals("M", metadata.get("ph"));
+        assertEquals("worker-1", ((Map<?, ?>) metadata.get("args")).get("name"));
+
+        Map<?, ?> begin = (Map<?, ?>) events.get(1);
+        assertEquals("B", begin.get("ph"));
+        assertEquals("stage cpu", begin.get("name"));
+        assertEquals(42.0, begin.get("pid"));
+        assertEquals(7.0, begin.get("tid"));
+        assertEquals(1000.0, begin.get("ts"));
+
+        Map<?, ?> counter = (Map<?, ?>) events.get(2);
+        assertEquals(123.0, ((Map<?, ?>) counter.get("args")).get("value"));
+        assertEquals(1750.5, (Double) ((Map<?, ?>) events.get(3)).get("ts"), 1e-9);
+        assertEquals("E", ((Map<?, ?>) events.get(4)).get("ph"));
+    }
+
+    @Test
+    public void testUnbalancedEndIgnored() throws IOException {
+        ChromeTrace trace = new ChromeTrace(1);
+        trace.end(3, 100);
+        assertEquals(0, trace.getEventCount());
+    }
+
+    @Test
+    public void testOpenSectionsClosedOnWrite() throws IOException {
+        ChromeTrace trace = new ChromeTrace(1);
+        trace.begin(1, "a", "run", 1000);
+        trace.begin(1, "a", "stage", 2000);
+        trace.begin(2, "b", "frame", 3000);
+
+        List<?> events = events(trace);
+        assertEquals(3, count(events, "B"));
+        assertEquals(3, count(events, "E"));
+    }
+
+    @Test
+    public void testOverflowKeepsTraceBalanced() throws IOException {
+        int capacity = 4096;
+        ChromeTrace trace = new ChromeTrace(1, capacity);
+        trace.begin(1, "main", "run", 0);
+        for (int i = 0; i < capacity; i++) {
+            trace.begin(2, "worker", "batch", i * 2 + 1);
+            trace.end(2, i * 2 + 2);
+        }
+        trace.end(1, capacity * 2 + 1);
+
+        assertTrue(trace.getDroppedCount() > 0);
+        assertTrue(trace.getEventCount() <= capacity);
+        List<?> events = events(trace);
+        assertEquals(count(events, "B"), count(events, "E"));
+        // Конец самого внешнего среза записан в резерв
+        Map<?, ?> last = (Map<?, ?>) events.get(events.size() - 1);
+        assertEquals(1.0, last.get("tid"));
+    }
+
+    @Test
+    public void testOverflowOnSameThreadClosesRightSlice() throws IOException {
+        int capacity = 2048;
+        ChromeTrace trace = new ChromeTrace(1, capacity);
+        trace.begin(1, "main", "run", 0);
+        // Заполняем буфер до резерва; лишние счетчики отбрасываются
+        for (int i = 1; i < capacity; i++) {
+            trace.counter("fill", i, 1000);
+        }
+        long droppedCounters = trace.getDroppedCount();
+        // Вложенные срезы отбрасываются, их концы не закрывают "run"
+        trace.begin(1, "main", "stage", 2000000);
+        trace.begin(1, "main", "batch", 3000000);
+        trace.end(1, 4000000);
+        trace.end(1, 5000000);
+        trace.end(1, 6000000);
+
+        List<?> events = events(trace);
+        assertEquals(1, count(events, "B"));
+        assertEquals(1, count(events, "E"));
+        Map<?, ?> last = (Map<?, ?>) events.get(events.size() - 1);
+        assertEquals("E", last.get("ph"));
+        // Конец "run" записан в свое время, а не дописан при записи трассы
+        assertEquals(6000.0, last.get("ts"));
+        assertEquals(droppedCounters + 4, trace.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTinyCapacityRejected() {
+        new ChromeTrace(1, 16);
+    }
+}
@@ -0,0 +1,92 @@
+package com.fpshowmany.idl.engine;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты интегрирования энергии по синтетическому источнику мощности.
+ */
+public class EnergyMeterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Источник, отдающий заданные значения по очереди.
+     */
+    private static final class ScriptedSource implements PowerSource {
+        private final double[] watts;
+        private int next;
+
+        ScriptedSource(double... watts) {
+            this.watts = watts;
+        }
+
+        @Override
+        public double readPowerWatts() {
+            return watts[next++];
+        }
+    }
+
+    @Test
+    public void testTrapezoidIntegration() {
+        EnergyMeter meter = new EnergyMeter(new ScriptedSource(2, 4, 4));
+        meter.sample(0);
+        meter.sample(SECOND);
+        meter.sample(3 * SECOND);
+        // 3 Дж за первую секунду и 8 Дж за следующие две
+        assertEquals(11, meter.getJoules(), 1e-9);
+        assertEquals(11.0 / 3, meter.getAverageWatts(), 1e-9);
+        assertEquals(3, meter.getSamples());
+    }
+
+    @Test
+    public void testGapsAreNotIntegrated() {
+        EnergyMeter meter = new EnergyMeter(new ScriptedSource(5, 5, -1, 3, 3, 1, 1));
+        meter.sample(0);
+        meter.sample(SECOND);
+        // Нет данных: интервал до следующего замера пропускается
+        meter.sample(2 * SECOND);
+        meter.sample(3 * SECOND);
+        meter.sample(4 * SECOND);
+        // Пауза теста
+        meter.gap();
+        meter.sample(10 * SECOND);
+        meter.sample(12 * SECOND);
+        assertEquals(5 + 3 + 2, meter.getJoules(), 1e-9);
+        assertEquals(10.0 / 4, meter.getAverageWatts(), 1e-9);
+        assertEquals(6, meter.getSamples());
+    }
+
+    @Test
+    public void testMetrics() {
+        EnergyMeter meter = new EnergyMeter(new ScriptedSource(4, 4));
+        meter.sample(0);
+        meter.sample(2 * SECOND);
+        MeasurementResult measurement = new MeasurementResult(1000, 10, 5, 10, 0, true, false);
+        StageResult result = new StageResult("cpu", 2000, measurement);
+        meter.addMetrics(result);
+        assertEquals(8, result.getMetrics().get(EnergyMeter.METRIC_ENERGY_J), 1e-9);
+        assertEquals(4, result.getMetrics().get(EnergyMeter.METRIC_POWER_W), 1e-9);
+        assertEquals(250, result.getMetrics().get(EnergyMeter.METRIC_WORK_PER_J), 1e-9);
+        assertEquals(500, result.getMetrics().get(EnergyMeter.METRIC_SCORE_PER_W), 1e-9);
+    }
+
+    @Test
+    public void testNoMetricsWithoutPower() {
+        EnergyMeter meter = new EnergyMeter(new ScriptedSource(-1, -1));
+        meter.sample(0);
+        meter.sample(SECOND);
+        StageResult result = new StageResult("cpu", 2000, null);
+        meter.addMetrics(result);
+        assertTrue(result.getMetrics().isEmpty());
+        assertEquals(0, meter.getAverageWatts(), 0);
+    }
+
+    @Test
+    public void testBatteryCurrentUnits() {
+        assertEquals(1.2, BatteryPowerSource.toAmps(-1200000), 1e-9);
+        assertEquals(0.45, BatteryPowerSource.toAmps(450000), 1e-9);
+        // Ток в мА на части устройств
+        assertEquals(0.8, BatteryPowerSource.toAmps(-800), 1e-9);
+    }
+}
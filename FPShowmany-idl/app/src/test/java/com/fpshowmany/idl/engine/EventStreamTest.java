@@ -0,0 +1,212 @@
+package com.fpshowmany.idl.engine;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Тесты потока событий теста.
+ */
+public class EventStreamTest {
+
+    private static final BenchmarkStage STAGE = new BenchmarkStage() {
+        @Override
+        public String getId() {
+            return "test";
+        }
+
+        @Override
+        public String getName() {
+            return "Тест";
+        }
+
+        @Override
+        public String getUnit() {
+            return "ops";
+        }
+
+        @Override
+        public StageResult run(StageContext context) {
+            return null;
+        }
+    };
+
+    /**
+     * Executor, выполняющий задачи только по явному вызову, как медленный главный поток.
+     */
+    private static final class QueuedExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final class Recorder implements BenchmarkListener {
+        final List<BenchmarkEvent> events = new ArrayList<>();
+
+        @Override
+        public void onEvent(BenchmarkEvent event) {
+            events.add(event);
+        }
+    }
+
+    private static BenchmarkEvent progress(int value) {
+        return new BenchmarkEvent.Progress(STAGE, value, value, value);
+    }
+
+    @Test
+    public void testAllSubscribersReceiveEvents() {
+        EventStream stream = new EventStream();
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        stream.subscribe(first, DIRECT, false);
+        stream.subscribe(second, DIRECT, true);
+
+        stream.publish(new BenchmarkEvent.StageStart(STAGE, 0, 1));
+        stream.publish(progress(10));
+
+        assertEquals(2, first.events.size());
+        assertEquals(2, second.events.size());
+        assertEquals(BenchmarkEvent.Type.PROGRESS, second.events.get(1).getType());
+    }
+
+    @Test
+    public void testSlowSubscriberSeesLatestProgressOnly() {
+        EventStream stream = new EventStream();
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder, executor, true);
+
+        for (int i = 1; i <= 50; i++) {
+            stream.publish(progress(i));
+        }
+        // Задача доставки одна, сколько бы событий ни пришло
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        assertEquals(1, recorder.events.size());
+        assertEquals(50, ((BenchmarkEvent.Progress) recorder.events.get(0)).progress);
+    }
+
+    @Test
+    public void testLosslessEventsKeepOrderAfterProgress() {
+        EventStream stream = new EventStream();
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder, executor, true);
+
+        stream.publish(new BenchmarkEvent.StageStart(STAGE, 0, 1));
+        stream.publish(progress(40));
+        stream.publish(progress(90));
+        stream.publish(new BenchmarkEvent.StageComplete(STAGE, new StageResult("test", 1, null)));
+        stream.publish(new BenchmarkEvent.RunComplete(1, 0, Collections.<StageResult>emptyList()));
+        executor.runAll();
+
+        assertEquals(4, recorder.events.size());
+        assertEquals(BenchmarkEvent.Type.STAGE_START, recorder.events.get(0).getType());
+        assertEquals(90, ((BenchmarkEvent.Progress) recorder.events.get(1)).progress);
+        assertEquals(BenchmarkEvent.Type.STAGE_COMPLETE, recorder.events.get(2).getType());
+        assertEquals(BenchmarkEvent.Type.RUN_COMPLETE, recorder.events.get(3).getType());
+    }
+
+    @Test
+    public void testNonConflatingSubscriberReceivesEverything() {
+        EventStream stream = new EventStream();
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder, executor, false);
+
+        for (int i = 1; i <= 20; i++) {
+            stream.publish(progress(i));
+        }
+        executor.runAll();
+
+        assertEquals(20, recorder.events.size());
+    }
+
+    @Test
+    public void testLateSubscriberGetsCurrentState() {
+        EventStream stream = new EventStream();
+        stream.publish(new BenchmarkEvent.StageStart(STAGE, 0, 2));
+        stream.publish(progress(30));
+        stream.publish(progress(60));
+
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder, DIRECT, true);
+        assertEquals(2, recorder.events.size());
+        assertEquals(BenchmarkEvent.Type.STAGE_START, recorder.events.get(0).getType());
+        assertEquals(60, ((BenchmarkEvent.Progress) recorder.events.get(1)).progress);
+
+        stream.publish(new BenchmarkEvent.RunComplete(5, 0, Collections.<StageResult>emptyList()));
+        Recorder after = new Recorder();
+        stream.subscribe(after, DIRECT, true);
+        assertEquals(1, after.events.size());
+        assertEquals(5, ((BenchmarkEvent.RunComplete) after.events.get(0)).totalScore);
+
+        stream.reset();
+        Recorder fresh = new Recorder();
+        stream.subscribe(fresh, DIRECT, true);
+        assertTrue(fresh.events.isEmpty());
+    }
+
+    @Test
+    public void testCancelDropsPendingEvents() {
+        EventStream stream = new EventStream();
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        EventStream.Subscription subscription = stream.subscribe(recorder, executor, true);
+
+        stream.publish(new BenchmarkEvent.StageStart(STAGE, 0, 1));
+        subscription.cancel();
+        stream.publish(progress(10));
+        executor.runAll();
+
+        assertTrue(recorder.events.isEmpty());
+    }
+
+    @Test
+    public void testRejectingExecutorCancelsSubscription() {
+        EventStream stream = new EventStream();
+        final int[] attempts = new int[1];
+        Recorder rejected = new Recorder();
+        stream.subscribe(rejected, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                attempts[0]++;
+                throw new RejectedExecutionException("shut down");
+            }
+        }, false);
+        Recorder other = new Recorder();
+        stream.subscribe(other, DIRECT, false);
+
+        // Отказ executor не доходит до публикующего потока
+        stream.publish(new BenchmarkEvent.StageStart(STAGE, 0, 1));
+        stream.publish(progress(10));
+
+        assertEquals(1, attempts[0]);
+        assertTrue(rejected.events.isEmpty());
+        assertEquals(2, other.events.size());
+    }
+}
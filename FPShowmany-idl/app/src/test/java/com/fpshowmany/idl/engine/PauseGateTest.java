@@ -0,0 +1,92 @@
+package com.fpshowmany.idl.engine;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты шлюза паузы.
+ */
+public class PauseGateTest {
+
+    @Test
+    public void testAwaitWithoutPauseReturnsImmediately() throws Exception {
+        PauseGate gate = new PauseGate();
+        gate.await();
+        assertFalse(gate.isPaused());
+        assertEquals(0, gate.getPausedNanos());
+    }
+
+    @Test
+    public void testResumeWakesParkedThreads() throws Exception {
+        final PauseGate gate = new PauseGate();
+        final CountDownLatch parked = new CountDownLatch(3);
+        final CountDownLatch released = new CountDownLatch(3);
+        gate.pause();
+
+        for (int i = 0; i < 3; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    parked.countDown();
+                    try {
+                        gate.await();
+                        released.countDown();
+                    } catch (InterruptedException e) {
+                        // Тест завершится по таймауту
+                    }
+                }
+            }).start();
+        }
+
+        assertTrue(parked.await(1, TimeUnit.SECONDS));
+        // Во время паузы потоки не проходят шлюз
+        assertFalse(released.await(200, TimeUnit.MILLISECONDS));
+
+        gate.resume();
+        assertTrue(released.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPausedTimeAccumulates() throws Exception {
+        PauseGate gate = new PauseGate();
+        gate.pause();
+        Thread.sleep(50);
+        gate.pause(); // повторная пауза не сбрасывает начало
+        Thread.sleep(50);
+        gate.resume();
+
+        long paused = gate.getPausedNanos();
+        assertTrue(paused >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        Thread.sleep(20);
+        // Без паузы время не растет
+        assertEquals(paused, gate.getPausedNanos());
+    }
+
+    @Test
+    public void testInterruptReleasesWaiter() throws Exception {
+        final PauseGate gate = new PauseGate();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        gate.pause();
+
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        waiter.interrupt();
+
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertTrue(gate.isPaused());
+    }
+}
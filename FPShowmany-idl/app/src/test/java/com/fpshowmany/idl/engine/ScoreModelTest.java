@@ -0,0 +1,78 @@
+package com.fpshowmany.idl.engine;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Тесты модели оценки.
+ */
+public class ScoreModelTest {
+
+    private static ScoreModel createModel() {
+        return new ScoreModel()
+                .setBaseline("a", 100, 1)
+                .setBaseline("b", 10, 3);
+    }
+
+    private static StageResult result(String id, int score) {
+        return new StageResult(id, score, null);
+    }
+
+    @Test
+    public void testStageScoreIsUncapped() {
+        ScoreModel model = createModel();
+        assertEquals(ScoreModel.REFERENCE_SCORE, model.getStageScore("a", 100));
+        assertEquals(50 * ScoreModel.REFERENCE_SCORE, model.getStageScore("a", 5000));
+        assertEquals(0, model.getStageScore("a", Double.NaN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStageRejected() {
+        createModel().getStageScore("c", 1);
+    }
+
+    @Test
+    public void testWeightedGeometricMean() {
+        ScoreModel model = createModel();
+        // (2000^1 * 500^3)^(1/4) = 1000 * (2 * 0.125)^(1/4)
+        int expected = (int) Math.round(1000 * Math.pow(0.25, 0.25));
+        assertEquals(expected, model.getTotalScore(Arrays.asList(result("a", 2000), result("b", 500))));
+    }
+
+    @Test
+    public void testTotalScalesWithEveryStage() {
+        ScoreModel model = createModel();
+        int base = model.getTotalScore(Arrays.asList(result("a", 1000), result("b", 1000)));
+        int doubled = model.getTotalScore(Arrays.asList(result("a", 2000), result("b", 2000)));
+        assertEquals(1000, base);
+        assertEquals(2000, doubled);
+    }
+
+    @Test
+    public void testMissingAndUnknownStagesIgnored() {
+        ScoreModel model = createModel();
+        assertEquals(1500, model.getTotalScore(Arrays.asList(result("b", 1500), result("x", 10))));
+        assertEquals(0, model.getTotalScore(Collections.<StageResult>emptyList()));
+    }
+
+    @Test
+    public void testGroupScoreUsesOnlyGroupStages() {
+        ScoreModel model = createModel();
+        List<StageResult> results = Arrays.asList(result("a", 4000), result("b", 1000));
+        assertEquals(4000, model.getGroupScore(results, Collections.singletonList("a")));
+        assertEquals(0, model.getGroupScore(results, Collections.singletonList("c")));
+        assertEquals(model.getTotalScore(results), model.getGroupScore(results, null));
+    }
+
+    @Test
+    public void testDefaultModelCoversAppStages() {
+        ScoreModel model = ScoreModel.createDefault();
+        for (String id : StressTestEngine.APP_STAGE_IDS) {
+            assertTrue(id, model.getBaselines().containsKey(id));
+        }
+    }
+}
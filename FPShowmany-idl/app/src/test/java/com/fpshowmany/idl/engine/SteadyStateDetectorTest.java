@@ -0,0 +1,92 @@
+package com.fpshowmany.idl.engine;
+
+import com.fpshowmany.idl.utils.Statistics;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты детектора установившегося режима.
+ */
+public class SteadyStateDetectorTest {
+
+    @Test
+    public void testWarmupEndsWhenStable() {
+        SteadyStateDetector detector = new SteadyStateDetector(4, 0.05, 100, 10, 0);
+
+        // Разгон частоты: пропускная способность растет
+        assertEquals(SteadyStateDetector.Phase.WARMUP, detector.offer(100));
+        assertEquals(SteadyStateDetector.Phase.WARMUP, detector.offer(300));
+        assertEquals(SteadyStateDetector.Phase.WARMUP, detector.offer(600));
+        assertEquals(SteadyStateDetector.Phase.WARMUP, detector.offer(1000));
+        assertEquals(SteadyStateDetector.Phase.WARMUP, detector.offer(1000));
+        assertEquals(SteadyStateDetector.Phase.WARMUP, detector.offer(1010));
+        // Последние 4 замера стабильны
+        assertEquals(SteadyStateDetector.Phase.MEASUREMENT, detector.offer(990));
+
+        for (int i = 0; i < 9; i++) {
+            assertEquals(SteadyStateDetector.Phase.MEASUREMENT, detector.offer(1000));
+        }
+        assertEquals(SteadyStateDetector.Phase.COMPLETE, detector.offer(1000));
+
+        MeasurementResult result = detector.getResult();
+        assertEquals(1000, result.getMean(), 0.001);
+        assertEquals(10, result.getIterations());
+        assertEquals(7, result.getWarmupSamples());
+        assertTrue(result.isSteadyStateReached());
+        assertFalse(result.isStoppedEarly());
+    }
+
+    @Test
+    public void testWarmupTimeout() {
+        SteadyStateDetector detector = new SteadyStateDetector(2, 0.01, 4, 3, 0);
+
+        detector.offer(100);
+        detector.offer(200);
+        detector.offer(100);
+        assertEquals(SteadyStateDetector.Phase.MEASUREMENT, detector.offer(200));
+        assertFalse(detector.getResult().isSteadyStateReached());
+    }
+
+    @Test
+    public void testEarlyStop() {
+        SteadyStateDetector detector = new SteadyStateDetector(2, 0.05, 10, 30, 0.02);
+        detector.offer(500);
+        detector.offer(500);
+        assertEquals(SteadyStateDetector.Phase.MEASUREMENT, detector.getPhase());
+
+        for (int i = 0; i < SteadyStateDetector.MIN_EARLY_STOP_ITERATIONS - 1; i++) {
+            assertEquals(SteadyStateDetector.Phase.MEASUREMENT, detector.offer(500 + (i % 2)));
+        }
+        assertEquals(SteadyStateDetector.Phase.COMPLETE, detector.offer(500));
+
+        MeasurementResult result = detector.getResult();
+        assertTrue(result.isStoppedEarly());
+        assertEquals(SteadyStateDetector.MIN_EARLY_STOP_ITERATIONS, result.getIterations());
+        assertTrue(result.getRelativeConfidenceInterval() < 0.02);
+    }
+
+    @Test
+    public void testResultDuringWarmup() {
+        // Время этапа закончилось до начала замеров
+        SteadyStateDetector detector = new SteadyStateDetector(4, 0.01, 100, 10, 0);
+        detector.offer(100);
+        detector.offer(300);
+
+        MeasurementResult result = detector.getResult();
+        assertEquals(200, result.getMean(), 0.001);
+        assertFalse(result.isSteadyStateReached());
+    }
+
+    @Test
+    public void testConfidenceInterval() {
+        double[] values = {10, 12, 11, 13, 9};
+        assertEquals(11, Statistics.mean(values, 5), 1e-9);
+        assertEquals(1.5811, Statistics.standardDeviation(values, 5), 1e-4);
+        // t(0.975, 4) = 2.776
+        assertEquals(2.776 * 1.5811 / Math.sqrt(5), Statistics.confidenceInterval95(values, 5), 1e-3);
+        assertEquals(1.96, Statistics.studentT975(100000), 0.01);
+        assertEquals(2.042, Statistics.studentT975(30), 1e-9);
+        assertTrue(Statistics.studentT975(31) < 2.042);
+    }
+}
@@ -0,0 +1,148 @@
+package com.fpshowmany.idl.engine;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Тесты жизненного цикла движка: повторный запуск и независимость запусков.
+ */
+public class StressTestEngineTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void testStartFromRunCompleteListener() throws InterruptedException {
+        final StressTestEngine engine = new StressTestEngine();
+        engine.setStages(Collections.<BenchmarkStage>singletonList(new ResultStage("quick", 0)));
+        final AtomicInteger completed = new AtomicInteger();
+        final CountDownLatch twice = new CountDownLatch(2);
+        engine.getEvents().subscribe(new BenchmarkListener() {
+            @Override
+            public void onEvent(BenchmarkEvent event) {
+                if (event.getType() == BenchmarkEvent.Type.RUN_COMPLETE) {
+                    // Запуск уже завершен, поэтому второй start() не игнорируется
+                    if (completed.incrementAndGet() == 1) {
+                        engine.start();
+                    }
+                    twice.countDown();
+                }
+            }
+        }, DIRECT, false);
+
+        engine.start();
+        assertTrue(twice.await(5, TimeUnit.SECONDS));
+        engine.stopAll();
+    }
+
+    @Test
+    public void testStoppedRunDoesNotAffectNextRun() throws InterruptedException {
+        StressTestEngine engine = new StressTestEngine();
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final AtomicBoolean staleStageRan = new AtomicBoolean(false);
+        BenchmarkStage block = new ResultStage("block", 0) {
+            @Override
+            public StageResult run(StageContext context) {
+                blocking.countDown();
+                try {
+                    while (context.isActive()) {
+                        Thread.sleep(5);
+                    }
+                } catch (InterruptedException e) {
+                    // Остановка движка
+                }
+                return null;
+            }
+        };
+        BenchmarkStage stale = new ResultStage("stale", 0) {
+            @Override
+            public StageResult run(StageContext context) {
+                staleStageRan.set(true);
+                return null;
+            }
+        };
+        engine.setDuration(60);
+        engine.setStages(Arrays.asList(block, stale));
+        engine.start();
+        assertTrue(blocking.await(5, TimeUnit.SECONDS));
+        engine.stopAll();
+
+        // Этап нового запуска стартует рабочие потоки после того, как старый запуск завершился
+        engine.setStages(Collections.<BenchmarkStage>singletonList(new ResultStage("next", 200)));
+        final List<BenchmarkEvent> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        engine.getEvents().subscribe(new BenchmarkListener() {
+            @Override
+            public void onEvent(BenchmarkEvent event) {
+                events.add(event);
+                if (event.getType() == BenchmarkEvent.Type.RUN_COMPLETE) {
+                    done.countDown();
+                }
+            }
+        }, DIRECT, false);
+        engine.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertFalse(staleStageRan.get());
+        for (BenchmarkEvent event : events) {
+            assertFalse(event.toString(), event.getType() == BenchmarkEvent.Type.ERROR);
+        }
+        assertNotNull(engine.getResult("next"));
+    }
+
+    /**
+     * Этап, который ждет delayMs, запускает рабочий поток и возвращает результат.
+     */
+    private static class ResultStage implements BenchmarkStage {
+        private final String id;
+        private final long delayMs;
+
+        ResultStage(String id, long delayMs) {
+            this.id = id;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return id;
+        }
+
+        @Override
+        public String getUnit() {
+            return "ops";
+        }
+
+        @Override
+        public StageResult run(StageContext context) throws Exception {
+            Thread.sleep(delayMs);
+            final CountDownLatch worked = new CountDownLatch(1);
+            context.startWorkers(1, new Runnable() {
+                @Override
+                public void run() {
+                    worked.countDown();
+                }
+            });
+            assertTrue(worked.await(1, TimeUnit.SECONDS));
+            return new StageResult(id, 1000, new MeasurementResult(1, 0, 0, 1, 0, true, false));
+        }
+    }
+}
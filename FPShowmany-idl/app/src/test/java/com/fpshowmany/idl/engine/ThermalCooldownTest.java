@@ -0,0 +1,103 @@
+package com.fpshowmany.idl.engine;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты остывания между запусками серии.
+ */
+public class ThermalCooldownTest {
+
+    /**
+     * Датчик, отдающий заданные температуры по очереди; последняя повторяется.
+     */
+    private static final class ScriptedSensor implements ThermalSensor {
+        private final double[] temperatures;
+        private final int status;
+        private int next;
+
+        ScriptedSensor(int status, double... temperatures) {
+            this.status = status;
+            this.temperatures = temperatures;
+        }
+
+        @Override
+        public double readTemperature() {
+            return temperatures[Math.min(next++, temperatures.length - 1)];
+        }
+
+        @Override
+        public int readThermalStatus() {
+            return status;
+        }
+
+        int getReads() {
+            return next;
+        }
+    }
+
+    /**
+     * Часы, которые сдвигаются на шаг при каждом чтении.
+     */
+    private static final class SteppingClock implements ThermalCooldown.Clock {
+        private final long stepNanos;
+        private long now;
+
+        SteppingClock(long stepMs) {
+            this.stepNanos = stepMs * 1000000L;
+        }
+
+        @Override
+        public long nanoTime() {
+            now += stepNanos;
+            return now;
+        }
+    }
+
+    @Test
+    public void testWaitsUntilWithinBand() throws Exception {
+        ScriptedSensor sensor = new ScriptedSensor(-1, 30, 38, 35, 33.5, 31.9, 40);
+        ThermalCooldown cooldown = new ThermalCooldown(sensor, ThermalCooldown.Clock.SYSTEM, 2, 10000, 1);
+        cooldown.captureBaseline();
+        assertEquals(30, cooldown.getBaselineTemperature(), 0);
+        assertTrue(cooldown.await());
+        assertEquals(5, sensor.getReads());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        ScriptedSensor sensor = new ScriptedSensor(-1, 30, 45);
+        ThermalCooldown cooldown = new ThermalCooldown(sensor, new SteppingClock(5), 2, 20, 1);
+        cooldown.captureBaseline();
+        assertFalse(cooldown.await());
+        assertEquals(20, cooldown.getLastWaitMs());
+        assertEquals(45, cooldown.getLastTemperature(), 0);
+        // Начало и четыре опроса через 5 мс
+        assertEquals(1 + 4, sensor.getReads());
+    }
+
+    @Test
+    public void testBand() {
+        ThermalCooldown cooldown = new ThermalCooldown(new ScriptedSensor(1, 30), ThermalCooldown.Clock.SYSTEM, 2, 0, 1);
+        cooldown.captureBaseline();
+        assertTrue(cooldown.isWithinBand(32, 1));
+        assertFalse(cooldown.isWithinBand(32.1, 1));
+        // Тепловой статус выше исходного - не остыло даже при нормальной температуре
+        assertFalse(cooldown.isWithinBand(30, 2));
+        // Неизвестные значения не блокируют серию
+        assertTrue(cooldown.isWithinBand(Double.NaN, -1));
+    }
+
+    @Test
+    public void testUnknownBaselineDoesNotWait() throws Exception {
+        ThermalCooldown cooldown = new ThermalCooldown(new ScriptedSensor(-1, Double.NaN, 50),
+                ThermalCooldown.Clock.SYSTEM, 2, 10000, 1);
+        cooldown.captureBaseline();
+        assertTrue(cooldown.await());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBandRejected() {
+        new ThermalCooldown(new ScriptedSensor(-1, 30), -1, 1000);
+    }
+}
@@ -0,0 +1,79 @@
+package com.fpshowmany.idl.engine.stages;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты пробы объема памяти: момент нехватки, остановка и оценка предела.
+ */
+public class CapacityProbeStageTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long THRESHOLD = 200 * MB;
+
+    @Test
+    public void testPressureFromHeadroomAndStopNearThreshold() {
+        CapacityProbeStage.Probe probe = new CapacityProbeStage.Probe(100 * MB);
+        assertTrue(probe.onStep(2000 * MB, THRESHOLD, false, 0));
+        assertTrue(probe.onStep(1000 * MB, THRESHOLD, false, 0));
+        assertEquals(-1, probe.getPressureBytes());
+        // Запас меньше двух порогов - нехватка, до порога еще больше двух шагов
+        assertTrue(probe.onStep(550 * MB, THRESHOLD, false, 0));
+        assertEquals(200 * MB, probe.getPressureBytes());
+        assertEquals(-1, probe.getKillEstimateBytes());
+        // До порога меньше двух шагов - отступление
+        assertFalse(probe.onStep(350 * MB, THRESHOLD, false, 0));
+        assertEquals(4, probe.getSteps());
+        assertEquals(400 * MB, probe.getAllocatedBytes());
+        assertEquals(550 * MB, probe.getKillEstimateBytes());
+    }
+
+    @Test
+    public void testTrimLevels() {
+        CapacityProbeStage.Probe probe = new CapacityProbeStage.Probe(100 * MB);
+        assertTrue(probe.onStep(4000 * MB, THRESHOLD, false, 0));
+        assertTrue(probe.onStep(3900 * MB, THRESHOLD, false, ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(100 * MB, probe.getPressureBytes());
+        assertFalse(probe.onStep(3800 * MB, THRESHOLD, false, ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(300 * MB + 3600 * MB, probe.getKillEstimateBytes());
+    }
+
+    @Test
+    public void testOnlyRunningTrimLevelsArePressure() {
+        assertEquals(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+                CapacityProbeStage.runningTrimLevel(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+                CapacityProbeStage.runningTrimLevel(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+                CapacityProbeStage.runningTrimLevel(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        // Уход в фон и место в списке кэшированных процессов - не нехватка памяти
+        assertEquals(0, CapacityProbeStage.runningTrimLevel(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(0, CapacityProbeStage.runningTrimLevel(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals(0, CapacityProbeStage.runningTrimLevel(ComponentCallbacks2.TRIM_MEMORY_MODERATE));
+        assertEquals(0, CapacityProbeStage.runningTrimLevel(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+
+        CapacityProbeStage.Probe probe = new CapacityProbeStage.Probe(100 * MB);
+        assertTrue(probe.onStep(4000 * MB, THRESHOLD, false,
+                CapacityProbeStage.runningTrimLevel(ComponentCallbacks2.TRIM_MEMORY_COMPLETE)));
+        assertEquals(-1, probe.getPressureBytes());
+    }
+
+    @Test
+    public void testLowMemoryStopsImmediately() {
+        CapacityProbeStage.Probe probe = new CapacityProbeStage.Probe(64 * MB);
+        assertFalse(probe.onStep(4000 * MB, THRESHOLD, true, 0));
+        assertEquals(0, probe.getPressureBytes());
+        assertEquals(64 * MB + 3800 * MB, probe.getKillEstimateBytes());
+    }
+
+    @Test
+    public void testAllocationFailure() {
+        CapacityProbeStage.Probe probe = new CapacityProbeStage.Probe(64 * MB);
+        assertTrue(probe.onStep(4000 * MB, THRESHOLD, false, 0));
+        probe.onAllocationFailed(3900 * MB, THRESHOLD);
+        assertEquals(64 * MB, probe.getPressureBytes());
+        assertEquals(64 * MB + 3700 * MB, probe.getKillEstimateBytes());
+    }
+}
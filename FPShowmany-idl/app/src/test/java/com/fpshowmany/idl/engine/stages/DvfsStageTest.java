@@ -0,0 +1,131 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Тесты этапа отклика частоты: расписание вспышек, время разгона и поиск политик cpufreq.
+ */
+public class DvfsStageTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testNextBurst() {
+        assertEquals(0, DvfsStage.nextBurst(1000 * MS, 100 * MS, 0));
+        assertEquals(0, DvfsStage.nextBurst(1000 * MS, 100 * MS, 1000 * MS));
+        assertEquals(1, DvfsStage.nextBurst(1000 * MS, 100 * MS, 1000 * MS + 1));
+        // После паузы расписание продолжается с ближайшей вспышки
+        assertEquals(13, DvfsStage.nextBurst(1000 * MS, 100 * MS, 2250 * MS));
+    }
+
+    @Test
+    public void testWorkRamp() {
+        // Порции по 4, 3, 2, 1, 1 мс от начала вспышки в 100 мс
+        long start = 100 * MS;
+        long[] ends = {104 * MS, 107 * MS, 109 * MS, 110 * MS, 111 * MS};
+        assertEquals(MS, DvfsStage.minSliceNanos(start, ends, ends.length));
+        assertEquals(9 * MS, DvfsStage.rampNanos(start, ends, ends.length, (long) (MS / DvfsStage.RAMP_FRACTION)));
+        assertEquals(0, DvfsStage.rampNanos(start, ends, ends.length, 5 * MS));
+        assertEquals(-1, DvfsStage.rampNanos(start, ends, 3, MS));
+        assertEquals(Long.MAX_VALUE, DvfsStage.minSliceNanos(start, ends, 0));
+    }
+
+    @Test
+    public void testFrequencyRamps() {
+        DvfsStage.FreqTrace trace = new DvfsStage.FreqTrace(2);
+        // Вспышка 0..100 мс: частота растет к 40 мс и падает к 130 мс после конца
+        double[] times = {0, 20, 40, 60, 100, 110, 130, 200};
+        long[] khz = {500000, 1200000, 2000000, 2000000, 2000000, 1500000, 520000, 500000};
+        for (int i = 0; i < times.length; i++) {
+            trace.add(times[i], khz[i]);
+        }
+        trace.finishPeriod(true, 100);
+        assertEquals(1, trace.rampUpCount);
+        assertEquals(40, trace.rampUps[0], 1e-9);
+        assertEquals(1, trace.rampDownCount);
+        assertEquals(30, trace.rampDowns[0], 1e-9);
+        assertEquals(2000000, trace.maxKhz);
+
+        // Калибровочный период только копит пределы
+        trace.add(0, 2500000);
+        trace.finishPeriod(false, 100);
+        assertEquals(1, trace.rampUpCount);
+        assertEquals(2500000, trace.maxKhz);
+    }
+
+    @Test
+    public void testFirstCrossing() {
+        double[] times = {0, 10, 20, 30};
+        long[] khz = {100, 900, 300, 100};
+        assertEquals(10, DvfsStage.firstAtOrAbove(times, khz, 4, 0, 900), 1e-9);
+        assertEquals(-1, DvfsStage.firstAtOrAbove(times, khz, 4, 15, 900), 1e-9);
+        assertEquals(30, DvfsStage.firstAtOrBelow(times, khz, 4, 15, 110), 1e-9);
+    }
+
+    @Test
+    public void testDiscoverPolicies() throws IOException {
+        File root = Files.createTempDirectory("cpufreq").toFile();
+        try {
+            writePolicy(root, "policy10", "10 11", "3000000");
+            writePolicy(root, "policy4", "4 5 6 7", "2800000");
+            writePolicy(root, "policy0", "0 1 2 3", "1800000");
+            // Нет текущей частоты - политика пропускается
+            assertTrue(new File(root, "policy6").mkdir());
+            assertTrue(new File(root, "cpuidle").mkdir());
+
+            List<CpuFreq.Policy> policies = CpuFreq.discover(root);
+            assertEquals(3, policies.size());
+            assertEquals("policy0", policies.get(0).getName());
+            assertEquals("policy4", policies.get(1).getName());
+            assertEquals("policy10", policies.get(2).getName());
+            assertEquals("4 5 6 7", policies.get(1).getCpus());
+            assertEquals(2800000, policies.get(1).getMaxFreqKhz());
+            assertEquals(1000000, policies.get(1).readCurFreqKhz());
+
+            // Открытый файл перечитывается с начала
+            CpuFreq.FreqReader reader = policies.get(1).openCurFreq();
+            try {
+                assertEquals(1000000, reader.readKhz());
+                write(new File(root, "policy4/scaling_cur_freq"), "2400000\n");
+                assertEquals(2400000, reader.readKhz());
+                assertEquals(2400000, reader.readKhz());
+            } finally {
+                reader.close();
+            }
+        } finally {
+            delete(root);
+        }
+        assertTrue(CpuFreq.discover(root).isEmpty());
+    }
+
+    private static void writePolicy(File root, String name, String cpus, String maxKhz) throws IOException {
+        File dir = new File(root, name);
+        assertTrue(dir.mkdir());
+        write(new File(dir, "scaling_cur_freq"), "1000000\n");
+        write(new File(dir, "affected_cpus"), cpus + "\n");
+        write(new File(dir, "cpuinfo_max_freq"), maxKhz + "\n");
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(text);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,77 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты записи задержек: процентили ближайшего ранга, перезапись кольца и сброс.
+ */
+public class LatencyRecorderTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyRecorder recorder = new LatencyRecorder(100);
+        // 1..100 мкс в обратном порядке
+        for (int i = 100; i >= 1; i--) {
+            recorder.record(i * 1000L);
+        }
+        double[] p = recorder.percentilesMicros(0, 50, 95, 99, 100);
+        assertEquals(1, p[0], 1e-9);
+        assertEquals(50, p[1], 1e-9);
+        assertEquals(95, p[2], 1e-9);
+        assertEquals(99, p[3], 1e-9);
+        assertEquals(100, p[4], 1e-9);
+        assertEquals(100, recorder.getCount());
+        assertEquals(5050000, recorder.getTotalNanos());
+    }
+
+    @Test
+    public void testRingKeepsLatest() {
+        LatencyRecorder recorder = new LatencyRecorder(4);
+        for (int i = 1; i <= 10; i++) {
+            recorder.record(i * 1000L);
+        }
+        // Процентили по последним 4, счетчики по всем 10
+        double[] p = recorder.percentilesMicros(0, 100);
+        assertEquals(7, p[0], 1e-9);
+        assertEquals(10, p[1], 1e-9);
+        assertEquals(10, recorder.getCount());
+        assertEquals(55000, recorder.getTotalNanos());
+    }
+
+    @Test
+    public void testReset() {
+        LatencyRecorder recorder = new LatencyRecorder(8);
+        recorder.record(5000);
+        recorder.reset();
+        assertEquals(0, recorder.getCount());
+        assertEquals(0, recorder.getTotalNanos());
+        assertEquals(0, recorder.percentilesMicros(50)[0], 1e-9);
+        recorder.record(2000);
+        assertEquals(2, recorder.percentilesMicros(99)[0], 1e-9);
+    }
+
+    @Test
+    public void testAddAll() {
+        LatencyRecorder total = new LatencyRecorder(16);
+        LatencyRecorder first = new LatencyRecorder(2);
+        LatencyRecorder second = new LatencyRecorder(4);
+        for (int i = 1; i <= 3; i++) {
+            first.record(i * 1000L);
+        }
+        second.record(10000);
+        total.addAll(first);
+        total.addAll(second);
+        // У первого сохранены только 2 и 3 мкс
+        assertEquals(4, total.getCount());
+        assertEquals(16000, total.getTotalNanos());
+        double[] p = total.percentilesMicros(0, 100);
+        assertEquals(2, p[0], 1e-9);
+        assertEquals(10, p[1], 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new LatencyRecorder(0);
+    }
+}
@@ -0,0 +1,122 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тесты проверки целостности RAM: шаблоны находят испорченные слова, размер областей.
+ */
+public class MemtestStageTest {
+
+    private static final int WORDS = 4096;
+
+    /**
+     * Запоминает расхождения.
+     */
+    private static final class Recorder implements MemoryPatterns.MismatchListener {
+        final List<long[]> mismatches = new ArrayList<>();
+
+        @Override
+        public void onMismatch(long offset, long expected, long actual) {
+            mismatches.add(new long[]{offset, expected, actual});
+        }
+    }
+
+    private static ByteBuffer newBuffer() {
+        return ByteBuffer.allocateDirect(WORDS * 8).order(ByteOrder.nativeOrder());
+    }
+
+    @Test
+    public void testCleanMemoryHasNoMismatches() {
+        ByteBuffer buffer = newBuffer();
+        Recorder recorder = new Recorder();
+        for (int pass = 0; pass < MemoryPatterns.NAMES.length * 2; pass++) {
+            int pattern = pass % MemoryPatterns.NAMES.length;
+            long bytes = MemoryPatterns.run(pattern, buffer, MemtestStage.passSeed(pattern, pass), recorder);
+            assertEquals(pattern == MemoryPatterns.MOVING_INVERSIONS ? WORDS * 8 * 5 : WORDS * 8 * 2, bytes);
+        }
+        assertTrue(recorder.mismatches.isEmpty());
+    }
+
+    @Test
+    public void testVerifyFindsFlippedBit() {
+        for (int pattern : new int[]{MemoryPatterns.WALKING_ONES, MemoryPatterns.WALKING_ZEROS,
+                MemoryPatterns.ADDRESS, MemoryPatterns.RANDOM}) {
+            LongBuffer words = newBuffer().asLongBuffer();
+            MemoryPatterns.fill(pattern, words, 5);
+            words.put(100, words.get(100) ^ 1L << 33);
+
+            Recorder recorder = new Recorder();
+            MemoryPatterns.verify(pattern, words, 5, recorder);
+            assertEquals(MemoryPatterns.NAMES[pattern], 1, recorder.mismatches.size());
+            long[] mismatch = recorder.mismatches.get(0);
+            assertEquals(800, mismatch[0]);
+            assertEquals(1L << 33, mismatch[1] ^ mismatch[2]);
+        }
+    }
+
+    @Test
+    public void testMovingInversionsFindsStuckWord() {
+        LongBuffer words = newBuffer().asLongBuffer();
+        long value = 0x5555aaaa5555aaaaL;
+        MemoryPatterns.fill(MemoryPatterns.MOVING_INVERSIONS, words, value);
+        words.put(7, 0);
+
+        Recorder recorder = new Recorder();
+        MemoryPatterns.movingInversions(words, value, recorder);
+        assertEquals(1, recorder.mismatches.size());
+        assertEquals(56, recorder.mismatches.get(0)[0]);
+        // Проход оставляет исходное значение
+        assertEquals(value, words.get(7));
+    }
+
+    @Test
+    public void testAddressPatternDistinguishesWords() {
+        LongBuffer words = newBuffer().asLongBuffer();
+        MemoryPatterns.fill(MemoryPatterns.ADDRESS, words, 0);
+        // Две ячейки с перепутанными адресами
+        long first = words.get(1);
+        words.put(1, words.get(2));
+        words.put(2, first);
+
+        Recorder recorder = new Recorder();
+        MemoryPatterns.verify(MemoryPatterns.ADDRESS, words, 0, recorder);
+        assertEquals(2, recorder.mismatches.size());
+    }
+
+    @Test
+    public void testWalkingBitAdvancesEachRound() {
+        int patterns = MemoryPatterns.NAMES.length;
+        assertEquals(0, MemtestStage.passSeed(MemoryPatterns.WALKING_ONES, 0));
+        assertEquals(1, MemtestStage.passSeed(MemoryPatterns.WALKING_ONES, patterns));
+        assertEquals(0, MemtestStage.passSeed(MemoryPatterns.WALKING_ONES, patterns * 64));
+        assertTrue(MemtestStage.passSeed(MemoryPatterns.RANDOM, MemoryPatterns.RANDOM)
+                != MemtestStage.passSeed(MemoryPatterns.RANDOM, MemoryPatterns.RANDOM + patterns));
+    }
+
+    @Test
+    public void testRegionSizeBounds() {
+        long mb = MemtestStage.MB;
+        // Половина запаса, поровну на потоки, кратно мегабайту
+        assertEquals(50 * mb, MemtestStage.regionSize(400 * mb + 12345, 4));
+        // Нет запаса - минимальная область
+        assertEquals(MemtestStage.MIN_REGION, MemtestStage.regionSize(0, 8));
+        // Большой запас ограничен общим и поточным пределом
+        assertEquals(MemtestStage.MAX_REGION, MemtestStage.regionSize(64L * 1024 * mb, 2));
+        assertEquals(MemtestStage.MAX_TOTAL / 16, MemtestStage.regionSize(64L * 1024 * mb, 16));
+    }
+
+    @Test
+    public void testSystemMemoryWithoutContext() {
+        SystemMemory memory = new SystemMemory(null);
+        assertTrue(memory.getTotalBytes() > 0);
+        assertTrue(memory.getHeadroomBytes() > 0);
+        assertFalse(memory.isUnderPressure());
+    }
+}
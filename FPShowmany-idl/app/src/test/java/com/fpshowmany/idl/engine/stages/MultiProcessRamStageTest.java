@@ -0,0 +1,26 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты нагрузки на RAM из нескольких процессов: размер областей.
+ */
+public class MultiProcessRamStageTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testRegionSizeSplitsFreeMemory() {
+        assertEquals(750, MultiProcessRamStage.regionSizeMb(3000 * MB, 4));
+        assertEquals(333, MultiProcessRamStage.regionSizeMb(1000 * MB + 5, 3));
+    }
+
+    @Test
+    public void testRegionSizeBounds() {
+        // Памяти выше порога нет или уже не хватает
+        assertEquals(MultiProcessRamStage.MIN_REGION_MB, MultiProcessRamStage.regionSizeMb(0, 4));
+        assertEquals(MultiProcessRamStage.MIN_REGION_MB, MultiProcessRamStage.regionSizeMb(-200 * MB, 4));
+        assertEquals(MultiProcessRamStage.MAX_REGION_MB, MultiProcessRamStage.regionSizeMb(14000 * MB, 4));
+    }
+}
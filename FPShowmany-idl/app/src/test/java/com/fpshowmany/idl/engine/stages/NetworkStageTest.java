@@ -0,0 +1,68 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Тесты сетевого этапа: эхо по всем видам передачи на 127.0.0.1 и выбор видов.
+ */
+public class NetworkStageTest {
+
+    @Test
+    public void testEchoAllTransports() throws IOException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (String transport : LoopbackEcho.TRANSPORTS) {
+                LoopbackEcho.Server server = LoopbackEcho.startServer(transport, executor);
+                try {
+                    assertTrue(server.getPort() > 0);
+                    LoopbackEcho.Client first = LoopbackEcho.connect(transport, server.getPort());
+                    LoopbackEcho.Client second = LoopbackEcho.connect(transport, server.getPort());
+                    try {
+                        for (int size : NetworkStage.THROUGHPUT_SIZES) {
+                            assertTrue(transport, first.exchange(size));
+                        }
+                        for (int i = 0; i < 100; i++) {
+                            assertTrue(transport, first.exchange(NetworkStage.LATENCY_SIZE));
+                            assertTrue(transport, second.exchange(LoopbackEcho.MIN_MESSAGE));
+                        }
+                        assertTrue(transport, first.exchange(LoopbackEcho.MAX_MESSAGE));
+                    } finally {
+                        first.close();
+                        second.close();
+                    }
+                } finally {
+                    server.close();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMessageTooLarge() throws IOException {
+        LoopbackEcho.checkLength(LoopbackEcho.MAX_MESSAGE + 1);
+    }
+
+    @Test
+    public void testSelectTransports() {
+        List<String> all = NetworkStage.selectTransports(null);
+        assertEquals(LoopbackEcho.TRANSPORTS.length, all.size());
+        assertEquals(LoopbackEcho.STREAM, all.get(0));
+
+        List<String> udp = NetworkStage.selectTransports(" UDP");
+        assertEquals(1, udp.size());
+        assertEquals(LoopbackEcho.UDP, udp.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownTransport() {
+        NetworkStage.selectTransports("quic");
+    }
+}
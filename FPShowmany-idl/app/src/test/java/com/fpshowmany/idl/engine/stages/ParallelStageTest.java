@@ -0,0 +1,89 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Тесты этапа параллельной обработки: одинаковый результат всех способов и дисбаланс.
+ */
+public class ParallelStageTest {
+
+    private static final long SEED = 7;
+
+    @Test
+    public void testVariantsMatchSequential() {
+        // Размеры не кратны плитке, чтобы проверить краевые плитки
+        ParallelStage.TiledBlur sequential = new ParallelStage.TiledBlur(200, 130, 32, SEED);
+        ParallelStage.runSequential(sequential, null);
+        int[] expected = sequential.copyTarget();
+
+        ForkJoinPool forkJoinPool = new ForkJoinPool(3);
+        ExecutorService fixedPool = Executors.newFixedThreadPool(3);
+        try {
+            ParallelStage.TiledBlur blur = new ParallelStage.TiledBlur(200, 130, 32, SEED);
+            LongAdder pixels = new LongAdder();
+            forkJoinPool.invoke(new ParallelStage.TileTask(blur, 0, blur.getTileCount(), null, pixels));
+            assertArrayEquals(expected, blur.copyTarget());
+            assertEquals(200 * 130, pixels.sum());
+
+            blur = new ParallelStage.TiledBlur(200, 130, 32, SEED);
+            ParallelStage.runFixed(blur, fixedPool, 3, new ParallelStage.LoadTracker());
+            assertArrayEquals(expected, blur.copyTarget());
+
+            blur = new ParallelStage.TiledBlur(200, 130, 32, SEED);
+            ParallelStage.runStream(blur, forkJoinPool, new ParallelStage.LoadTracker());
+            assertArrayEquals(expected, blur.copyTarget());
+        } finally {
+            forkJoinPool.shutdownNow();
+            fixedPool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBlurAveragesNeighbours() {
+        ParallelStage.TiledBlur blur = new ParallelStage.TiledBlur(64, 64, 16, SEED);
+        ParallelStage.runSequential(blur, null);
+        int[] target = blur.copyTarget();
+        for (int value : target) {
+            assertTrue(value >= 0 && value < 256);
+        }
+        // Нижние строки размыты сильнее верхних
+        assertEquals(1, blur.radius(0));
+        assertEquals(ParallelStage.TiledBlur.MAX_RADIUS - 1, blur.radius(63));
+    }
+
+    @Test
+    public void testImbalanceOfEvenLoadIsOne() {
+        ParallelStage.LoadTracker tracker = new ParallelStage.LoadTracker();
+        assertTrue(Double.isNaN(tracker.getImbalance(1)));
+        tracker.add(1000);
+        assertEquals(1.0, tracker.getImbalance(1), 1e-9);
+    }
+
+    @Test
+    public void testImbalanceCountsIdleThreads() throws InterruptedException {
+        final ParallelStage.LoadTracker tracker = new ParallelStage.LoadTracker();
+        tracker.add(300);
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tracker.add(100);
+            }
+        });
+        other.start();
+        other.join();
+
+        // Всего 400 на 2 потока: идеально по 200, самый занятый - 300
+        assertEquals(1.5, tracker.getImbalance(2), 1e-9);
+        // Четыре потока, два без работы: идеально по 100
+        assertEquals(3.0, tracker.getImbalance(4), 1e-9);
+
+        tracker.reset();
+        assertTrue(Double.isNaN(tracker.getImbalance(2)));
+    }
+}
@@ -0,0 +1,67 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Тесты этапа SQLite: ключи строк, выбор конфигураций и операции.
+ */
+public class SqliteStageTest {
+
+    @Test
+    public void testKeysAreUnique() {
+        Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < SqliteStage.MAX_ROWS; i++) {
+            long key = SqliteStage.key(i);
+            assertTrue(key >= 0 && key <= 0xFFFFFFFFL);
+            assertTrue(keys.add(key));
+        }
+        // Соседние строки не идут подряд в индексе
+        assertTrue(Math.abs(SqliteStage.key(1) - SqliteStage.key(0)) > 1000);
+    }
+
+    @Test
+    public void testSelectConfigs() {
+        List<String[]> all = SqliteStage.selectConfigs(null);
+        assertEquals(SqliteStage.JOURNALS.length * SqliteStage.SYNCHRONOUS.length, all.size());
+        assertEquals("WAL", all.get(0)[0]);
+        assertEquals("NORMAL", all.get(0)[1]);
+
+        List<String[]> delete = SqliteStage.selectConfigs(" delete ");
+        assertEquals(2, delete.size());
+        assertEquals("DELETE", delete.get(0)[0]);
+        assertEquals("FULL", delete.get(1)[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownJournal() {
+        SqliteStage.selectConfigs("memory");
+    }
+
+    @Test
+    public void testReadsNeedRows() {
+        assertTrue(SqliteStage.canRun(SqliteStage.OP_INSERT_BATCH, 0));
+        assertTrue(SqliteStage.canRun(SqliteStage.OP_INSERT, 0));
+        assertFalse(SqliteStage.canRun(SqliteStage.OP_LOOKUP, 0));
+        assertFalse(SqliteStage.canRun(SqliteStage.OP_SCAN, 0));
+        assertFalse(SqliteStage.canRun(SqliteStage.OP_UPDATE, 0));
+        assertTrue(SqliteStage.canRun(SqliteStage.OP_LOOKUP, 1));
+    }
+
+    @Test
+    public void testBatchLeavesRoomForSingleInserts() {
+        // Пакетная вставка за все время своей доли
+        int rows = 0;
+        while (SqliteStage.canRun(SqliteStage.OP_INSERT_BATCH, rows)) {
+            rows += SqliteStage.BATCH_ROWS;
+        }
+        assertTrue(rows <= SqliteStage.MAX_ROWS - SqliteStage.INSERT_RESERVE);
+        assertTrue(SqliteStage.canRun(SqliteStage.OP_INSERT, rows));
+        assertTrue(SqliteStage.canRun(SqliteStage.OP_INSERT, SqliteStage.MAX_ROWS - 1));
+        assertFalse(SqliteStage.canRun(SqliteStage.OP_INSERT, SqliteStage.MAX_ROWS));
+    }
+}
@@ -0,0 +1,55 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты проверки стабильности: эталонные контрольные суммы и их чувствительность.
+ */
+public class StabilityStageTest {
+
+    @Test
+    public void testKernelsMatchExpected() {
+        StabilityStage.Workspace workspace = new StabilityStage.Workspace();
+        for (int kernel = 0; kernel < StabilityStage.KERNELS.length; kernel++) {
+            for (int input = 0; input < StabilityStage.INPUTS; input++) {
+                assertEquals(StabilityStage.KERNELS[kernel] + " " + input,
+                        StabilityStage.EXPECTED[kernel][input],
+                        StabilityStage.compute(kernel, input, workspace));
+            }
+        }
+    }
+
+    @Test
+    public void testWorkspaceReuseIsDeterministic() {
+        StabilityStage.Workspace workspace = new StabilityStage.Workspace();
+        // Остатки предыдущего прогона в рабочих массивах не влияют на результат
+        StabilityStage.compute(2, 3, workspace);
+        assertEquals(StabilityStage.EXPECTED[2][0], StabilityStage.compute(2, 0, workspace));
+        StabilityStage.compute(1, 3, workspace);
+        assertEquals(StabilityStage.EXPECTED[1][0], StabilityStage.compute(1, 0, workspace));
+    }
+
+    @Test
+    public void testExpectedValuesAreDistinct() {
+        // Разные входы дают разные суммы, иначе подмена входа не обнаруживается
+        for (int kernel = 0; kernel < StabilityStage.KERNELS.length; kernel++) {
+            for (int i = 0; i < StabilityStage.INPUTS; i++) {
+                for (int j = i + 1; j < StabilityStage.INPUTS; j++) {
+                    assertTrue(StabilityStage.EXPECTED[kernel][i] != StabilityStage.EXPECTED[kernel][j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSingleBitFlipChangesChecksum() {
+        long seed = StabilityStage.seed(0, 0);
+        assertTrue(StabilityStage.integerKernel(seed) != StabilityStage.integerKernel(seed ^ 1L << 20));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownKernel() {
+        StabilityStage.compute(StabilityStage.KERNELS.length, 0, new StabilityStage.Workspace());
+    }
+}
@@ -0,0 +1,65 @@
+package com.fpshowmany.idl.engine.stages;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Тесты прикладных этапов: фиксированные данные и результат ядер.
+ */
+public class WorkloadStageTest {
+
+    @Test
+    public void testSortKernelSortsCopies() {
+        SortStage stage = new SortStage();
+        stage.prepare();
+        SortStage.SortKernel kernel = stage.createKernel(0);
+
+        assertEquals(SortStage.INTS + SortStage.ITEMS, kernel.run());
+        for (int i = 1; i < kernel.workInts.length; i++) {
+            assertTrue(kernel.workInts[i - 1] <= kernel.workInts[i]);
+        }
+        for (int i = 1; i < kernel.workItems.length; i++) {
+            assertTrue(SortStage.ORDER.compare(kernel.workItems[i - 1], kernel.workItems[i]) <= 0);
+        }
+        // Повторная порция сортирует ту же исходную последовательность
+        int[] first = kernel.workInts.clone();
+        kernel.run();
+        assertArrayEquals(first, kernel.workInts);
+    }
+
+    @Test
+    public void testTextDatasetIsDeterministic() {
+        assertTrue(Arrays.equals(TextStage.createLines(new Random(WorkloadStage.SEED)),
+                TextStage.createLines(new Random(WorkloadStage.SEED))));
+    }
+
+    @Test
+    public void testTextKernelParsesLogLines() {
+        TextStage stage = new TextStage();
+        stage.prepare();
+        TextStage.TextKernel kernel = stage.createKernel(0);
+
+        assertEquals(TextStage.LINES, kernel.run());
+        // Около 1% строк - не в формате журнала
+        assertTrue(kernel.matched < TextStage.LINES);
+        assertTrue(kernel.matched > TextStage.LINES * 95 / 100);
+        assertTrue(kernel.links > 0);
+        assertTrue(kernel.words > kernel.matched);
+
+        int checksum = kernel.checksum;
+        TextStage.TextKernel other = new TextStage.TextKernel(
+                TextStage.createLines(new Random(WorkloadStage.SEED)));
+        other.run();
+        assertEquals(checksum, other.checksum);
+    }
+
+    @Test
+    public void testPixelsAreDeterministic() {
+        int[] pixels = BitmapStage.createPixels(new Random(WorkloadStage.SEED));
+        assertEquals(BitmapStage.WIDTH * BitmapStage.HEIGHT, pixels.length);
+        assertTrue(Arrays.equals(pixels, BitmapStage.createPixels(new Random(WorkloadStage.SEED))));
+    }
+}
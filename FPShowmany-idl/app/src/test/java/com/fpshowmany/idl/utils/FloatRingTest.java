@@ -0,0 +1,77 @@
+package com.fpshowmany.idl.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты кольцевого буфера значений графика.
+ */
+public class FloatRingTest {
+
+    @Test
+    public void testFillAndWrap() {
+        FloatRing ring = new FloatRing(3);
+        assertEquals(0, ring.size());
+        assertTrue(Float.isNaN(ring.getLast()));
+        ring.add(1);
+        ring.add(2);
+        assertEquals(2, ring.size());
+        assertEquals(1, ring.get(0), 0);
+        assertEquals(2, ring.getLast(), 0);
+
+        // Четвертое и пятое значения вытесняют самые старые
+        ring.add(3);
+        ring.add(4);
+        ring.add(5);
+        assertEquals(3, ring.size());
+        assertEquals(3, ring.capacity());
+        assertEquals(3, ring.get(0), 0);
+        assertEquals(4, ring.get(1), 0);
+        assertEquals(5, ring.get(2), 0);
+    }
+
+    @Test
+    public void testMinMaxSkipGaps() {
+        FloatRing ring = new FloatRing(4);
+        assertTrue(Float.isNaN(ring.max()));
+        ring.add(Float.NaN);
+        assertTrue(Float.isNaN(ring.min()));
+        ring.add(7);
+        ring.add(-2);
+        ring.add(Float.NaN);
+        assertEquals(-2, ring.min(), 0);
+        assertEquals(7, ring.max(), 0);
+        // Вытесненное значение больше не учитывается
+        ring.add(3);
+        ring.add(1);
+        assertEquals(-2, ring.min(), 0);
+        assertEquals(3, ring.max(), 0);
+        ring.add(2);
+        assertEquals(1, ring.min(), 0);
+    }
+
+    @Test
+    public void testClear() {
+        FloatRing ring = new FloatRing(2);
+        ring.add(1);
+        ring.add(2);
+        ring.add(3);
+        ring.clear();
+        assertEquals(0, ring.size());
+        ring.add(9);
+        assertEquals(9, ring.get(0), 0);
+        assertEquals(9, ring.max(), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfRange() {
+        FloatRing ring = new FloatRing(2);
+        ring.add(1);
+        ring.get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacityRejected() {
+        new FloatRing(0);
+    }
+}
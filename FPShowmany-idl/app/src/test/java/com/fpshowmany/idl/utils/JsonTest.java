@@ -0,0 +1,44 @@
+package com.fpshowmany.idl.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Тесты разбора JSON.
+ */
+public class JsonTest {
+
+    @Test
+    public void testParseNested() {
+        Object value = Json.parse(" {\"a\": [1, -2.5e1, true, null], \"b\": {\"c\": \"d\"}} ");
+        Map<?, ?> root = (Map<?, ?>) value;
+        assertEquals(Arrays.<Object>asList(1.0, -25.0, Boolean.TRUE, null), root.get("a"));
+        assertEquals("d", ((Map<?, ?>) root.get("b")).get("c"));
+    }
+
+    @Test
+    public void testEmptyContainers() {
+        assertTrue(((Map<?, ?>) Json.parse("{}")).isEmpty());
+        assertTrue(((List<?>) Json.parse("[ ]")).isEmpty());
+    }
+
+    @Test
+    public void testQuoteRoundTrip() {
+        String text = "tab\t \"quote\" back\\slash \u0001 кириллица";
+        assertEquals(text, Json.parse(Json.quote(text)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTrailingDataRejected() {
+        Json.parse("{} x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnterminatedStringRejected() {
+        Json.parse("[\"abc");
+    }
+}
@@ -0,0 +1,79 @@
+package com.fpshowmany.idl.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+/**
+ * Тесты эскиза распределения.
+ */
+public class QuantileSketchTest {
+
+    private static QuantileSketch uniform(int from, int to) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = from; i < to; i++) {
+            sketch.add(i);
+        }
+        return sketch;
+    }
+
+    @Test
+    public void testEmptySketch() {
+        assertTrue(Double.isNaN(new QuantileSketch().cdf(1)));
+        assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)));
+    }
+
+    @Test
+    public void testUniformCdf() {
+        QuantileSketch sketch = uniform(0, 100000);
+        assertEquals(0.5, sketch.cdf(50000), 0.005);
+        assertEquals(0.01, sketch.cdf(1000), 0.001);
+        assertEquals(0.99, sketch.cdf(99000), 0.001);
+        assertEquals(0, sketch.cdf(-1), 0);
+        assertEquals(1, sketch.cdf(100000), 0);
+    }
+
+    @Test
+    public void testQuantileInvertsCdf() {
+        QuantileSketch sketch = uniform(0, 100000);
+        assertEquals(90000, sketch.quantile(0.9), 500);
+        assertEquals(0.25, sketch.cdf(sketch.quantile(0.25)), 0.005);
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        QuantileSketch sketch = uniform(0, 200000);
+        assertTrue(sketch.getCentroidCount() <= 2 * QuantileSketch.DEFAULT_COMPRESSION);
+        assertEquals(200000, sketch.getCount(), 0);
+    }
+
+    @Test
+    public void testMergeMatchesSingleSketch() {
+        Random random = new Random(1);
+        QuantileSketch all = new QuantileSketch();
+        QuantileSketch left = new QuantileSketch();
+        QuantileSketch right = new QuantileSketch();
+        for (int i = 0; i < 20000; i++) {
+            double value = Math.exp(random.nextGaussian());
+            all.add(value);
+            (i % 2 == 0 ? left : right).add(value);
+        }
+        left.merge(right);
+        assertEquals(all.getCount(), left.getCount(), 0);
+        for (double q = 0.05; q < 1; q += 0.1) {
+            double x = all.quantile(q);
+            assertEquals(all.cdf(x), left.cdf(x), 0.01);
+        }
+    }
+
+    @Test
+    public void testJsonRoundTrip() {
+        QuantileSketch sketch = uniform(0, 5000);
+        QuantileSketch copy = QuantileSketch.fromJson(Json.parse(sketch.toJson()));
+        assertEquals(sketch.getCount(), copy.getCount(), 0.01);
+        assertEquals(sketch.getMin(), copy.getMin(), 0);
+        assertEquals(sketch.getMax(), copy.getMax(), 0.5);
+        assertEquals(sketch.cdf(1234), copy.cdf(1234), 0.002);
+    }
+}
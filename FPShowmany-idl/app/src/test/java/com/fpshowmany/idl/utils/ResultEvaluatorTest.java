@@ -0,0 +1,42 @@
+package com.fpshowmany.idl.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты границ уровней оценки. Сами уровни ({@link ResultEvaluator.Rating}) используют
+ * android.graphics.Color, поэтому проверяются индексы уровней.
+ */
+public class ResultEvaluatorTest {
+
+    @Test
+    public void testThresholds() {
+        int[] expected = {250, 500, 800, 1250, 2000};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], ResultEvaluator.getThreshold(i));
+        }
+    }
+
+    @Test
+    public void testRatingBoundaries() {
+        // Очень Плохо: 0-249
+        assertEquals(0, ResultEvaluator.getRatingIndex(0));
+        assertEquals(0, ResultEvaluator.getRatingIndex(249));
+        // Плохо: 250-499
+        assertEquals(1, ResultEvaluator.getRatingIndex(250));
+        assertEquals(1, ResultEvaluator.getRatingIndex(499));
+        // Неплохо: 500-799
+        assertEquals(2, ResultEvaluator.getRatingIndex(500));
+        assertEquals(2, ResultEvaluator.getRatingIndex(799));
+        // Нормально: 800-1249, эталон в середине
+        assertEquals(3, ResultEvaluator.getRatingIndex(800));
+        assertEquals(3, ResultEvaluator.getRatingIndex(1000));
+        assertEquals(3, ResultEvaluator.getRatingIndex(1249));
+        // Хорошо: 1250-1999
+        assertEquals(4, ResultEvaluator.getRatingIndex(1250));
+        assertEquals(4, ResultEvaluator.getRatingIndex(1999));
+        // Отлично: 2000+
+        assertEquals(5, ResultEvaluator.getRatingIndex(2000));
+        assertEquals(5, ResultEvaluator.getRatingIndex(100000));
+    }
+}
@@ -0,0 +1,18 @@
+package com.fpshowmany.idl.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты статистических функций.
+ */
+public class StatisticsTest {
+
+    @Test
+    public void testGeometricMean() {
+        assertEquals(100, Statistics.geometricMean(new double[]{10, 1000, 5}, 2), 1e-9);
+        assertEquals(0, Statistics.geometricMean(new double[]{10}, 0), 1e-9);
+        // Нулевое значение не дает NaN
+        assertTrue(Statistics.geometricMean(new double[]{0, 100}, 2) >= 0);
+    }
+}